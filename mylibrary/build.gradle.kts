@@ -31,6 +31,13 @@ android {
     kotlinOptions {
         jvmTarget = "1.8"
     }
+    sourceSets {
+        // Measurements live apart from the unit tests; run them with
+        // ./gradlew :mylibrary:testDebugUnitTest -Pbenchmarks --tests '*Benchmark'
+        if (project.hasProperty("benchmarks")) {
+            getByName("test").java.srcDir("src/benchmark/java")
+        }
+    }
 }
 
 dependencies {
@@ -48,6 +55,7 @@ dependencies {
     implementation("com.squareup.okhttp3:okhttp")
     implementation("com.squareup.okhttp3:logging-interceptor")
     testImplementation("junit:junit:4.13.2")
+    testImplementation("com.squareup.okhttp3:mockwebserver")
     androidTestImplementation("androidx.test.ext:junit:1.1.5")
     androidTestImplementation("androidx.test.espresso:espresso-core:3.5.1")
 }
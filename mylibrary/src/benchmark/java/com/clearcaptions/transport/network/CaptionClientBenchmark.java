@@ -0,0 +1,65 @@
+package com.clearcaptions.transport.network;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Connect latency and thread count for 100 sequential and 100 parallel
+ * caption sessions against a local mock WebSocket server.
+ */
+public class CaptionClientBenchmark
+{
+	private static final int SESSIONS = CaptionClientTest.SESSIONS;
+
+	@Test
+	public void sequential() throws Exception
+	{
+		CaptionClientTest test = new CaptionClientTest();
+		test.setUp();
+		try {
+			// the first session starts the shared client's threads
+			test.connectAndClose();
+			int threadsBefore = Thread.activeCount();
+
+			long total = 0;
+			long max = 0;
+			for (int i = 0; i < SESSIONS; i++) {
+				long nanos = test.connectAndClose();
+				total += nanos;
+				max = Math.max(max, nanos);
+			}
+			int grown = Thread.activeCount() - threadsBefore;
+
+			System.out.println("CaptionClient: " + SESSIONS + " sequential sessions, mean connect "
+					+ total / SESSIONS / 1000 + " us, max " + max / 1000 + " us, threads grown by " + grown);
+		}
+		finally {
+			test.tearDown();
+		}
+	}
+
+	@Test
+	public void parallel() throws Exception
+	{
+		CaptionClientTest test = new CaptionClientTest();
+		test.setUp();
+		try {
+			int threadsBefore = Thread.activeCount();
+			List<CaptionClientTest.Session> sessions = test.connectParallel();
+			int threadsOpen = Thread.activeCount() - threadsBefore;
+
+			long total = 0;
+			long max = 0;
+			for (CaptionClientTest.Session session : sessions) {
+				total += session.connectNanos;
+				max = Math.max(max, session.connectNanos);
+			}
+			System.out.println("CaptionClient: " + SESSIONS + " parallel sessions, mean connect "
+					+ total / SESSIONS / 1000 + " us, max " + max / 1000 + " us, threads while open " + threadsOpen);
+		}
+		finally {
+			test.tearDown();
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package com.clearcaptions.transport.protocol;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.junit.Test;
+
+/**
+ * Threads and CPU for the keep-alive deadlines of 1,000 sessions: one
+ * java.util.Timer per session whose task is replaced on every keep-alive,
+ * as ProtocolWizard used to do, against one shared wheel.
+ */
+public class HashedWheelTimerBenchmark
+{
+	private static final int SESSIONS = 1000;
+
+	private static final long WAN_LOSS_TIMEOUT = 15000;
+
+	// every session sees a keep-alive this often
+	private static final long KEEPALIVE_MILLIS = 500;
+
+	private static final long MEASURE_MILLIS = 3000;
+
+	private static final Runnable NOTHING = new Runnable() {
+		public void run() {
+		}
+	};
+
+	private interface Sessions
+	{
+		void keepAlive(int session);
+
+		void stop();
+	}
+
+	private static class TimerSessions implements Sessions
+	{
+		private final Timer[] timers = new Timer[SESSIONS];
+		private final TimerTask[] tasks = new TimerTask[SESSIONS];
+
+		TimerSessions()
+		{
+			for (int i = 0; i < SESSIONS; i++)
+				timers[i] = new Timer();
+		}
+
+		public void keepAlive(int session)
+		{
+			if (tasks[session] != null)
+				tasks[session].cancel();
+			tasks[session] = new TimerTask() {
+				public void run() {
+				}
+			};
+			timers[session].schedule(tasks[session], WAN_LOSS_TIMEOUT);
+		}
+
+		public void stop()
+		{
+			for (Timer timer : timers)
+				timer.cancel();
+		}
+	}
+
+	private static class WheelSessions implements Sessions
+	{
+		private final HashedWheelTimer timer =
+				new HashedWheelTimer(HashedWheelTimer.DEFAULT_TICK_MILLIS, HashedWheelTimer.DEFAULT_WHEEL_SIZE);
+		private final HashedWheelTimer.Timeout[] timeouts = new HashedWheelTimer.Timeout[SESSIONS];
+
+		WheelSessions()
+		{
+			for (int i = 0; i < SESSIONS; i++)
+				timeouts[i] = timer.newTimeout(NOTHING);
+		}
+
+		public void keepAlive(int session)
+		{
+			timeouts[session].arm(WAN_LOSS_TIMEOUT);
+		}
+
+		public void stop()
+		{
+			timer.stop();
+		}
+	}
+
+	@Test
+	public void thousandSessions() throws Exception
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadCpuTimeSupported() || !threads.isThreadCpuTimeEnabled())
+			return;
+
+		Set<Long> existing = threadIds();
+		report("java.util.Timer", measure(new TimerSessions(), existing));
+		existing = threadIds();
+		report("HashedWheelTimer", measure(new WheelSessions(), existing));
+	}
+
+	private static void report(String name, long[] result)
+	{
+		System.out.println("KeepAlive: " + SESSIONS + " sessions on " + name + ": " + result[0]
+				+ " timer threads using " + result[1] * 100 / (MEASURE_MILLIS * 1000000L)
+				+ "% of a cpu, " + result[2] / 1000 + " us of cpu to re-arm per second");
+	}
+
+	/**
+	 * Arms every session, then for MEASURE_MILLIS delivers a keep-alive to
+	 * each one every KEEPALIVE_MILLIS, spread over 10 ms steps.
+	 *
+	 * @return timer threads started, CPU nanoseconds they used, and CPU
+	 * nanoseconds per second the re-arming thread used
+	 */
+	private static long[] measure(Sessions sessions, Set<Long> existing) throws Exception
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		try {
+			for (int i = 0; i < SESSIONS; i++)
+				sessions.keepAlive(i);
+			Set<Long> timerThreads = threadIds();
+			timerThreads.removeAll(existing);
+
+			int perStep = (int) (SESSIONS * 10 / KEEPALIVE_MILLIS);
+			long cpu = cpuTime(timerThreads);
+			long armCpu = threads.getCurrentThreadCpuTime();
+			long end = System.currentTimeMillis() + MEASURE_MILLIS;
+			int next = 0;
+			while (System.currentTimeMillis() < end) {
+				for (int i = 0; i < perStep; i++) {
+					sessions.keepAlive(next);
+					next = (next + 1) % SESSIONS;
+				}
+				Thread.sleep(10);
+			}
+			armCpu = threads.getCurrentThreadCpuTime() - armCpu;
+			return new long[] { timerThreads.size(), cpuTime(timerThreads) - cpu,
+					armCpu * 1000 / MEASURE_MILLIS };
+		}
+		finally {
+			sessions.stop();
+		}
+	}
+
+	private static Set<Long> threadIds()
+	{
+		Set<Long> ids = new HashSet<Long>();
+		for (Thread thread : Thread.getAllStackTraces().keySet())
+			ids.add(Long.valueOf(thread.getId()));
+		return ids;
+	}
+
+	private static long cpuTime(Set<Long> ids)
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long total = 0;
+		for (Long id : ids) {
+			long cpu = threads.getThreadCpuTime(id.longValue());
+			if (cpu > 0)
+				total += cpu;
+		}
+		return total;
+	}
+}
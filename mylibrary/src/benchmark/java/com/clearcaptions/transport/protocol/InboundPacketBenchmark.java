@@ -0,0 +1,101 @@
+package com.clearcaptions.transport.protocol;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Packets handled per second, and bytes allocated per packet, by the
+ * PacketFields dispatch and by the indexOf() parsing it replaced, over the
+ * packets of a call in progress.  Registration and relay start are left
+ * out: they happen once a call and send packets of their own.
+ */
+public class InboundPacketBenchmark
+{
+	private static final int WARMUP = 5000;
+	private static final int ROUNDS = 50000;
+
+	private static final String[] CALL = {
+		"myMethod=KeepAlive||myID=4F1C2D3E",
+		"pollData=0||state=Online||receivedText=hello, this is your captioner",
+		"pollData=0||state=Online||receivedText= how can I:--:--:help you today?",
+		"myMethod=sendText||type=revoiced||text=I said: x=1, y=2",
+		"myMethod=statusUpdate||type=inProgress||message=Connecting you now",
+		"myMethod=StateChange||state=Online||OP=2007",
+		"exchangeData=0||state=Online||receivedText=",
+		"pollData=0||state=Queued",
+		"myMethod=sendCommand||type=called||volume=5",
+		"pollData=1||errCode=17||errMsg=Session expired",
+	};
+
+	private interface Handler
+	{
+		void handle(String packet) throws Exception;
+	}
+
+	@Test
+	public void throughput() throws Exception
+	{
+		final String[] packets = CALL;
+		final List<String> events = new ArrayList<String>();
+		final LegacyInboundPacketHandler legacy = new LegacyInboundPacketHandler(events);
+		final InboundPacketParityTest.RecordingWizard wizard = new InboundPacketParityTest.RecordingWizard(events);
+
+		Handler old = new Handler() {
+			public void handle(String packet) {
+				try {
+					legacy.Handlei711InboundPacket(packet);
+				}
+				catch (RuntimeException e) {
+					// the legacy parser throws on some packets
+				}
+			}
+		};
+		Handler current = new Handler() {
+			public void handle(String packet) throws Exception {
+				wizard.processData(packet);
+			}
+		};
+
+		run(packets, events, old, WARMUP);
+		run(packets, events, current, WARMUP);
+		report("indexOf", packets, events, old);
+		report("PacketFields", packets, events, current);
+	}
+
+	private static void run(String[] packets, List<String> events, Handler handler, int rounds) throws Exception
+	{
+		for (int r = 0; r < rounds; r++) {
+			for (String packet : packets)
+				handler.handle(packet);
+			events.clear();
+		}
+	}
+
+	private static void report(String label, String[] packets, List<String> events, Handler handler) throws Exception
+	{
+		long allocated = allocatedBytes();
+		long start = System.nanoTime();
+		run(packets, events, handler, ROUNDS);
+		long nanos = System.nanoTime() - start;
+		long count = (long) ROUNDS * packets.length;
+		String bytes = allocated < 0 ? "" : ", " + (allocatedBytes() - allocated) / count + " bytes allocated per packet";
+		System.out.println("InboundPacket: " + label + " " + count * 1000000000L / nanos + " packets/s" + bytes);
+	}
+
+	/**
+	 * @return bytes allocated so far by this thread, or -1 if the JVM
+	 * cannot tell
+	 */
+	private static long allocatedBytes()
+	{
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled())
+			return -1;
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -0,0 +1,83 @@
+package com.clearcaptions.transport.protocol;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+/**
+ * Bytes allocated per keep-alive and message packet, against the packet's
+ * own size.
+ */
+public class PacketEncoderBenchmark
+{
+	private static final String SESSION = "4F1C2D3E5A6B7C8D";
+	private static final String TEXT = "hello, can you hear me now?";
+	private static final int WARMUP = 20000;
+	private static final int PACKETS = 100000;
+
+	private final byte[] sessionBytes = PacketEncoder.ascii(SESSION);
+
+	private byte[] keepAlive()
+	{
+		return PacketEncoder.begin(PacketEncoder.KEEP_ALIVE)
+				.raw(sessionBytes)
+				.toPacket();
+	}
+
+	private byte[] message(String text)
+	{
+		return PacketEncoder.begin(PacketEncoder.EXCHANGE_DATA)
+				.raw(sessionBytes)
+				.field(PacketEncoder.MY_TEXT, text)
+				.toPacket();
+	}
+
+	@Test
+	public void keepAliveAllocation()
+	{
+		int size = keepAlive().length;
+		long perPacket = bytesPerPacket(new Runnable() {
+			public void run() {
+				keepAlive();
+			}
+		});
+		if (perPacket >= 0)
+			System.out.println("keep-alive: " + size + " byte packet, " + perPacket + " bytes allocated per packet");
+	}
+
+	@Test
+	public void messageAllocation()
+	{
+		int size = message(TEXT).length;
+		long perPacket = bytesPerPacket(new Runnable() {
+			public void run() {
+				message(TEXT);
+			}
+		});
+		if (perPacket >= 0)
+			System.out.println("message: " + size + " byte packet, " + perPacket + " bytes allocated per packet");
+	}
+
+	/**
+	 * @return bytes allocated by this thread per run, or -1 if the JVM
+	 * cannot tell
+	 */
+	private static long bytesPerPacket(Runnable build)
+	{
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled())
+			return -1;
+
+		for (int i = 0; i < WARMUP; i++)
+			build.run();
+
+		long id = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(id);
+		for (int i = 0; i < PACKETS; i++)
+			build.run();
+		long after = threads.getThreadAllocatedBytes(id);
+		return (after - before) / PACKETS;
+	}
+}
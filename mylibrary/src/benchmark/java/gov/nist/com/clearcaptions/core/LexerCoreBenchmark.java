@@ -0,0 +1,26 @@
+package gov.nist.com.clearcaptions.core;
+
+import org.junit.Test;
+
+/**
+ * Message parsing throughput as parser threads are added.
+ */
+public class LexerCoreBenchmark {
+
+	private static final int MESSAGES = 5000;
+
+	@Test
+	public void parsingScalesAcrossThreads() throws Exception {
+		// warm up
+		LexerCoreTest.parse(MESSAGES);
+
+		int cpus = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= 4; threads *= 2) {
+			long start = System.nanoTime();
+			LexerCoreTest.parseOn(threads, MESSAGES);
+			long nanos = System.nanoTime() - start;
+			System.out.println("LexerCore: " + threads + " threads on " + cpus + " cpus, "
+					+ (long) threads * MESSAGES * 1000000000L / nanos + " messages/s");
+		}
+	}
+}
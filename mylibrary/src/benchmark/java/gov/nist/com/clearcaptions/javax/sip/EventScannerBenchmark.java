@@ -0,0 +1,44 @@
+package gov.nist.com.clearcaptions.javax.sip;
+
+import org.junit.Test;
+
+/**
+ * Time events wait for their scanner thread while the listener is slow
+ * on one call, with one scanner thread and with four.
+ */
+public class EventScannerBenchmark {
+
+	private static final String SLOW = "call0@x";
+
+	private static final long SLOW_MILLIS = 20;
+
+	@Test
+	public void oneThread() throws Exception {
+		run(null);
+	}
+
+	@Test
+	public void fourThreads() throws Exception {
+		run("4");
+	}
+
+	private static void run(String threads) throws Exception {
+		EventScannerTest scanner = new EventScannerTest();
+		scanner.slowCallId = SLOW;
+		scanner.slowMillis = SLOW_MILLIS;
+		try {
+			scanner.send(scanner.start(threads));
+			SipStackImpl stack = scanner.stack;
+			int slow = stack.getEventScannerThread(SLOW);
+			StringBuffer report = new StringBuffer("EventScanner: " + stack.getEventScannerThreads()
+					+ " threads, mean/max wait");
+			for (int i = 0; i < stack.getEventScannerThreads(); i++) {
+				report.append(i == slow ? " (slow) " : " ").append(stack.getMeanEventDispatchLatency(i))
+						.append('/').append(stack.getMaxEventDispatchLatency(i)).append(" us");
+			}
+			System.out.println(report);
+		} finally {
+			scanner.tearDown();
+		}
+	}
+}
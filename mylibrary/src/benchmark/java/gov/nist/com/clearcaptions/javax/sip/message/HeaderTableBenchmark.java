@@ -0,0 +1,102 @@
+package gov.nist.com.clearcaptions.javax.sip.message;
+
+import static org.junit.Assert.assertEquals;
+
+import gov.nist.com.clearcaptions.javax.sip.header.SIPHeader;
+import gov.nist.com.clearcaptions.javax.sip.header.SIPHeaderNamesCache;
+
+import java.lang.management.ManagementFactory;
+import java.util.Hashtable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.Test;
+
+/**
+ * Footprint and lookup cost of a message's HeaderTable against the
+ * Hashtable and queue it replaced.
+ */
+public class HeaderTableBenchmark {
+
+	private static final int COPIES = 10000;
+
+	private static final int LOOKUPS = 1000000;
+
+	@Test
+	public void footprint() throws Exception {
+		if (allocatedBytes() < 0)
+			return;
+		SIPHeader[] headers = HeaderTableTest.invite().headers.toArray();
+		// warm up
+		for (int i = 0; i < COPIES; i++) {
+			HeaderTableTest.table(headers);
+			hashtableAndQueue(headers);
+		}
+
+		long before = allocatedBytes();
+		Object[] keep = new Object[COPIES];
+		for (int i = 0; i < COPIES; i++)
+			keep[i] = HeaderTableTest.table(headers);
+		long table = allocatedBytes() - before;
+
+		before = allocatedBytes();
+		for (int i = 0; i < COPIES; i++)
+			keep[i] = hashtableAndQueue(headers);
+		long previous = allocatedBytes() - before;
+
+		System.out.println("HeaderTable: " + headers.length + " headers in " + table / COPIES
+				+ " bytes, Hashtable and queue " + previous / COPIES + " bytes");
+	}
+
+	@Test
+	public void lookups() throws Exception {
+		SIPRequest request = HeaderTableTest.invite();
+		// warm up
+		lookups(request, LOOKUPS);
+
+		long start = System.nanoTime();
+		lookups(request, LOOKUPS);
+		long nanos = System.nanoTime() - start;
+		System.out.println("HeaderTable: getHeader/getTopmostVia/getCSeq "
+				+ nanos / (3L * LOOKUPS) + " ns mean per lookup");
+	}
+
+	private static int lookups(SIPRequest request, int count) {
+		int found = 0;
+		for (int i = 0; i < count; i++) {
+			if (request.getHeader("Expires") != null)
+				found++;
+			if (request.getTopmostVia() != null)
+				found++;
+			if (request.getCSeq() != null)
+				found++;
+		}
+		assertEquals(3 * count, found);
+		return found;
+	}
+
+	/**
+	 * The header store SIPMessage used before HeaderTable.
+	 */
+	private static Object[] hashtableAndQueue(SIPHeader[] headers) {
+		Hashtable<String, SIPHeader> nameTable = new Hashtable<String, SIPHeader>();
+		ConcurrentLinkedQueue<SIPHeader> list = new ConcurrentLinkedQueue<SIPHeader>();
+		for (SIPHeader header : headers) {
+			nameTable.put(SIPHeaderNamesCache.toLowerCase(header.getName()), header);
+			list.add(header);
+		}
+		return new Object[] { nameTable, list };
+	}
+
+	/**
+	 * @return bytes allocated so far by this thread, or -1 if the JVM
+	 * cannot tell
+	 */
+	private static long allocatedBytes() {
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled())
+			return -1;
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -0,0 +1,82 @@
+package gov.nist.com.clearcaptions.javax.sip.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import gov.nist.com.clearcaptions.javax.sip.header.SIPHeader;
+
+import java.lang.reflect.Constructor;
+
+import org.junit.Test;
+
+/**
+ * Header parsing throughput on the header mix of a typical INVITE, against
+ * creating the parsers reflectively as the previous factory did.
+ */
+public class ParserFactoryBenchmark {
+
+	private static final String[] MIX = ParserFactoryTest.MIX;
+
+	private static final int ROUNDS = 20000;
+
+	@Test
+	public void throughput() throws Exception {
+		String[] expected = new String[MIX.length];
+		Constructor<?>[] reflective = new Constructor<?>[MIX.length];
+		for (int i = 0; i < MIX.length; i++) {
+			HeaderParser parser = ParserFactory.createParser(MIX[i]);
+			expected[i] = parser.parse().encode();
+			reflective[i] = parser.getClass().getConstructor(String.class);
+		}
+
+		// warm up
+		create(ROUNDS / 4, null);
+		create(ROUNDS / 4, reflective);
+		parse(ROUNDS / 4, expected);
+
+		// the previous factory looked up and called a Constructor per header
+		report("created reflectively", create(ROUNDS, reflective));
+		report("created", create(ROUNDS, null));
+		report("created and parsed", parse(ROUNDS, expected));
+	}
+
+	/**
+	 * Creates a parser for every header of the mix, rounds times, through
+	 * the factory or the given constructors.
+	 *
+	 * @return elapsed nanoseconds
+	 */
+	private static long create(int rounds, Constructor<?>[] constructors) throws Exception {
+		long start = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			for (int i = 0; i < MIX.length; i++) {
+				if (constructors == null)
+					ParserFactory.createParser(MIX[i]);
+				else
+					constructors[i].newInstance(MIX[i]);
+			}
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Creates and parses every header of the mix, rounds times.
+	 *
+	 * @return elapsed nanoseconds
+	 */
+	private static long parse(int rounds, String[] expected) throws Exception {
+		long start = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			for (int i = 0; i < MIX.length; i++) {
+				SIPHeader header = ParserFactory.createParser(MIX[i]).parse();
+				if (r == 0)
+					assertEquals(expected[i], header.encode());
+			}
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static void report(String label, long nanos) {
+		System.out.println("ParserFactory: " + (long) ROUNDS * MIX.length * 1000000000L / nanos
+				+ " headers/s " + label);
+	}
+}
@@ -0,0 +1,141 @@
+package gov.nist.com.clearcaptions.javax.sip.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import gov.nist.com.clearcaptions.javax.sip.message.SIPMessage;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+/**
+ * Messages per second, and bytes allocated per message, parsing INVITE,
+ * 200, REGISTER and BYE from bytes with the single pass scanner, with and
+ * without lazy headers, and with the line by line parser it replaced.
+ */
+public class StringMsgParserBenchmark {
+
+	private static final int WARMUP = 5000;
+
+	private static final int ROUNDS = 50000;
+
+	private static final String[] CORPUS = {
+		"INVITE sip:bob@biloxi.example.com SIP/2.0\r\n"
+				+ "Via: SIP/2.0/UDP pc33.atlanta.example.com;branch=z9hG4bK776asdhds;rport\r\n"
+				+ "Via: SIP/2.0/UDP 10.0.0.2:5060;branch=z9hG4bK4b43c2ff8.1;received=10.0.0.9\r\n"
+				+ "Max-Forwards: 70\r\n"
+				+ "To: Bob <sip:bob@biloxi.example.com>\r\n"
+				+ "From: Alice <sip:alice@atlanta.example.com>;tag=1928301774\r\n"
+				+ "Call-ID: a84b4c76e66710@pc33.atlanta.example.com\r\n"
+				+ "CSeq: 314159 INVITE\r\n"
+				+ "Contact: <sip:alice@pc33.atlanta.example.com>\r\n"
+				+ "Record-Route: <sip:p1.example.com;lr>\r\n"
+				+ "Allow: INVITE, ACK, CANCEL, OPTIONS, BYE\r\n"
+				+ "Supported: replaces,\r\n timer\r\n"
+				+ "User-Agent: CaptionPhone/1.0\r\n"
+				+ "Content-Type: application/sdp\r\n"
+				+ "Content-Length: 124\r\n\r\n"
+				+ "v=0\r\n"
+				+ "o=alice 2890844526 2890844526 IN IP4 pc33.atlanta.example.com\r\n"
+				+ "s=-\r\n"
+				+ "c=IN IP4 10.0.0.1\r\n"
+				+ "t=0 0\r\n"
+				+ "m=audio 49172 RTP/AVP 0\r\n",
+		"SIP/2.0 200 OK\r\n"
+				+ "Via: SIP/2.0/UDP pc33.atlanta.example.com;branch=z9hG4bK776asdhds;received=10.0.0.1\r\n"
+				+ "To: Bob <sip:bob@biloxi.example.com>;tag=a6c85cf\r\n"
+				+ "From: Alice <sip:alice@atlanta.example.com>;tag=1928301774\r\n"
+				+ "Call-ID: a84b4c76e66710@pc33.atlanta.example.com\r\n"
+				+ "CSeq: 314159 INVITE\r\n"
+				+ "Contact: <sip:bob@192.0.2.4>\r\n"
+				+ "Record-Route: <sip:p1.example.com;lr>\r\n"
+				+ "Server: CaptionServer/2.1\r\n"
+				+ "Content-Length: 0\r\n\r\n",
+		"REGISTER sip:registrar.biloxi.example.com SIP/2.0\r\n"
+				+ "Via: SIP/2.0/UDP bobspc.biloxi.example.com:5060;branch=z9hG4bKnashds7\r\n"
+				+ "Max-Forwards: 70\r\n"
+				+ "To: Bob <sip:bob@biloxi.example.com>\r\n"
+				+ "From: Bob <sip:bob@biloxi.example.com>;tag=456248\r\n"
+				+ "Call-ID: 843817637684230@998sdasdh09\r\n"
+				+ "CSeq: 1826 REGISTER\r\n"
+				+ "Contact: <sip:bob@192.0.2.4>\r\n"
+				+ "Expires: 7200\r\n"
+				+ "User-Agent: CaptionPhone/1.0\r\n"
+				+ "Content-Length: 0\r\n\r\n",
+		"BYE sip:alice@pc33.atlanta.example.com SIP/2.0\r\n"
+				+ "Via: SIP/2.0/UDP 192.0.2.4;branch=z9hG4bKnashds10\r\n"
+				+ "Max-Forwards: 70\r\n"
+				+ "From: Bob <sip:bob@biloxi.example.com>;tag=a6c85cf\r\n"
+				+ "To: Alice <sip:alice@atlanta.example.com>;tag=1928301774\r\n"
+				+ "Call-ID: a84b4c76e66710@pc33.atlanta.example.com\r\n"
+				+ "CSeq: 231 BYE\r\n"
+				+ "Content-Length: 0\r\n\r\n",
+	};
+
+	@Test
+	public void throughput() throws Exception {
+		byte[][] messages = new byte[CORPUS.length][];
+		String[] expected = new String[CORPUS.length];
+		for (int i = 0; i < CORPUS.length; i++) {
+			messages[i] = CORPUS[i].getBytes("UTF-8");
+			expected[i] = new StringMsgParser().parseSIPMessage(CORPUS[i]).encode();
+		}
+
+		try {
+			for (int i = 0; i < 2; i++) {
+				measure("line by line", false, false, messages, expected, i == 1);
+				measure("single pass", true, false, messages, expected, i == 1);
+				measure("single pass, lazy headers", true, true, messages, expected, i == 1);
+			}
+		} finally {
+			StringMsgParser.setScanBytes(true);
+			StringMsgParser.setLazyHeaders(true);
+		}
+	}
+
+	/**
+	 * Parses the corpus WARMUP times, or ROUNDS times and reports the
+	 * figures.
+	 */
+	private static void measure(String label, boolean scanBytes, boolean lazyHeaders, byte[][] messages,
+			String[] expected, boolean report) throws Exception {
+		StringMsgParser.setScanBytes(scanBytes);
+		StringMsgParser.setLazyHeaders(lazyHeaders);
+		StringMsgParser parser = new StringMsgParser();
+		for (int i = 0; i < messages.length; i++) {
+			SIPMessage message = parser.parseSIPMessage(messages[i]);
+			// lazy headers encode as received until parsed
+			message.parseLazyHeaders();
+			assertEquals(label, expected[i], message.encode());
+		}
+
+		int rounds = report ? ROUNDS : WARMUP;
+		long allocated = allocatedBytes();
+		long start = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			for (int i = 0; i < messages.length; i++)
+				parser.parseSIPMessage(messages[i]);
+		}
+		long nanos = System.nanoTime() - start;
+		long bytes = allocatedBytes() - allocated;
+		if (!report)
+			return;
+
+		long count = (long) rounds * messages.length;
+		System.out.println("StringMsgParser: " + label + " " + count * 1000000000L / nanos + " messages/s"
+				+ (allocated < 0 ? "" : ", " + bytes / count + " bytes allocated per message"));
+	}
+
+	/**
+	 * @return bytes allocated so far by this thread, or -1 if the JVM
+	 * cannot tell
+	 */
+	private static long allocatedBytes() {
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled())
+			return -1;
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
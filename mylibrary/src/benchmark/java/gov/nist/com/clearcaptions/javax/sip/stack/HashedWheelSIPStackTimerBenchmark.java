@@ -0,0 +1,115 @@
+package gov.nist.com.clearcaptions.javax.sip.stack;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * The CPU the timing wheel's threads use for 50,000 live transaction
+ * timers against java.util.Timer.
+ */
+public class HashedWheelSIPStackTimerBenchmark {
+
+	private static final int TASKS = 50000;
+
+	private static final long PERIOD = 500;
+
+	// tasks replaced, and one-shot tasks scheduled and cancelled, per 10 ms
+	private static final int CHURN = 200;
+
+	private static final long MEASURE_MILLIS = 2000;
+
+	private static class Counter extends SIPStackTimerTask {
+		final AtomicInteger runs;
+
+		Counter(AtomicInteger runs) {
+			this.runs = runs;
+		}
+
+		protected void runTask() {
+			runs.incrementAndGet();
+		}
+	}
+
+	@Test
+	public void timerThreadCpu() throws Exception {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadCpuTimeSupported() || !threads.isThreadCpuTimeEnabled())
+			return;
+		// java.util.Timer starts its thread as it is created
+		Set<Long> existing = threadIds();
+		long[] wheel = churn(new HashedWheelSIPStackTimer(), existing);
+		existing = threadIds();
+		long[] timer = churn(new DefaultSIPStackTimer(), existing);
+		System.out.println("SIPStackTimer: " + TASKS + " tasks, timer threads used "
+				+ wheel[0] * 100 / (MEASURE_MILLIS * 1000000L) + "% of a cpu with the wheel ("
+				+ wheel[1] + " runs), " + timer[0] * 100 / (MEASURE_MILLIS * 1000000L)
+				+ "% with java.util.Timer (" + timer[1] + " runs)");
+	}
+
+	/**
+	 * Schedules TASKS periodic tasks, then for MEASURE_MILLIS replaces
+	 * CHURN of them and schedules and cancels CHURN one-shot tasks every
+	 * 10 ms, as transactions come and go.
+	 *
+	 * @param existing
+	 *            the threads that ran before the timer was created
+	 * @return CPU nanoseconds used by the timer's threads meanwhile, and
+	 * the number of task runs
+	 */
+	private static long[] churn(SIPStackTimer timer, Set<Long> existing) throws Exception {
+		AtomicInteger runs = new AtomicInteger();
+		Counter[] live = new Counter[TASKS];
+		try {
+			for (int i = 0; i < TASKS; i++) {
+				live[i] = new Counter(runs);
+				timer.schedule(live[i], PERIOD, PERIOD);
+			}
+			Set<Long> timerThreads = threadIds();
+			timerThreads.removeAll(existing);
+
+			long cpu = cpuTime(timerThreads);
+			runs.set(0);
+			long end = System.currentTimeMillis() + MEASURE_MILLIS;
+			int next = 0;
+			while (System.currentTimeMillis() < end) {
+				for (int i = 0; i < CHURN; i++) {
+					live[next].cancel();
+					live[next] = new Counter(runs);
+					timer.schedule(live[next], PERIOD, PERIOD);
+					next = (next + 1) % TASKS;
+
+					Counter retransmit = new Counter(runs);
+					timer.schedule(retransmit, PERIOD);
+					retransmit.cancel();
+				}
+				Thread.sleep(10);
+			}
+			return new long[] { cpuTime(timerThreads) - cpu, runs.get() };
+		} finally {
+			timer.stop();
+		}
+	}
+
+	private static Set<Long> threadIds() {
+		Set<Long> ids = new HashSet<Long>();
+		for (Thread thread : Thread.getAllStackTraces().keySet())
+			ids.add(Long.valueOf(thread.getId()));
+		return ids;
+	}
+
+	private static long cpuTime(Set<Long> ids) {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long total = 0;
+		for (Long id : ids) {
+			long cpu = threads.getThreadCpuTime(id.longValue());
+			if (cpu > 0)
+				total += cpu;
+		}
+		return total;
+	}
+}
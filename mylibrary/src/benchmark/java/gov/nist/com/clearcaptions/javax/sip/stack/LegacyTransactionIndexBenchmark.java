@@ -0,0 +1,68 @@
+package gov.nist.com.clearcaptions.javax.sip.stack;
+
+import gov.nist.com.clearcaptions.javax.sip.message.SIPMessage;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Cost of finding RFC 2543 style transactions through the legacy index
+ * against scanning the table for them, as the stack used to.
+ */
+public class LegacyTransactionIndexBenchmark {
+
+	private static final int LOOKUPS = 20;
+
+	@Test
+	public void lookups() throws Exception {
+		LegacyTransactionIndexTest index = new LegacyTransactionIndexTest();
+		index.setUp();
+		try {
+			SIPMessage[] invites = index.invites();
+			SIPTransactionStack stack = index.stack;
+			List<SIPServerTransaction> transactions = index.transactions;
+			int count = invites.length;
+
+			// warm up
+			for (int r = 0; r < LOOKUPS; r++)
+				index(stack, invites);
+			scan(transactions, invites);
+			long start = System.nanoTime();
+			for (int r = 0; r < LOOKUPS; r++)
+				index(stack, invites);
+			long indexed = (System.nanoTime() - start) / ((long) LOOKUPS * count);
+			start = System.nanoTime();
+			scan(transactions, invites);
+			long scanned = (System.nanoTime() - start) / count;
+			System.out.println("LegacyTransactionIndex: " + count + " legacy transactions, findTransaction "
+					+ indexed + " ns, scanning the table " + scanned + " ns");
+		} finally {
+			index.tearDown();
+		}
+	}
+
+	private static void index(SIPTransactionStack stack, SIPMessage[] messages) {
+		for (int i = 0; i < messages.length; i++) {
+			if (stack.findTransaction(messages[i], true) == null)
+				throw new AssertionError(messages[i].getFirstLine());
+		}
+	}
+
+	/**
+	 * The lookup the index replaced.
+	 */
+	private static void scan(List<SIPServerTransaction> transactions, SIPMessage[] messages) {
+		for (int i = 0; i < messages.length; i++) {
+			SIPServerTransaction found = null;
+			for (SIPServerTransaction transaction : transactions) {
+				if (transaction.isMessagePartOfTransaction(messages[i])) {
+					found = transaction;
+					break;
+				}
+			}
+			if (found == null)
+				throw new AssertionError(messages[i].getFirstLine());
+		}
+	}
+}
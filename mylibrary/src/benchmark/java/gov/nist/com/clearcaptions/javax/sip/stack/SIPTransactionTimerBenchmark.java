@@ -0,0 +1,35 @@
+package gov.nist.com.clearcaptions.javax.sip.stack;
+
+import gov.nist.com.clearcaptions.javax.sip.stack.SIPTransactionTimerTest.CountingTimer;
+
+import org.junit.Test;
+
+/**
+ * Timer tasks per second a flood of REGISTER transactions schedules,
+ * against what ticking every BASE_TIMER_INTERVAL would run.
+ */
+public class SIPTransactionTimerBenchmark {
+
+	private static final int REGISTERS = SIPTransactionTimerTest.REGISTERS;
+
+	@Test
+	public void registrationFlood() throws Exception {
+		SIPTransactionTimerTest flood = new SIPTransactionTimerTest();
+		flood.setUp();
+		try {
+			long millis = flood.flood();
+			int live = flood.client.getClientTransactionTableSize();
+			CountingTimer clientTimer = (CountingTimer) flood.client.getTimer();
+			CountingTimer serverTimer = (CountingTimer) flood.server.getTimer();
+			System.out.println("SIPTransaction: " + REGISTERS + " REGISTERs in " + millis + " ms, "
+					+ clientTimer.oneShot.get() * 1000L / millis + " client and "
+					+ serverTimer.oneShot.get() * 1000L / millis + " server timer tasks/s scheduled, "
+					+ (clientTimer.size() + serverTimer.size()) + " pending; ticking every "
+					+ SIPTransactionStack.BASE_TIMER_INTERVAL + " ms would run "
+					+ live * 1000L / SIPTransactionStack.BASE_TIMER_INTERVAL + "/s for the "
+					+ live + " live client transactions alone");
+		} finally {
+			flood.tearDown();
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package com.clearcaptions.cloud.captions;
 
 import com.clearcaptions.cloud.sip.SIPHandler;
+import com.clearcaptions.javawi.jstun.util.CallTypeUtil;
 import com.clearcaptions.transport.CCEnvironment;
 import com.clearcaptions.transport.CCLog;
 import com.clearcaptions.transport.CaptionSessionState;
@@ -13,6 +14,7 @@ public class Captions extends ProtocolWizard implements CaptionsInterface
 	private static boolean ISVOIP = false;
 	
 	private CaptionsInterface ci;
+	private boolean isVoip;
 	private boolean bTest;
 	private boolean inCall;
 	private boolean callFailed;
@@ -25,6 +27,7 @@ public class Captions extends ProtocolWizard implements CaptionsInterface
 		setTest(false);
 		callStarted(false);
 		callFailed(false);
+		isVoip = ISVOIP;
 		environment(CCEnvironment.LIVE);
 	}
 	
@@ -44,9 +47,27 @@ public class Captions extends ProtocolWizard implements CaptionsInterface
 		return instance;
     }
 
+	/**
+	 * Sets the VoIP flag for the shared instance and the default for new
+	 * ones; callType() sets it per session.
+	 */
 	public static void setIsVoip(boolean isVoip)
 	{
 		ISVOIP = isVoip;
+		Captions instance = INSTANCE;
+		if (instance != null)
+			instance.isVoip = isVoip;
+	}
+
+	public void callType(String val)
+	{
+		super.callType(val);
+		isVoip = CallTypeUtil.isVoipCallType(val);
+	}
+
+	public boolean isVoip()
+	{
+		return isVoip;
 	}
 	
 	public void recordEvent(String state, String msg)
@@ -124,7 +145,7 @@ public class Captions extends ProtocolWizard implements CaptionsInterface
 			 */
 			case STATE_SIPREMOTE:
 				CCLog.debug("Captions.processState::", state + "[" + msg + "]");
-				if(!ISVOIP)
+				if(!isVoip())
 				{
 					CCLog.debug("Captions.processState::", "Not a VoIP call, starting SIP connection.");
 					if (callStarted()) {
@@ -1,37 +1,128 @@
 package com.clearcaptions.transport.network;
 import java.io.IOException;
-import java.net.URI;
-import java.util.Properties;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
-import com.clearcaptions.transport.protocol.ProtocolInterface;
 import okhttp3.*;
 
-import com.clearcaptions.transport.CCEnvironment;
 import com.clearcaptions.transport.CaptionSessionState;
 import com.clearcaptions.transport.CCLog;
 import com.clearcaptions.transport.protocol.ProtocolWizard;
 
 /**
  * A barebones chat client that uses the WebSocket protocol.
+ *
+ * All caption connections are opened from one shared OkHttpClient, so the
+ * connection pool, TLS sessions and dispatcher threads are reused across
+ * sessions.  Clients with a different ping interval are derived from the
+ * shared one with newBuilder() and still share its pool and dispatcher.
+ * With pings on, a missed pong is reported as a WAN loss warning.
  */
-public class CaptionClient extends OkHttpClient  {
+public class CaptionClient {
+	public static final long DEFAULT_PING_INTERVAL = 0;
+
+	private static volatile Clients clients;
+
 	ProtocolWizard gandolf;
 	CCWebSocketListener listener;
 	WebSocket ws;
+	private final int pingIntervalMillis;
+
+	/**
+	 * The shared client and the clients derived from it, replaced together
+	 * so a derived client is never cached against a replaced shared one.
+	 */
+	private static final class Clients {
+		final OkHttpClient shared;
+		final ConcurrentHashMap<Long, OkHttpClient> pinging = new ConcurrentHashMap<Long, OkHttpClient>();
+
+		Clients(OkHttpClient shared) {
+			this.shared = shared;
+		}
+	}
 
 	public CaptionClient(String uri, ProtocolWizard gandolf) {
-		super();
+		this(sharedClient(), uri, gandolf);
+	}
+
+	/**
+	 * @param pingInterval milliseconds between WebSocket pings, 0 to use
+	 *        the shared client's setting
+	 */
+	public CaptionClient(String uri, ProtocolWizard gandolf, long pingInterval) {
+		this(client(pingInterval), uri, gandolf);
+	}
+
+	public CaptionClient(OkHttpClient client, String uri, ProtocolWizard gandolf) {
+		this.gandolf = gandolf;
+		pingIntervalMillis = client.pingIntervalMillis();
 		listener = new CCWebSocketListener();
 		Request request = new Request.Builder().url(uri).build();
-		ws = this.newWebSocket(request, listener);
-		this.gandolf = gandolf;
+		ws = client.newWebSocket(request, listener);
+	}
+
+	/**
+	 * @return the client every caption connection is opened from
+	 */
+	public static OkHttpClient sharedClient() {
+		return clients().shared;
+	}
+
+	private static Clients clients() {
+		Clients c = clients;
+		if (c == null) {
+			synchronized (CaptionClient.class) {
+				c = clients;
+				if (c == null) {
+					// an open WebSocket holds a dispatcher slot until it
+					// closes, so the default limit of 64 would cap sessions
+					Dispatcher dispatcher = new Dispatcher();
+					dispatcher.setMaxRequests(Integer.MAX_VALUE);
+					clients = c = new Clients(new OkHttpClient.Builder()
+							.dispatcher(dispatcher)
+							.pingInterval(DEFAULT_PING_INTERVAL, TimeUnit.MILLISECONDS)
+							.build());
+				}
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Replaces the shared client, e.g. to supply an app wide dispatcher or
+	 * interceptors.  Connections already open keep their client.  Each open
+	 * connection counts against the dispatcher's maxRequests.
+	 */
+	public static void sharedClient(OkHttpClient client) {
+		synchronized (CaptionClient.class) {
+			clients = new Clients(client);
+		}
+	}
+
+	static OkHttpClient client(long pingInterval) {
+		Clients c = clients();
+		OkHttpClient shared = c.shared;
+		if (pingInterval <= 0 || pingInterval == shared.pingIntervalMillis())
+			return shared;
+
+		OkHttpClient client = c.pinging.get(pingInterval);
+		if (client == null) {
+			client = shared.newBuilder()
+					.pingInterval(pingInterval, TimeUnit.MILLISECONDS)
+					.build();
+			OkHttpClient existing = c.pinging.putIfAbsent(pingInterval, client);
+			if (existing != null)
+				client = existing;
+		}
+		return client;
 	}
 
     public void onMessage(String message) {
     	CCLog.trace("CaptionClient::onMessage <== [" + message + "]");
     	try {
 			gandolf.processData(message);
-		} 
+		}
     	catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -45,12 +136,22 @@ public class CaptionClient extends OkHttpClient  {
 		ws.close(1000,null);
 	}
 
+	/**
+	 * @return milliseconds between pings on this connection, 0 if none
+	 */
+	public int pingIntervalMillis() {
+		return pingIntervalMillis;
+	}
+
 	public final class CCWebSocketListener extends WebSocketListener {
 		private static final int NORMAL_CLOSURE_STATUS = 1000;
 
+		private volatile boolean opened;
+
 		@Override
 		public void onOpen(WebSocket webSocket, Response response) {
 			CCLog.trace("CaptionClient::onOpen [" + response + "]");
+			opened = true;
 			try {
 				gandolf.netConnect();
 			}
@@ -91,6 +192,10 @@ public class CaptionClient extends OkHttpClient  {
 					+ (response != null ? response.toString() : "response==null"));
 			t.printStackTrace();
 
+			// an open socket has no read timeout, only the pong deadline
+			if (opened && pingIntervalMillis > 0 && t instanceof SocketTimeoutException)
+				gandolf.pingTimedOut();
+
 			// if connection down while in call, we need to reconnect...
 			gandolf.handleState(CaptionSessionState.STATE_CONNECTION_LOST, t.getMessage());
 			if(gandolf.callback() != null)
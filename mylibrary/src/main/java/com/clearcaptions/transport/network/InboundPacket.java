@@ -0,0 +1,22 @@
+package com.clearcaptions.transport.network;
+
+/**
+ * A decoded i711 packet together with the time its terminator was read
+ * off the wire, so the time spent waiting for the parser can be measured.
+ */
+public final class InboundPacket
+{
+	public final String data;
+	public final long arrivalNanos;
+
+	public InboundPacket(String data, long arrivalNanos)
+	{
+		this.data = data;
+		this.arrivalNanos = arrivalNanos;
+	}
+
+	public String toString()
+	{
+		return data;
+	}
+}
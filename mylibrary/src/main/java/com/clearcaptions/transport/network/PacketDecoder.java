@@ -0,0 +1,166 @@
+package com.clearcaptions.transport.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Incremental decoder for the NUL terminated i711 packet stream.
+ *
+ * Bytes are read straight into a single reusable buffer and scanned for
+ * the NUL delimiter on the raw bytes.  Only complete frames are decoded
+ * to a String; a frame that straddles two reads stays in the buffer until
+ * its terminator arrives.  Decoded packets are handed to a bounded queue.
+ *
+ * fill() and write() must be called from a single producer thread; the
+ * queue side may be drained from any thread.
+ */
+public class PacketDecoder
+{
+	static final int DEFAULT_BUFFER_SIZE = 4096;
+	static final int MAX_FRAME_SIZE = 256 * 1024;
+	static final int DEFAULT_QUEUE_SIZE = 256;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private ByteBuffer buffer;
+	private int scanned;
+	private final BlockingQueue<InboundPacket> packets;
+
+	public PacketDecoder()
+	{
+		this(DEFAULT_BUFFER_SIZE, DEFAULT_QUEUE_SIZE);
+	}
+
+	public PacketDecoder(int bufferSize, int queueSize)
+	{
+		buffer = ByteBuffer.allocate(bufferSize);
+		scanned = 0;
+		packets = new ArrayBlockingQueue<InboundPacket>(queueSize);
+	}
+
+	/**
+	 * Reads whatever is available from the stream directly into the frame
+	 * buffer and queues any packets it completes.
+	 *
+	 * @return the byte count returned by the stream, -1 at end of stream
+	 */
+	public int fill(InputStream is) throws IOException, InterruptedException
+	{
+		ensureWritable(1);
+		int count = is.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		if (count > 0) {
+			buffer.position(buffer.position() + count);
+			decode(System.nanoTime());
+		}
+		return count;
+	}
+
+	/**
+	 * Feeds bytes that were read elsewhere into the decoder.
+	 */
+	public void write(byte[] data, int offset, int length) throws IOException, InterruptedException
+	{
+		ensureWritable(length);
+		buffer.put(data, offset, length);
+		decode(System.nanoTime());
+	}
+
+	/**
+	 * Number of complete packets waiting to be taken.
+	 */
+	public int available()
+	{
+		return packets.size();
+	}
+
+	/**
+	 * @return the next packet, or null if none is queued
+	 */
+	public String poll()
+	{
+		InboundPacket packet = packets.poll();
+		return packet != null ? packet.data : null;
+	}
+
+	/**
+	 * Blocks until a complete packet is available.
+	 */
+	public InboundPacket take() throws InterruptedException
+	{
+		return packets.take();
+	}
+
+	/**
+	 * Number of bytes held for a frame whose terminator has not arrived yet.
+	 */
+	public int pending()
+	{
+		return buffer.position();
+	}
+
+	public void clear()
+	{
+		buffer.clear();
+		scanned = 0;
+		packets.clear();
+	}
+
+	private void decode(long arrivalNanos) throws InterruptedException
+	{
+		byte[] data = buffer.array();
+		int base = buffer.arrayOffset();
+		int end = base + buffer.position();
+		int frame = base;
+
+		for (int i = base + scanned; i < end; i++) {
+			if (data[i] == 0) {
+				emit(data, frame, i, arrivalNanos);
+				frame = i + 1;
+			}
+		}
+
+		buffer.flip();
+		buffer.position(frame - base);
+		buffer.compact();
+		scanned = buffer.position();
+	}
+
+	private void emit(byte[] data, int start, int end, long arrivalNanos) throws InterruptedException
+	{
+		// same whitespace rule as String.trim(), applied before decoding
+		while (start < end && (data[start] & 0xff) <= ' ')
+			start++;
+		while (end > start && (data[end - 1] & 0xff) <= ' ')
+			end--;
+
+		if (end > start) {
+			packets.put(new InboundPacket(new String(data, start, end - start, UTF8), arrivalNanos));
+		}
+	}
+
+	private void ensureWritable(int length) throws IOException
+	{
+		if (buffer.remaining() >= length)
+			return;
+
+		int needed = buffer.position() + length;
+		if (needed > MAX_FRAME_SIZE) {
+			throw new IOException("PacketDecoder: frame exceeds " + MAX_FRAME_SIZE + " bytes");
+		}
+
+		int capacity = buffer.capacity();
+		while (capacity < needed)
+			capacity *= 2;
+		if (capacity > MAX_FRAME_SIZE)
+			capacity = MAX_FRAME_SIZE;
+
+		ByteBuffer grown = ByteBuffer.allocate(capacity);
+		buffer.flip();
+		grown.put(buffer);
+		buffer = grown;
+	}
+}
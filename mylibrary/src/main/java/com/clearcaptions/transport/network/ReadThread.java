@@ -1,8 +1,6 @@
 package com.clearcaptions.transport.network;
 
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
 
 import com.clearcaptions.transport.CaptionSessionState;
 import com.clearcaptions.transport.CCLog;
@@ -13,11 +11,11 @@ public class ReadThread extends Thread implements Runnable
 	InputStream mInputStream;
 	ProtocolWizard  mWizard;
 	boolean run;
-	ArrayList<String> packets;
+	PacketDecoder decoder;
 
 	public ReadThread(ProtocolWizard pw)
 	{
-		packets = new ArrayList<String>();
+		decoder = new PacketDecoder();
 		mInputStream = null;
 		mWizard = pw;
 		run = true;
@@ -25,28 +23,21 @@ public class ReadThread extends Thread implements Runnable
 
 	public void run()
 	{
-		int newSize = 1024;
 		try {
 			while (!done()) {
-				byte[] buffer = new byte[newSize];
-				int count = mInputStream.read(buffer, 0, newSize);
-				if (count >= 0) {
-					insert(buffer, count);
-				}
-				else {
+				int count = decoder.fill(mInputStream);
+				if (count < 0) {
 					if (mInputStream != null) {
-						CCLog.error("ProtocolWizard.ReadThread("+getName()+") run() : " + buffer);
+						CCLog.error("ProtocolWizard.ReadThread("+getName()+") run() : end of stream, " + decoder.pending() + " bytes pending");
 						mWizard.handleState(CaptionSessionState.STATE_CONNECTION_LOST, "");
 					}
 				}
-				buffer = null;
 			}
 		}
-		/*
 		catch (InterruptedException foo) {
-			CCLog.trace("ProtocolWizard.WriteThread("+getName()+")run(): sleep interrupted: "+ foo.getMessage());
+			CCLog.trace("ProtocolWizard.ReadThread("+getName()+")run(): interrupted: "+ foo.getMessage());
+			Thread.currentThread().interrupt();
 		}
-		*/
 		catch (Exception exc) {
 			CCLog.error("ProtocolWizard.ReadThread("+getName()+") run(): " + exc.getMessage());
 			if (mInputStream != null) {
@@ -69,17 +60,10 @@ public class ReadThread extends Thread implements Runnable
 	public synchronized void insert(byte[] buffer, int size)
 	{
 		try {
-			String data = new String(buffer, "UTF-8").trim();
-			String[] pieces = data.split("\0");
-			for (int i=0;i<pieces.length;i++) {
-				if (pieces[i].length() > 0) {
-					packets.add(pieces[i]);
-				}
-			}
-		} 
-		catch (UnsupportedEncodingException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			decoder.write(buffer, 0, size);
+		}
+		catch (Exception e) {
+			CCLog.error("ProtocolWizard.ReadThread("+getName()+") insert(): " + e.getMessage());
 		}
 	}
 	
@@ -98,31 +82,22 @@ public class ReadThread extends Thread implements Runnable
 		mInputStream = is;
 	}
 	
-	public synchronized int available()
+	public int available()
 	{
-		return packets.size();
+		return decoder.available();
 	}
 
-	public synchronized String read()
+	public String read()
 	{
-		return packets.remove(0);
-		/*
-		byte[] newBuffer;
-		int    newSize;
-
-		for (int i=0; i<dest.length; i++)
-			dest[i] = buffer[i];
-
-		newSize = buffer.length-dest.length;
-		newBuffer = new byte[newSize];
-
-		for (int i=0; i<newSize; i++)
-			newBuffer[i] = buffer[dest.length+i];
-
-		buffer = newBuffer;
+		return decoder.poll();
+	}
 
-		return dest.length;
-		*/
+	/**
+	 * Blocks until the next complete packet has been read.
+	 */
+	public InboundPacket take() throws InterruptedException
+	{
+		return decoder.take();
 	}
 	
 }
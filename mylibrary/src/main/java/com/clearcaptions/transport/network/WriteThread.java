@@ -2,23 +2,42 @@ package com.clearcaptions.transport.network;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 
 import com.clearcaptions.transport.CaptionSessionState;
 import com.clearcaptions.transport.CCLog;
 import com.clearcaptions.transport.protocol.*;
 
+/**
+ * Outbound half of the custom socket transport.
+ *
+ * Packets are queued as immutable chunks; callers must not modify an
+ * array after handing it to write().  Each time the writer wakes it takes
+ * every queued chunk, gathers them into one reusable staging buffer and
+ * issues a single write and flush for the lot.
+ */
 public class WriteThread extends Thread implements Runnable
 {
+	static final int MAX_PENDING_BYTES = 256 * 1024;
+	static final long MAX_BLOCK_MILLIS = 1000;
+	static final int STAGING_SIZE = 8192;
+
 	OutputStream mOutputStream;
 	ProtocolWizard  mWizard;
-	byte[]	queue;
-	byte[]	buffer;
+	ArrayDeque<byte[]>	queue;
+	ArrayDeque<byte[]>	draining;
+	byte[]	staging;
+	int		queuedBytes;
+	int		inFlightBytes;
 	boolean run;
 
 	public WriteThread(ProtocolWizard pw)
 	{
-		queue = null;
-		buffer = null;
+		queue = new ArrayDeque<byte[]>();
+		draining = new ArrayDeque<byte[]>();
+		staging = new byte[STAGING_SIZE];
+		queuedBytes = 0;
+		inFlightBytes = 0;
 		mOutputStream = null;
 		mWizard = pw;
 		run = true;
@@ -29,71 +48,147 @@ public class WriteThread extends Thread implements Runnable
 		mOutputStream = os;
 	}
 
-	public synchronized void write(byte[] data)
+	/**
+	 * Queues a chunk for sending.  If more than MAX_PENDING_BYTES are
+	 * already waiting the caller is held for up to MAX_BLOCK_MILLIS for
+	 * the writer to catch up.
+	 *
+	 * @return false if the chunk was refused because the queue stayed full
+	 */
+	public synchronized boolean write(byte[] data)
 	{
-		byte[] newData;
-		int newSize = data.length;
-		int start = 0;
+		long deadline = System.currentTimeMillis() + MAX_BLOCK_MILLIS;
+		while (run && pendingBytes() > 0 && pendingBytes() + data.length > MAX_PENDING_BYTES)
+		{
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0)
+			{
+				CCLog.error("ProtocolWizard.WriteThread("+getName()+") write(): queue full, " + pendingBytes() + " bytes pending");
+				return false;
+			}
+			try {
+				wait(remaining);
+			}
+			catch (InterruptedException foo) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
 
-		if (queue != null)
-			newSize = queue.length+data.length;
+		queue.addLast(data);
+		queuedBytes += data.length;
+		notifyAll();
+		return true;
+	}
 
-		newData = new byte[newSize];
+	/**
+	 * Moves every queued chunk to the writer's side in one step.
+	 * @return number of bytes taken
+	 */
+	public synchronized int copyQueue()
+	{
+		ArrayDeque<byte[]> taken = queue;
+		queue = draining;
+		draining = taken;
 
-		if (queue != null)
-		{
-			for (int i=0; i<queue.length; i++)
-				newData[i] = queue[i];
-			start = queue.length;
-		}
+		inFlightBytes = queuedBytes;
+		queuedBytes = 0;
+		return inFlightBytes;
+	}
 
-		for (int i=0; i<data.length; i++)
-			newData[start+i] = data[i];
+	/**
+	 * Bytes queued or being written.
+	 */
+	public synchronized int queueSize()
+	{
+		return pendingBytes();
+	}
 
-		queue = newData;
+	/**
+	 * Chunks waiting for the writer.
+	 */
+	public synchronized int queueDepth()
+	{
+		return queue.size();
 	}
 
-	public synchronized void copyQueue()
+	private int pendingBytes()
 	{
-		buffer = queue;
-		queue = null;
+		return queuedBytes + inFlightBytes;
 	}
-	
-	public synchronized int queueSize()
+
+	private synchronized void sent()
 	{
-		if (queue != null)
-			return queue.length;
-		else
-			return 0;
+		inFlightBytes = 0;
+		notifyAll();
 	}
-	
-	public void send() throws IOException
+
+	private synchronized void clear()
 	{
+		queue.clear();
+		draining.clear();
+		queuedBytes = 0;
+		inFlightBytes = 0;
+		notifyAll();
+	}
+
+	public void send(int length) throws IOException
+	{
+		if (staging.length < length)
+			staging = new byte[Math.max(length, staging.length * 2)];
+
+		int offset = 0;
+		byte[] chunk;
+		while ((chunk = draining.pollFirst()) != null)
+		{
+			System.arraycopy(chunk, 0, staging, offset, chunk.length);
+			offset += chunk.length;
+		}
+
 		try {
-			mOutputStream.write(buffer);
-			mOutputStream.flush();			
-			CCLog.trace("ProtocolWizard.send("+getName()+") ==> [" + new String(buffer).length() + "]");
-			buffer = null;
+			mOutputStream.write(staging, 0, offset);
+			mOutputStream.flush();
+			CCLog.trace("ProtocolWizard.send("+getName()+") ==> [" + offset + "]");
+			sent();
 		}
 		catch (IOException esp) {
-			queue = null;
-			buffer = null;
+			clear();
 			mOutputStream = null;
 			CCLog.trace("ProtocolWizard.send("+getName()+")send(): exception...");
 			throw esp;
 		}
 	}
-	
+
+	/**
+	 * Parks the writer until something is queued or quit() is called.
+	 * @return false if woken by quit() with nothing left to send
+	 */
+	synchronized boolean awaitQueue() throws InterruptedException
+	{
+		while (queue.isEmpty() && run)
+			wait();
+		return !queue.isEmpty();
+	}
+
 	public void run()
 	{
 		while (!done())
 		{
-			copyQueue();
-			if (mOutputStream != null && buffer != null)
+			try {
+				if (!awaitQueue())
+					break;
+			}
+			catch (InterruptedException foo) {
+				CCLog.trace("ProtocolWizard.WriteThread("+getName()+")run(): wait interrupted: "+foo);
+				Thread.currentThread().interrupt();
+				break;
+			}
+			int length = copyQueue();
+			if (mOutputStream != null && length > 0)
 			{
 				try {
-					send();
-				} 
+					send(length);
+				}
 				catch (IOException e) {
 					CCLog.error("ProtocolWizard.WriteThread("+getName()+") run() : " + e.getMessage());
 					mWizard.handleState(CaptionSessionState.STATE_CONNECTION_LOST, e.getMessage());
@@ -107,7 +202,7 @@ public class WriteThread extends Thread implements Runnable
 					try {
 						if ( mOutputStream != null )
 							mOutputStream.flush();
-					} 
+					}
 					catch (Exception e) {
 						CCLog.trace("ProtocolWizard.WriteThread("+getName()+")run(): flushing: "+e.getMessage());
 					}
@@ -115,25 +210,21 @@ public class WriteThread extends Thread implements Runnable
 					quit();
 					return;
 				}
-				
-				try {
-					sleep(10); // don't hog the cpu
-				} 
-				catch (InterruptedException foo) {
-					CCLog.trace("ProtocolWizard.WriteThread("+getName()+")run(): sleep interrupted: "+foo);
-				}
+				draining.clear();
+				sent();
 			}
 		}
 		CCLog.trace("ProtocolWizard.WriteThread("+getName()+")run():  exit");
-		
+
 	}
 
 	public boolean done(){
 		return !run;
 	}
-	
-	public void quit(){
+
+	public synchronized void quit(){
 		run = false;
+		notifyAll();
 	}
-	
+
 }
@@ -0,0 +1,137 @@
+package com.clearcaptions.transport.protocol;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.clearcaptions.transport.CaptionSessionState;
+import com.clearcaptions.transport.CCLog;
+
+/**
+ * Coalesces RECEIVEDTEXT deltas arriving within a window into one
+ * callback.
+ *
+ * The first delta of a batch opens the window; deltas are appended into
+ * one reused buffer until the window closes, or until the session
+ * delivers any other callback, which flushes first so that captions and
+ * state changes keep their order.  Windows of every session are timed by
+ * one shared thread.
+ */
+class CaptionBatcher
+{
+	static final String LINE_MARKER = ":--:--:";
+
+	private static final ScheduledExecutorService timer =
+			Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "CaptionBatcher");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+	private final ProtocolWizard wizard;
+	private final long windowMillis;
+	private final StringBuilder text = new StringBuilder(256);
+	private final Runnable flushTask;
+	private int deltas;
+	private int lineBreaks;
+	private long firstArrivalNanos;
+	private long lastArrivalNanos;
+	private boolean scheduled;
+
+	CaptionBatcher(ProtocolWizard wizard, long windowMillis)
+	{
+		this.wizard = wizard;
+		this.windowMillis = windowMillis;
+		flushTask = new Runnable() {
+			public void run() {
+				windowClosed();
+			}
+		};
+	}
+
+	long windowMillis()
+	{
+		return windowMillis;
+	}
+
+	/**
+	 * Appends packet from offset start to the end, replacing each line
+	 * marker with newline.
+	 */
+	synchronized void add(String packet, int start, char newline, long arrivalNanos)
+	{
+		int end = packet.length();
+		int from = start;
+		int marker;
+		while ((marker = packet.indexOf(LINE_MARKER, from)) >= 0) {
+			text.append(packet, from, marker).append(newline);
+			lineBreaks++;
+			from = marker + LINE_MARKER.length();
+		}
+		text.append(packet, from, end);
+
+		if (deltas++ == 0)
+			firstArrivalNanos = arrivalNanos;
+		lastArrivalNanos = arrivalNanos;
+
+		if (!scheduled) {
+			scheduled = true;
+			timer.schedule(flushTask, windowMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Delivers whatever is pending now.  Holding the lock while delivering
+	 * keeps a window flush from overtaking the caller's next callback.
+	 */
+	synchronized void flush()
+	{
+		if (deltas == 0)
+			return;
+
+		CaptionEvent event = new CaptionEvent(text.toString(), deltas, lineBreaks,
+				firstArrivalNanos, lastArrivalNanos);
+		text.setLength(0);
+		deltas = 0;
+		lineBreaks = 0;
+
+		ProtocolInterface callback = wizard.callback();
+		if (callback == null)
+			return;
+		try {
+			if (callback instanceof CaptionEventInterface)
+				((CaptionEventInterface) callback).processCaptions(event);
+			else
+				callback.processState(CaptionSessionState.STATE_DATA, event.text);
+		}
+		catch (Exception e) {
+			CCLog.error("CaptionBatcher.flush(): " + e.toString());
+		}
+	}
+
+	private void windowClosed()
+	{
+		synchronized (this) {
+			scheduled = false;
+		}
+		Executor executor = wizard.executor();
+		if (executor == null) {
+			flush();
+			return;
+		}
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					flush();
+				}
+			});
+		}
+		catch (Exception e) {
+			flush();
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package com.clearcaptions.transport.protocol;
+
+/**
+ * One or more caption deltas delivered together.
+ *
+ * text holds the deltas in arrival order with the ":--:--:" line markers
+ * already turned into line breaks, exactly as the separate STATE_DATA
+ * callbacks would have carried them one after another.
+ */
+public final class CaptionEvent
+{
+	public final String text;
+	public final int deltas;
+	public final int lineBreaks;
+	public final long firstArrivalNanos;
+	public final long lastArrivalNanos;
+
+	CaptionEvent(String text, int deltas, int lineBreaks, long firstArrivalNanos, long lastArrivalNanos)
+	{
+		this.text = text;
+		this.deltas = deltas;
+		this.lineBreaks = lineBreaks;
+		this.firstArrivalNanos = firstArrivalNanos;
+		this.lastArrivalNanos = lastArrivalNanos;
+	}
+
+	/**
+	 * @return time between the first and last delta in this event
+	 */
+	public long spanMillis()
+	{
+		return (lastArrivalNanos - firstArrivalNanos) / 1000000;
+	}
+
+	public String toString()
+	{
+		return "CaptionEvent[deltas=" + deltas + " lineBreaks=" + lineBreaks
+				+ " span=" + spanMillis() + "ms text=" + text + "]";
+	}
+}
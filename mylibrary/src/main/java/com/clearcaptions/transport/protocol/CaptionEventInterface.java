@@ -0,0 +1,14 @@
+package com.clearcaptions.transport.protocol;
+
+/**
+ * Callback for sessions with caption batching on.  Batched captions are
+ * delivered here instead of as STATE_DATA through processState().
+ */
+public interface CaptionEventInterface extends ProtocolInterface {
+
+	/**
+	 * sends the caption deltas received during one batch window
+	 */
+	public void processCaptions(CaptionEvent event);
+
+}
@@ -0,0 +1,171 @@
+package com.clearcaptions.transport.protocol;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.clearcaptions.transport.CCLog;
+
+/**
+ * Hosts any number of caption sessions in one process.
+ *
+ * Every hosted ProtocolWizard keeps its own call state.  Its WebSocket
+ * is opened from CaptionClient's shared OkHttpClient, so connections and
+ * dispatcher threads are pooled across sessions, but OkHttp reads each
+ * open WebSocket on a thread of its own: a hosted call holds one blocked
+ * thread for its length.  Keep-alive timers and reconnects run on the
+ * manager's pool and hold no thread while they wait.  The socket
+ * transport, where used, blocks three pooled threads per call on its
+ * read, write and dispatch loops.  Sessions are indexed by the session ID
+ * the server hands out and are re-indexed whenever that ID changes.
+ */
+public class CaptionSessionManager
+{
+	private static volatile CaptionSessionManager INSTANCE;
+
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+	private final Set<ProtocolWizard> sessions;
+	private final ConcurrentHashMap<String, ProtocolWizard> bySessionID;
+
+	public CaptionSessionManager()
+	{
+		this(newSessionExecutor(), true);
+	}
+
+	/**
+	 * @param executor pool the hosted sessions run on; a socket session
+	 *        parks three tasks on blocking I/O for the length of its call,
+	 *        so it must not be bounded below three times the number of
+	 *        concurrent socket sessions
+	 */
+	public CaptionSessionManager(ExecutorService executor)
+	{
+		this(executor, false);
+	}
+
+	private CaptionSessionManager(ExecutorService executor, boolean ownsExecutor)
+	{
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		sessions = Collections.newSetFromMap(new ConcurrentHashMap<ProtocolWizard, Boolean>());
+		bySessionID = new ConcurrentHashMap<String, ProtocolWizard>();
+	}
+
+	public static CaptionSessionManager getInstance()
+	{
+		CaptionSessionManager instance = INSTANCE;
+		if (instance == null)
+		{
+			synchronized (CaptionSessionManager.class) {
+				instance = INSTANCE;
+				if (instance == null)
+				{
+					INSTANCE = instance = new CaptionSessionManager();
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Adopts a session: it will run on this manager's pool and can be found
+	 * by its session ID.
+	 */
+	public <T extends ProtocolWizard> T host(T session)
+	{
+		session.executor(executor);
+		session.manager(this);
+		sessions.add(session);
+		index(session, session.session());
+		CCLog.trace("CaptionSessionManager.host(): " + sessions.size() + " sessions");
+		return session;
+	}
+
+	/**
+	 * Stops tracking a session.  The session itself is left as is.
+	 */
+	public void release(ProtocolWizard session)
+	{
+		sessions.remove(session);
+		String id = session.session();
+		if (id != null)
+			bySessionID.remove(id, session);
+		session.manager(null);
+	}
+
+	/**
+	 * @return the hosted session currently using the given server
+	 *         session ID, or null
+	 */
+	public ProtocolWizard lookup(String sessionID)
+	{
+		if (sessionID == null)
+			return null;
+		return bySessionID.get(sessionID);
+	}
+
+	public int size()
+	{
+		return sessions.size();
+	}
+
+	public Collection<ProtocolWizard> sessions()
+	{
+		return Collections.unmodifiableSet(sessions);
+	}
+
+	public ExecutorService executor()
+	{
+		return executor;
+	}
+
+	/**
+	 * Ends every hosted call and, if the pool was created here, stops it.
+	 */
+	public void shutdown()
+	{
+		for (ProtocolWizard session : sessions) {
+			try {
+				session.endCall();
+			}
+			catch (Exception e) {
+				CCLog.error("CaptionSessionManager.shutdown(): " + e.getMessage());
+			}
+			release(session);
+		}
+		if (ownsExecutor)
+			executor.shutdownNow();
+	}
+
+	void sessionChanged(ProtocolWizard session, String oldID, String newID)
+	{
+		if (oldID != null && oldID.length() > 0)
+			bySessionID.remove(oldID, session);
+		index(session, newID);
+	}
+
+	private void index(ProtocolWizard session, String sessionID)
+	{
+		if (sessionID != null && sessionID.length() > 0)
+			bySessionID.put(sessionID, session);
+	}
+
+	static ExecutorService newSessionExecutor()
+	{
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "CaptionSession-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+}
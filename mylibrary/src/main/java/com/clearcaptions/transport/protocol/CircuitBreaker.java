@@ -0,0 +1,91 @@
+package com.clearcaptions.transport.protocol;
+
+/**
+ * Failure counter guarding reconnects to one host.
+ *
+ * After failureThreshold consecutive failures the breaker opens and
+ * refuses attempts for openMillis.  It then lets a single probe through;
+ * the probe's success closes the breaker, its failure opens it again.
+ */
+public class CircuitBreaker
+{
+	private final int failureThreshold;
+	private final long openMillis;
+
+	private int failures;
+	private long openedAt;
+	private long probeStartedAt;
+	private boolean probing;
+
+	public CircuitBreaker(int failureThreshold, long openMillis)
+	{
+		this.failureThreshold = failureThreshold;
+		this.openMillis = openMillis;
+	}
+
+	public synchronized boolean isOpen()
+	{
+		return failures >= failureThreshold;
+	}
+
+	/**
+	 * @return true if an attempt may be made now; while open this hands out
+	 *         at most one probe per openMillis
+	 */
+	public synchronized boolean allowRequest()
+	{
+		if (!isOpen())
+			return true;
+
+		long now = now();
+		if (now - openedAt < openMillis)
+			return false;
+		if (probing && now - probeStartedAt < openMillis)
+			return false;
+
+		probing = true;
+		probeStartedAt = now;
+		return true;
+	}
+
+	/**
+	 * @return milliseconds until allowRequest() may next succeed, 0 if closed
+	 */
+	public synchronized long retryAfterMillis()
+	{
+		if (!isOpen())
+			return 0;
+
+		long now = now();
+		long until = probing ? probeStartedAt + openMillis : openedAt + openMillis;
+		return Math.max(0, until - now);
+	}
+
+	public synchronized void recordSuccess()
+	{
+		failures = 0;
+		probing = false;
+	}
+
+	public synchronized void recordFailure()
+	{
+		failures++;
+		if (failures >= failureThreshold) {
+			openedAt = now();
+			probing = false;
+		}
+	}
+
+	/**
+	 * @return the clock openMillis is measured on
+	 */
+	long now()
+	{
+		return System.currentTimeMillis();
+	}
+
+	public synchronized String toString()
+	{
+		return "CircuitBreaker[" + (isOpen() ? "open" : "closed") + " failures=" + failures + "]";
+	}
+}
@@ -0,0 +1,324 @@
+package com.clearcaptions.transport.protocol;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import com.clearcaptions.transport.CCLog;
+
+/**
+ * Process wide hashed wheel timer for coarse, frequently re-armed
+ * deadlines such as keep-alive timeouts.
+ *
+ * Each Timeout is created once and linked into a wheel slot intrusively.
+ * Re-arming it is a volatile write of its deadline: the entry stays where
+ * it is and is moved to the right slot only when the wheel next passes it.
+ * The wheel expires a timeout by swapping its deadline for 0, so an arm
+ * that races with expiry is either seen by the swap or re-links it.
+ * Expiry is therefore accurate to one tick, re-arming never allocates,
+ * and one thread serves every session.  The thread parks while nothing is
+ * armed.
+ */
+public final class HashedWheelTimer
+{
+	static final long DEFAULT_TICK_MILLIS = 100;
+	static final int DEFAULT_WHEEL_SIZE = 128;
+
+	private static volatile HashedWheelTimer INSTANCE;
+
+	private final long tickMillis;
+	private final Timeout[] wheel;
+	private final int mask;
+	private final long startTime;
+	private final Object lock = new Object();
+	private long tick;
+	private int linked;
+	private Thread worker;
+	private boolean stopped;
+
+	public HashedWheelTimer(long tickMillis, int wheelSize)
+	{
+		this.tickMillis = tickMillis;
+		int size = Integer.highestOneBit(Math.max(wheelSize, 2) * 2 - 1);
+		wheel = new Timeout[size];
+		mask = size - 1;
+		startTime = now();
+		tick = 0;
+		linked = 0;
+	}
+
+	/**
+	 * @return the timer shared by every session in the process
+	 */
+	public static HashedWheelTimer shared()
+	{
+		HashedWheelTimer instance = INSTANCE;
+		if (instance == null)
+		{
+			synchronized (HashedWheelTimer.class) {
+				instance = INSTANCE;
+				if (instance == null)
+				{
+					INSTANCE = instance = new HashedWheelTimer(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Creates an unarmed timeout.  The task runs on the timer thread unless
+	 * an executor is given, so it should be short.
+	 */
+	public Timeout newTimeout(Runnable task, Executor executor)
+	{
+		return new Timeout(this, task, executor);
+	}
+
+	public Timeout newTimeout(Runnable task)
+	{
+		return newTimeout(task, null);
+	}
+
+	/**
+	 * @return number of timeouts currently linked into the wheel
+	 */
+	public int size()
+	{
+		synchronized (lock) {
+			return linked;
+		}
+	}
+
+	/**
+	 * Stops the timer thread.  Timeouts still armed are unlinked without
+	 * running, and arming any timeout of this timer afterwards throws
+	 * IllegalStateException.  The shared timer cannot be stopped.
+	 *
+	 * @return the timeouts that were armed
+	 */
+	public Set<Timeout> stop()
+	{
+		if (this == INSTANCE)
+			throw new IllegalStateException("the shared timer cannot be stopped");
+
+		Set<Timeout> pending = new HashSet<Timeout>();
+		Thread w;
+		synchronized (lock) {
+			stopped = true;
+			for (int i = 0; i < wheel.length; i++) {
+				Timeout t = wheel[i];
+				while (t != null) {
+					Timeout next = t.next;
+					unlink(t);
+					if (t.isArmed())
+						pending.add(t);
+					t = next;
+				}
+			}
+			linked = 0;
+			w = worker;
+			worker = null;
+		}
+
+		if (w != null && w != Thread.currentThread()) {
+			w.interrupt();
+			try {
+				w.join();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return pending;
+	}
+
+	static long now()
+	{
+		return System.nanoTime() / 1000000;
+	}
+
+	private void link(Timeout t)
+	{
+		synchronized (lock) {
+			if (stopped)
+				throw new IllegalStateException("timer stopped");
+			if (t.linked)
+				return;
+			insert(t, t.deadline);
+			linked++;
+			if (worker == null) {
+				worker = new Thread(new Runnable() {
+					public void run() {
+						work();
+					}
+				}, "HashedWheelTimer");
+				worker.setDaemon(true);
+				worker.start();
+			}
+			else if (linked == 1) {
+				lock.notifyAll();
+			}
+		}
+	}
+
+	// caller holds lock
+	private void insert(Timeout t, long deadline)
+	{
+		long ticks = (deadline - startTime + tickMillis - 1) / tickMillis;
+		if (ticks <= tick)
+			ticks = tick + 1;
+		int slot = (int) (ticks & mask);
+
+		t.prev = null;
+		t.next = wheel[slot];
+		if (t.next != null)
+			t.next.prev = t;
+		wheel[slot] = t;
+		t.slot = slot;
+		t.linked = true;
+	}
+
+	// caller holds lock
+	private void unlink(Timeout t)
+	{
+		if (t.prev != null)
+			t.prev.next = t.next;
+		else
+			wheel[t.slot] = t.next;
+		if (t.next != null)
+			t.next.prev = t.prev;
+		t.next = null;
+		t.prev = null;
+		t.linked = false;
+	}
+
+	private void work()
+	{
+		while (true) {
+			Timeout expired = null;
+			synchronized (lock) {
+				try {
+					while (linked == 0) {
+						lock.wait();
+						// skip the ticks that passed while idle
+						tick = Math.max(tick, (now() - startTime) / tickMillis);
+					}
+
+					long wake = startTime + (tick + 1) * tickMillis;
+					long sleep;
+					while ((sleep = wake - now()) > 0)
+						lock.wait(sleep);
+				}
+				catch (InterruptedException e) {
+					CCLog.trace("HashedWheelTimer: interrupted, exiting");
+					if (worker == Thread.currentThread())
+						worker = null;
+					return;
+				}
+
+				tick++;
+				long now = now();
+				Timeout t = wheel[(int) (tick & mask)];
+				while (t != null) {
+					Timeout next = t.next;
+					unlink(t);
+					long deadline = t.deadline;
+					if (deadline == 0) {
+						linked--;
+					}
+					else if (deadline > now) {
+						insert(t, deadline);
+					}
+					else if (Timeout.DEADLINE.compareAndSet(t, deadline, 0)) {
+						linked--;
+						t.nextExpired = expired;
+						expired = t;
+					}
+					else {
+						// re-armed or cancelled since it was read
+						deadline = t.deadline;
+						if (deadline == 0)
+							linked--;
+						else
+							insert(t, deadline);
+					}
+					t = next;
+				}
+			}
+
+			while (expired != null) {
+				Timeout t = expired;
+				expired = t.nextExpired;
+				t.nextExpired = null;
+				t.expire();
+			}
+		}
+	}
+
+	/**
+	 * A re-armable deadline owned by one session.
+	 */
+	public static final class Timeout
+	{
+		static final AtomicLongFieldUpdater<Timeout> DEADLINE =
+				AtomicLongFieldUpdater.newUpdater(Timeout.class, "deadline");
+
+		private final HashedWheelTimer timer;
+		private final Runnable task;
+		private final Executor executor;
+
+		volatile long deadline;
+		volatile boolean linked;
+		int slot;
+		Timeout next;
+		Timeout prev;
+		Timeout nextExpired;
+
+		Timeout(HashedWheelTimer timer, Runnable task, Executor executor)
+		{
+			this.timer = timer;
+			this.task = task;
+			this.executor = executor;
+		}
+
+		/**
+		 * Sets the deadline to delayMillis from now, replacing any earlier
+		 * one.  Only the first arm after expiry or cancel touches the wheel.
+		 * The deadline is written before linked is read, and the wheel
+		 * clears linked before it swaps the deadline out, so an arm racing
+		 * with expiry always ends up linked.
+		 */
+		public void arm(long delayMillis)
+		{
+			long d = now() + Math.max(delayMillis, 1);
+			deadline = d;
+			if (!linked)
+				timer.link(this);
+		}
+
+		public void cancel()
+		{
+			deadline = 0;
+		}
+
+		public boolean isArmed()
+		{
+			return deadline != 0;
+		}
+
+		void expire()
+		{
+			try {
+				if (executor != null)
+					executor.execute(task);
+				else
+					task.run();
+			}
+			catch (Throwable e) {
+				CCLog.error("HashedWheelTimer: task failed: " + e);
+			}
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package com.clearcaptions.transport.protocol;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free log2 histogram of latencies in microseconds.
+ *
+ * Bucket n counts samples in [2^(n-1), 2^n) us, bucket 0 counts samples
+ * under 1 us.  Recording is a couple of atomic increments, so it is cheap
+ * enough to sit on the per-packet path.
+ */
+public class LatencyHistogram
+{
+	static final int BUCKETS = 32;
+
+	private final String name;
+	private final AtomicLongArray buckets;
+	private final AtomicLong count;
+	private final AtomicLong totalMicros;
+	private final AtomicLong maxMicros;
+
+	public LatencyHistogram(String name)
+	{
+		this.name = name;
+		buckets = new AtomicLongArray(BUCKETS);
+		count = new AtomicLong();
+		totalMicros = new AtomicLong();
+		maxMicros = new AtomicLong();
+	}
+
+	public void record(long nanos)
+	{
+		long micros = nanos / 1000;
+		if (micros < 0)
+			micros = 0;
+
+		int bucket = 64 - Long.numberOfLeadingZeros(micros);
+		if (bucket >= BUCKETS)
+			bucket = BUCKETS - 1;
+
+		buckets.incrementAndGet(bucket);
+		count.incrementAndGet();
+		totalMicros.addAndGet(micros);
+
+		long max = maxMicros.get();
+		while (micros > max && !maxMicros.compareAndSet(max, micros))
+			max = maxMicros.get();
+	}
+
+	public long count()
+	{
+		return count.get();
+	}
+
+	public long meanMicros()
+	{
+		long n = count.get();
+		return n == 0 ? 0 : totalMicros.get() / n;
+	}
+
+	public long maxMicros()
+	{
+		return maxMicros.get();
+	}
+
+	/**
+	 * @return upper bound, in microseconds, of the bucket holding the
+	 *         given percentile (0-100)
+	 */
+	public long percentileMicros(double percentile)
+	{
+		long n = count.get();
+		if (n == 0)
+			return 0;
+
+		long target = (long) Math.ceil(n * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= target)
+				return 1L << i;
+		}
+		return maxMicros.get();
+	}
+
+	public void reset()
+	{
+		for (int i = 0; i < BUCKETS; i++)
+			buckets.set(i, 0);
+		count.set(0);
+		totalMicros.set(0);
+		maxMicros.set(0);
+	}
+
+	public String toString()
+	{
+		return name + " count=" + count() + " mean=" + meanMicros() + "us"
+				+ " p50<=" + percentileMicros(50) + "us"
+				+ " p99<=" + percentileMicros(99) + "us"
+				+ " max=" + maxMicros() + "us";
+	}
+}
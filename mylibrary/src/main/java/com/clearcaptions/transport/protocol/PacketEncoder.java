@@ -0,0 +1,155 @@
+package com.clearcaptions.transport.protocol;
+
+/**
+ * Builds NUL terminated i711 packets directly as bytes.
+ *
+ * Method headers and "||key=" separators are encoded once, as static
+ * constants; values are written character by character into a buffer that
+ * is reused per thread, so building a packet costs a single exact-size
+ * array for the result.  Characters are narrowed to their low byte and a
+ * null value is written as "null", which is what the String concatenation
+ * this replaces put on the wire.
+ */
+final class PacketEncoder
+{
+	/* method headers */
+	static final byte[] LOG_EVENT = ascii("myMethod=logEvent||myID=");
+	static final byte[] STATUS_UPDATE = ascii("myMethod=statusUpdate||myID=");
+	static final byte[] POLL_DATA = ascii("myMethod=PollData||myID=");
+	static final byte[] CALL_ACTIVE = ascii("myMethod=CallActive");
+	static final byte[] CALL_END = ascii("myMethod=CallEnd");
+	static final byte[] SIP_ACTIVE = ascii("myMethod=SIPActive");
+	static final byte[] SIP_RESTART = ascii("myMethod=SIPRestart");
+	static final byte[] SIP_FAILED = ascii("myMethod=SIPFailed");
+	static final byte[] EXCHANGE_DATA = ascii("myMethod=ExchangeData||myID=");
+	static final byte[] REGISTER = ascii("myMethod=Register||userAgent=");
+	static final byte[] ACCEPT_INBOUND_CALL = ascii("myMethod=AcceptInboundCall||sessionID=");
+	static final byte[] START_RELAY = ascii("myMethod=StartRelay||myID=");
+	static final byte[] TEST_CALL = ascii("myMethod=TestCall||myID=");
+	static final byte[] END_TEST_CALL = ascii("myMethod=EndTestCall");
+	static final byte[] KEEP_ALIVE = ascii("myMethod=KeepAlive||myID=");
+	static final byte[] DECLINE_INBOUND_CALL = ascii("myMethod=DeclineInboundCall||sessionID=");
+	static final byte[] STOP_RELAY = ascii("myMethod=StopRelay||myID=");
+	static final byte[] ANSWER_CALL = ascii("myMethod=answerCall||fromBook=");
+	static final byte[] IGNORE_CALL = ascii("myMethod=ignoreCall||fromBook=");
+	static final byte[] UPDATE_CALL = ascii("myMethod=UpdateCall||myID=");
+	static final byte[] START_CAPTIONS = ascii("myMethod=StartCaptions||myID=");
+
+	/* field separators */
+	static final byte[] MY_ID = ascii("||myID=");
+	static final byte[] USER_AGENT = ascii("||userAgent=");
+	static final byte[] CALL_TYPE = ascii("||callType=");
+	static final byte[] MY_UID = ascii("||myUID=");
+	static final byte[] EMPTY_UID_DEVICE_ID = ascii("||myUID=||deviceID=");
+	static final byte[] DEVICE_ID = ascii("||deviceID=");
+	static final byte[] DEVICE_TYPE = ascii("||deviceType=");
+	static final byte[] DEVICE_TOKEN = ascii("||deviceToken=");
+	static final byte[] MY_IP = ascii("||myIP=");
+	static final byte[] DEVICE_CAPS = ascii("||deviceCaps=");
+	static final byte[] TRACE = ascii("||trace=");
+	static final byte[] STATUS = ascii("||status=");
+	static final byte[] MESSAGE = ascii("||message=");
+	static final byte[] FIRST_POLL = ascii("||firstPoll=1");
+	static final byte[] FIRST_OP_CONTACT = ascii("||firstOpContact=1");
+	static final byte[] NUMBER = ascii("||number=");
+	static final byte[] CALLBACK_NUMBER = ascii("||callbacknumber=");
+	static final byte[] INSTRUCTIONS = ascii("||instructions=");
+	static final byte[] PREFERRED_LANGUAGE = ascii("||preferredLanguage=English");
+	static final byte[] MY_TEXT = ascii("||myText=");
+	static final byte[] ENTERPRISE = ascii("||useEncryption=0||enterprise=");
+	static final byte[] CALL_GROUP = ascii("||callGroup=");
+	static final byte[] SEPARATOR = ascii("||");
+	static final byte[] CALL_GROUP_TRAILING = ascii("callGroup=");
+	static final byte[] INBOUND_CALL_TYPE = ascii("||callType=125");
+
+	private static final int INITIAL_SIZE = 512;
+
+	private static final ThreadLocal<PacketEncoder> POOL = new ThreadLocal<PacketEncoder>() {
+		protected PacketEncoder initialValue() {
+			return new PacketEncoder();
+		}
+	};
+
+	private byte[] buffer;
+	private int length;
+
+	private PacketEncoder()
+	{
+		buffer = new byte[INITIAL_SIZE];
+		length = 0;
+	}
+
+	/**
+	 * @return this thread's encoder, emptied and ready for a new packet
+	 */
+	static PacketEncoder begin(byte[] header)
+	{
+		PacketEncoder encoder = POOL.get();
+		encoder.length = 0;
+		return encoder.raw(header);
+	}
+
+	static byte[] ascii(String s)
+	{
+		if (s == null)
+			s = "null";
+		byte[] b = new byte[s.length()];
+		for (int i = 0; i < b.length; i++)
+			b[i] = (byte) s.charAt(i);
+		return b;
+	}
+
+	PacketEncoder raw(byte[] bytes)
+	{
+		ensure(bytes.length);
+		System.arraycopy(bytes, 0, buffer, length, bytes.length);
+		length += bytes.length;
+		return this;
+	}
+
+	PacketEncoder value(String s)
+	{
+		if (s == null)
+			s = "null";
+		int n = s.length();
+		ensure(n);
+		for (int i = 0; i < n; i++)
+			buffer[length++] = (byte) s.charAt(i);
+		return this;
+	}
+
+	PacketEncoder field(byte[] key, String value)
+	{
+		return raw(key).value(value);
+	}
+
+	PacketEncoder field(byte[] key, byte[] value)
+	{
+		return raw(key).raw(value);
+	}
+
+	/**
+	 * @return a new array holding the packet followed by its NUL terminator
+	 */
+	byte[] toPacket()
+	{
+		byte[] packet = new byte[length + 1];
+		System.arraycopy(buffer, 0, packet, 0, length);
+		packet[length] = 0;
+		return packet;
+	}
+
+	public String toString()
+	{
+		return new String(buffer, 0, length);
+	}
+
+	private void ensure(int extra)
+	{
+		if (length + extra > buffer.length) {
+			byte[] grown = new byte[Math.max(buffer.length * 2, length + extra)];
+			System.arraycopy(buffer, 0, grown, 0, length);
+			buffer = grown;
+		}
+	}
+}
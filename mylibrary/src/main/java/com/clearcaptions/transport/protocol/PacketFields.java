@@ -0,0 +1,328 @@
+package com.clearcaptions.transport.protocol;
+
+/**
+ * Reusable key/value view over an i711 packet ("key=value||key=value...").
+ *
+ * parse() makes one pass over the packet, recording where each field's key
+ * and value start and end and resolving the key, case-insensitively, to a
+ * small integer id through a static hash table.  Lookups afterwards are
+ * array reads, and a String is only created for values that are actually
+ * asked for.
+ */
+final class PacketFields
+{
+	static final int UNKNOWN = -1;
+
+	/* field keys */
+	static final int MYMETHOD = 0;
+	static final int ERRCODE = 1;
+	static final int ERRMSG = 2;
+	static final int ERRMESSAGE = 3;
+	static final int POLLDATA = 4;
+	static final int EXCHANGEDATA = 5;
+	static final int STATE = 6;
+	static final int RECEIVEDTEXT = 7;
+	static final int RESUME = 8;
+	static final int REGRETURN = 9;
+	static final int POLLING = 10;
+	static final int MYID = 11;
+	static final int LOG = 12;
+	static final int RETRYINTERVAL = 13;
+	static final int RELAYSTART = 14;
+	static final int SESSIONID = 15;
+	static final int OPID = 16;
+	static final int TYPE = 17;
+	static final int MESSAGE = 18;
+	static final int OP = 19;
+	static final int OPNUMBER = 20;
+	static final int OPNUMBER2 = 21;
+	static final int SIPREMOTE = 22;
+	static final int SIPLOCAL = 23;
+	static final int TEXT = 24;
+	static final int VOLUME = 25;
+	static final int STOPRELAY = 26;
+	static final int SIPDIAL = 27;
+
+	private static final String[] KEYS = {
+		"MYMETHOD", "ERRCODE", "ERRMSG", "ERRMESSAGE", "POLLDATA", "EXCHANGEDATA",
+		"STATE", "RECEIVEDTEXT", "RESUME", "REGRETURN", "POLLING", "MYID", "LOG",
+		"RETRYINTERVAL", "RELAYSTART", "SESSIONID", "OPID", "TYPE", "MESSAGE", "OP",
+		"OPNUMBER", "OPNUMBER2", "SIPREMOTE", "SIPLOCAL", "TEXT", "VOLUME",
+		"STOPRELAY", "SIPDIAL"
+	};
+
+	/* myMethod values */
+	static final int KEEPALIVE = 0;
+	static final int SWITCHOP = 1;
+	static final int STATUSUPDATE = 2;
+	static final int STATECHANGE = 3;
+	static final int SENDTEXT = 4;
+	static final int SENDCOMMAND = 5;
+	static final int STARTSIPSESSION = 6;
+	static final int RESTARTSIPSESSION = 7;
+	static final int STOPSIPSESSION = 8;
+	static final int TESTCALL = 9;
+	static final int ENDTESTCALL = 10;
+
+	private static final String[] METHODS = {
+		"KEEPALIVE", "SWITCHOP", "STATUSUPDATE", "STATECHANGE", "SENDTEXT",
+		"SENDCOMMAND", "STARTSIPSESSION", "RESTARTSIPSESSION", "STOPSIPSESSION",
+		"TESTCALL", "ENDTESTCALL"
+	};
+
+	private static final NameTable KEY_TABLE = new NameTable(KEYS);
+	private static final NameTable METHOD_TABLE = new NameTable(METHODS);
+
+	private String packet;
+	private int method;
+	private int fieldCount;
+	private int[] keyStart;
+	private int[] valueStart;
+	private int[] valueEnd;
+	// index into the field arrays for each known key, -1 if absent
+	private final int[] byKey;
+
+	PacketFields()
+	{
+		keyStart = new int[16];
+		valueStart = new int[16];
+		valueEnd = new int[16];
+		byKey = new int[KEYS.length];
+		reset(null);
+	}
+
+	void parse(String packet)
+	{
+		reset(packet);
+
+		int length = packet.length();
+		int pos = 0;
+		while (pos < length) {
+			int start = pos;
+			int hash = 0;
+			int eq = -1;
+			int end = length;
+
+			for (int i = pos; i < length; i++) {
+				char c = packet.charAt(i);
+				if (eq < 0) {
+					if (c == '=') {
+						eq = i;
+						continue;
+					}
+					hash = 31 * hash + upper(c);
+				}
+				if (c == '|' && i + 1 < length && packet.charAt(i + 1) == '|') {
+					end = i;
+					break;
+				}
+			}
+
+			if (eq >= 0) {
+				add(start, eq, end, hash);
+			}
+			pos = end + 2;
+		}
+
+		int m = byKey[MYMETHOD];
+		if (m >= 0) {
+			int vs = valueStart[m];
+			int ve = valueEnd[m];
+			method = METHOD_TABLE.lookup(packet, vs, ve, hash(packet, vs, ve));
+		}
+	}
+
+	String packet()
+	{
+		return packet;
+	}
+
+	/**
+	 * @return id of the myMethod value, UNKNOWN if absent or unrecognized
+	 */
+	int method()
+	{
+		return method;
+	}
+
+	boolean has(int key)
+	{
+		return byKey[key] >= 0;
+	}
+
+	/**
+	 * @return character offset of the key in the packet, -1 if absent
+	 */
+	int position(int key)
+	{
+		int f = byKey[key];
+		return f >= 0 ? keyStart[f] : -1;
+	}
+
+	/**
+	 * @return value up to the next "||", or null if the key is absent
+	 */
+	String value(int key)
+	{
+		int f = byKey[key];
+		return f >= 0 ? packet.substring(valueStart[f], valueEnd[f]) : null;
+	}
+
+	/**
+	 * @return value and everything after it to the end of the packet
+	 */
+	String rest(int key)
+	{
+		int f = byKey[key];
+		return f >= 0 ? packet.substring(valueStart[f]) : null;
+	}
+
+	/**
+	 * @return character offset of the key's value, -1 if absent
+	 */
+	int valuePosition(int key)
+	{
+		int f = byKey[key];
+		return f >= 0 ? valueStart[f] : -1;
+	}
+
+	/**
+	 * @return "key=value" exactly as it appeared in the packet
+	 */
+	String field(int key)
+	{
+		int f = byKey[key];
+		return f >= 0 ? packet.substring(keyStart[f], valueEnd[f]) : null;
+	}
+
+	boolean valueEquals(int key, String upperCase)
+	{
+		int f = byKey[key];
+		if (f < 0)
+			return false;
+		int len = valueEnd[f] - valueStart[f];
+		return len == upperCase.length()
+				&& packet.regionMatches(true, valueStart[f], upperCase, 0, len);
+	}
+
+	boolean valueStartsWith(int key, String upperCase)
+	{
+		int f = byKey[key];
+		if (f < 0)
+			return false;
+		int len = upperCase.length();
+		return valueEnd[f] - valueStart[f] >= len
+				&& packet.regionMatches(true, valueStart[f], upperCase, 0, len);
+	}
+
+	int intValue(int key, int defaultValue)
+	{
+		int f = byKey[key];
+		if (f < 0)
+			return defaultValue;
+
+		int i = valueStart[f];
+		int end = valueEnd[f];
+		if (i == end)
+			return defaultValue;
+
+		boolean negative = packet.charAt(i) == '-';
+		if (negative && ++i == end)
+			return defaultValue;
+
+		long result = 0;
+		for (; i < end; i++) {
+			char c = packet.charAt(i);
+			if (c < '0' || c > '9')
+				return defaultValue;
+			result = result * 10 + (c - '0');
+			if (result > Integer.MAX_VALUE)
+				return defaultValue;
+		}
+		return (int) (negative ? -result : result);
+	}
+
+	private void reset(String packet)
+	{
+		this.packet = packet;
+		method = UNKNOWN;
+		fieldCount = 0;
+		for (int i = 0; i < byKey.length; i++)
+			byKey[i] = -1;
+	}
+
+	private void add(int start, int eq, int end, int hash)
+	{
+		if (fieldCount == keyStart.length) {
+			keyStart = grow(keyStart);
+			valueStart = grow(valueStart);
+			valueEnd = grow(valueEnd);
+		}
+		int f = fieldCount++;
+		keyStart[f] = start;
+		valueStart[f] = eq + 1;
+		valueEnd[f] = end;
+
+		int key = KEY_TABLE.lookup(packet, start, eq, hash);
+		// like indexOf() in the old parser, the first occurrence wins
+		if (key >= 0 && byKey[key] < 0)
+			byKey[key] = f;
+	}
+
+	private static int[] grow(int[] a)
+	{
+		int[] b = new int[a.length * 2];
+		System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+
+	private static char upper(char c)
+	{
+		return (c >= 'a' && c <= 'z') ? (char) (c - ('a' - 'A')) : c;
+	}
+
+	private static int hash(CharSequence s, int start, int end)
+	{
+		int h = 0;
+		for (int i = start; i < end; i++)
+			h = 31 * h + upper(s.charAt(i));
+		return h;
+	}
+
+	/**
+	 * Open addressed, read only table from upper-case name to index.
+	 */
+	private static final class NameTable
+	{
+		private final String[] names;
+		private final int[] slots;
+		private final int mask;
+
+		NameTable(String[] names)
+		{
+			this.names = names;
+			int size = Integer.highestOneBit(names.length * 4);
+			slots = new int[size];
+			mask = size - 1;
+			for (int i = 0; i < size; i++)
+				slots[i] = -1;
+			for (int i = 0; i < names.length; i++) {
+				int s = hash(names[i], 0, names[i].length()) & mask;
+				while (slots[s] >= 0)
+					s = (s + 1) & mask;
+				slots[s] = i;
+			}
+		}
+
+		int lookup(String text, int start, int end, int hash)
+		{
+			int len = end - start;
+			for (int s = hash & mask; slots[s] >= 0; s = (s + 1) & mask) {
+				String name = names[slots[s]];
+				if (name.length() == len && text.regionMatches(true, start, name, 0, len))
+					return slots[s];
+			}
+			return UNKNOWN;
+		}
+	}
+}
@@ -13,13 +13,10 @@ import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.util.Properties;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.Executor;
 
 import javax.net.ssl.*;
 
-import com.clearcaptions.cloud.captions.Captions;
-import com.clearcaptions.javawi.jstun.util.CallTypeUtil;
 import com.clearcaptions.transport.CCEnvironment;
 import com.clearcaptions.transport.CCTransportType;
 import com.clearcaptions.transport.CaptionSessionState;
@@ -44,6 +41,7 @@ public class ProtocolWizard
 	private int				mIncomingPort;
 	private String			pushToken;
 	private String			deviceID;
+	private byte[]			deviceIDBytes = PacketEncoder.ascii(null);
 	private String			deviceType;
 	private String			enterprise;
 	private String			ipAddress;
@@ -68,6 +66,7 @@ public class ProtocolWizard
 	private Thread			mConnectThread;
 	private Thread			mWriteThread;
 	private String			myID;
+	private byte[]			sessionBytes;
 	private String			opID;
 	private int				firstContact;
 	private boolean			firstPoll;
@@ -78,14 +77,23 @@ public class ProtocolWizard
 	private CCTransportType transportType;
 	private int				logstuff;
     private boolean  		inCall;
-    private boolean  		attemptingRetry;
+    private volatile boolean attemptingRetry;
+    private volatile ReconnectScheduler.Task reconnectTask;
+    private volatile ReconnectScheduler.Task connectTask;
     private long 			retryInterval;
     private int socketTimeout;
+    private long pingInterval;
 	private long attempts;
 	private long maxAttempts = 3;
 
-	private Timer wanLossTimer;
-	private TimerTask timerTask;
+	private HashedWheelTimer.Timeout wanLossTimeout;
+	private volatile CaptionBatcher captionBatcher;
+
+	private Executor executor;
+	private CaptionSessionManager manager;
+
+	private final LatencyHistogram inboundLatency = new LatencyHistogram("inbound");
+	private final PacketFields inboundFields = new PacketFields();
 
 	static final char nl = 13;
 	static final String FAILURE_MSG = "Sorry, we're experiencing technical difficulties, please try your ClearCaptions call again";
@@ -93,6 +101,7 @@ public class ProtocolWizard
 
 	public static final String KEEP_ALIVE_TIMEOUT_CODE = "900";
 	public static final String KEEP_ALIVE_TIMEOUT_MSG = "WAN loss warning - 5 second keepAlive Timeout exceeded";
+	static final long WAN_LOSS_TIMEOUT = 5000;
 
 	TrustManager[] trustAllCerts = new TrustManager[]{
 	    new X509TrustManager() {
@@ -337,6 +346,7 @@ public class ProtocolWizard
 	public void deviceID(String val)
 	{
 		deviceID = val;
+		deviceIDBytes = PacketEncoder.ascii(val);
 	}
 	
 	public String deviceID()
@@ -381,7 +391,6 @@ public class ProtocolWizard
 	public void callType(String val)
 	{
 		callType = val;
-		Captions.setIsVoip(CallTypeUtil.isVoipCallType(callType));
 	}
 	
 	public String callType()
@@ -447,7 +456,11 @@ public class ProtocolWizard
 
 	public void session(String val)
 	{
+		String old = myID;
 		myID = val;
+		sessionBytes = PacketEncoder.ascii(val);
+		if (manager != null)
+			manager.sessionChanged(this, old, val);
 	}
 	
 	public String session()
@@ -455,6 +468,43 @@ public class ProtocolWizard
 		return myID;
 	}
 
+	/**
+	 * Runs this session's timers, reconnects and, on the socket transport,
+	 * its connect, read, write and dispatch loops on the given executor
+	 * instead of starting a dedicated thread for each.  Must be set before
+	 * the call is started.
+	 */
+	public void executor(Executor executor)
+	{
+		this.executor = executor;
+	}
+
+	public Executor executor()
+	{
+		return executor;
+	}
+
+	void manager(CaptionSessionManager manager)
+	{
+		this.manager = manager;
+	}
+
+	public CaptionSessionManager manager()
+	{
+		return manager;
+	}
+
+	private Thread start(Runnable task)
+	{
+		if (executor != null) {
+			executor.execute(task);
+			return null;
+		}
+		Thread thread = new Thread(task);
+		thread.start();
+		return thread;
+	}
+
 	/**
 	 * Not used by instantiated classes
 	 */
@@ -470,16 +520,22 @@ public class ProtocolWizard
 	{
 		return mWriteInstance.queueSize();
 	}
+
+	/**
+	 * Not used by instantiated classes
+	 */
+	public int writeQueueDepth()
+	{
+		return mWriteInstance.queueDepth();
+	}
 	
 	private long generateInterval(long attempt) {
-		double maxInterval = (Math.pow(2, attempt) - 1) * 1000;
+		// random interval between 0 and 2^attempt-1 seconds, truncated to 30 seconds
+		return ReconnectScheduler.fullJitter(attempt, 1000, 30*1000);
+	}
 
-		if (maxInterval > 30*1000) {
-			maxInterval = 30*1000; // If the generated interval is more than 30 seconds, truncate it down to 30 seconds.
-		}
-		  
-		// generate the interval to a random number between 0 and the maxInterval determined from above
-		return (long) (Math.random() * maxInterval); 
+	private CircuitBreaker reconnectBreaker() {
+		return ReconnectScheduler.breaker(isWebSocketClient() ? webSocketHost() : host());
 	}
 	
 	/**
@@ -487,9 +543,8 @@ public class ProtocolWizard
 	 */
 	public void handleState(CaptionSessionState state, String msg)
 	{
-		CaptionSessionState localState;
-		String localMsg;
 		CCLog.trace("ProtocolWizard.handleState() got state="+state+" current state="+state());
+		flushCaptions();
 		switch (state) {
 			case STATE_CONNECTION_LOST:
 				if (state() == CaptionSessionState.STATE_CALL_ENDED) {
@@ -503,61 +558,17 @@ public class ProtocolWizard
 					CCLog.trace("ProtocolWizard.handleState() reconnect..");
 					attemptingRetry = true;
 
-					localState = state;
-					localMsg = msg;
-
 					if (inCall()) {
 						CCLog.trace("ProtocolWizard.handleState() incall, connection retry " + attemptingRetry);
-						try {
-							if (attempts > maxAttempts) {
-								// we're done here...
-								stopCall(msg);
-								return;
-							}
-							long time = generateInterval(attempts);
-							try {
-								attempts++;
-								Thread.sleep(time);
-							}
-							catch (Exception e) {
-								CCLog.trace("ProtocolWizard.handleState("+state+") got interrupted: " + e.getMessage());
-								Thread.currentThread().interrupt(); // restore interrupted status
-								stopCall(msg);
-								return;
-							}
-							if (isWebSocketClient()) {
-								connect();
-							}
-							else {
-								mReadInstance.quit();
-								mWriteInstance.quit();
-								streamIOInstance.quit();
-
-								netConnect();
-							}
-							localMsg = "";
-
-							switch (state()) {
-								case STATE_REGISTERING:
-									localState = CaptionSessionState.STATE_REGISTERING;
-									registerCall();
-									break;
-
-								default:
-									//Don't resume
-									break;
-							}
-						}
-						catch (Exception e1) {
-							CCLog.error("ProtocolWizard.handleState() retry connection failed: "+e1.getMessage());
-							localState = CaptionSessionState.STATE_CONNECT_FAILED;
-							localMsg = FAILURE_MSG;
-						}
+						// A socket connect failure is counted where it happens,
+						// in netConnect(); a websocket only reports its failures
+						// here.
+						if (isWebSocketClient())
+							reconnectBreaker().recordFailure();
+						scheduleReconnect(msg);
 					}
 					else{
 						CCLog.trace("ProtocolWizard.handleState() NOT incall, DONE");
-						localState = CaptionSessionState.STATE_CALL_ENDED;
-						localMsg = LOST_MSG;
 						try {
 							mReadInstance.quit();
 						}
@@ -576,12 +587,12 @@ public class ProtocolWizard
 						catch (Exception e) {
 
 						}
-					}
 
-					if ( callback() != null )
-						callback().processState(localState, localMsg);
+						if ( callback() != null )
+							callback().processState(CaptionSessionState.STATE_CALL_ENDED, LOST_MSG);
 
-					attemptingRetry=false;
+						attemptingRetry=false;
+					}
 				}
 				break;
 			case STATE_CONNECT_FAILED:
@@ -598,6 +609,143 @@ public class ProtocolWizard
 		}
 	}
 
+	/**
+	 * Waits out the backoff for the next reconnect attempt on the shared
+	 * scheduler rather than on the calling thread.
+	 */
+	private void scheduleReconnect(final String msg)
+	{
+		if (attempts > maxAttempts) {
+			// we're done here...
+			attemptingRetry = false;
+			stopCall(msg);
+			return;
+		}
+
+		long time = generateInterval(attempts);
+		long open = reconnectBreaker().retryAfterMillis();
+		if (open > time) {
+			// everyone is backing off this host; spread the wake-ups over another second
+			time = open + generateInterval(1);
+		}
+		attempts++;
+
+		CCLog.trace("ProtocolWizard.scheduleReconnect() attempt " + attempts + " in " + time + "ms");
+		reconnectTask = ReconnectScheduler.schedule(new Runnable() {
+			public void run() {
+				reconnect(msg);
+			}
+		}, time, executor);
+	}
+
+	/**
+	 * Waits for the host's breaker to let a probe through. This is not an
+	 * attempt of our own, so it does not count towards maxAttempts.
+	 */
+	private void deferReconnect(final String msg)
+	{
+		long time = reconnectBreaker().retryAfterMillis() + generateInterval(1);
+
+		CCLog.trace("ProtocolWizard.deferReconnect() attempt " + attempts + " in " + time + "ms");
+		reconnectTask = ReconnectScheduler.schedule(new Runnable() {
+			public void run() {
+				reconnect(msg);
+			}
+		}, time, executor);
+	}
+
+	private void reconnect(String msg)
+	{
+		reconnectTask = null;
+		if (!inCall()) {
+			CCLog.trace("ProtocolWizard.reconnect() call ended while waiting");
+			attemptingRetry = false;
+			return;
+		}
+		if (!reconnectBreaker().allowRequest()) {
+			CCLog.trace("ProtocolWizard.reconnect() " + reconnectBreaker() + ", deferring");
+			deferReconnect(msg);
+			return;
+		}
+
+		try {
+			if (isWebSocketClient()) {
+				connect();
+			}
+			else {
+				mReadInstance.quit();
+				mWriteInstance.quit();
+				streamIOInstance.quit();
+
+				if (!netConnect(1, true)) {
+					// a retry of the connect is scheduled; it finishes the reconnect
+					return;
+				}
+			}
+		}
+		catch (Exception e1) {
+			reconnectFailed(e1);
+			return;
+		}
+		reconnected();
+	}
+
+	/**
+	 * Resumes the call once the reconnect has really connected.
+	 */
+	private void reconnected()
+	{
+		CaptionSessionState localState = CaptionSessionState.STATE_CONNECTION_LOST;
+		String localMsg = "";
+
+		try {
+			switch (state()) {
+				case STATE_REGISTERING:
+					localState = CaptionSessionState.STATE_REGISTERING;
+					registerCall();
+					break;
+
+				default:
+					//Don't resume
+					break;
+			}
+		}
+		catch (Exception e1) {
+			reconnectFailed(e1);
+			return;
+		}
+
+		if ( callback() != null )
+			callback().processState(localState, localMsg);
+
+		attemptingRetry=false;
+	}
+
+	private void reconnectFailed(Exception e1)
+	{
+		CCLog.error("ProtocolWizard.handleState() retry connection failed: "+e1.getMessage());
+
+		if ( callback() != null )
+			callback().processState(CaptionSessionState.STATE_CONNECT_FAILED, FAILURE_MSG);
+
+		attemptingRetry=false;
+	}
+
+	private void cancelReconnect()
+	{
+		ReconnectScheduler.Task task = reconnectTask;
+		if (task != null) {
+			task.cancel();
+			reconnectTask = null;
+		}
+		task = connectTask;
+		if (task != null) {
+			task.cancel();
+			connectTask = null;
+		}
+		attemptingRetry = false;
+	}
+
 	public void answerCall(String sessionID)
 	{
 		// handle incoming call where we already have a sessionID to connect back to the bot with
@@ -666,21 +814,7 @@ public class ProtocolWizard
 	public void logEvent(String event, boolean send)
 	{
 		if (send) {
-			int index = 0;
-			String data = "myMethod=logEvent||myID=" + session();
-			data += "||userAgent=" + userAgent();
-			data += "||callType=" + callType();
-			data += "||myUID=||deviceID=" + deviceID();
-			data += "||myIP=" + ip();
-			data += "||deviceCaps=" + deviceCaps();
-			data += "||trace=" + event;
-	
-			int len = data.length() + 1;
-			byte[] packet = new byte[len];
-			for (int i=0; i<data.length(); i++)
-				packet[index++] = (byte)data.charAt(i); 
-			packet[index++] = 0; 
-	
+			byte[] packet = BuildLogEventPacket(event);
 			SendCommand(packet, true, false);
 		}
 	}
@@ -720,10 +854,33 @@ public class ProtocolWizard
 	public void processData(String data) throws IOException
 	{
 		if (data.length() > 0) {
-			Handlei711InboundPacket(data);
+			dispatch(data, System.nanoTime());
 		}
 	}
 
+	/**
+	 * Blocks until the read thread has a complete packet, then handles it.
+	 */
+	void processNextPacket() throws InterruptedException
+	{
+		InboundPacket packet = mReadInstance.take();
+		dispatch(packet.data, packet.arrivalNanos);
+	}
+
+	private void dispatch(String packet, long arrivalNanos)
+	{
+		Handlei711InboundPacket(packet);
+		inboundLatency.record(System.nanoTime() - arrivalNanos);
+	}
+
+	/**
+	 * Time from a packet arriving off the wire to its callbacks returning.
+	 */
+	public LatencyHistogram inboundLatency()
+	{
+		return inboundLatency;
+	}
+
 	/**
 	 * sends a message from the client
 	 */
@@ -737,19 +894,7 @@ public class ProtocolWizard
 	
 	public void sendStatusUpdate(PhoneEvent event, String message)
 	{
-		byte[] packet;
-		int i, len;
-		String data;
-		int 	index = 0;
-		
-		data = "myMethod=statusUpdate||myID="+session()+"||status="+event.toString()+"||message="+message;
-		len = data.length() + 1;
-
-		packet = new byte[len];
-		
-		for (i=0; i<data.length(); i++)
-			packet[index++] = (byte)data.charAt(i); 
-		packet[index++] = 0; 
+		byte[] packet = BuildStatusUpdatePacket(event, message);
 		SendCommand(packet, true, false);
 	}
 	
@@ -851,9 +996,11 @@ public class ProtocolWizard
 	 */
 	public void stopCall(String msg)
 	{
+		cancelReconnect();
 		inCall(false);
 		mRegistered = false;
 		state(CaptionSessionState.STATE_CALL_ENDED);
+		flushCaptions();
 		callback().processState(state(), msg);
 		closeSocket();
 	}
@@ -870,6 +1017,23 @@ public class ProtocolWizard
 	 */
 	public void netConnect() throws Exception
 	{
+		netConnect(1, false);
+	}
+
+	/**
+	 * Retries of the SSL connect are scheduled rather than slept for. If
+	 * the final attempt fails on the scheduler's thread it is reported as
+	 * STATE_CONNECT_FAILED, or to the reconnect that asked for it.
+	 *
+	 * @param reconnecting
+	 *            true if reconnect() is waiting for this connect; a
+	 *            scheduled retry then finishes the reconnect itself.
+	 * @return true if connected, false if a retry was scheduled or the
+	 *         call was hung up meanwhile
+	 */
+	private boolean netConnect(final int connectAttempt, final boolean reconnecting) throws Exception
+	{
+		connectTask = null;
 		if (!isWebSocketClient()) {
 			if (port() == 0) {
 				try{
@@ -889,11 +1053,10 @@ public class ProtocolWizard
 				//attempt to connect up to 3 times.
 				//after the 3rd failure get out.
 				boolean done=false;
-				int connectAttemptCount = 0;
+				int connectAttemptCount = connectAttempt;
 				
 				while (!done){
-					if (connectAttemptCount < 3){
-						connectAttemptCount++;
+					if (connectAttemptCount <= 3){
 						CCLog.trace("ProtocolWizard.netConnect() - SSL connectAttempt="+connectAttemptCount);
 						try {
 							SSLContext sc = SSLContext.getInstance("TLS");
@@ -910,30 +1073,34 @@ public class ProtocolWizard
 								if (state() == CaptionSessionState.STATE_ONHOOK || state() == CaptionSessionState.STATE_CALL_ENDED)
 								{
 									CCLog.trace("ProtocolWizard.netConnect(): Changed Mind [Hangup]");
-									return;
+									attemptingRetry = false;
+									return false;
 								}
 																	
 								mReadInstance = new ReadThread(this);
 								mReadInstance.SetInputStream(mInputStream);
-								mReadThread = new Thread(mReadInstance);
-								mReadThread.start();
+								mReadThread = start(mReadInstance);
 						
 								mWriteInstance = new WriteThread(this);
 								mWriteInstance.SetOutputStream(mOutputStream);
-								mWriteThread = new Thread(mWriteInstance);
-								mWriteThread.start();
+								mWriteThread = start(mWriteInstance);
 					
 						        streamIOInstance = new StreamIOThread(this);
-						        streamIOThread = new Thread(streamIOInstance);
-						        streamIOThread.start();									
+						        streamIOThread = start(streamIOInstance);									
 								done = true;
 							}
+							else {
+								connectAttemptCount++;
+							}
 						}
 						catch (Exception e){
 							CCLog.error("ProtocolWizard.netConnect(): "+e.getMessage());
+							reconnectBreaker().recordFailure();
 							if (connectAttemptCount < 3) {
-								Thread.sleep(retryInterval());
+								scheduleConnect(connectAttemptCount + 1, reconnecting);
+								return false;
 							}
+							connectAttemptCount++;
 						}
 					}
 					else{
@@ -943,6 +1110,8 @@ public class ProtocolWizard
 			}
 		}
 		
+        reconnectBreaker().recordSuccess();
+
         switch (state()) {
 	        case STATE_WAITING_FOR_INCOMING_CALL:
 	        	acceptInboundCall();
@@ -987,268 +1156,191 @@ public class ProtocolWizard
 			default:
 				break;
         }								
+        return true;
 	}
 
-	private void Handlei711State(String packet, int r)
+	private void scheduleConnect(final int connectAttempt, final boolean reconnecting)
 	{
-		String d;
+		connectTask = ReconnectScheduler.schedule(new Runnable() {
+			public void run() {
+				boolean connected;
+				try {
+					connected = netConnect(connectAttempt, reconnecting);
+				}
+				catch (Exception ex) {
+					CCLog.error("ProtocolWizard.netConnect(): Failure: " + ex.toString());
+					if (reconnecting)
+						reconnectFailed(ex);
+					else
+						handleState(CaptionSessionState.STATE_CONNECT_FAILED, ex.getMessage());
+					return;
+				}
+				if (connected && reconnecting)
+					reconnected();
+			}
+		}, retryInterval(), executor);
+	}
 
-		if (packet == null)
-			return;
-			
-		r += 6;
-		d = packet.substring(r);
-		if (d.toUpperCase().startsWith("ONLINE"))
+	private void Handlei711State(PacketFields fields)
+	{
+		if (fields.valueStartsWith(PacketFields.STATE, "ONLINE"))
 		{
 			inCall(true);
 			if (firstContact == 0)
 			{
 				firstContact = 1;
-				if ( callback() != null )
-					callback().processState(CaptionSessionState.STATE_ONLINE, "");
+				if ( flushedCallback() != null )
+					flushedCallback().processState(CaptionSessionState.STATE_ONLINE, "");
 			}
 
-			r = packet.toUpperCase().indexOf("RECEIVEDTEXT=");
-			if (r > 0)
+			if (fields.position(PacketFields.RECEIVEDTEXT) > 0)
 			{
-				String rest = "";
-				r += 13;
-				d = packet.substring(r);
-			
-				r = 0;
-				if (d != null)
-					r = d.indexOf(":--:--:");
-				while (r >= 0)
+				CaptionBatcher batcher = captionBatcher;
+				if (batcher != null)
 				{
-					if (d.length() >= r+7)
-						rest = d.substring(r+7);
-					d = d.substring(0, r);
-					d += nl + rest;
-					r = d.indexOf(":--:--:");
+					batcher.add(fields.packet(), fields.valuePosition(PacketFields.RECEIVEDTEXT), nl, System.nanoTime());
+				}
+				else
+				{
+					String d = fields.rest(PacketFields.RECEIVEDTEXT);
+					if (d.indexOf(":--:--:") >= 0)
+						d = d.replace(":--:--:", String.valueOf(nl));
+					CCLog.trace("ProtocolWizard.Handlei711State: Inbound ["+ d + "]");
+					if ( callback() != null )
+						callback().processState(CaptionSessionState.STATE_DATA, d);
 				}
-				CCLog.trace("ProtocolWizard.Handlei711State: Inbound ["+ d + "]");
-				if ( callback() != null )
-					callback().processState(CaptionSessionState.STATE_DATA, d);
 			}
 		}
-		if (d.toUpperCase().startsWith("QUEUED"))
+		if (fields.valueStartsWith(PacketFields.STATE, "QUEUED"))
 		{
 				if (waitFirstTime)
 				{
-					if ( callback() != null )
-						callback().processState(CaptionSessionState.STATE_QUEUED, "Waiting for an available captioner...");
+					if ( flushedCallback() != null )
+						flushedCallback().processState(CaptionSessionState.STATE_QUEUED, "Waiting for an available captioner...");
 				}
 				waitFirstTime = false;
 		}
-		if (d.toUpperCase().startsWith("DISCONNECTED"))
+		if (fields.valueStartsWith(PacketFields.STATE, "DISCONNECTED"))
 		{
 			endCall();
-			if ( callback() != null )
-				callback().processState(CaptionSessionState.STATE_OFFLINE, "");
+			if ( flushedCallback() != null )
+				flushedCallback().processState(CaptionSessionState.STATE_OFFLINE, "");
 			return;
 		}
 	}
 	
 	private void Handlei711InboundPacket(String packet)
 	{
-		int r = 0;
+		PacketFields fields = inboundFields;
 
 		CCLog.trace("ProtocolWizard.Handlei711InboundPacket(): Packet [" + packet + "]");
 		logEvent(packet);
 
-		if (packet.toUpperCase().indexOf("KEEPALIVE") >= 0) {
-			stopWANLossWarningTimer();
+		fields.parse(packet);
+
+		if (fields.method() == PacketFields.KEEPALIVE) {
 			startWANLossWarningTimer();
 			return;
 		}
 
+		if (!fields.has(PacketFields.RECEIVEDTEXT))
+			flushCaptions();
+
 		// Blue-979 pass back error code with error message
-		r = packet.toUpperCase().indexOf("ERRCODE=");
-		if (r >= 0)
+		if (fields.has(PacketFields.ERRCODE))
 		{
-			r += 8;
-			String d = packet.substring(r);
-			int y = d.indexOf("||");
-			if (y > 0)
-				d = d.substring(0, y);
-			String errorCode = d;
-
-			r = packet.toUpperCase().indexOf("ERRMSG=");
-			if (r >= 0) {
-				r += 7;
-				String errorMsg = packet.substring(r);
-				if (callback() != null)
-					callback().processError(errorCode, errorMsg);
-			} else {
-				r = packet.toUpperCase().indexOf("ERRMESSAGE=");
-				if (r >= 0) {
-					r += 11;
-					String errorMsg = packet.substring(r);
-					if (callback() != null)
-						callback().processError(errorCode, errorMsg);
-				}
+			String errorCode = fields.value(PacketFields.ERRCODE);
+
+			if (fields.has(PacketFields.ERRMSG)) {
+				if (flushedCallback() != null)
+					flushedCallback().processError(errorCode, fields.rest(PacketFields.ERRMSG));
+			} else if (fields.has(PacketFields.ERRMESSAGE)) {
+				if (flushedCallback() != null)
+					flushedCallback().processError(errorCode, fields.rest(PacketFields.ERRMESSAGE));
 			}
 		}
 
-		if ((r = packet.toUpperCase().indexOf("POLLDATA=")) >=0)
-			r += 9;
-		
-		if (r < 0 )
-		{
-			if ((r = packet.toUpperCase().indexOf("||ERRCODE=PROTOCOL ERROR")) >=0)
-				r += 18;
-		}
-		if (r < 0 )
-		{
-			if ((r = packet.toUpperCase().indexOf("EXCHANGEDATA=")) >= 0)
-				r += 13;
-		}
+		int dataKey = PacketFields.UNKNOWN;
+		if (fields.has(PacketFields.POLLDATA))
+			dataKey = PacketFields.POLLDATA;
+		else if (fields.position(PacketFields.ERRCODE) > 0 && fields.valueStartsWith(PacketFields.ERRCODE, "PROTOCOL ERROR"))
+			dataKey = PacketFields.ERRCODE;
+		else if (fields.has(PacketFields.EXCHANGEDATA))
+			dataKey = PacketFields.EXCHANGEDATA;
 
-		if (r > 0)
+		if (dataKey != PacketFields.UNKNOWN)
 		{
-			String d = packet.substring(r);
-			int f= d.indexOf("||");
-			int code = 0;
-
-			try
-			{
-				code = Integer.parseInt(d.substring(0, f));
-				CCLog.trace("ProtocolWizard.Handlei711InboundPacket(): Poll/Exchange Data code [" + code + "]");
-			} 
-			catch (Exception e)
-			{
-				CCLog.debug("ProtocolWizard.Handlei711InboundPacket(): Poll/Exchange Data [" + e + "]");
-			}
+			CCLog.trace("ProtocolWizard.Handlei711InboundPacket(): Poll/Exchange Data code [" + fields.intValue(dataKey, 0) + "]");
 
-			r = packet.toUpperCase().indexOf("STATE=");
-			if (r > 0)
+			if (fields.position(PacketFields.STATE) > 0)
 			{
-				Handlei711State(packet, r);
+				Handlei711State(fields);
 			}
-			r = packet.toUpperCase().indexOf("ERRMSG=");
-			if (r >= 0)
+			if (fields.has(PacketFields.ERRMSG))
 			{
-				r += 7;
-				String errorMsg = packet.substring(r);
-				if ( callback() != null )
-					callback().processState(CaptionSessionState.STATE_ERROR, errorMsg);
+				if ( flushedCallback() != null )
+					flushedCallback().processState(CaptionSessionState.STATE_ERROR, fields.rest(PacketFields.ERRMSG));
 			}
 		}
 		
-		r = packet.toUpperCase().indexOf("RESUME=");
-		if (r >= 0)
+		if (fields.has(PacketFields.RESUME))
 		{
 			CCLog.trace("ProtocolWizard.Handlei711InboundPacket(): resume attempted, but resume is disabled");
 			handleState(CaptionSessionState.STATE_CALL_ENDED, "resume is disabled");
 		}
 
-		r = packet.toUpperCase().indexOf("REGRETURN=");
-		if (r >= 0)
+		if (fields.has(PacketFields.REGRETURN))
 		{
-			r += 10;
-			int code = 0;
-			String d = packet.substring(r);
-			int    e = d.indexOf("||");
-
-			d = d.substring(0, e);
-
-			try {
-				code = Integer.parseInt(d);
-			} 
-			catch (Exception f) {
-				code = 0;
-			}
+			int code = fields.intValue(PacketFields.REGRETURN, 0);
 			CCLog.trace("ProtocolWizard: RegReturn [" + code + "]");
-			r = packet.toUpperCase().indexOf("POLLING=0");
-			if (r > 0 )
+			if (fields.position(PacketFields.POLLING) > 0 && fields.valueStartsWith(PacketFields.POLLING, "0"))
 				dontPoll = true;
 
-			r = packet.toUpperCase().indexOf("MYID=");
-			if ( r > 0 && code == 1)
+			if (fields.position(PacketFields.MYID) > 0 && code == 1)
 			{
-				r += 5;
-				d = packet.substring(r);
-				int y = d.indexOf("||");
-				if (y > 0)
-					d = d.substring(0, y);
-				session(d);
-
-				r = packet.toUpperCase().indexOf("LOG=");
-				if (r > 0) {
-					r += 4;
-					d = packet.substring(r);
-					y = d.indexOf("||");
-					if (y > 0)
-						d = d.substring(0, y);
-					logEvents(Integer.parseInt(d));
+				session(fields.value(PacketFields.MYID));
+
+				if (fields.position(PacketFields.LOG) > 0) {
+					logEvents(fields.intValue(PacketFields.LOG, logEvents()));
 				}
 				
-				r = packet.toUpperCase().indexOf("RETRYINTERVAL=");
-				if (r > 0) {
-					r += 14;
-					d = packet.substring(r);
-					y = d.indexOf("||");
-					if (y > 0)
-						d = d.substring(0, y);
-					retryInterval(Integer.parseInt(d)*1000); // sent in s, store in ms
+				if (fields.position(PacketFields.RETRYINTERVAL) > 0) {
+					int seconds = fields.intValue(PacketFields.RETRYINTERVAL, -1);
+					if (seconds >= 0)
+						retryInterval(seconds*1000); // sent in s, store in ms
 				}
 
 				state(CaptionSessionState.STATE_ONHOOK);
 				mRegistered = true;
-				if ( callback() != null )
-					callback().processState(state(), "");
+				if ( flushedCallback() != null )
+					flushedCallback().processState(state(), "");
 
 				initiateCall();
 			}
 			else
 			{
 				String msg = "";
-				r = packet.toUpperCase().indexOf("ERRMESSAGE=");
-				if (r > 0) {
-					r += 11;
-					d = packet.substring(r);
-					int y = d.indexOf("||");
-					if (y > 0)
-						d = d.substring(0, y);
-					msg = d;
+				if (fields.position(PacketFields.ERRMESSAGE) > 0) {
+					msg = fields.value(PacketFields.ERRMESSAGE);
 				}
 				handleState(CaptionSessionState.STATE_CALL_ENDED, msg);
 				return;
 			}
 		}
 		
-		r = packet.toUpperCase().indexOf("RELAYSTART=");
-		if (r >= 0)
+		if (fields.has(PacketFields.RELAYSTART))
 		{
-			r += 11;
-			String d = packet.substring(r);
-			int idx = d.indexOf("||");
-			if (idx > 0)
-				d = d.substring(0, idx);
-			int code = 0;
-			try {
-				code = Integer.parseInt(d);
-			}
-			catch (Exception e) {
-				code = 0;
-			}
+			int code = fields.intValue(PacketFields.RELAYSTART, 0);
 			CCLog.trace("ProtocolWizard.Handlei711InboundPacket(): Relay Start [" + code + "]");
 
-			r = packet.toUpperCase().indexOf("STATE=");
-			if (r > 0)
+			if (fields.position(PacketFields.STATE) > 0)
 			{
-				Handlei711State(packet, r);
+				Handlei711State(fields);
 			}
 
-			r = packet.toUpperCase().indexOf("MYID=");
-			if (r > 0)
+			if (fields.position(PacketFields.MYID) > 0)
 			{
-				r += 5;
-				d = packet.substring(r);
-				int y = d.indexOf("||");
-				if (y > 0)
-					d = d.substring(0, y);
-				session(d);
+				session(fields.value(PacketFields.MYID));
 			} 
 			if (code > 0)
 			{
@@ -1258,8 +1350,8 @@ public class ProtocolWizard
 				String msg = "Call answered";
 				state(CaptionSessionState.STATE_CONNECTED);
 				// just to handle the strange case....
-				if (callback() != null) {
-					callback().processState(state(), msg);
+				if (flushedCallback() != null) {
+					flushedCallback().processState(state(), msg);
 				}
 				startWANLossWarningTimer();
 				/*/ TODO: processCall obsolete????
@@ -1268,384 +1360,181 @@ public class ProtocolWizard
 			} 
 			else
 			{
-				//r = packet.toUpperCase().indexOf("ERRMESSAGE=");
 				String msg = "";
-				String up = packet.toUpperCase();
-				r = up.indexOf("ERRMESSAGE=");
-				if (r >= 0)
+				if (fields.has(PacketFields.ERRMESSAGE))
 				{
-					r += 11;
-					msg = packet.substring(r);
+					msg = fields.rest(PacketFields.ERRMESSAGE);
 				}
 				handleState(CaptionSessionState.STATE_CALL_ENDED, msg);
 				return;
 			}
 		}
-		
-		if (packet.toUpperCase().startsWith("MYMETHOD=SWITCHOP"))
-		{
-			r = packet.toUpperCase().indexOf("SESSIONID=");
-			if (r >= 0) {
-				r += 10;
-				String d = packet.substring(r);
-				int y = d.indexOf("||");
-				if (y > 0)
-					d = d.substring(0, y);
-				session(d);
-			}
-			r = packet.toUpperCase().indexOf("OPID=");
-			if (r >= 0) {
-				r += 5;
-				String d = packet.substring(r);
-				int y = d.indexOf("||");
-				if (y > 0)
-					d = d.substring(0, y);
-				opID(d);
-				if ( callback() != null ) callback().processState(CaptionSessionState.STATE_ONLINE, opID());
-			}
-		}
-		
-		/*
-		 * myMethod=statusUpdate||type=firstCaption
-		 * myMethod=statusUpdate||type=inProgress||message=
-		 */
-		if (packet.toUpperCase().startsWith("MYMETHOD=STATUSUPDATE"))
-		{
-			CaptionSessionState event = CaptionSessionState.STATE_IGNORE;
-			String message = "";
-			String cType = "TYPE=";
-			String cMessage = "MESSAGE=";
-			r = packet.toUpperCase().indexOf(cType);
-			if (r >= 0)
+
+		switch (fields.method()) {
+			case PacketFields.SWITCHOP:
+				if (fields.has(PacketFields.SESSIONID)) {
+					session(fields.value(PacketFields.SESSIONID));
+				}
+				if (fields.has(PacketFields.OPID)) {
+					opID(fields.value(PacketFields.OPID));
+					if ( flushedCallback() != null ) flushedCallback().processState(CaptionSessionState.STATE_ONLINE, opID());
+				}
+				break;
+
+			/*
+			 * myMethod=statusUpdate||type=firstCaption
+			 * myMethod=statusUpdate||type=inProgress||message=
+			 */
+			case PacketFields.STATUSUPDATE:
 			{
-				r += cType.length();
-				String d = packet.substring(r);
-				int y = d.indexOf("||");
-				if (y > 0)
-					d = d.substring(0, y);
-				if (d.toUpperCase().equals("FIRSTCAPTION")) {
+				CaptionSessionState event = CaptionSessionState.STATE_IGNORE;
+				String message = "";
+				if (fields.valueEquals(PacketFields.TYPE, "FIRSTCAPTION")) {
 					event = CaptionSessionState.STATE_DATA_FIRST;
 				}
-				else if (d.toUpperCase().equals("INPROGRESS")) {
+				else if (fields.valueEquals(PacketFields.TYPE, "INPROGRESS")) {
 					event = CaptionSessionState.STATE_INPROGRESS;
 				}
-			}
-		
-			r = packet.toUpperCase().indexOf(cMessage);
-			if (r >= 0)
-			{
-				r += cMessage.length();
-				String d = packet.substring(r);
-				int y = d.indexOf("||");
-				if (y > 0)
-					d = d.substring(0, y);
-				message = d;
-			}
-			
-			if (callback() != null) callback().processState(event, message);
-		}
-		
-		/*
-		 * myMethod=StateChange||state=Online||OP=2007
-		 */
-		if (packet.toUpperCase().startsWith("MYMETHOD=STATECHANGE"))
-		{
-			boolean delayOnline = false;
-			r = packet.toUpperCase().indexOf("OP=");
-			if (r >= 0)
-			{
-				r += 3;
-				String d = packet.substring(r);
-				int y = d.indexOf("||");
-				if (y > 0)
-					d = d.substring(0, y);
-				opID(d);
-			}
-			
-			r = packet.toUpperCase().indexOf("OPNUMBER=");
-			if (r >= 0)
-			{
-				r += 9;
-				String d = packet.substring(r);
-				int y = d.indexOf("||");
-				if (y > 0)
-					d = d.substring(0, y);
-				if ( callback() != null ) callback().processState(CaptionSessionState.STATE_COMMAND, "AGENT=" + d);
-			}
-			
-			r = packet.toUpperCase().indexOf("OPNUMBER2=");
-			if (r >= 0)
-			{
-				r += 10;
-				String d = packet.substring(r);
-				int y = d.indexOf("||");
-				if (y > 0)
-					d = d.substring(0, y);
-				if ( callback() != null ) callback().processState(CaptionSessionState.STATE_COMMAND, "AGENT2=" + d);
-			}
-			
-			r = packet.toUpperCase().indexOf("SIPREMOTE=");
-			if (r >= 0)
-			{
-				r += 10;
-				String sipuri = packet.substring(r);
-				int y = sipuri.indexOf("||");
-				if (y > 0)
-					sipuri = sipuri.substring(0, y);
-				if ( callback() != null ) callback().processState(STATE_SIPREMOTE, sipuri);
-				delayOnline = true;
-			}
-			
-			r = packet.toUpperCase().indexOf("SIPLOCAL=");
-			if (r >= 0)
-			{
-				r += 9;
-				String sipuri = packet.substring(r);
-				int y = sipuri.indexOf("||");
-				if (y > 0)
-					sipuri = sipuri.substring(0, y);
-				if ( callback() != null ) callback().processState(CaptionSessionState.STATE_SIPLOCAL, sipuri);
-				delayOnline = true;
+				if (fields.has(PacketFields.MESSAGE)) {
+					message = fields.value(PacketFields.MESSAGE);
+				}
+				if (flushedCallback() != null) flushedCallback().processState(event, message);
+				break;
 			}
 
-			r = packet.toUpperCase().indexOf("STATE=");
-			if (r >= 0)
+			/*
+			 * myMethod=StateChange||state=Online||OP=2007
+			 */
+			case PacketFields.STATECHANGE:
 			{
-				r += 6;
-				String d = packet.substring(r);
-				int y = d.indexOf("||");
-				if (y > 0)
-					d = d.substring(0, y);
-				
-				if (d.toUpperCase().equals("ONLINE"))
+				boolean delayOnline = false;
+				if (fields.has(PacketFields.OP)) {
+					opID(fields.value(PacketFields.OP));
+				}
+				if (fields.has(PacketFields.OPNUMBER)) {
+					if ( flushedCallback() != null ) flushedCallback().processState(CaptionSessionState.STATE_COMMAND, "AGENT=" + fields.value(PacketFields.OPNUMBER));
+				}
+				if (fields.has(PacketFields.OPNUMBER2)) {
+					if ( flushedCallback() != null ) flushedCallback().processState(CaptionSessionState.STATE_COMMAND, "AGENT2=" + fields.value(PacketFields.OPNUMBER2));
+				}
+				if (fields.has(PacketFields.SIPREMOTE)) {
+					if ( flushedCallback() != null ) flushedCallback().processState(STATE_SIPREMOTE, fields.value(PacketFields.SIPREMOTE));
+					delayOnline = true;
+				}
+				if (fields.has(PacketFields.SIPLOCAL)) {
+					if ( flushedCallback() != null ) flushedCallback().processState(CaptionSessionState.STATE_SIPLOCAL, fields.value(PacketFields.SIPLOCAL));
+					delayOnline = true;
+				}
+
+				if (fields.valueEquals(PacketFields.STATE, "ONLINE"))
 				{
 					inCall(true);
 					if (!delayOnline) {
 						if (firstContact == 0)
 						{
 							firstContact = 1;
-							if (callback() != null) {
-								callback().processState(CaptionSessionState.STATE_ONLINE, opID());
+							if (flushedCallback() != null) {
+								flushedCallback().processState(CaptionSessionState.STATE_ONLINE, opID());
 							}
 						}
 					}
 				}
-				else if (d.toUpperCase().equals("QUEUED"))
+				else if (fields.valueEquals(PacketFields.STATE, "QUEUED"))
 				{
-					if ( callback() != null ) callback().processState(CaptionSessionState.STATE_WAITING, opID());
+					if ( flushedCallback() != null ) flushedCallback().processState(CaptionSessionState.STATE_WAITING, opID());
 				}
+				break;
 			}
-		}
-		
-		if (packet.toUpperCase().startsWith("MYMETHOD=SENDTEXT"))
-		{
+
 			//myMethod=sendText||text= ** advertising ** ||type=macro
-			String cType = "TYPE=";
-			String cText = "TEXT=";
-			String dataType = "";
-			r = packet.toUpperCase().indexOf(cType);
-			if (r >= 0)
-			{
-				r += cType.length();
-				String d = packet.substring(r);
-				int y = d.indexOf("||");
-				if (y > 0)
-					d = d.substring(0, y);
-				dataType = d;
-			}
-					
-			r = packet.toUpperCase().indexOf(cText);
-			if (r >= 0)
-			{
-				r += cText.length();
-				String d = packet.substring(r);
-				int y = d.indexOf("||");
-				if (y > 0)
-					d = d.substring(0, y);
-				String msg = d;
-				if (callback() != null) {
+			case PacketFields.SENDTEXT:
+				if (fields.has(PacketFields.TEXT) && flushedCallback() != null)
+				{
 					CaptionSessionState event = CaptionSessionState.STATE_DATA;
-					if (dataType.toUpperCase().equals("MACRO")) {
+					if (fields.valueEquals(PacketFields.TYPE, "MACRO")) {
 						event = CaptionSessionState.STATE_DATA_MACRO;
 					}
-					else if (dataType.toUpperCase().equals("REVOICED")) {
-						event = CaptionSessionState.STATE_DATA_CAPTION;						
+					else if (fields.valueEquals(PacketFields.TYPE, "REVOICED")) {
+						event = CaptionSessionState.STATE_DATA_CAPTION;
 					}
-					callback().processState(event, msg);
+					flushedCallback().processState(event, fields.value(PacketFields.TEXT));
 				}
-			}
-		}
-		
-		if (packet.toUpperCase().startsWith("MYMETHOD=SENDCOMMAND"))
-		{
-			String theCommand = "";
-			String theParty = "";
-
-			/*
-			 * "party type": called, assisted, agent?
-			 */
-			r = packet.toUpperCase().indexOf("TYPE=");
-			if (r >= 0)
-			{
-				r += 5;
-				String d = packet.substring(r);
-				int y = d.indexOf("||");
-				if (y > 0)
-					d = d.substring(0, y);
-				theParty = d;
-			}
-
-			r = packet.toUpperCase().indexOf("VOLUME=");
-			if (r >= 0)
-			{
-				String d = packet.substring(r);
-				int y = d.indexOf("||");
-				if (y > 0)
-					d = d.substring(0, y);
-				theCommand = d;
-			}
-
-			if ( callback() != null ) 
-				callback().processState(CaptionSessionState.STATE_COMMAND, theParty + "||" + theCommand);
-		}
+				break;
 
-		/*
-		 * mymethod=startSIPSession||opNumber=
-		 */
-		if (packet.toUpperCase().indexOf("MYMETHOD=STARTSIPSESSION") >= 0)
-		{
-			String sipLocal = "";
-			String sipRemote = "";
-			
-			r = packet.toUpperCase().indexOf("SIPLOCAL=");
-			if (r >= 0)
+			case PacketFields.SENDCOMMAND:
 			{
-				String d = packet.substring(r);
-				int y = d.indexOf("||");
-				if (y > 0)
-					d = d.substring(0, y);
-				sipLocal = d;
+				/*
+				 * "party type": called, assisted, agent?
+				 */
+				String theParty = fields.has(PacketFields.TYPE) ? fields.value(PacketFields.TYPE) : "";
+				String theCommand = fields.has(PacketFields.VOLUME) ? fields.field(PacketFields.VOLUME) : "";
+				if ( flushedCallback() != null ) 
+					flushedCallback().processState(CaptionSessionState.STATE_COMMAND, theParty + "||" + theCommand);
+				break;
 			}
 
-			r = packet.toUpperCase().indexOf("SIPREMOTE=");
-			if (r >= 0)
+			/*
+			 * mymethod=startSIPSession||opNumber=
+			 */
+			case PacketFields.STARTSIPSESSION:
+			case PacketFields.RESTARTSIPSESSION:
 			{
-				String d = packet.substring(r);
-				int y = d.indexOf("||");
-				if (y > 0)
-					d = d.substring(0, y);
-				sipRemote = d;
-			}
+				boolean restart = fields.method() == PacketFields.RESTARTSIPSESSION;
+				String sipLocal = fields.has(PacketFields.SIPLOCAL) ? fields.field(PacketFields.SIPLOCAL) : "";
+				String sipRemote = fields.has(PacketFields.SIPREMOTE) ? fields.field(PacketFields.SIPREMOTE) : "";
 
-			CCLog.trace("ProtocolWizard.Handlei711InboundPacket(): startSIPSession [" + sipLocal + "] [" + sipRemote + "]");
-			if ( callback() != null ) {
-				callback().processState(CaptionSessionState.STATE_SESSION_SIP_ESTABLISHED, sipLocal + "||" + sipRemote);
-			}
-		}
-		
-		/*
-		 * mymethod=startSIPSession||opNumber=
-		 */
-		if (packet.toUpperCase().indexOf("MYMETHOD=RESTARTSIPSESSION") >= 0)
-		{
-			String sipLocal = "";
-			String sipRemote = "";
-			
-			r = packet.toUpperCase().indexOf("SIPLOCAL=");
-			if (r >= 0)
-			{
-				String d = packet.substring(r);
-				int y = d.indexOf("||");
-				if (y > 0)
-					d = d.substring(0, y);
-				sipLocal = d;
+				CCLog.trace("ProtocolWizard.Handlei711InboundPacket(): " + (restart ? "restartSIPSession" : "startSIPSession") + " [" + sipLocal + "] [" + sipRemote + "]");
+				if ( flushedCallback() != null ) {
+					flushedCallback().processState(restart ? CaptionSessionState.STATE_SESSION_SIP_RESTART : CaptionSessionState.STATE_SESSION_SIP_ESTABLISHED, sipLocal + "||" + sipRemote);
+				}
+				break;
 			}
 
-			r = packet.toUpperCase().indexOf("SIPREMOTE=");
-			if (r >= 0)
-			{
-				String d = packet.substring(r);
-				int y = d.indexOf("||");
-				if (y > 0)
-					d = d.substring(0, y);
-				sipRemote = d;
-			}
+			case PacketFields.STOPSIPSESSION:
+				CCLog.trace("ProtocolWizard.Handlei711InboundPacket(): stopSession");
+				if ( flushedCallback() != null ) {
+					flushedCallback().processState(CaptionSessionState.STATE_SESSION_SIP_STOP, "");
+				}
+				break;
 
-			CCLog.trace("ProtocolWizard.Handlei711InboundPacket(): restartSIPSession [" + sipLocal + "] [" + sipRemote + "]");
-			if ( callback() != null ) {
-				callback().processState(CaptionSessionState.STATE_SESSION_SIP_RESTART, sipLocal + "||" + sipRemote);
-			}
-		}
-		
-		if (packet.toUpperCase().indexOf("MYMETHOD=STOPSIPSESSION") >= 0)
-		{
-			CCLog.trace("ProtocolWizard.Handlei711InboundPacket(): stopSession");
-			if ( callback() != null ) {
-				callback().processState(CaptionSessionState.STATE_SESSION_SIP_STOP, "");
-			}
+			default:
+				break;
 		}
 		
-		if (packet.toUpperCase().indexOf("STOPRELAY=") >= 0)
+		if (fields.has(PacketFields.STOPRELAY))
 		{
 			inCall(false);
 			handleState(CaptionSessionState.STATE_CALL_ENDED, "");
 		}
-		
-		if (packet.toUpperCase().indexOf("MYMETHOD=TESTCALL") >= 0)
-		{
-			r = packet.toUpperCase().indexOf("SIPDIAL=");
-			if (r >= 0)
-			{
-				r += 8;
-				String sipuri = packet.substring(r);
-				int y = sipuri.indexOf("||");
-				if (y > 0)
-					sipuri = sipuri.substring(0, y);
-				CCLog.trace("ProtocolWizard.Handlei711InboundPacket(): testSIPSession [" + sipuri + "]");
-				if ( callback() != null ) callback().processState(STATE_SIPREMOTE, sipuri);
-			}
-		}		
 
-		if (packet.toUpperCase().indexOf("MYMETHOD=ENDTESTCALL") >= 0)
-		{
-			inCall(false);
-			handleState(CaptionSessionState.STATE_CALL_ENDED, "");
-		}		
+		switch (fields.method()) {
+			case PacketFields.TESTCALL:
+				if (fields.has(PacketFields.SIPDIAL))
+				{
+					String sipuri = fields.value(PacketFields.SIPDIAL);
+					CCLog.trace("ProtocolWizard.Handlei711InboundPacket(): testSIPSession [" + sipuri + "]");
+					if ( flushedCallback() != null ) flushedCallback().processState(STATE_SIPREMOTE, sipuri);
+				}
+				break;
+
+			case PacketFields.ENDTESTCALL:
+				inCall(false);
+				handleState(CaptionSessionState.STATE_CALL_ENDED, "");
+				break;
+
+			default:
+				break;
+		}
 	}
 
 	private void SendPoll()
 	{
-		byte[] packet;
-		int i, len;
-		String data;
-		int index = 0;
-		
-		data = "";
-		
 		if (!dontPoll)
 		{
-			data = "myMethod=PollData||myID="+session();
-			if (firstPoll)
-			{
-				firstPoll = false;
-				data += "||firstPoll=1";
-			}
+			byte[] packet = Buildi711PollPacket(firstPoll, firstContact == 1);
+			firstPoll = false;
 			if (firstContact == 1)
-			{
 				firstContact = 2;
-				data += "||firstOpContact=1";
-			}
-		}
-
-		if (data.length() > 0)
-		{
-			len = data.length() + 1;
-
-			packet = new byte[len];
-		
-			for (i=0; i<data.length(); i++)
-				packet[index++] = (byte)data.charAt(i); 
-			packet[index++] = 0; 
 
 			SendCommand(packet, true, true);
 		}
@@ -1665,13 +1554,21 @@ public class ProtocolWizard
 	
 	public void connect()
 	{
-		String uri = "wss://" + webSocketHost() + ":" + webSocketPort();
+		String uri = webSocketURI();
 
 		CCLog.trace("ProtocolWizard.startCall() websocket uri: " + uri);
-		webClient = new CaptionClient(uri, this);
+		webClient = new CaptionClient(uri, this, pingInterval());
 
 	}
 
+	/**
+	 * @return the address connect() opens the caption WebSocket on
+	 */
+	String webSocketURI()
+	{
+		return "wss://" + webSocketHost() + ":" + webSocketPort();
+	}
+
     private void connect(CaptionSessionState state, String host, int port) {
         state(state);
 		/*
@@ -1684,8 +1581,7 @@ public class ProtocolWizard
 		else {
 	        closeSocket();
 			mConnectInstance = new ConnectThread(this, host(), port());
-			mConnectThread = new Thread(mConnectInstance);
-			mConnectThread.start();
+			mConnectThread = start(mConnectInstance);
 		}
     }
  
@@ -1701,6 +1597,9 @@ public class ProtocolWizard
 			CCLog.trace("ProtocolWizard.closeSocket(): websocket");
 			webClient.close();
 		}
+		if (streamIOInstance != null) {
+			streamIOInstance.quit();
+		}
 		mOutputStream = null;
 		mInputStream = null;
 		if (mReadInstance != null) {
@@ -1712,10 +1611,12 @@ public class ProtocolWizard
 	private void shutdown(CaptionSessionState state)
 	{
 		CCLog.trace("ProtocolWizard.shutdown");
+		cancelReconnect();
 		stopWANLossWarningTimer();
 		mNumberToCall = "";
 		mRegistered = false;
 		state(state);
+		flushCaptions();
 		if (callback() != null){
 			callback().processState(state(), "");
 		}
@@ -1727,434 +1628,249 @@ public class ProtocolWizard
 		closeSocket();
 	}
 	
+	private byte[] BuildLogEventPacket(String event)
+	{
+		return PacketEncoder.begin(PacketEncoder.LOG_EVENT)
+				.raw(sessionBytes)
+				.field(PacketEncoder.USER_AGENT, userAgent())
+				.field(PacketEncoder.CALL_TYPE, callType())
+				.field(PacketEncoder.EMPTY_UID_DEVICE_ID, deviceIDBytes)
+				.field(PacketEncoder.MY_IP, ip())
+				.field(PacketEncoder.DEVICE_CAPS, deviceCaps())
+				.field(PacketEncoder.TRACE, event)
+				.toPacket();
+	}
+	
+	private byte[] BuildStatusUpdatePacket(PhoneEvent event, String message)
+	{
+		return PacketEncoder.begin(PacketEncoder.STATUS_UPDATE)
+				.raw(sessionBytes)
+				.field(PacketEncoder.STATUS, event.toString())
+				.field(PacketEncoder.MESSAGE, message)
+				.toPacket();
+	}
+	
+	private byte[] Buildi711PollPacket(boolean firstPoll, boolean firstOpContact)
+	{
+		PacketEncoder encoder = PacketEncoder.begin(PacketEncoder.POLL_DATA).raw(sessionBytes);
+		if (firstPoll)
+			encoder.raw(PacketEncoder.FIRST_POLL);
+		if (firstOpContact)
+			encoder.raw(PacketEncoder.FIRST_OP_CONTACT);
+		return encoder.toPacket();
+	}
+	
 	private byte[] BuildCallActivePacket()
 	{
-		byte[] packet;
-		int i, len;
-		String data;
-		int 	index = 0;
-		
-		data = "myMethod=CallActive";
-		data += "||deviceType=" + deviceType();
-		data += "||deviceID=" + deviceID();
-		data += "||myIP=" + ip();
-		data += "||deviceCaps=" + deviceCaps();
-		data += "||callType="+callType();
-		data += "||number="+callNumber();
-		len = data.length() + 1;
-		packet = new byte[len];
-		
-		for (i=0; i<data.length(); i++)
-			packet[index++] = (byte)data.charAt(i); 
-		packet[index++] = 0; 
-
-		return packet;
+		return PacketEncoder.begin(PacketEncoder.CALL_ACTIVE)
+				.field(PacketEncoder.DEVICE_TYPE, deviceType())
+				.field(PacketEncoder.DEVICE_ID, deviceIDBytes)
+				.field(PacketEncoder.MY_IP, ip())
+				.field(PacketEncoder.DEVICE_CAPS, deviceCaps())
+				.field(PacketEncoder.CALL_TYPE, callType())
+				.field(PacketEncoder.NUMBER, callNumber())
+				.toPacket();
 	}
 	
 	private byte[] BuildCallEndPacket()
 	{
-		byte[] packet;
-		int i, len;
-		String data;
-		int 	index = 0;
-		
-		data = "myMethod=CallEnd";
-		data += "||deviceType=" + deviceType();
-		data += "||deviceID=" + deviceID();
-		data += "||myIP=" + ip();
-		len = data.length() + 1;
-		packet = new byte[len];
-		
-		for (i=0; i<data.length(); i++)
-			packet[index++] = (byte)data.charAt(i); 
-		packet[index++] = 0; 
-
-		return packet;
+		return PacketEncoder.begin(PacketEncoder.CALL_END)
+				.field(PacketEncoder.DEVICE_TYPE, deviceType())
+				.field(PacketEncoder.DEVICE_ID, deviceIDBytes)
+				.field(PacketEncoder.MY_IP, ip())
+				.toPacket();
 	}
 	
 	private byte[] BuildSIPActivePacket()
 	{
-		byte[] packet;
-		int i, len;
-		String data;
-		int 	index = 0;
-		
-		data = "myMethod=SIPActive";
-		data += "||deviceType=" + deviceType();
-		data += "||deviceID=" + deviceID();
-		data += "||myIP=" + ip();
-		data += "||number=" + callNumber();
-		len = data.length() + 1;
-		packet = new byte[len];
-		
-		for (i=0; i<data.length(); i++)
-			packet[index++] = (byte)data.charAt(i); 
-		packet[index++] = 0; 
-
-		return packet;
+		return PacketEncoder.begin(PacketEncoder.SIP_ACTIVE)
+				.field(PacketEncoder.DEVICE_TYPE, deviceType())
+				.field(PacketEncoder.DEVICE_ID, deviceIDBytes)
+				.field(PacketEncoder.MY_IP, ip())
+				.field(PacketEncoder.NUMBER, callNumber())
+				.toPacket();
 	}
 	
 	private byte[] BuildSIPRestartPacket()
 	{
-		byte[] packet;
-		int i, len;
-		String data;
-		int 	index = 0;
-		
-		data = "myMethod=SIPRestart";
-		data += "||deviceType=" + deviceType();
-		data += "||deviceID=" + deviceID();
-		data += "||myIP=" + ip();
-		len = data.length() + 1;
-		packet = new byte[len];
-		
-		for (i=0; i<data.length(); i++)
-			packet[index++] = (byte)data.charAt(i); 
-		packet[index++] = 0; 
-
-		return packet;
+		return PacketEncoder.begin(PacketEncoder.SIP_RESTART)
+				.field(PacketEncoder.DEVICE_TYPE, deviceType())
+				.field(PacketEncoder.DEVICE_ID, deviceIDBytes)
+				.field(PacketEncoder.MY_IP, ip())
+				.toPacket();
 	}
 	
 	private byte[] BuildSIPFailedPacket()
 	{
-		byte[] packet;
-		int i, len;
-		String data;
-		int 	index = 0;
-		
-		data = "myMethod=SIPFailed";
-		data += "||deviceType=" + deviceType();
-		data += "||deviceID=" + deviceID();
-		data += "||myIP=" + ip();
-		len = data.length() + 1;
-		packet = new byte[len];
-		
-		for (i=0; i<data.length(); i++)
-			packet[index++] = (byte)data.charAt(i); 
-		packet[index++] = 0; 
-
-		return packet;
+		return PacketEncoder.begin(PacketEncoder.SIP_FAILED)
+				.field(PacketEncoder.DEVICE_TYPE, deviceType())
+				.field(PacketEncoder.DEVICE_ID, deviceIDBytes)
+				.field(PacketEncoder.MY_IP, ip())
+				.toPacket();
 	}
 	
     private byte[] Buildi711MessagePacket(String text)
 	{
-		byte[] packet;
-		int i, len;
-		String data;
-		int 	index = 0;
-		
-		data = "myMethod=ExchangeData||myID="+session()+"||myText="+text;
-		len = data.length() + 1;
-
-		packet = new byte[len];
-		
-		for (i=0; i<data.length(); i++)
-			packet[index++] = (byte)data.charAt(i); 
-		packet[index++] = 0; 
-
-		return packet;
+		return PacketEncoder.begin(PacketEncoder.EXCHANGE_DATA)
+				.raw(sessionBytes)
+				.field(PacketEncoder.MY_TEXT, text)
+				.toPacket();
 	}
 
 	private byte[] Buildi711RegistrationRequest()
 	{
-		byte[] packet;
-		int i, len;
-		String data;
-		int 	index = 0;
-		
-		data = "myMethod=Register||userAgent="+userAgent()+"||callType="+callType()+"||myUID="+ID()+"||deviceID="+deviceID()+"||deviceToken="+pushToken()+"||useEncryption=0||enterprise="+enterpriseID()+"||";
+		PacketEncoder encoder = PacketEncoder.begin(PacketEncoder.REGISTER)
+				.value(userAgent())
+				.field(PacketEncoder.CALL_TYPE, callType())
+				.field(PacketEncoder.MY_UID, ID())
+				.field(PacketEncoder.DEVICE_ID, deviceIDBytes)
+				.field(PacketEncoder.DEVICE_TOKEN, pushToken())
+				.field(PacketEncoder.ENTERPRISE, enterpriseID())
+				.raw(PacketEncoder.SEPARATOR);
 		if (callGroup().length() > 0) {
-			data += "callGroup=" + callGroup()  + "||";
+			encoder.field(PacketEncoder.CALL_GROUP_TRAILING, callGroup()).raw(PacketEncoder.SEPARATOR);
 		}
-		
-		len = data.length() + 1;
-
-		packet = new byte[len];
-		
-		for (i=0; i<data.length(); i++)
-			packet[index++] = (byte)data.charAt(i); 
-		packet[index++] = 0; 
-
-		return packet;
+		return encoder.toPacket();
 	}
 	
 	private byte[] BuildInboundCallPacket()
 	{
 		//myMethod=InboundCall||sessionID=%@||deviceID=%@||userAgent=%@
-		byte[] packet;
-		int i, len;
-		String data;
-		int 	index = 0;
-		
-		data  = "myMethod=AcceptInboundCall||sessionID=" + session() + "||deviceID=" + deviceID();
-		data += "||userAgent=" + userAgent() + "||myUID=" + ID() + "||callType=125";
-
-		len = data.length() + 1;
-
-		packet = new byte[len];
-		
-		for (i=0; i<data.length(); i++)
-			packet[index++] = (byte)data.charAt(i); 
-		packet[index++] = 0; 
-
-		return packet;
+		return PacketEncoder.begin(PacketEncoder.ACCEPT_INBOUND_CALL)
+				.raw(sessionBytes)
+				.field(PacketEncoder.DEVICE_ID, deviceIDBytes)
+				.field(PacketEncoder.USER_AGENT, userAgent())
+				.field(PacketEncoder.MY_UID, ID())
+				.raw(PacketEncoder.INBOUND_CALL_TYPE)
+				.toPacket();
+	}
+	
+	private PacketEncoder encodeStartRelay()
+	{
+		return PacketEncoder.begin(PacketEncoder.START_RELAY)
+				.raw(sessionBytes)
+				.raw(PacketEncoder.PREFERRED_LANGUAGE)
+				.field(PacketEncoder.NUMBER, callNumber())
+				.field(PacketEncoder.CALLBACK_NUMBER, callbackNumber())
+				.field(PacketEncoder.INSTRUCTIONS, instructions())
+				.field(PacketEncoder.USER_AGENT, userAgent())
+				.field(PacketEncoder.CALL_TYPE, callType())
+				.field(PacketEncoder.MY_UID, ID())
+				.field(PacketEncoder.DEVICE_ID, deviceIDBytes)
+				.field(PacketEncoder.MY_IP, ip())
+				.field(PacketEncoder.DEVICE_CAPS, deviceCaps());
 	}
-	
+
 	private byte[] Buildi711CallPacket()
 	{
-		byte[] packet;
-		int i, len;
-		String data;
-		int 	index = 0;
-		
-		data  = "myMethod=StartRelay||myID=" + session() + "||preferredLanguage=English";
-		data += "||number=" + callNumber() + "||callbacknumber=" + callbackNumber();
-		data += "||instructions=" + instructions() + "||userAgent=" + userAgent();
-		data += "||callType=" + callType() + "||myUID="+ID()+"||deviceID=" + deviceID();
-		data += "||myIP=" + ip();
-		data += "||deviceCaps=" + deviceCaps();
-
-		CCLog.trace("the data is"+data);
+		PacketEncoder encoder = encodeStartRelay();
 
-		len = data.length() + 1;
-
-		packet = new byte[len];
-		
-		for (i=0; i<data.length(); i++)
-			packet[index++] = (byte)data.charAt(i); 
-		packet[index++] = 0; 
+		CCLog.trace("the data is"+encoder);
 
-		return packet;
+		return encoder.toPacket();
 	}
 	
 	private byte[] BuildEasyCallPacket()
 	{
-		byte[] packet;
-		int i, len;
-		String data;
-		int 	index = 0;
-		
-		data = "myMethod=StartRelay||myID=" + session();
-		data += "||preferredLanguage=English";
-		data += "||number="+callNumber();
-		data += "||callbacknumber=" + callbackNumber();
-		data += "||instructions=" + instructions();
-		data += "||userAgent=" + userAgent();
-		data += "||callType=" + callType();
-		data += "||myUID=" + ID();
-		data += "||deviceID=" + deviceID();
-		data += "||myIP=" + ip();
-		data += "||deviceCaps=" + deviceCaps();
+		PacketEncoder encoder = encodeStartRelay();
 		if (callGroup().length() > 0) {
-			data += "||callGroup=" + callGroup();
+			encoder.field(PacketEncoder.CALL_GROUP, callGroup());
 		}
-		len = data.length() + 1;
-		packet = new byte[len];
-		
-		for (i=0; i<data.length(); i++)
-			packet[index++] = (byte)data.charAt(i); 
-		packet[index++] = 0; 
-
-		return packet;
+		return encoder.toPacket();
 	}
 	
 	private byte[] BuildTestCallPacket()
 	{
-		byte[] packet;
-		int i, len;
-		String data;
-		int 	index = 0;
-		
-		data = "myMethod=TestCall||myID=" + session();
-		data += "||userAgent=" + userAgent();
-		data += "||callType=" + callType();
-		data += "||myUID=||deviceID=" + deviceID();
-		data += "||myIP=" + ip();
-		data += "||deviceCaps=" + deviceCaps();
-		len = data.length() + 1;
-		packet = new byte[len];
-		
-		for (i=0; i<data.length(); i++)
-			packet[index++] = (byte)data.charAt(i); 
-		packet[index++] = 0; 
-
-		return packet;
+		return PacketEncoder.begin(PacketEncoder.TEST_CALL)
+				.raw(sessionBytes)
+				.field(PacketEncoder.USER_AGENT, userAgent())
+				.field(PacketEncoder.CALL_TYPE, callType())
+				.field(PacketEncoder.EMPTY_UID_DEVICE_ID, deviceIDBytes)
+				.field(PacketEncoder.MY_IP, ip())
+				.field(PacketEncoder.DEVICE_CAPS, deviceCaps())
+				.toPacket();
 	}
 	
 	private byte[] BuildEndTestCallPacket()
 	{
-		byte[] packet;
-		int i, len;
-		String data;
-		int 	index = 0;
-		
-		data = "myMethod=EndTestCall";
-		len = data.length() + 1;
-		packet = new byte[len];
-		
-		for (i=0; i<data.length(); i++)
-			packet[index++] = (byte)data.charAt(i); 
-		packet[index++] = 0; 
-
-		return packet;
+		return PacketEncoder.begin(PacketEncoder.END_TEST_CALL).toPacket();
 	}
 	
 	private byte[] Buildi711KeepAlive()
 	{
-		byte[] packet;
-		int i, len;
-		String data;
-		int 	index = 0;
-		
-		data = "myMethod=KeepAlive||myID="+session();
-		len = data.length() + 1;
-
-		packet = new byte[len];
-		
-		for (i=0; i<data.length(); i++)
-			packet[index++] = (byte)data.charAt(i); 
-		packet[index++] = 0; 
-
-		return packet;
+		return PacketEncoder.begin(PacketEncoder.KEEP_ALIVE)
+				.raw(sessionBytes)
+				.toPacket();
 	}
 
 	private byte[] Buildi711DeclineCallPacket()
 	{
-		byte[] packet;
-		int i, len;
-		String data;
-		int 	index = 0;
-		
 		//myMethod=DeclineInboundCall||sessionID=||deviceID=||userAgent=
-		data = "myMethod=DeclineInboundCall||sessionID="+session()+
-				"||deviceID="+this.deviceID()+
-				"||userAgent="+this.userAgent()+ 
-				"||myUID=" + ID() + "||callType=125";
-		len = data.length() + 1;
-
-		packet = new byte[len];
-		
-		for (i=0; i<data.length(); i++)
-			packet[index++] = (byte)data.charAt(i); 
-		packet[index++] = 0; 
-
-		return packet;
+		return PacketEncoder.begin(PacketEncoder.DECLINE_INBOUND_CALL)
+				.raw(sessionBytes)
+				.field(PacketEncoder.DEVICE_ID, deviceIDBytes)
+				.field(PacketEncoder.USER_AGENT, userAgent())
+				.field(PacketEncoder.MY_UID, ID())
+				.raw(PacketEncoder.INBOUND_CALL_TYPE)
+				.toPacket();
 	}
 	
 	private byte[] Buildi711HangupPacket()
 	{
-		byte[] packet;
-		int i, len;
-		String data;
-		int 	index = 0;
-		
-		data = "myMethod=StopRelay||myID="+session();
-		len = data.length() + 1;
-
-		packet = new byte[len];
-		
-		for (i=0; i<data.length(); i++)
-			packet[index++] = (byte)data.charAt(i); 
-		packet[index++] = 0; 
-
-		return packet;
+		return PacketEncoder.begin(PacketEncoder.STOP_RELAY)
+				.raw(sessionBytes)
+				.toPacket();
 	}
 	        	
 	private byte[] Buildi711AnswerPacket()
 	{
-		byte[] packet;
-		int i, len;
-		String data;
-		int 	index = 0;
-		
-		data  = "myMethod=answerCall||fromBook="+callType()+"||myID="+session()+"||deviceID=";
-		
+		String token = pushToken();
 		if (overrideToken() != null && overrideToken().length() > 0)
-			data += overrideToken();
-		else
-			data += pushToken();
-
-		len = data.length() + 1;
-
-		packet = new byte[len];
-		
-		for (i=0; i<data.length(); i++)
-			packet[index++] = (byte)data.charAt(i); 
-		packet[index++] = 0; 
+			token = overrideToken();
 
-		return packet;
+		return PacketEncoder.begin(PacketEncoder.ANSWER_CALL)
+				.value(callType())
+				.field(PacketEncoder.MY_ID, sessionBytes)
+				.field(PacketEncoder.DEVICE_ID, token)
+				.toPacket();
 	}
 	
 	private byte[] Buildi711IgnorePacket()
 	{
-		byte[] packet;
-		int i, len;
-		String data;
-		int 	index = 0;
-		
-		data  = "myMethod=ignoreCall||fromBook="+callType()+"||myID="+session()+"||deviceID="+pushToken();
-
-		len = data.length() + 1;
-
-		packet = new byte[len];
-		
-		for (i=0; i<data.length(); i++)
-			packet[index++] = (byte)data.charAt(i); 
-		packet[index++] = 0; 
-
-		return packet;
+		return PacketEncoder.begin(PacketEncoder.IGNORE_CALL)
+				.value(callType())
+				.field(PacketEncoder.MY_ID, sessionBytes)
+				.field(PacketEncoder.DEVICE_ID, pushToken())
+				.toPacket();
 	}
 	
 	private byte[] BuildCallUpdatePacket()
 	{
-		byte[] packet;
-		int i, len;
-		String data;
-		int 	index = 0;
-		
-		data  = "myMethod=UpdateCall||myID=" + session();
-		data += "||number=" + callNumber();
-		data += "||callbacknumber=" + callbackNumber();
-		data += "||instructions=" + instructions();
-		data += "||userAgent=" + userAgent();
-		data += "||callType=" + callType();
-		data += "||myUID="+ID();
-		data += "||deviceID=" + deviceID();
-		data += "||myIP=" + ip();
-		data += "||deviceCaps=" + deviceCaps();
-
-		len = data.length() + 1;
-		packet = new byte[len];
-		
-		for (i=0; i<data.length(); i++)
-			packet[index++] = (byte)data.charAt(i); 
-		packet[index++] = 0; 
-
-		return packet;
+		return PacketEncoder.begin(PacketEncoder.UPDATE_CALL)
+				.raw(sessionBytes)
+				.field(PacketEncoder.NUMBER, callNumber())
+				.field(PacketEncoder.CALLBACK_NUMBER, callbackNumber())
+				.field(PacketEncoder.INSTRUCTIONS, instructions())
+				.field(PacketEncoder.USER_AGENT, userAgent())
+				.field(PacketEncoder.CALL_TYPE, callType())
+				.field(PacketEncoder.MY_UID, ID())
+				.field(PacketEncoder.DEVICE_ID, deviceIDBytes)
+				.field(PacketEncoder.MY_IP, ip())
+				.field(PacketEncoder.DEVICE_CAPS, deviceCaps())
+				.toPacket();
 	}
 	
 	private byte[] BuildStartCaptionsPacket()
 	{
-		byte[] packet;
-		int i, len;
-		String data;
-		int 	index = 0;
-		
-		data = "myMethod=StartCaptions||myID=" + session();
-		data += "||userAgent=" + userAgent();
-		data += "||callType=" + callType();
-		data += "||myUID=" + ID();
-		data += "||deviceID=" + deviceID();
-		data += "||myIP=" + ip();
-		data += "||deviceCaps=" + deviceCaps();
-		len = data.length() + 1;
-		packet = new byte[len];
-		
-		for (i=0; i<data.length(); i++)
-			packet[index++] = (byte)data.charAt(i); 
-		packet[index++] = 0; 
-
-		return packet;
+		return PacketEncoder.begin(PacketEncoder.START_CAPTIONS)
+				.raw(sessionBytes)
+				.field(PacketEncoder.USER_AGENT, userAgent())
+				.field(PacketEncoder.CALL_TYPE, callType())
+				.field(PacketEncoder.MY_UID, ID())
+				.field(PacketEncoder.DEVICE_ID, deviceIDBytes)
+				.field(PacketEncoder.MY_IP, ip())
+				.field(PacketEncoder.DEVICE_CAPS, deviceCaps())
+				.toPacket();
 	}
 	
 	private void acceptInboundCall()
@@ -2256,11 +1972,12 @@ public class ProtocolWizard
 	
 			mWriteInstance.SetOutputStream(mOutputStream);
 	
-			byte[] nullbyte = new byte[1];
-			nullbyte[0] = 0;
-	
-			mWriteInstance.write(data);
-			mWriteInstance.write(nullbyte);
+			// PacketEncoder.toPacket() has already NUL-terminated the packet,
+			// so it is queued as one chunk and is either sent whole or dropped.
+			if (!mWriteInstance.write(data)) {
+				CCLog.error("ProtocolWizard.SendCommand(): write queue full, dropped ["+outData.length()+"]");
+				return;
+			}
 		}
 		CCLog.trace("ProtocolWizard.SendCommand(): ==> ["+outData.length()+"]");
 	}
@@ -2298,33 +2015,101 @@ public class ProtocolWizard
 		return retryInterval;
 	}
 
+	/**
+	 * Milliseconds between WebSocket pings, 0 for the shared client's
+	 * default.  With pings on, a dead connection is detected by the
+	 * transport and the keep-alive timer is not armed.
+	 */
+	public long pingInterval() {
+		return pingInterval;
+	}
+
+	public void pingInterval(long pingInterval) {
+		this.pingInterval = pingInterval;
+	}
+
 	public void retryInterval(long retryInterval) {
 		this.retryInterval = retryInterval;
 	}
 
+	/**
+	 * Caption deltas arriving within windowMillis of each other are
+	 * delivered as one callback: a CaptionEvent if the callback is a
+	 * CaptionEventInterface, otherwise a single STATE_DATA.  0 turns
+	 * batching off, which is the default.
+	 */
+	public void captionBatchWindow(long windowMillis) {
+		CaptionBatcher old = captionBatcher;
+		captionBatcher = windowMillis > 0 ? new CaptionBatcher(this, windowMillis) : null;
+		if (old != null)
+			old.flush();
+	}
+
+	public long captionBatchWindow() {
+		CaptionBatcher batcher = captionBatcher;
+		return batcher != null ? batcher.windowMillis() : 0;
+	}
+
+	/**
+	 * Delivers any batched captions now, ahead of the next callback.
+	 */
+	private void flushCaptions() {
+		CaptionBatcher batcher = captionBatcher;
+		if (batcher != null)
+			batcher.flush();
+	}
+
+	/**
+	 * Callback for anything other than caption text: flushes batched
+	 * captions first so that a state change or error delivered from a
+	 * packet never overtakes captions that arrived before it.
+	 */
+	private ProtocolInterface flushedCallback() {
+		flushCaptions();
+		return callback();
+	}
+
+	/**
+	 * Arms, or pushes back, the keep-alive deadline on the shared wheel
+	 * timer.  After the first call this only moves the deadline.  A
+	 * WebSocket that pings needs no timer: a missed pong fails it, and
+	 * CaptionClient reports that through pingTimedOut().
+	 */
 	private void startWANLossWarningTimer() {
-		if(wanLossTimer == null) {
-			wanLossTimer = new Timer("WANLossTimer");
+		CaptionClient client = webClient;
+		if (isWebSocketClient() && client != null && client.pingIntervalMillis() > 0)
+			return;
+		if(wanLossTimeout == null) {
+			wanLossTimeout = HashedWheelTimer.shared().newTimeout(new WANLossWarning(), executor);
 		}
-		TimerTask task = new WANLossWarning();
-
-		wanLossTimer.schedule(task, 5000);
+		wanLossTimeout.arm(WAN_LOSS_TIMEOUT);
 		//CCLog.trace("Started WAN loss warning timer." );
 	}
 
 	private void stopWANLossWarningTimer() {
-		if(wanLossTimer != null) {
-			wanLossTimer.cancel();
-			wanLossTimer = null;
+		if(wanLossTimeout != null) {
+			wanLossTimeout.cancel();
 		}
 		//CCLog.trace("Canceled wanLossTimer." );
 	}
 
-	class WANLossWarning extends TimerTask {
+	/**
+	 * Not used by instantiated classes
+	 *
+	 * The WebSocket went a ping interval without a pong; gives the
+	 * warning the keep-alive timer gives for the other transports.
+	 */
+	public void pingTimedOut() {
+		stopWANLossWarningTimer();
+		new WANLossWarning().run();
+	}
+
+	class WANLossWarning implements Runnable {
 		public void run() {
 			System.out.println("WAN loss warning ");
 			CCLog.trace("WAN loss warning ");
-			callback().processError(KEEP_ALIVE_TIMEOUT_CODE, KEEP_ALIVE_TIMEOUT_MSG);
+			if (callback() != null)
+				callback().processError(KEEP_ALIVE_TIMEOUT_CODE, KEEP_ALIVE_TIMEOUT_MSG);
 		}
 	}
 
@@ -2333,7 +2118,8 @@ public class ProtocolWizard
 class StreamIOThread extends Thread
 {
     ProtocolWizard  mWizard;
-    boolean run;
+    volatile boolean run;
+    volatile Thread worker;
 
     public StreamIOThread(ProtocolWizard pw)
     {
@@ -2345,6 +2131,7 @@ class StreamIOThread extends Thread
     
     public void run()
     {
+    	worker = Thread.currentThread();
 		try {
 			while (!done()) {
 				if ( mWizard.inputStream() == null ){
@@ -2353,22 +2140,27 @@ class StreamIOThread extends Thread
 					break;
 				}
 				
-				mWizard.processData();
-				
-				try {
-					sleep(10);
-				} 
-				catch (InterruptedException foo) {
-				}                 
+				mWizard.processNextPacket();
 			}
 		} 
+		catch (InterruptedException foo) {
+			CCLog.trace("ProtocolWizard.StreamIOThread.run() interrupted, done");
+		}
 		catch (Exception exc) {
 		    CCLog.trace("ProtocolWizard.StreamIOThread.run() " + exc.getMessage());
 		}
+		synchronized (this) {
+			worker = null;
+			// may be a pooled thread; don't leak a late quit() into its next task
+			Thread.interrupted();
+		}
     }
     
-    public void quit(){
+    public synchronized void quit(){
     	run = false;
+    	Thread w = worker;
+    	if (w != null && w != Thread.currentThread())
+    		w.interrupt();
     }
     
     public boolean done() {
@@ -0,0 +1,140 @@
+package com.clearcaptions.transport.protocol;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process wide scheduler for connection retries.
+ *
+ * A single timer thread waits out every session's backoff; when a delay
+ * expires the retry is handed to the session's executor, or to a shared
+ * worker pool, so a slow connect never holds up other sessions' timers and
+ * no thread is parked for the length of a backoff.  Each host also gets a
+ * CircuitBreaker shared by all sessions connecting to it.
+ */
+public final class ReconnectScheduler
+{
+	static final int BREAKER_THRESHOLD = 5;
+	static final long BREAKER_OPEN_MILLIS = 10 * 1000;
+
+	private static final ScheduledExecutorService timer =
+			Executors.newSingleThreadScheduledExecutor(daemonFactory("ReconnectTimer"));
+	private static final ExecutorService workers =
+			Executors.newCachedThreadPool(daemonFactory("ReconnectWorker"));
+	private static final ConcurrentHashMap<String, CircuitBreaker> breakers =
+			new ConcurrentHashMap<String, CircuitBreaker>();
+
+	private ReconnectScheduler()
+	{
+	}
+
+	/**
+	 * Runs task after delay milliseconds on the given executor, or on the
+	 * shared worker pool if executor is null.
+	 */
+	public static Task schedule(Runnable task, long delay, Executor executor)
+	{
+		Task t = new Task(task, executor != null ? executor : workers);
+		t.future = timer.schedule(t, Math.max(0, delay), TimeUnit.MILLISECONDS);
+		return t;
+	}
+
+	/**
+	 * @return the breaker shared by every session connecting to host
+	 */
+	public static CircuitBreaker breaker(String host)
+	{
+		String key = host != null ? host : "";
+		CircuitBreaker breaker = breakers.get(key);
+		if (breaker == null) {
+			breaker = new CircuitBreaker(BREAKER_THRESHOLD, BREAKER_OPEN_MILLIS);
+			CircuitBreaker existing = breakers.putIfAbsent(key, breaker);
+			if (existing != null)
+				breaker = existing;
+		}
+		return breaker;
+	}
+
+	/**
+	 * Full jitter exponential backoff: a random delay between 0 and
+	 * min(cap, base * (2^attempt - 1)).
+	 */
+	public static long fullJitter(long attempt, long baseMillis, long capMillis)
+	{
+		return fullJitter(attempt, baseMillis, capMillis, Math.random());
+	}
+
+	/**
+	 * fullJitter() for a given random number in [0, 1).
+	 */
+	static long fullJitter(long attempt, long baseMillis, long capMillis, double random)
+	{
+		double maxInterval = (Math.pow(2, attempt) - 1) * baseMillis;
+		if (maxInterval > capMillis)
+			maxInterval = capMillis;
+		return (long) (random * maxInterval);
+	}
+
+	private static ThreadFactory daemonFactory(final String name)
+	{
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	/**
+	 * Handle for a scheduled retry.  cancel() stops it whether it is still
+	 * waiting on the timer or already queued on its executor.
+	 */
+	public static final class Task implements Runnable
+	{
+		private final Runnable task;
+		private final Executor executor;
+		private volatile boolean cancelled;
+		volatile ScheduledFuture<?> future;
+
+		Task(Runnable task, Executor executor)
+		{
+			this.task = task;
+			this.executor = executor;
+		}
+
+		public void run()
+		{
+			if (cancelled)
+				return;
+			executor.execute(new Runnable() {
+				public void run() {
+					if (!cancelled)
+						task.run();
+				}
+			});
+		}
+
+		public void cancel()
+		{
+			cancelled = true;
+			ScheduledFuture<?> f = future;
+			if (f != null)
+				f.cancel(false);
+		}
+
+		public boolean isCancelled()
+		{
+			return cancelled;
+		}
+	}
+}
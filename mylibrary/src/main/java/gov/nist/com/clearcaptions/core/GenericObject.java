@@ -147,6 +147,11 @@ public abstract class GenericObject implements Serializable, Cloneable {
 	public static Object makeClone(Object obj) {
 		if (obj == null)
 			throw new NullPointerException("null obj!");
+		// Parameter values are nearly always strings or parsed objects.
+		if (obj instanceof String)
+			return obj;
+		else if (obj instanceof GenericObject)
+			return ((GenericObject) obj).clone();
 		Class<?> c = obj.getClass();
 		Object clone_obj = obj;
 		if (immutableClasses.contains (c))
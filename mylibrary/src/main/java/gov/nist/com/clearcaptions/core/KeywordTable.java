@@ -0,0 +1,150 @@
+/*
+* Conditions Of Use 
+* 
+* This software was developed by employees of the National Institute of
+* Standards and Technology (NIST), an agency of the Federal Government.
+* Pursuant to title 15 Untied States Code Section 105, works of NIST
+* employees are not subject to copyright protection in the United States
+* and are considered to be in the public domain.  As a result, a formal
+* license is not needed to use the software.
+* 
+* This software is provided by NIST as a service and is expressly
+* provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+* OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+* AND DATA ACCURACY.  NIST does not warrant or make any representations
+* regarding the use of the software or the results thereof, including but
+* not limited to the correctness, accuracy, reliability or usefulness of
+* the software.
+* 
+* Permission to use this software is contingent upon your acceptance
+* of the terms of this agreement
+*  
+* .
+* 
+*/
+package gov.nist.com.clearcaptions.core;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Immutable keyword table of a lexer. Keywords are matched case
+ * insensitively against a region of the lexer's buffer, so a token can be
+ * classified without copying or upper-casing it. The table is never
+ * modified after construction and needs no locking.
+ *
+ * @version 1.2
+ */
+public final class KeywordTable {
+
+	public static final KeywordTable EMPTY = new KeywordTable(null);
+
+	/** Returned by get() for a name that is not a keyword. */
+	public static final int NONE = -1;
+
+	private final String[] names;
+	private final int[] types;
+	private final int mask;
+
+	/**
+	 * @param keywords keyword names to token types, may be null
+	 */
+	public KeywordTable(Map<String, Integer> keywords) {
+		int count = keywords != null ? keywords.size() : 0;
+		int size = 2;
+		while (size < count * 2)
+			size <<= 1;
+		names = new String[size];
+		types = new int[size];
+		mask = size - 1;
+
+		if (keywords == null)
+			return;
+		Iterator<Map.Entry<String, Integer>> it = keywords.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Integer> e = it.next();
+			String name = upperCase(e.getKey());
+			int i = hash(name, 0, name.length()) & mask;
+			while (names[i] != null && !names[i].equals(name))
+				i = (i + 1) & mask;
+			names[i] = name;
+			types[i] = e.getValue().intValue();
+		}
+	}
+
+	/**
+	 * @return the token type of buffer[start, end), or NONE
+	 */
+	public int get(String buffer, int start, int end) {
+		int length = end - start;
+		int i = hash(buffer, start, end) & mask;
+		String name;
+		while ((name = names[i]) != null) {
+			if (name.length() == length && matches(name, buffer, start))
+				return types[i];
+			i = (i + 1) & mask;
+		}
+		return NONE;
+	}
+
+	public int get(String name) {
+		return get(name, 0, name.length());
+	}
+
+	/**
+	 * @return the token type of buffer[start, end), or NONE
+	 */
+	public int get(char[] buffer, int start, int end) {
+		int length = end - start;
+		int i = hash(buffer, start, end) & mask;
+		String name;
+		while ((name = names[i]) != null) {
+			if (name.length() == length && matches(name, buffer, start))
+				return types[i];
+			i = (i + 1) & mask;
+		}
+		return NONE;
+	}
+
+	private static boolean matches(String name, String buffer, int start) {
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) != upperCase(buffer.charAt(start + i)))
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean matches(String name, char[] buffer, int start) {
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) != upperCase(buffer[start + i]))
+				return false;
+		}
+		return true;
+	}
+
+	private static int hash(String s, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++)
+			h = 31 * h + upperCase(s.charAt(i));
+		return h ^ (h >>> 16);
+	}
+
+	private static int hash(char[] s, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++)
+			h = 31 * h + upperCase(s[i]);
+		return h ^ (h >>> 16);
+	}
+
+	private static char upperCase(char c) {
+		return c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+	}
+
+	private static String upperCase(String s) {
+		char[] chars = s.toCharArray();
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = upperCase(chars[i]);
+		return new String(chars);
+	}
+}
@@ -26,7 +26,8 @@
 package gov.nist.com.clearcaptions.core;
 
 import java.text.ParseException;
-import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /** A lexical analyzer that is used by all parsers in our implementation.
  *
@@ -82,44 +83,32 @@ public class LexerCore extends StringTokenizer {
 	public static final int AND = (int) '&';
 	public static final int UNDERSCORE = (int) '_';
 
-	protected static final Hashtable globalSymbolTable;
-	protected static final Hashtable lexerTables;
-	protected Hashtable currentLexer;
+	protected static final Map<Integer, String> globalSymbolTable =
+		new ConcurrentHashMap<Integer, String>();
+	protected KeywordTable currentLexer;
 	protected String currentLexerName;
 	protected Token currentMatch;
 
-	static {
-		globalSymbolTable = new Hashtable();
-		lexerTables = new Hashtable();
-	}
-
-	protected void addKeyword(String name, int value) {
-		// System.out.println("addKeyword " + name + " value = " + value);
-		// new Exception().printStackTrace();
-		Integer val = new Integer(value);
-		currentLexer.put(name, val);
+	/**
+	 * Adds a keyword to a lexer's table while the table is being built.
+	 * The tables are built once, before any lexer uses them, and then
+	 * wrapped in a KeywordTable.
+	 */
+	protected static void addKeyword(Map<String, Integer> lexer, String name, int value) {
+		Integer val = Integer.valueOf(value);
+		lexer.put(name, val);
 		if (!globalSymbolTable.containsKey(val))
 			globalSymbolTable.put(val, name);
 	}
 
 	public String lookupToken(int value) {
 		if (value > START) {
-			return (String) globalSymbolTable.get(new Integer(value));
+			return globalSymbolTable.get(Integer.valueOf(value));
 		} else {
-			Character ch = new Character((char) value);
-			return ch.toString();
+			return String.valueOf((char) value);
 		}
 	}
 
-	protected Hashtable addLexer(String lexerName) {
-		currentLexer = (Hashtable) lexerTables.get(lexerName);
-		if (currentLexer == null) {
-			currentLexer = new Hashtable();
-			lexerTables.put(lexerName, currentLexer);
-		}
-		return currentLexer;
-	}
-
 	//public abstract void selectLexer(String lexerName);
 
 	public void selectLexer(String lexerName) {
@@ -127,7 +116,7 @@ public class LexerCore extends StringTokenizer {
 	}
 
 	protected LexerCore() {
-		this.currentLexer = new Hashtable();
+		this.currentLexer = KeywordTable.EMPTY;
 		this.currentLexerName = "charLexer";
 	}
 
@@ -135,6 +124,7 @@ public class LexerCore extends StringTokenizer {
 	 */
 	public LexerCore(String lexerName, String buffer) {
 		super(buffer);
+		this.currentLexer = KeywordTable.EMPTY;
 		this.currentLexerName = lexerName;
 	}
 
@@ -173,14 +163,10 @@ public class LexerCore extends StringTokenizer {
 		for (int i = 0; i < ntokens; i++) {
 			Token tok = new Token();
 			if (startsId()) {
-				String id = ttoken();
-				tok.tokenValue = id;
-                String idUppercase = id.toUpperCase();
-                if (currentLexer.containsKey(idUppercase)) {
-                    Integer type = (Integer) currentLexer.get(idUppercase);
-                    tok.tokenType = type.intValue();
-                } else
-                    tok.tokenType = ID;
+				int start = ptr;
+				int type = currentLexer.get(buffer, start, scanToken());
+				tok.tokenValue = buffer.substring(start, ptr);
+				tok.tokenType = type != KeywordTable.NONE ? type : ID;
 			} else {
 				char nextChar = getNextChar();
 				tok.tokenValue = String.valueOf(nextChar);
@@ -222,10 +208,10 @@ public class LexerCore extends StringTokenizer {
 				this.currentMatch.tokenValue = id;
 				this.currentMatch.tokenType = SAFE;
 			} else {
-				String nexttok = getNextId();
-				Integer cur = (Integer) currentLexer.get(nexttok.toUpperCase());
-
-				if (cur == null || cur.intValue() != tok)
+				int start = ptr;
+				int cur = currentLexer.get(buffer, start, scanToken());
+				String nexttok = buffer.substring(start, ptr);
+				if (cur != tok)
 					throw new ParseException(
 						buffer + "\nUnexpected Token : " + nexttok,
 						ptr);
@@ -297,93 +283,46 @@ public class LexerCore extends StringTokenizer {
 	 * @return true iff character c is a valid token character as per RFC3261
 	 */
 	public static final boolean isTokenChar( char c ) {
-		if ( isAlphaDigit(c) ) return true;
-		else switch (c)
-		{
-			case '-':
-	        case '.':
-	        case '!':
-	        case '%':
-	        case '*':
-	        case '_':
-	        case '+':
-	        case '`':
-	        case '\'':
-	        case '~':
-	            return true;
-	        default:
-	            return false;
-		}
+		if ( c <= 127 ) return (CHAR_CLASS[c] & TOKEN_CHAR) != 0;
+		return isAlphaDigit(c);
+	}
+
+	/**
+	 * @return true iff character c may appear in a token read by ttokenSafe()
+	 */
+	static boolean isSafeChar(char c) {
+		if (c <= 127) return (CHAR_CLASS[c] & SAFE_CHAR) != 0;
+		return isAlphaDigit(c);
 	}
 	
 	
 	public boolean startsId() {
-		try {
-			char nextChar = lookAhead(0);
-            return isTokenChar(nextChar);
-        } catch (ParseException ex) {
-			return false;
-		}
+		return ptr < bufferLen && isTokenChar(buffer.charAt(ptr));
 	}
 
 	public boolean startsSafeToken() {
-		try {
-			char nextChar = lookAhead(0);
-            if (isAlphaDigit(nextChar)) {
-                return true;
-            }
-            else {
-                switch (nextChar) {
-                    case '_':
-                    case '+':
-                    case '-':
-                    case '!':
-                    case '`':
-                    case '\'':
-                    case '.':
-                    case '/':
-                    case '}':
-                    case '{':
-                    case ']':
-                    case '[':
-                    case '^':
-                    case '|':
-                    case '~':
-                    case '%': // bug fix by Bruno Konik, JvB copied here
-                    case '#':
-                    case '@':
-                    case '$':
-                    case ':':
-                    case ';':
-                    case '?':
-                    case '\"':
-                    case '*':
-                    case '=': // Issue 155 on java.net
-                        return true;
-                    default:
-                        return false;
-                }
-            }
-		} catch (ParseException ex) {
+		if (ptr >= bufferLen)
 			return false;
-		}
+		char nextChar = buffer.charAt(ptr);
+		return isSafeChar(nextChar)
+			|| nextChar == '='; // Issue 155 on java.net
+	}
+
+	/**
+	 * Consume a token without copying it. The token is the buffer from the
+	 * pointer on entry up to the returned offset.
+	 *
+	 * @return the offset just past the token
+	 */
+	public int scanToken() {
+		while (ptr < bufferLen && isTokenChar(buffer.charAt(ptr)))
+			ptr++;
+		return ptr;
 	}
 
 	public String ttoken() {
 		int startIdx = ptr;
-		try {
-			while (hasMoreChars()) {
-				char nextChar = lookAhead(0);
-                if ( isTokenChar(nextChar) ) {
-                    consume(1);
-                } else {
-                	break;
-                }
-            }
-			return buffer.substring(startIdx, ptr);
-		} catch (ParseException ex) {
-			return null;
-		}
+		return buffer.substring(startIdx, scanToken());
 	}
 
 	/* JvB: unreferenced
@@ -429,53 +368,9 @@ public class LexerCore extends StringTokenizer {
 
 	public String ttokenSafe() {
 		int startIdx = ptr;
-		try {
-			while (hasMoreChars()) {
-				char nextChar = lookAhead(0);
-                if (isAlphaDigit(nextChar)) {
-                    consume(1);
-                }
-                else {
-                    boolean isValidChar = false;
-                    switch (nextChar) {
-                        case '_':
-                        case '+':
-                        case '-':
-                        case '!':
-                        case '`':
-                        case '\'':
-                        case '.':
-                        case '/':
-                        case '}':
-                        case '{':
-                        case ']':
-                        case '[':
-                        case '^':
-                        case '|':
-                        case '~':
-                        case '%': // bug fix by Bruno Konik, JvB copied here
-                        case '#':
-                        case '@':
-                        case '$':
-                        case ':':
-                        case ';':
-                        case '?':
-                        case '\"':
-                        case '*':
-                            isValidChar = true;
-                    }
-                    if (isValidChar) {
-                        consume(1);
-                    }
-                    else {
-                        break;
-                    }
-                }
-            }
-			return buffer.substring(startIdx, ptr); 
-		} catch (ParseException ex) {
-			return null;
-		}
+		while (ptr < bufferLen && isSafeChar(buffer.charAt(ptr)))
+			ptr++;
+		return buffer.substring(startIdx, ptr);
 	}
     
     static final char ALPHA_VALID_CHARS = Character.MAX_VALUE;
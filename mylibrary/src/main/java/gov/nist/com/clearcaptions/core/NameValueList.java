@@ -152,9 +152,9 @@ public class NameValueList implements Serializable, Map<String,NameValue> {
 		Iterator<String> li = this.hmap.keySet().iterator();
 
 		while (li.hasNext()) {
-			String key = (String) li.next();
+			String key = li.next();
 			NameValue nv1 = this.getNameValue(key);
-			NameValue nv2 = (NameValue) other.hmap.get(key);
+			NameValue nv2 = other.hmap.get(key);
 			if (nv2 == null)
 				return false;
 			else if (!nv2.equals(nv1))
@@ -180,7 +180,7 @@ public class NameValueList implements Serializable, Map<String,NameValue> {
 	 * @since 1.0
 	 */
 	public NameValue getNameValue(String name) {
-		return (NameValue) this.hmap.get(name.toLowerCase());
+		return this.hmap.get(name.toLowerCase());
 	}
 
 	/**
@@ -212,9 +212,12 @@ public class NameValueList implements Serializable, Map<String,NameValue> {
 	public Object clone() {
 		NameValueList retval = new NameValueList();
 		retval.setSeparator(this.separator);
-		Iterator<NameValue> it = this.hmap.values().iterator();
+		// Copy the entries under their existing keys, already lower case.
+		Iterator<Map.Entry<String,NameValue>> it = this.hmap.entrySet().iterator();
 		while (it.hasNext()) {
-			retval.set((NameValue) ((NameValue) it.next()).clone());
+			Map.Entry<String,NameValue> entry = it.next();
+			retval.hmap.put(entry.getKey(),
+					(NameValue) entry.getValue().clone());
 		}
 		return retval;
 	}
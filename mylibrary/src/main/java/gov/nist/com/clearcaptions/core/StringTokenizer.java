@@ -72,15 +72,49 @@ public class StringTokenizer {
 		return ptr < bufferLen;
 	}
 
+	/*
+	 * Classes of the ASCII characters, one bit per class, so that the
+	 * checks below and the lexer's token scans are a single table lookup.
+	 * Characters above 127 are classified by Character.
+	 */
+	static final int ALPHA_CHAR = 0x01;
+	static final int DIGIT_CHAR = 0x02;
+	static final int HEX_CHAR = 0x04;
+	/** RFC 3261 token character. */
+	static final int TOKEN_CHAR = 0x08;
+	/** Character accepted by LexerCore.ttokenSafe(). */
+	static final int SAFE_CHAR = 0x10;
+
+	static final byte[] CHAR_CLASS = new byte[128];
+
+	static {
+		for (char c = 'a'; c <= 'z'; c++)
+			CHAR_CLASS[c] = ALPHA_CHAR | TOKEN_CHAR | SAFE_CHAR;
+		for (char c = 'A'; c <= 'Z'; c++)
+			CHAR_CLASS[c] = ALPHA_CHAR | TOKEN_CHAR | SAFE_CHAR;
+		for (char c = '0'; c <= '9'; c++)
+			CHAR_CLASS[c] = DIGIT_CHAR | HEX_CHAR | TOKEN_CHAR | SAFE_CHAR;
+		for (char c = 'a'; c <= 'f'; c++) {
+			CHAR_CLASS[c] |= HEX_CHAR;
+			CHAR_CLASS[c - 'a' + 'A'] |= HEX_CHAR;
+		}
+		String token = "-.!%*_+`'~";
+		for (int i = 0; i < token.length(); i++)
+			CHAR_CLASS[token.charAt(i)] |= TOKEN_CHAR;
+		String safe = "_+-!`'./}{][^|~%#@$:;?\"*";
+		for (int i = 0; i < safe.length(); i++)
+			CHAR_CLASS[safe.charAt(i)] |= SAFE_CHAR;
+	}
+
 	public static boolean isHexDigit(char ch) {
-		return (ch >= 'A' && ch <= 'F') ||
-			   (ch >= 'a' && ch <= 'f') ||
-			   isDigit(ch);
+		if (ch <= 127)
+			return (CHAR_CLASS[ch] & HEX_CHAR) != 0;
+		return isDigit(ch);
 	}
 
 	public static boolean isAlpha(char ch) {
         if (ch <= 127) {
-            return ((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z'));
+            return (CHAR_CLASS[ch] & ALPHA_CHAR) != 0;
         }
         else {
 			return Character.isLowerCase(ch) || Character.isUpperCase(ch);
@@ -89,7 +123,7 @@ public class StringTokenizer {
 
 	public static boolean isDigit(char ch) {
         if (ch <= 127) {
-            return (ch <= '9' && ch >= '0');
+            return (CHAR_CLASS[ch] & DIGIT_CHAR) != 0;
 		}
 		else {
 			return Character.isDigit(ch);
@@ -98,9 +132,7 @@ public class StringTokenizer {
     
     public static boolean isAlphaDigit(char ch) {
         if (ch <= 127) {
-            return (ch >= 'a' && ch <= 'z') ||
-                (ch >= 'A' && ch <= 'Z') ||
-                (ch <= '9' && ch >= '0');
+            return (CHAR_CLASS[ch] & (ALPHA_CHAR | DIGIT_CHAR)) != 0;
         }
         else {
             return Character.isLowerCase(ch) ||
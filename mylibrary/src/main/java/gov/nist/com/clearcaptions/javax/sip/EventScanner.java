@@ -38,6 +38,12 @@ import gov.nist.com.clearcaptions.javax.sip.stack.*;
 
 /**
  * Event Scanner to deliver events to the Listener.
+ * <p>
+ * For a non re-entrant listener the events are queued and delivered by one
+ * or more scanner threads. With several threads, the events are split
+ * among them by Call-ID, so the events of a call, and so of its dialogs,
+ * are still delivered one at a time and in order, while a slow listener
+ * call holds up only the calls that share its thread.
  * 
  * @version 1.2 $Revision: 1.29 $ $Date: 2006/12/11 03:44:28 $
  * 
@@ -45,19 +51,20 @@ import gov.nist.com.clearcaptions.javax.sip.stack.*;
  * 
  * 
  */
-class EventScanner implements Runnable {
+class EventScanner {
 
-	private boolean isStopped;
+	// Read by the scanner threads without eventMutex, so that they never
+	// hold their own lock and eventMutex together.
+	private volatile boolean isStopped;
 
 	private int refCount;
 
-	// SIPquest: Fix for deadlocks
-	private LinkedList pendingEvents = new LinkedList();
-
 	private int[] eventMutex = { 0 };
 
 	private SipStackImpl sipStack;
 
+	private final Shard[] shards;
+
 	public void incrementRefcount() {
 		synchronized (eventMutex) {
 			this.refCount++;
@@ -65,31 +72,129 @@ class EventScanner implements Runnable {
 	}
 
 	public EventScanner(SipStackImpl sipStackImpl) {
-		this.pendingEvents = new LinkedList();
-		Thread myThread = new Thread(this);
-		// This needs to be set to false else the
-		// main thread mysteriously exits.
-		myThread.setDaemon(false);
+		this(sipStackImpl, 1);
+	}
 
+	/**
+	 * @param threadCount
+	 *            the number of scanner threads.
+	 */
+	public EventScanner(SipStackImpl sipStackImpl, int threadCount) {
 		this.sipStack = sipStackImpl;
-
-		myThread.setName("EventScannerThread");
-
-		myThread.start();
+		this.shards = new Shard[Math.max(threadCount, 1)];
+		for (int i = 0; i < shards.length; i++) {
+			shards[i] = new Shard();
+			Thread myThread = new Thread(shards[i]);
+			// This needs to be set to false else the
+			// main thread mysteriously exits.
+			myThread.setDaemon(false);
+
+			myThread.setName(shards.length == 1 ? "EventScannerThread"
+					: "EventScannerThread-" + i);
+
+			myThread.start();
+		}
 
 	}
 
 	public void addEvent(EventWrapper eventWrapper) {
 		sipStack.getLogWriter().logDebug("addEvent " + eventWrapper);
-		synchronized (this.eventMutex) {
-
-			pendingEvents.add(eventWrapper);
+		Shard shard = shards[0];
+		if (shards.length > 1)
+			shard = shards[getThreadIndex(getCallId(eventWrapper))];
+		eventWrapper.enqueueTime = System.nanoTime();
+		synchronized (shard) {
 
 			// Add the event into the pending events list
+			shard.pendingEvents.add(eventWrapper);
+
+			shard.notify();
+		}
+
+	}
+
+	/**
+	 * @param callId
+	 *            a Call-ID, or null for events that have none.
+	 * @return the index of the scanner thread that delivers the events of
+	 *         the call.
+	 */
+	public int getThreadIndex(String callId) {
+		if (callId == null)
+			return 0;
+		return (callId.hashCode() & Integer.MAX_VALUE) % shards.length;
+	}
 
-			eventMutex.notify();
+	/**
+	 * @return the Call-ID the event belongs to, or null if it has none.
+	 */
+	private static String getCallId(EventWrapper eventWrapper) {
+		EventObject sipEvent = eventWrapper.sipEvent;
+		SIPMessage message = null;
+		if (sipEvent instanceof RequestEvent) {
+			message = (SIPMessage) ((RequestEvent) sipEvent).getRequest();
+		} else if (sipEvent instanceof ResponseEvent) {
+			message = (SIPMessage) ((ResponseEvent) sipEvent).getResponse();
+		} else if (sipEvent instanceof DialogTerminatedEvent) {
+			Dialog dialog = ((DialogTerminatedEvent) sipEvent).getDialog();
+			if (dialog != null && dialog.getCallId() != null)
+				return dialog.getCallId().getCallId();
+		} else if (eventWrapper.transaction != null) {
+			message = eventWrapper.transaction.getOriginalRequest();
 		}
+		if (message == null || message.getCallId() == null)
+			return null;
+		return message.getCallId().getCallId();
+	}
+
+	/**
+	 * @return the number of scanner threads.
+	 */
+	public int getThreadCount() {
+		return shards.length;
+	}
 
+	/**
+	 * @return the number of events waiting for the given scanner thread.
+	 */
+	public int getQueueDepth(int thread) {
+		Shard shard = shards[thread];
+		synchronized (shard) {
+			return shard.pendingEvents.size();
+		}
+	}
+
+	/**
+	 * @return the number of events the given scanner thread has delivered.
+	 */
+	public long getEventsDelivered(int thread) {
+		Shard shard = shards[thread];
+		synchronized (shard) {
+			return shard.eventsDelivered;
+		}
+	}
+
+	/**
+	 * @return the mean time in microseconds events waited in the queue of
+	 *         the given scanner thread before delivery.
+	 */
+	public long getMeanDispatchLatency(int thread) {
+		Shard shard = shards[thread];
+		synchronized (shard) {
+			return shard.eventsDelivered == 0 ? 0 : shard.totalLatency
+					/ shard.eventsDelivered / 1000;
+		}
+	}
+
+	/**
+	 * @return the longest time in microseconds an event waited in the queue
+	 *         of the given scanner thread before delivery.
+	 */
+	public long getMaxDispatchLatency(int thread) {
+		Shard shard = shards[thread];
+		synchronized (shard) {
+			return shard.maxLatency / 1000;
+		}
 	}
 
 	/**
@@ -103,12 +208,11 @@ class EventScanner implements Runnable {
 			if (this.refCount > 0)
 				this.refCount--;
 
-			if (this.refCount == 0) {
-				isStopped = true;
-				eventMutex.notify();
-
-			}
+			if (this.refCount != 0)
+				return;
+			isStopped = true;
 		}
+		notifyShards();
 	}
 
 	/**
@@ -120,11 +224,19 @@ class EventScanner implements Runnable {
 		synchronized (this.eventMutex) {
 			this.isStopped = true;
 			this.refCount = 0;
-			this.eventMutex.notify();
 		}
+		notifyShards();
 
 	}
 
+	private void notifyShards() {
+		for (int i = 0; i < shards.length; i++) {
+			synchronized (shards[i]) {
+				shards[i].notify();
+			}
+		}
+	}
+
 	public void deliverEvent(EventWrapper eventWrapper) {
 		EventObject sipEvent = eventWrapper.sipEvent;
 		if (sipStack.isLoggingEnabled())
@@ -433,77 +545,96 @@ class EventScanner implements Runnable {
 
 	/**
 	 * For the non-re-entrant listener this delivers the events to the listener
-	 * from a single queue. If the listener is re-entrant, then the stack just
-	 * calls the deliverEvent method above.
+	 * from a queue per scanner thread. If the listener is re-entrant, then the
+	 * stack just calls the deliverEvent method above.
 	 */
+	private class Shard implements Runnable {
 
-	public void run() {
-		try {
-			// Ask the auditor to monitor this thread
-			ThreadAuditor.ThreadHandle threadHandle = sipStack.getThreadAuditor().addCurrentThread();
-
-			while (true) {
-				EventWrapper eventWrapper = null;
-
-				LinkedList eventsToDeliver;
-				synchronized (this.eventMutex) {
-					// First, wait for some events to become available.
-					while (pendingEvents.isEmpty()) {
-						// There's nothing in the list, check to make sure we
-						// haven't
-						// been stopped. If we have, then let the thread die.
-						if (this.isStopped) {
-							if (sipStack.isLoggingEnabled())
-								sipStack.getLogWriter().logDebug(
-										"Stopped event scanner!!");
-							return;
-						}
+		// SIPquest: Fix for deadlocks
+		private LinkedList<EventWrapper> pendingEvents = new LinkedList<EventWrapper>();
 
-						// We haven't been stopped, and the event list is indeed
-						// rather empty. Wait for some events to come along.
-						try {
-							// Send a heartbeat to the thread auditor
-							threadHandle.ping();
-
-							// Wait for events (with a timeout)
-							eventMutex.wait(threadHandle.getPingIntervalInMillisecs());
-						} catch (InterruptedException ex) {
-							// Let the thread die a normal death
-							sipStack.getLogWriter().logDebug("Interrupted!");
-							return;
+		// Counted under the shard lock.
+		private long eventsDelivered;
+
+		private long totalLatency;
+
+		private long maxLatency;
+
+		public void run() {
+			try {
+				// Ask the auditor to monitor this thread
+				ThreadAuditor.ThreadHandle threadHandle = sipStack.getThreadAuditor().addCurrentThread();
+
+				while (true) {
+					EventWrapper eventWrapper = null;
+
+					LinkedList<EventWrapper> eventsToDeliver;
+					synchronized (this) {
+						// First, wait for some events to become available.
+						while (pendingEvents.isEmpty()) {
+							// There's nothing in the list, check to make sure we
+							// haven't
+							// been stopped. If we have, then let the thread die.
+							if (isStopped) {
+								if (sipStack.isLoggingEnabled())
+									sipStack.getLogWriter().logDebug(
+											"Stopped event scanner!!");
+								return;
+							}
+
+							// We haven't been stopped, and the event list is indeed
+							// rather empty. Wait for some events to come along.
+							try {
+								// Send a heartbeat to the thread auditor
+								threadHandle.ping();
+
+								// Wait for events (with a timeout)
+								wait(threadHandle.getPingIntervalInMillisecs());
+							} catch (InterruptedException ex) {
+								// Let the thread die a normal death
+								sipStack.getLogWriter().logDebug("Interrupted!");
+								return;
+							}
 						}
-					}
 
-					// There are events in the 'pending events list' that need
-					// processing. Hold onto the old 'pending Events' list, but
-					// make a new one for the other methods to operate on. This
-					// tap-dancing is to avoid deadlocks and also to ensure that
-					// the list is not modified while we are iterating over it.
-					eventsToDeliver = pendingEvents;
-					pendingEvents = new LinkedList();
-				}
-				ListIterator iterator = eventsToDeliver.listIterator();
-				while (iterator.hasNext()) {
-					eventWrapper = (EventWrapper) iterator.next();
-					if (sipStack.isLoggingEnabled()) {
-						sipStack.getLogWriter().logDebug(
-								"Processing " + eventWrapper + "nevents "
-										+ eventsToDeliver.size());
+						// There are events in the 'pending events list' that need
+						// processing. Hold onto the old 'pending Events' list, but
+						// make a new one for the other methods to operate on. This
+						// tap-dancing is to avoid deadlocks and also to ensure that
+						// the list is not modified while we are iterating over it.
+						eventsToDeliver = pendingEvents;
+						pendingEvents = new LinkedList<EventWrapper>();
 					}
-					try {
-						deliverEvent(eventWrapper);
-					} catch (Exception e) {
+					ListIterator<EventWrapper> iterator = eventsToDeliver.listIterator();
+					while (iterator.hasNext()) {
+						eventWrapper = iterator.next();
 						if (sipStack.isLoggingEnabled()) {
-							sipStack.getLogWriter().logError(
-									"Unexpected exception caught while delivering event -- carrying on bravely", e);
+							sipStack.getLogWriter().logDebug(
+									"Processing " + eventWrapper + "nevents "
+											+ eventsToDeliver.size());
+						}
+						long latency = System.nanoTime() - eventWrapper.enqueueTime;
+						synchronized (this) {
+							eventsDelivered++;
+							totalLatency += latency;
+							if (latency > maxLatency)
+								maxLatency = latency;
+						}
+						try {
+							deliverEvent(eventWrapper);
+						} catch (Exception e) {
+							if (sipStack.isLoggingEnabled()) {
+								sipStack.getLogWriter().logError(
+										"Unexpected exception caught while delivering event -- carrying on bravely", e);
+							}
 						}
 					}
-				}
-			} // end While
-		} finally {
-			if (sipStack.isLoggingEnabled()) {
-				if (!this.isStopped) {
-					sipStack.getLogWriter().logFatalError("Event scanner exited abnormally");
+				} // end While
+			} finally {
+				if (sipStack.isLoggingEnabled()) {
+					if (!isStopped) {
+						sipStack.getLogWriter().logFatalError("Event scanner exited abnormally");
+					}
 				}
 			}
 		}
@@ -36,6 +36,9 @@ class EventWrapper {
 	
 	protected EventObject sipEvent;
 	protected SIPTransaction transaction;
+
+	// System.nanoTime() when the event was queued for the scanner.
+	long enqueueTime;
 	
 	EventWrapper(EventObject sipEvent, SIPTransaction transaction) {
 		this.sipEvent = sipEvent;
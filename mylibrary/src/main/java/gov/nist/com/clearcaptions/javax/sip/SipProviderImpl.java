@@ -692,6 +692,9 @@ public final class SipProviderImpl implements com.clearcaptions.javax.sip.SipPro
 						this.getListeningPoint(hop.getTransport()).getIPAddress(),
 						this.getListeningPoint(hop.getTransport()).getPort(), hop);
 			if (messageChannel != null) {
+				// The branch above, or the application, may have changed a
+				// header in place since the request was last encoded.
+				sipRequest.invalidateEncoding();
 				messageChannel.sendMessage((SIPMessage) sipRequest,hop);
 			} else {
 				throw new SipException(
@@ -772,6 +775,9 @@ public final class SipProviderImpl implements com.clearcaptions.javax.sip.SipPro
 			MessageChannel messageChannel = sipStack.createRawMessageChannel(
 					this.getListeningPoint(hop.getTransport()).getIPAddress(),
 					listeningPoint.port, hop);
+			// The application may have changed a header in place since the
+			// response was last encoded.
+			sipResponse.invalidateEncoding();
 			messageChannel.sendMessage(sipResponse);
 		} catch (IOException ex) {
 			throw new SipException(ex.getMessage());
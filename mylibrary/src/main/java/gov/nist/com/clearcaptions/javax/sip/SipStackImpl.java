@@ -36,6 +36,7 @@ import gov.nist.com.clearcaptions.javax.sip.parser.StringMsgParser;
 import gov.nist.com.clearcaptions.javax.sip.stack.DefaultMessageLogFactory;
 import gov.nist.com.clearcaptions.javax.sip.stack.DefaultRouter;
 import gov.nist.com.clearcaptions.javax.sip.stack.MessageProcessor;
+import gov.nist.com.clearcaptions.javax.sip.stack.SIPStackTimer;
 import gov.nist.com.clearcaptions.javax.sip.stack.SIPTransactionStack;
 import gov.nist.com.clearcaptions.javax.sip.stack.ServerLog;
 
@@ -154,6 +155,14 @@ import com.clearcaptions.javax.sip.message.Request;
  * in mind. <b> If you want good performance on a multithreaded machine write your listener to be
  * re-entrant and set this property to be true </b></li>
  * 
+ * <li> <b>gov.nist.com.clearcaptions.javax.sip.EVENT_SCANNER_THREADS = integer </b> <br/> Default is
+ * 1. The number of threads that deliver events to a listener that is not re-entrant. With more
+ * than one, the events are split among the threads by Call-ID: the events of one call are still
+ * delivered one at a time and in order, but the listener is called for different calls at the
+ * same time, and a slow call only holds up the calls that share its thread. The queue depth and
+ * dispatch latency of each thread are available from getEventQueueDepth(int) and related
+ * methods. </li>
+ * 
  * <li> <b>gov.nist.com.clearcaptions.javax.sip.MAX_CONNECTIONS = integer </b> <br/> Max number of simultaneous TCP
  * connections handled by stack. </li>
  * 
@@ -216,6 +225,26 @@ import com.clearcaptions.javax.sip.message.Request;
  * default address resolver is a pass-through address resolver (i.e. just returns the input string
  * without doing a resolution). See gov.nist.com.clearcaptions.javax.sip.DefaultAddressResolver. </li>
  * 
+ * <li><b>gov.nist.com.clearcaptions.javax.sip.TIMER_CLASS_NAME = classpath </b><br/> The fully qualified
+ * class path for an implementation of gov.nist.com.clearcaptions.javax.sip.stack.SIPStackTimer, which
+ * runs the transaction and dialog timers. The default,
+ * gov.nist.com.clearcaptions.javax.sip.stack.DefaultSIPStackTimer, is a java.util.Timer.
+ * gov.nist.com.clearcaptions.javax.sip.stack.HashedWheelSIPStackTimer schedules and cancels in
+ * constant time on one timing wheel per processor, for stacks with many thousands of live
+ * transactions. </li>
+ * 
+ * <li><b>gov.nist.com.clearcaptions.javax.sip.LOOKUP_TRACE_CALL_IDS = Call-ID[,Call-ID...] </b><br/>
+ * Log every transaction table lookup for messages with these Call-IDs: the table, key, whether
+ * a transaction was found, and the table size, one INFO line per lookup. Call-IDs can also be
+ * traced at run time through getLookupTrace(). </li>
+ * 
+ * <li><b>gov.nist.com.clearcaptions.javax.sip.LOOKUP_TRACE_SAMPLE_INTERVAL = integer </b><br/>
+ * Also log one in this many of all lookups. The default, 0, samples none. </li>
+ * 
+ * <li><b>gov.nist.com.clearcaptions.javax.sip.LOOKUP_TRACE_MAX_RECORDS_PER_SECOND = integer </b><br/>
+ * The most lookup trace lines logged in a second, 100 by default; the rest are dropped so that
+ * tracing stays cheap at full load. </li>
+ * 
  * <li><b>gov.nist.com.clearcaptions.javax.sip.AUTO_GENERATE_TIMESTAMP= [true| false] </b><br/> (default is false)
  * Automatically generate a getTimeOfDay timestamp for a retransmitted request if the original
  * request contained a timestamp. This is useful for profiling. </li>
@@ -242,6 +271,14 @@ import com.clearcaptions.javax.sip.message.Request;
  * and ignore the provided content length parameter in the Message. Otherwise, it will use the
  * content length supplied and generate a parse exception if the content is truncated.
  * 
+ * <li><b>gov.nist.com.clearcaptions.javax.sip.PARSER_SCAN_BYTES = [true|false] </b> <br/>
+ * Default is <it>true</it>. Messages received as bytes are parsed in a single pass over the
+ * raw buffer. Set to <it>false</it> to fall back to the original line by line parser.
+ * 
+ * <li><b>gov.nist.com.clearcaptions.javax.sip.PARSER_LAZY_HEADERS = [true|false] </b> <br/>
+ * Default is <it>true</it>. With PARSER_SCAN_BYTES, only the headers needed to route a message
+ * are parsed on receipt; the rest are kept as received and parsed when first accessed.
+ * 
  * <li><b>gov.nist.com.clearcaptions.javax.sip.CANCEL_CLIENT_TRANSACTION_CHECKED = [true|false] </b> <br/> Default
  * is <it>true</it>. This flag is added in support of load balancers or failover managers where
  * you may want to cancel ongoing transactions from a different stack than the original stack. If
@@ -301,6 +338,11 @@ public class SipStackImpl extends SIPTransactionStack implements SipStack, SipSt
 
     private EventScanner eventScanner;
 
+    private static final String EVENT_SCANNER_THREADS_KEY = "gov.nist.com.clearcaptions.javax.sip.EVENT_SCANNER_THREADS";
+
+    // Number of threads for the event scanner.
+    private int eventScannerThreads = 1;
+
     private Hashtable<String, ListeningPointImpl> listeningPoints;
 
     private LinkedList<SipProviderImpl> sipProviders;
@@ -338,10 +380,18 @@ public class SipStackImpl extends SIPTransactionStack implements SipStack, SipSt
      */
 
     protected SipStackImpl() {
+        this(1);
+    }
+
+    /**
+     * @param eventScannerThreads -- the number of event scanner threads.
+     */
+    private SipStackImpl(int eventScannerThreads) {
         super();
         NistSipMessageFactoryImpl msgFactory = new NistSipMessageFactoryImpl(this);
         super.setMessageFactory(msgFactory);
-        this.eventScanner = new EventScanner(this);
+        this.eventScannerThreads = eventScannerThreads;
+        this.eventScanner = new EventScanner(this, eventScannerThreads);
         this.listeningPoints = new Hashtable<String, ListeningPointImpl>();
         this.sipProviders = new LinkedList<SipProviderImpl>();
 
@@ -352,7 +402,7 @@ public class SipStackImpl extends SIPTransactionStack implements SipStack, SipSt
      */
     private void reInitialize() {
         super.reInit();
-        this.eventScanner = new EventScanner(this);
+        this.eventScanner = new EventScanner(this, eventScannerThreads);
         this.listeningPoints = new Hashtable<String, ListeningPointImpl>();
         this.sipProviders = new LinkedList<SipProviderImpl>();
         this.sipListener = null;
@@ -376,7 +426,7 @@ public class SipStackImpl extends SIPTransactionStack implements SipStack, SipSt
      * @throws PeerUnavailableException
      */
     public SipStackImpl(Properties configurationProperties) throws PeerUnavailableException {
-        this();
+        this(getEventScannerThreads(configurationProperties));
         String address = configurationProperties.getProperty("com.clearcaptions.javax.sip.IP_ADDRESS");
         try {
             /** Retrieve the stack IP address */
@@ -415,7 +465,7 @@ public class SipStackImpl extends SIPTransactionStack implements SipStack, SipSt
 
         try {
             Class< ? > routerClass = Class.forName(routerPath);
-            Class< ? >[] constructorArgs = new Class[2];
+            Class< ? >[] constructorArgs = new Class< ? >[2];
             constructorArgs[0] = SipStack.class;
             constructorArgs[1] = String.class;
             Constructor< ? > cons = routerClass.getConstructor(constructorArgs);
@@ -535,7 +585,7 @@ public class SipStackImpl extends SIPTransactionStack implements SipStack, SipSt
             String path = configurationProperties.getProperty(NETWORK_LAYER_KEY);
             try {
                 Class< ? > clazz = Class.forName(path);
-                Constructor< ? > c = clazz.getConstructor(new Class[0]);
+                Constructor< ? > c = clazz.getConstructor();
                 networkLayer = (NetworkLayer) c.newInstance(new Object[0]);
             } catch (Exception e) {
                 throw new PeerUnavailableException(
@@ -549,7 +599,7 @@ public class SipStackImpl extends SIPTransactionStack implements SipStack, SipSt
             String path = configurationProperties.getProperty(ADDRESS_RESOLVER_KEY);
             try {
                 Class< ? > clazz = Class.forName(path);
-                Constructor< ? > c = clazz.getConstructor(new Class[0]);
+                Constructor< ? > c = clazz.getConstructor();
                 this.addressResolver = (AddressResolver) c.newInstance(new Object[0]);
             } catch (Exception e) {
                 throw new PeerUnavailableException(
@@ -557,6 +607,49 @@ public class SipStackImpl extends SIPTransactionStack implements SipStack, SipSt
             }
         }
 
+        final String TIMER_CLASS_NAME_KEY = "gov.nist.com.clearcaptions.javax.sip.TIMER_CLASS_NAME";
+
+        if (configurationProperties.containsKey(TIMER_CLASS_NAME_KEY)) {
+            String path = configurationProperties.getProperty(TIMER_CLASS_NAME_KEY);
+            try {
+                Class< ? > clazz = Class.forName(path);
+                Constructor< ? > c = clazz.getConstructor();
+                setTimer((SIPStackTimer) c.newInstance(new Object[0]));
+            } catch (Exception e) {
+                throw new PeerUnavailableException(
+                        "can't find or instantiate SIPStackTimer implementation: " + path);
+            }
+        }
+
+        String lookupTraceCallIds = configurationProperties
+                .getProperty("gov.nist.com.clearcaptions.javax.sip.LOOKUP_TRACE_CALL_IDS");
+        if (lookupTraceCallIds != null) {
+            StringTokenizer st = new StringTokenizer(lookupTraceCallIds, ",");
+            while (st.hasMoreTokens())
+                getLookupTrace().traceCallId(st.nextToken().trim());
+        }
+
+        String lookupTraceSampleInterval = configurationProperties
+                .getProperty("gov.nist.com.clearcaptions.javax.sip.LOOKUP_TRACE_SAMPLE_INTERVAL");
+        if (lookupTraceSampleInterval != null) {
+            try {
+                getLookupTrace().setSampleInterval(
+                        Integer.parseInt(lookupTraceSampleInterval));
+            } catch (IllegalArgumentException ex) {
+                getLogWriter().logError("lookup trace sample interval - bad value " + ex.getMessage());
+            }
+        }
+
+        String lookupTraceMaxRecords = configurationProperties
+                .getProperty("gov.nist.com.clearcaptions.javax.sip.LOOKUP_TRACE_MAX_RECORDS_PER_SECOND");
+        if (lookupTraceMaxRecords != null) {
+            try {
+                getLookupTrace().setMaxRecordsPerSecond(Integer.parseInt(lookupTraceMaxRecords));
+            } catch (IllegalArgumentException ex) {
+                getLogWriter().logError("lookup trace records per second - bad value " + ex.getMessage());
+            }
+        }
+
         String maxConnections = configurationProperties
                 .getProperty("gov.nist.com.clearcaptions.javax.sip.MAX_CONNECTIONS");
         if (maxConnections != null) {
@@ -665,6 +758,19 @@ public class SipStackImpl extends SIPTransactionStack implements SipStack, SipSt
         String rel = configurationProperties.getProperty("gov.nist.com.clearcaptions.javax.sip.REENTRANT_LISTENER");
         this.reEntrantListener = (rel != null && "true".equalsIgnoreCase(rel));
 
+        // The event scanner was created with these threads; see
+        // getEventScannerThreads(Properties).
+        String eventScannerThreads = configurationProperties
+                .getProperty(EVENT_SCANNER_THREADS_KEY);
+        if (eventScannerThreads != null) {
+            try {
+                if (Integer.parseInt(eventScannerThreads.trim()) < 1)
+                    getLogWriter().logError("event scanner threads - must be at least 1");
+            } catch (NumberFormatException ex) {
+                getLogWriter().logError("event scanner threads - bad value " + ex.getMessage());
+            }
+        }
+
         // Check if a thread audit interval is specified
         String interval = configurationProperties
                 .getProperty("gov.nist.com.clearcaptions.javax.sip.THREAD_AUDIT_INTERVAL_IN_MILLISECS");
@@ -695,7 +801,7 @@ public class SipStackImpl extends SIPTransactionStack implements SipStack, SipSt
         if (messageLogFactoryClasspath != null) {
             try {
                 Class< ? > clazz = Class.forName(messageLogFactoryClasspath);
-                Constructor< ? > c = clazz.getConstructor(new Class[0]);
+                Constructor< ? > c = clazz.getConstructor();
                 this.logRecordFactory = (LogRecordFactory) c.newInstance(new Object[0]);
             } catch (Exception ex) {
                 getLogWriter().logError("Bad configuration value for LOG_FACTORY -- using default logger");
@@ -711,6 +817,13 @@ public class SipStackImpl extends SIPTransactionStack implements SipStack, SipSt
                 .equalsIgnoreCase("true");
         StringMsgParser.setComputeContentLengthFromMessage(computeContentLength);
 
+        StringMsgParser.setScanBytes(configurationProperties.getProperty(
+                "gov.nist.com.clearcaptions.javax.sip.PARSER_SCAN_BYTES", "true")
+                .equalsIgnoreCase("true"));
+        StringMsgParser.setLazyHeaders(configurationProperties.getProperty(
+                "gov.nist.com.clearcaptions.javax.sip.PARSER_LAZY_HEADERS", "true")
+                .equalsIgnoreCase("true"));
+
         super.rfc2543Supported = configurationProperties.getProperty(
                 "gov.nist.com.clearcaptions.javax.sip.RFC_2543_SUPPORT_ENABLED", "true").equalsIgnoreCase("true");
 
@@ -767,7 +880,7 @@ public class SipStackImpl extends SIPTransactionStack implements SipStack, SipSt
 
         String key = ListeningPointImpl.makeKey(address, port, transport);
 
-        ListeningPointImpl lip = (ListeningPointImpl) listeningPoints.get(key);
+        ListeningPointImpl lip = listeningPoints.get(key);
         if (lip != null) {
             return lip;
         } else {
@@ -965,7 +1078,7 @@ public class SipStackImpl extends SIPTransactionStack implements SipStack, SipSt
     public void start() throws ProviderDoesNotExistException, SipException {
         // Start a new event scanner if one does not exist.
         if (this.eventScanner == null) {
-            this.eventScanner = new EventScanner(this);
+            this.eventScanner = new EventScanner(this, eventScannerThreads);
         }
 
     }
@@ -1015,6 +1128,81 @@ public class SipStackImpl extends SIPTransactionStack implements SipStack, SipSt
         return eventScanner;
     }
 
+    /**
+     * Read the EVENT_SCANNER_THREADS property, before the stack is constructed.
+     * 
+     * @return the number of event scanner threads, or 1 if the value is missing or bad.
+     */
+    private static int getEventScannerThreads(Properties configurationProperties) {
+        String eventScannerThreads = configurationProperties
+                .getProperty(EVENT_SCANNER_THREADS_KEY);
+        if (eventScannerThreads == null)
+            return 1;
+        try {
+            return Math.max(Integer.parseInt(eventScannerThreads.trim()), 1);
+        } catch (NumberFormatException ex) {
+            return 1;
+        }
+    }
+
+    /**
+     * Get the number of threads delivering events to a listener that is not re-entrant.
+     */
+    public int getEventScannerThreads() {
+        return eventScannerThreads;
+    }
+
+    /**
+     * Get the event scanner thread that delivers the events of a call.
+     * 
+     * @param callId -- the Call-ID of the call.
+     * @return the index of the thread, from 0 to getEventScannerThreads() - 1.
+     */
+    public int getEventScannerThread(String callId) {
+        EventScanner scanner = this.eventScanner;
+        return scanner == null ? 0 : scanner.getThreadIndex(callId);
+    }
+
+    /**
+     * Get the number of events waiting for an event scanner thread.
+     * 
+     * @param thread -- index of the thread, from 0 to getEventScannerThreads() - 1.
+     */
+    public int getEventQueueDepth(int thread) {
+        EventScanner scanner = this.eventScanner;
+        return scanner == null ? 0 : scanner.getQueueDepth(thread);
+    }
+
+    /**
+     * Get the number of events an event scanner thread has delivered.
+     * 
+     * @param thread -- index of the thread, from 0 to getEventScannerThreads() - 1.
+     */
+    public long getEventsDelivered(int thread) {
+        EventScanner scanner = this.eventScanner;
+        return scanner == null ? 0 : scanner.getEventsDelivered(thread);
+    }
+
+    /**
+     * Get the mean time, in microseconds, events waited for an event scanner thread.
+     * 
+     * @param thread -- index of the thread, from 0 to getEventScannerThreads() - 1.
+     */
+    public long getMeanEventDispatchLatency(int thread) {
+        EventScanner scanner = this.eventScanner;
+        return scanner == null ? 0 : scanner.getMeanDispatchLatency(thread);
+    }
+
+    /**
+     * Get the longest time, in microseconds, an event waited for an event scanner thread.
+     * 
+     * @param thread -- index of the thread, from 0 to getEventScannerThreads() - 1.
+     */
+    public long getMaxEventDispatchLatency(int thread) {
+        EventScanner scanner = this.eventScanner;
+        return scanner == null ? 0 : scanner.getMaxDispatchLatency(thread);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -3,6 +3,9 @@ package gov.nist.com.clearcaptions.javax.sip.clientauthutils;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
+import gov.nist.com.clearcaptions.javax.sip.stack.SIPStackTimer;
+import gov.nist.com.clearcaptions.javax.sip.stack.SIPStackTimerTask;
+
 import com.clearcaptions.javax.sip.*;
 import com.clearcaptions.javax.sip.address.*;
 import com.clearcaptions.javax.sip.header.*;
@@ -24,9 +27,9 @@ class CredentialsCache {
 	 */
 	private ConcurrentHashMap<String, List<AuthorizationHeader>> authorizationHeaders = 
 			new ConcurrentHashMap<String, List<AuthorizationHeader>>();
-	private Timer timer;
+	private SIPStackTimer timer;
 
-	class TimeoutTask extends TimerTask {
+	class TimeoutTask extends SIPStackTimerTask {
 		String callId;
 		String userName;
 
@@ -36,7 +39,7 @@ class CredentialsCache {
 		}
 
 		@Override
-		public void run() {
+		protected void runTask() {
 			authorizationHeaders.remove(callId);
 
 		}
@@ -45,7 +48,7 @@ class CredentialsCache {
 
 	
 	
-	CredentialsCache (Timer timer) {
+	CredentialsCache (SIPStackTimer timer) {
 		this.timer = timer;
 	}
 
@@ -198,4 +198,16 @@ public final class Accept
 		return retval;
 	}
 
+	/**
+	 * Compare two Accept headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		Accept that = (Accept) other;
+		return equal(this.mediaRange, that.mediaRange)
+				&& equal(this.parameters, that.parameters);
+	}
 }
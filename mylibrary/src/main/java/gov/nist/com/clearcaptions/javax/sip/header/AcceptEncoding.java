@@ -151,4 +151,16 @@ public final class AcceptEncoding extends ParametersHeader implements
 		contentCoding = encoding;
 	}
 
+	/**
+	 * Compare two AcceptEncoding headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		AcceptEncoding that = (AcceptEncoding) other;
+		return equal(this.contentCoding, that.contentCoding)
+				&& equal(this.parameters, that.parameters);
+	}
 }
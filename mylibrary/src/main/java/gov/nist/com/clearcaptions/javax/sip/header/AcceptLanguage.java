@@ -196,4 +196,16 @@ public final class AcceptLanguage
 		}
 	}
 
+	/**
+	 * Compare two AcceptLanguage headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		AcceptLanguage that = (AcceptLanguage) other;
+		return equal(this.languageRange, that.languageRange)
+				&& equal(this.parameters, that.parameters);
+	}
 }
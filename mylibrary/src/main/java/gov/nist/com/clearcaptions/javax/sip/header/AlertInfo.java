@@ -126,4 +126,18 @@ public final class AlertInfo
 		}
 		return retval;
 	}
+
+	/**
+	 * Compare two AlertInfo headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		AlertInfo that = (AlertInfo) other;
+		return equal(this.uri, that.uri)
+				&& equal(this.string, that.string)
+				&& equal(this.parameters, that.parameters);
+	}
 }
@@ -87,4 +87,16 @@ public final class Allow extends
 	protected String encodeBody() {
 		return method;
 	}
+
+	/**
+	 * Compare two Allow headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		Allow that = (Allow) other;
+		return equal(this.method, that.method);
+	}
 }
@@ -97,4 +97,16 @@ public final class AllowEvents
 	protected String encodeBody() {
 		return eventType;
 	}
+
+	/**
+	 * Compare two AllowEvents headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		AllowEvents that = (AllowEvents) other;
+		return equal(this.eventType, that.eventType);
+	}
 }
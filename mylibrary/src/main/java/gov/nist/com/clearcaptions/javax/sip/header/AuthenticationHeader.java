@@ -549,5 +549,17 @@ public abstract class AuthenticationHeader extends ParametersHeader {
 	public String getIntegrityProtected() {
 		return getParameter(ParameterNamesIms.INTEGRITY_PROTECTED);
 	}
-	
+
+	/**
+	 * Compare two authentication headers of the same class for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		AuthenticationHeader that = (AuthenticationHeader) other;
+		return equal(this.scheme, that.scheme)
+				&& equal(this.parameters, that.parameters);
+	}
 }
@@ -121,4 +121,17 @@ public final class CallInfo
 			retval.info = (GenericURI) this.info.clone();
 		return retval;
 	}
+
+	/**
+	 * Compare two CallInfo headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		CallInfo that = (CallInfo) other;
+		return equal(this.info, that.info)
+				&& equal(this.parameters, that.parameters);
+	}
 }
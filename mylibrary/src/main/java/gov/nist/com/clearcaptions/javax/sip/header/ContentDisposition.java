@@ -120,6 +120,19 @@ public final class ContentDisposition
 	public String getContentDisposition() {
 		return this.encodeBody();
 	}
+
+	/**
+	 * Compare two ContentDisposition headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		ContentDisposition that = (ContentDisposition) other;
+		return equal(this.dispositionType, that.dispositionType)
+				&& equal(this.parameters, that.parameters);
+	}
 }
 /*
  * $Log: ContentDisposition.main.java,v $
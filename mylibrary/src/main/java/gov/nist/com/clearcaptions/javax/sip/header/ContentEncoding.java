@@ -132,4 +132,16 @@ public class ContentEncoding
 				"JAIN-SIP Exception, " + " encoding is null");
 		contentEncoding = encoding;
 	}
+
+	/**
+	 * Compare two ContentEncoding headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		ContentEncoding that = (ContentEncoding) other;
+		return equal(this.contentEncoding, that.contentEncoding);
+	}
 }
@@ -167,4 +167,16 @@ public class ContentLanguage
 			retval.locale = (Locale) this.locale.clone();
 		return retval;
 	}
+
+	/**
+	 * Compare two ContentLanguage headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		ContentLanguage that = (ContentLanguage) other;
+		return equal(this.locale, that.locale);
+	}
 }
@@ -138,5 +138,18 @@ public final class ErrorInfo
 			retval.errorInfo = (GenericURI) this.errorInfo.clone();
 		return retval;
 	}
+
+	/**
+	 * Compare two ErrorInfo headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		ErrorInfo that = (ErrorInfo) other;
+		return equal(this.errorInfo, that.errorInfo)
+				&& equal(this.parameters, that.parameters);
+	}
 }
 
@@ -143,4 +143,17 @@ public class Event extends ParametersHeader implements EventHeader {
             && ((this.getEventId() == matchTarget.getEventId())
                 || this.getEventId().equalsIgnoreCase(matchTarget.getEventId()));
     }
+
+    /**
+     * Compare two Event headers for equality.
+     */
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (other == null || other.getClass() != this.getClass())
+            return false;
+        Event that = (Event) other;
+        return equal(this.eventType, that.eventType)
+                && equal(this.parameters, that.parameters);
+    }
 }
@@ -66,7 +66,7 @@ public class ExtensionHeaderImpl
 	 */
 
 	public void setName(String headerName) {
-		this.headerName = headerName;
+		setHeaderName(headerName);
 	}
 
 	/**
@@ -120,4 +120,17 @@ public class ExtensionHeaderImpl
 	public String encodeBody() {
 		return this.getHeaderValue();
 	}
+
+	/**
+	 * Compare two extension headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		ExtensionHeaderImpl that = (ExtensionHeaderImpl) other;
+		return equal(this.headerName, that.headerName)
+				&& equal(this.value, that.value);
+	}
 }
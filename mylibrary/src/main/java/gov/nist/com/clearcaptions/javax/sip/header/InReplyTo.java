@@ -107,5 +107,17 @@ public class InReplyTo extends SIPHeader implements InReplyToHeader {
 			retval.callId = (CallIdentifier) this.callId.clone();
 		return retval;
 	}
+
+	/**
+	 * Compare two InReplyTo headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		InReplyTo that = (InReplyTo) other;
+		return equal(this.callId, that.callId);
+	}
 }
 
@@ -114,4 +114,21 @@ public class MediaRange extends SIPObject {
 				.append(SLASH)
 				.append(subtype);
 	}
+
+	/**
+	 * Compare two media ranges for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		MediaRange that = (MediaRange) other;
+		return equal(this.type, that.type)
+				&& equal(this.subtype, that.subtype);
+	}
+
+	public int hashCode() {
+		return 31 * hash(type) + hash(subtype);
+	}
 }
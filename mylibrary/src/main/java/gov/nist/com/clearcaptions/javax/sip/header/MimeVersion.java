@@ -126,6 +126,18 @@ public class MimeVersion extends SIPHeader implements MimeVersionHeader {
 			+ new Integer(minorVersion).toString();
 	}
 
+	/**
+	 * Compare two MimeVersion headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		MimeVersion that = (MimeVersion) other;
+		return this.majorVersion == that.majorVersion
+				&& this.minorVersion == that.minorVersion;
+	}
 }
 /*
  * $Log: MimeVersion.main.java,v $
@@ -96,6 +96,17 @@ public class MinExpires extends SIPHeader implements MinExpiresHeader {
 		this.expires = expires;
 	}
 
+	/**
+	 * Compare two MinExpires headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		MinExpires that = (MinExpires) other;
+		return this.expires == that.expires;
+	}
 }
 /*
  * $Log: MinExpires.main.java,v $
@@ -90,6 +90,18 @@ public class Organization extends SIPHeader implements OrganizationHeader {
 					+ " Organization, setOrganization(), the organization parameter is null");
 		organization = o;
 	}
+
+	/**
+	 * Compare two Organization headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		Organization that = (Organization) other;
+		return equal(this.organization, that.organization);
+	}
 }
 /*
  * $Log: Organization.main.java,v $
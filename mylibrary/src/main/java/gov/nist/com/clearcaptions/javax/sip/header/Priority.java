@@ -100,4 +100,16 @@ public class Priority extends SIPHeader implements PriorityHeader {
 					+ "Priority, setPriority(), the priority parameter is null");
 		priority = p;
 	}
+
+	/**
+	 * Compare two Priority headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		Priority that = (Priority) other;
+		return equal(this.priority, that.priority);
+	}
 }
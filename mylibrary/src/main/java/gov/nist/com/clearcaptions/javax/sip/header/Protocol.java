@@ -148,6 +148,26 @@ public class Protocol extends SIPObject {
 		protocolVersion = "2.0";
 		transport = "UDP";
 	}
+
+	/**
+	 * Compare two protocols for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		Protocol that = (Protocol) other;
+		return equal(this.protocolName, that.protocolName)
+				&& equal(this.protocolVersion, that.protocolVersion)
+				&& equal(this.transport, that.transport);
+	}
+
+	public int hashCode() {
+		int h = hash(protocolName);
+		h = 31 * h + hash(protocolVersion);
+		return 31 * h + hash(transport);
+	}
 }
 /*
  * $Log: Protocol.main.java,v $
@@ -99,6 +99,18 @@ public class ProxyRequire extends SIPHeader implements ProxyRequireHeader {
 	public String getOptionTag() {
 		return optionTag;
 	}
+
+	/**
+	 * Compare two ProxyRequire headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		ProxyRequire that = (ProxyRequire) other;
+		return equal(this.optionTag, that.optionTag);
+	}
 }
 /*
  * $Log: ProxyRequire.main.java,v $
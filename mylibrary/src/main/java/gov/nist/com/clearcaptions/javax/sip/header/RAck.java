@@ -154,4 +154,18 @@ public class RAck extends SIPHeader implements com.clearcaptions.javax.sip.heade
 			throw new InvalidArgumentException("Bad rSeq # " + rSeqNumber);
 		this.rSeqNumber = rSeqNumber;
 	}
+
+	/**
+	 * Compare two RAck headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		RAck that = (RAck) other;
+		return this.cSeqNumber == that.cSeqNumber
+				&& this.rSeqNumber == that.rSeqNumber
+				&& equal(this.method, that.method);
+	}
 }
@@ -87,6 +87,15 @@ public class RSeq extends SIPHeader implements com.clearcaptions.javax.sip.heade
 		
 	}
 
-
-	
+	/**
+	 * Compare two RSeq headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		RSeq that = (RSeq) other;
+		return this.sequenceNumber == that.sequenceNumber;
+	}
 }
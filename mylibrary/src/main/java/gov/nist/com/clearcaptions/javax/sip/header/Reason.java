@@ -148,6 +148,18 @@ public class Reason
 		return s.toString();
 	}
 
+	/**
+	 * Compare two Reason headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		Reason that = (Reason) other;
+		return equal(this.protocol, that.protocol)
+				&& equal(this.parameters, that.parameters);
+	}
 }
 /*
  * $Log: Reason.main.java,v $
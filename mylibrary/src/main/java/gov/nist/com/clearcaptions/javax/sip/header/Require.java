@@ -99,6 +99,18 @@ public class Require extends SIPHeader implements RequireHeader {
 	public String getOptionTag() {
 		return optionTag;
 	}
+
+	/**
+	 * Compare two Require headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		Require that = (Require) other;
+		return equal(this.optionTag, that.optionTag);
+	}
 }
 /*
  * $Log: Require.main.java,v $
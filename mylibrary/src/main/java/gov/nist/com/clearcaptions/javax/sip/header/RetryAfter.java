@@ -189,4 +189,18 @@ public class RetryAfter extends ParametersHeader implements RetryAfterHeader {
 		int retval = super.getParameterAsInt(DURATION);
 		return retval == -1? 0: retval;
 	}
+
+	/**
+	 * Compare two RetryAfter headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		RetryAfter that = (RetryAfter) other;
+		return equal(this.retryAfter, that.retryAfter)
+				&& equal(this.comment, that.comment)
+				&& equal(this.parameters, that.parameters);
+	}
 }
@@ -102,6 +102,18 @@ public class SIPDateHeader extends SIPHeader implements DateHeader {
 			retval.date = (SIPDate) this.date.clone();
 		return retval;
 	}
+
+	/**
+	 * Compare two Date headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		SIPDateHeader that = (SIPDateHeader) other;
+		return equal(this.date, that.date);
+	}
 }
 /*
  * $Log: SIPDateHeader.main.java,v $
@@ -99,4 +99,16 @@ public class SIPETag extends SIPHeader implements SIPETagHeader , ExtensionHeade
 		this.setETag(value);
 		
 	}
+
+	/**
+	 * Compare two SIPETag headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		SIPETag that = (SIPETag) other;
+		return equal(this.entityTag, that.entityTag);
+	}
 }
@@ -44,6 +44,9 @@ public abstract class SIPHeader
 	 */
 	protected String headerName;
 
+	// Id of headerName, see getHeaderId(); -1 until looked up.
+	private int headerId = -1;
+
 	/** Value of the header.
 	*/
 
@@ -54,6 +57,15 @@ public abstract class SIPHeader
 		headerName = hname;
 	}
 
+	/** Constructor for a header whose name id is already known
+	 * @param hname String to set
+	 * @param hid id of hname
+	 */
+	protected SIPHeader(String hname, int hid) {
+		headerName = hname;
+		headerId = hid;
+	}
+
 	/** Default constructor
 	 */
 	public SIPHeader() {
@@ -76,12 +88,25 @@ public abstract class SIPHeader
 		return this.headerName;
 	}
 
+	/**
+	 * Id of the header name, shared by its compact form.
+	 *
+	 * @see SIPHeaderNamesCache#getId(String)
+	 */
+	public int getHeaderId() {
+		int id = headerId;
+		if (id < 0)
+			headerId = id = SIPHeaderNamesCache.getId(headerName);
+		return id;
+	}
+
 	/**
 	     * Set the name of the header .
 	     * @param hdrname String to set
 	     */
 	public void setHeaderName(String hdrname) {
 		headerName = hdrname;
+		headerId = -1;
 	}
 
 	/** Get the header value (i.e. what follows the name:).
@@ -1,16 +1,65 @@
 package gov.nist.com.clearcaptions.javax.sip.header;
 
+import gov.nist.com.clearcaptions.core.KeywordTable;
+import gov.nist.com.clearcaptions.javax.sip.header.ims.SIPHeaderNamesIms;
+
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 
+import com.clearcaptions.javax.sip.header.ReferToHeader;
+
 /**
+ * Lower case forms and numeric ids of header names.
+ * <p>
+ * Every standard header name is given a small id, which its compact form
+ * shares, so that the message and the parsers can compare names as ints.
+ * Other names are numbered as they are first seen, up to a limit past
+ * which they all get OTHER and must be told apart by name.
+ *
  * @author yanick.belanger
  */
 public abstract class SIPHeaderNamesCache
 {
     private static final HashMap lowercaseMap = new HashMap();
 
+    /**
+     * Id shared by the names that did not get one of their own.
+     */
+    public static final int OTHER = 0;
+
+    private static final int MAX_IDS = 1024;
+
+    private static final String[][] COMPACT_FORMS = {
+        { "v", SIPHeaderNames.VIA },
+        { "f", SIPHeaderNames.FROM },
+        { "t", SIPHeaderNames.TO },
+        { "i", SIPHeaderNames.CALL_ID },
+        { "m", SIPHeaderNames.CONTACT },
+        { "l", SIPHeaderNames.CONTENT_LENGTH },
+        { "c", SIPHeaderNames.CONTENT_TYPE },
+        { "k", SIPHeaderNames.SUPPORTED },
+        { "s", SIPHeaderNames.SUBJECT },
+        { "e", SIPHeaderNames.CONTENT_ENCODING },
+        { "o", SIPHeaderNames.EVENT },
+        { "u", SIPHeaderNames.ALLOW_EVENTS },
+        { "r", ReferToHeader.NAME },
+        { "x", SIPHeaderNames.SESSION_EXPIRES },
+    };
+
+    // Lower case name of each id; entries are written before the id is
+    // published through knownIds or dynamicIds.
+    private static final String[] lowerCaseNames = new String[MAX_IDS];
+
+    private static final KeywordTable knownIds;
+
+    private static final ConcurrentHashMap<String, Integer> dynamicIds =
+        new ConcurrentHashMap<String, Integer>();
+
+    private static int nextId = OTHER + 1;
+
     static {
         Field[] fields = SIPHeaderNames.class.getFields();
         for (int i = 0; i < fields.length; i++) {
@@ -25,6 +74,35 @@ public abstract class SIPHeaderNamesCache
                 }
             }
         }
+
+        LinkedHashMap<String, Integer> ids = new LinkedHashMap<String, Integer>();
+        addNames(ids, SIPHeaderNames.class);
+        addNames(ids, SIPHeaderNamesIms.class);
+        addName(ids, ReferToHeader.NAME);
+        for (int i = 0; i < COMPACT_FORMS.length; i++)
+            ids.put(COMPACT_FORMS[i][0], ids.get(toLowerCase(COMPACT_FORMS[i][1])));
+        knownIds = new KeywordTable(ids);
+    }
+
+    private static void addNames(HashMap<String, Integer> ids, Class<?> names) {
+        Field[] fields = names.getFields();
+        for (int i = 0; i < fields.length; i++) {
+            Field field = fields[i];
+            if (field.getType().equals(String.class) && Modifier.isStatic(field.getModifiers())) {
+                try {
+                    addName(ids, (String) field.get(null));
+                } catch (IllegalAccessException e) {
+                }
+            }
+        }
+    }
+
+    private static void addName(HashMap<String, Integer> ids, String name) {
+        String lowerCase = toLowerCase(name);
+        if (!ids.containsKey(lowerCase)) {
+            lowerCaseNames[nextId] = lowerCase;
+            ids.put(lowerCase, Integer.valueOf(nextId++));
+        }
     }
 
     public static String toLowerCase(String headerName) {
@@ -36,4 +114,46 @@ public abstract class SIPHeaderNamesCache
             return lowerCase;
         }
     }
+
+    /**
+     * @return the id of the header name, in any case, or OTHER
+     */
+    public static int getId(String headerName) {
+        int id = knownIds.get(headerName);
+        return id != KeywordTable.NONE ? id : dynamicId(headerName);
+    }
+
+    /**
+     * @return the id of the header name in buffer[start, end), or OTHER
+     */
+    public static int getId(char[] buffer, int start, int end) {
+        int id = knownIds.get(buffer, start, end);
+        return id != KeywordTable.NONE ? id
+            : dynamicId(new String(buffer, start, end - start));
+    }
+
+    /**
+     * @return the lower case name the id was given for, the full name for
+     *         an id shared with a compact form, or null for OTHER
+     */
+    public static String getLowerCaseName(int id) {
+        return lowerCaseNames[id];
+    }
+
+    private static int dynamicId(String headerName) {
+        String lowerCase = headerName.toLowerCase();
+        Integer id = dynamicIds.get(lowerCase);
+        if (id != null)
+            return id.intValue();
+        synchronized (dynamicIds) {
+            id = dynamicIds.get(lowerCase);
+            if (id != null)
+                return id.intValue();
+            if (nextId == MAX_IDS)
+                return OTHER;
+            lowerCaseNames[nextId] = lowerCase;
+            dynamicIds.put(lowerCase, Integer.valueOf(nextId));
+            return nextId++;
+        }
+    }
 }
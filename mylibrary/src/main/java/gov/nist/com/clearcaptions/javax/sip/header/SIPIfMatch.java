@@ -97,4 +97,16 @@ public class SIPIfMatch extends SIPHeader implements SIPIfMatchHeader,ExtensionH
 		
 		
 	}
+
+	/**
+	 * Compare two SIPIfMatch headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		SIPIfMatch that = (SIPIfMatch) other;
+		return equal(this.entityTag, that.entityTag);
+	}
 }
@@ -156,6 +156,22 @@ public abstract class SIPObject extends GenericObject {
 		return true;
 	}
 
+	/** Null safe field comparison for the equals methods of subclasses,
+	 * which compare their fields directly rather than through the
+	 * introspection based equals above.
+	 */
+	protected static boolean equal(Object mine, Object his) {
+		return mine == his
+			|| (mine != null && his != null && mine.equals(his));
+	}
+
+	/** Null safe field hash for the hashCode methods that go with those
+	 * equals methods.
+	 */
+	protected static int hash(Object field) {
+		return field == null ? 0 : field.hashCode();
+	}
+
 	/** An introspection based predicate matching using a template
 	 * object. Allows for partial match of two protocl Objects.
 	 * You can set a generalized matcher (using regular expressions
@@ -123,6 +123,18 @@ public class Server extends SIPHeader implements ServerHeader {
 					+ " product parameter is null");
 		productTokens = product;
 	}
+
+	/**
+	 * Compare two Server headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		Server that = (Server) other;
+		return equal(this.productTokens, that.productTokens);
+	}
 }
 /*
  * $Log: Server.main.java,v $
@@ -210,6 +210,28 @@ public final class StatusLine extends SIPObject {
 		}
 		return minor;
 	}
+
+	/**
+	 * Compare two status lines for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		StatusLine that = (StatusLine) other;
+		return this.statusCode == that.statusCode
+				&& equal(this.reasonPhrase, that.reasonPhrase)
+				&& equal(this.sipVersion, that.sipVersion)
+				&& this.matchStatusClass == that.matchStatusClass;
+	}
+
+	public int hashCode() {
+		int h = statusCode;
+		h = 31 * h + hash(reasonPhrase);
+		h = 31 * h + hash(sipVersion);
+		return 31 * h + (matchStatusClass ? 1 : 0);
+	}
 }
 /*
  * $Log: StatusLine.main.java,v $
@@ -99,6 +99,17 @@ public class Subject extends SIPHeader implements SubjectHeader {
 		return subject;
 	}
 
+	/**
+	 * Compare two Subject headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		Subject that = (Subject) other;
+		return equal(this.subject, that.subject);
+	}
 }
 /*
  * $Log: Subject.main.java,v $
@@ -184,5 +184,21 @@ public class SubscriptionState
 		}
 		return buffer;
 	}
+
+	/**
+	 * Compare two SubscriptionState headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		SubscriptionState that = (SubscriptionState) other;
+		return equal(this.state, that.state)
+				&& this.expires == that.expires
+				&& this.retryAfter == that.retryAfter
+				&& equal(this.reasonCode, that.reasonCode)
+				&& equal(this.parameters, that.parameters);
+	}
 }
 
@@ -114,6 +114,18 @@ public class Supported extends SIPHeader implements SupportedHeader {
 	public String getOptionTag() {
 		return optionTag;
 	}
+
+	/**
+	 * Compare two Supported headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		Supported that = (Supported) other;
+		return equal(this.optionTag, that.optionTag);
+	}
 }
 /*
  * $Log: Supported.main.java,v $
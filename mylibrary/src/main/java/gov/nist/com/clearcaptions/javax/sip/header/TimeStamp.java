@@ -193,4 +193,18 @@ public class TimeStamp extends SIPHeader implements TimeStampHeader {
 
 	}
 
+	/**
+	 * Compare two TimeStamp headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		TimeStamp that = (TimeStamp) other;
+		return this.timeStamp == that.timeStamp
+				&& this.timeStampFloat == that.timeStampFloat
+				&& this.delay == that.delay
+				&& this.delayFloat == that.delayFloat;
+	}
 }
@@ -91,6 +91,18 @@ public class Unsupported
 					+ " Unsupported, setOptionTag(), The option tag parameter is null");
 		optionTag = o;
 	}
+
+	/**
+	 * Compare two Unsupported headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		Unsupported that = (Unsupported) other;
+		return equal(this.optionTag, that.optionTag);
+	}
 }
 /*
  * $Log: Unsupported.main.java,v $
@@ -125,6 +125,17 @@ public class UserAgent extends SIPHeader implements UserAgentHeader {
 		return retval;
 	}
 
+	/**
+	 * Compare two UserAgent headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		UserAgent that = (UserAgent) other;
+		return equal(this.productTokens, that.productTokens);
+	}
 }
 /*
  * $Log: UserAgent.main.java,v $
@@ -149,6 +149,20 @@ public class Warning extends SIPHeader implements WarningHeader {
 		} else
 			this.text = text;
 	}
+
+	/**
+	 * Compare two Warning headers for equality.
+	 */
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != this.getClass())
+			return false;
+		Warning that = (Warning) other;
+		return this.code == that.code
+				&& equal(this.agent, that.agent)
+				&& equal(this.text, that.text);
+	}
 }
 /*
  * $Log: Warning.main.java,v $
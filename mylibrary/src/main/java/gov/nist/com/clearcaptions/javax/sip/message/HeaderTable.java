@@ -0,0 +1,235 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+/*******************************************************************************
+ * Product of NIST/ITL Advanced Networking Technologies Division (ANTD)        *
+ ******************************************************************************/
+package gov.nist.com.clearcaptions.javax.sip.message;
+
+import gov.nist.com.clearcaptions.javax.sip.header.SIPHeader;
+import gov.nist.com.clearcaptions.javax.sip.header.SIPHeaderNamesCache;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The headers of a SIPMessage, one entry per header name in the order the
+ * names were first added. Entries are found by the id SIPHeaderNamesCache
+ * gives the name, so a lookup is a short scan comparing ints; only names
+ * with the id OTHER are compared as strings. A message has a dozen or so
+ * headers, for which small arrays are both smaller and faster than a hash
+ * table and a linked list.
+ * <p>
+ * All methods lock the table; hold the lock to walk it by index.
+ */
+final class HeaderTable {
+
+	private static final int DEFAULT_CAPACITY = 12;
+
+	private int[] ids;
+
+	private String[] names;
+
+	private SIPHeader[] values;
+
+	private int size;
+
+	HeaderTable() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	HeaderTable(int capacity) {
+		ids = new int[Math.max(capacity, 1)];
+		names = new String[ids.length];
+		values = new SIPHeader[ids.length];
+	}
+
+	private int indexOf(int id, String name) {
+		for (int i = 0; i < size; i++) {
+			if (ids[i] == id && (id != SIPHeaderNamesCache.OTHER
+					|| names[i].equalsIgnoreCase(name)))
+				return i;
+		}
+		return -1;
+	}
+
+	private int indexOf(SIPHeader header) {
+		for (int i = 0; i < size; i++) {
+			if (values[i] == header)
+				return i;
+		}
+		return -1;
+	}
+
+	synchronized int size() {
+		return size;
+	}
+
+	synchronized int idAt(int i) {
+		return ids[i];
+	}
+
+	synchronized String nameAt(int i) {
+		return names[i];
+	}
+
+	synchronized SIPHeader valueAt(int i) {
+		return values[i];
+	}
+
+	/**
+	 * @param name the header name, needed only if id is OTHER
+	 */
+	synchronized SIPHeader get(int id, String name) {
+		int i = indexOf(id, name);
+		return i < 0 ? null : values[i];
+	}
+
+	synchronized boolean containsKey(int id, String name) {
+		return indexOf(id, name) >= 0;
+	}
+
+	/**
+	 * Set the header of the given name, in place if the name is present and
+	 * at the end otherwise.
+	 *
+	 * @return the header previously held under the name, or null.
+	 */
+	synchronized SIPHeader put(int id, String name, SIPHeader header) {
+		int i = indexOf(id, name);
+		if (i < 0) {
+			append(id, name, header);
+			return null;
+		}
+		SIPHeader previous = values[i];
+		values[i] = header;
+		return previous;
+	}
+
+	/**
+	 * Add a header at the end without looking for its name; for copying a
+	 * table whose names are known to be distinct.
+	 */
+	synchronized void append(int id, String name, SIPHeader header) {
+		if (size == ids.length) {
+			int capacity = size + (size >> 1) + 1;
+			int[] newIds = new int[capacity];
+			String[] newNames = new String[capacity];
+			SIPHeader[] newValues = new SIPHeader[capacity];
+			System.arraycopy(ids, 0, newIds, 0, size);
+			System.arraycopy(names, 0, newNames, 0, size);
+			System.arraycopy(values, 0, newValues, 0, size);
+			ids = newIds;
+			names = newNames;
+			values = newValues;
+		}
+		ids[size] = id;
+		names[size] = name;
+		values[size] = header;
+		size++;
+	}
+
+	/**
+	 * @return the header removed, or null if there was none of that name.
+	 */
+	synchronized SIPHeader remove(int id, String name) {
+		int i = indexOf(id, name);
+		if (i < 0)
+			return null;
+		SIPHeader removed = values[i];
+		removeAt(i);
+		return removed;
+	}
+
+	/**
+	 * Put replacement in the place of the given header, or remove the entry
+	 * if replacement is null.
+	 *
+	 * @return false if the header is no longer in the table.
+	 */
+	synchronized boolean replace(SIPHeader header, SIPHeader replacement) {
+		int i = indexOf(header);
+		if (i < 0)
+			return false;
+		if (replacement != null)
+			values[i] = replacement;
+		else
+			removeAt(i);
+		return true;
+	}
+
+	private void removeAt(int i) {
+		size--;
+		System.arraycopy(ids, i + 1, ids, i, size - i);
+		System.arraycopy(names, i + 1, names, i, size - i);
+		System.arraycopy(values, i + 1, values, i, size - i);
+		names[size] = null;
+		values[size] = null;
+	}
+
+	synchronized SIPHeader[] toArray() {
+		SIPHeader[] retval = new SIPHeader[size];
+		System.arraycopy(values, 0, retval, 0, size);
+		return retval;
+	}
+
+	/**
+	 * Iterate over a snapshot of the headers, so the table may be changed
+	 * while the iteration is in progress. remove() takes the last header
+	 * returned out of the table.
+	 */
+	Iterator<SIPHeader> iterator() {
+		final SIPHeader[] snapshot = toArray();
+		return new Iterator<SIPHeader>() {
+			private int next;
+
+			public boolean hasNext() {
+				return next < snapshot.length;
+			}
+
+			public SIPHeader next() {
+				if (next >= snapshot.length)
+					throw new NoSuchElementException();
+				return snapshot[next++];
+			}
+
+			public void remove() {
+				if (next == 0)
+					throw new IllegalStateException();
+				replace(snapshot[next - 1], null);
+			}
+		};
+	}
+
+	public synchronized String toString() {
+		StringBuffer retval = new StringBuffer("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0)
+				retval.append(", ");
+			retval.append(values[i]);
+		}
+		return retval.append(']').toString();
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+/*******************************************************************************
+ * Product of NIST/ITL Advanced Networking Technologies Division (ANTD)        *
+ ******************************************************************************/
+package gov.nist.com.clearcaptions.javax.sip.message;
+
+import gov.nist.com.clearcaptions.javax.sip.header.SIPHeader;
+
+import java.util.ArrayList;
+
+/**
+ * Stand-in for the received headers of one name that have not been parsed
+ * yet. It holds the header lines as they arrived and takes the place of
+ * the parsed header in the message until something asks for it by name;
+ * SIPMessage then parses the lines and swaps the result in. Until then it
+ * encodes to the original lines.
+ *
+ * @see SIPMessage#attachLazyHeader(String, String)
+ */
+final class LazyHeader extends SIPHeader {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Header lines ("name: value", no line terminator) in arrival order.
+	 */
+	ArrayList<String> lines;
+
+	LazyHeader(int headerId, String name, String line) {
+		super(name, headerId);
+		this.lines = new ArrayList<String>(2);
+		this.lines.add(line);
+	}
+
+	void add(String line) {
+		lines.add(line);
+	}
+
+	public StringBuffer encode(StringBuffer buffer) {
+		for (int i = 0; i < lines.size(); i++)
+			buffer.append(lines.get(i)).append(NEWLINE);
+		return buffer;
+	}
+
+	protected String encodeBody() {
+		StringBuffer buffer = new StringBuffer();
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i);
+			if (i > 0)
+				buffer.append(COMMA);
+			buffer.append(line.substring(line.indexOf(':') + 1).trim());
+		}
+		return buffer.toString();
+	}
+
+	@SuppressWarnings("unchecked")
+	public Object clone() {
+		LazyHeader retval = (LazyHeader) super.clone();
+		retval.lines = (ArrayList<String>) lines.clone();
+		return retval;
+	}
+}
@@ -31,7 +31,7 @@ package gov.nist.com.clearcaptions.javax.sip.message;
 import gov.nist.com.clearcaptions.javax.sip.header.*;
 import gov.nist.com.clearcaptions.javax.sip.header.ims.*;
 
-import java.util.Hashtable;
+import java.util.HashMap;
 
 /**
  * A map of which of the standard headers may appear as a list
@@ -45,10 +45,10 @@ class ListMap {
 	// Entries in this table allow you to look up the list form of a header
 	// (provided it has a list form). Note that under JAVA-5 we have
 	// typed collections which would render such a list obsolete. However,
-	// we are not using main.java 5.
-	private static Hashtable<Class<?>,Class<?>> headerListTable;
+	// we are not using main.java 5. The table is filled once, when the
+	// class is initialized, and only read after that, so it needs no lock.
+	private static HashMap<Class<?>,Class<?>> headerListTable;
 
-	private static boolean initialized;
 	static {
 		initializeListMap();
 	}
@@ -58,7 +58,7 @@ class ListMap {
 		 * Build a table mapping between objects that have a list form and the
 		 * class of such objects.
 		 */
-		headerListTable = new Hashtable<Class<?>, Class<?>>();
+		headerListTable = new HashMap<Class<?>, Class<?>>();
 		headerListTable.put(ExtensionHeaderImpl.class, ExtensionHeaderList.class);
 
 		headerListTable.put(Contact.class, ContactList.class);
@@ -128,9 +128,6 @@ class ListMap {
 		headerListTable.put(SecurityVerify.class, SecurityVerifyList.class);
 	   
 		headerListTable.put(PAssertedIdentity.class, PAssertedIdentityList.class);
-	    
-	    initialized = true;
-
 	}
 
 	/**
@@ -149,8 +146,6 @@ class ListMap {
 	 * Return true if this has an associated list object.
 	 */
 	static protected boolean hasList(Class<?> sipHdrClass) {
-		if (!initialized)
-			initializeListMap();
 		return headerListTable.get(sipHdrClass) != null;
 	}
 
@@ -158,8 +153,6 @@ class ListMap {
 	 * Get the associated list class.
 	 */
 	static protected Class<?> getListClass(Class<?> sipHdrClass) {
-		if (!initialized)
-			initializeListMap();
 		return (Class<?>) headerListTable.get(sipHdrClass);
 	}
 
@@ -168,8 +161,6 @@ class ListMap {
 	 */
 	@SuppressWarnings("unchecked")
 	static protected SIPHeaderList<SIPHeader> getList(SIPHeader sipHeader) {
-		if (!initialized)
-			initializeListMap();
 		try {
 			Class<?> headerClass = sipHeader.getClass();
 			Class<?> listClass =  headerListTable.get(headerClass);
@@ -75,13 +75,11 @@ import gov.nist.com.clearcaptions.javax.sip.parser.StringMsgParser;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Field;
 import java.text.ParseException;
-import java.util.Collection;
-import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.clearcaptions.javax.sip.InvalidArgumentException;
 import com.clearcaptions.javax.sip.SipException;
@@ -139,9 +137,9 @@ public abstract class SIPMessage extends MessageObject implements
 	protected LinkedList<String> unrecognizedHeaders;
 
 	/**
-	 * List of parsed headers (in the order they were added)
+	 * Headers indexed by lower case name, in the order they were added.
 	 */
-	protected ConcurrentLinkedQueue<SIPHeader> headers;
+	protected HeaderTable headers;
 
 	/**
 	 * Direct accessors for frequently accessed headers
@@ -158,6 +156,8 @@ public abstract class SIPMessage extends MessageObject implements
 
 	protected MaxForwards maxForwardsHeader;
 
+	private ViaList viaHeaders;
+
 	// Cumulative size of all the headers.
 	protected int size;
 
@@ -168,8 +168,12 @@ public abstract class SIPMessage extends MessageObject implements
 
 	private Object messageContentObject;
 
-	// Table of headers indexed by name.
-	private Hashtable<String,SIPHeader> nameTable;
+	// Number of LazyHeaders still waiting to be parsed. Threads parsing
+	// different headers of one message only share the header table lock.
+	private AtomicInteger lazyHeaderCount = new AtomicInteger();
+
+	// Bytes last sent for this message, see encodeAsBytesCached().
+	private transient volatile WireEncoding wireEncoding;
 
 	/**
 	 * The application data pointer. This is un-interpreted by the stack.
@@ -226,7 +230,7 @@ public abstract class SIPMessage extends MessageObject implements
 		LinkedList<String> retval = new LinkedList<String>();
 		Iterator<SIPHeader> li = headers.iterator();
 		while (li.hasNext()) {
-			SIPHeader sipHeader = (SIPHeader) li.next();
+			SIPHeader sipHeader = li.next();
 			if (sipHeader instanceof SIPHeaderList) {
 				SIPHeaderList<?> shl = (SIPHeaderList<?>) sipHeader;
 				retval.addAll(shl.getHeadersAsEncodedStrings());
@@ -245,12 +249,12 @@ public abstract class SIPMessage extends MessageObject implements
 	 */
 	protected String encodeSIPHeaders() {
 		StringBuffer encoding = new StringBuffer();
-		Iterator<SIPHeader> it = this.headers.iterator();
-
-		while (it.hasNext()) {
-			SIPHeader siphdr = (SIPHeader) it.next();
-			if (!(siphdr instanceof ContentLength))
-				siphdr.encode(encoding);
+		synchronized (this.headers) {
+			for (int i = 0; i < headers.size(); i++) {
+				SIPHeader siphdr = headers.valueAt(i);
+				if (!(siphdr instanceof ContentLength))
+					siphdr.encode(encoding);
+			}
 		}
 
 		return contentLengthHeader.encode(encoding).append(NEWLINE).toString();
@@ -287,7 +291,7 @@ public abstract class SIPMessage extends MessageObject implements
 		SIPMessage matchObj = (SIPMessage) other;
 		Iterator<SIPHeader> li = matchObj.getHeaders();
 		while (li.hasNext()) {
-			SIPHeader hisHeaders = (SIPHeader) li.next();
+			SIPHeader hisHeaders = li.next();
 			List<SIPHeader> myHeaders = this.getHeaderList(hisHeaders
 					.getHeaderName());
 
@@ -319,7 +323,7 @@ public abstract class SIPMessage extends MessageObject implements
 				ListIterator<SIPHeader> innerIterator = myHeaders.listIterator();
 				boolean found = false;
 				while (innerIterator.hasNext()) {
-					SIPHeader myHeader = (SIPHeader) innerIterator.next();
+					SIPHeader myHeader = innerIterator.next();
 					if (myHeader.match(hisHeader)) {
 						found = true;
 						break;
@@ -345,9 +349,11 @@ public abstract class SIPMessage extends MessageObject implements
 			throw new IllegalArgumentException("Bad class "
 					+ template.getClass());
 		SIPMessage templateMessage = (SIPMessage) template;
-		Object[] templateHeaders = templateMessage.headers.toArray();
+		templateMessage.parseLazyHeaders();
+		invalidateEncoding();
+		SIPHeader[] templateHeaders = templateMessage.headers.toArray();
 		for (int i = 0; i < templateHeaders.length; i++) {
-			SIPHeader hdr = (SIPHeader) templateHeaders[i];
+			SIPHeader hdr = templateHeaders[i];
 			String hdrName = hdr.getHeaderName();
 			List<SIPHeader> myHdrs = this.getHeaderList(hdrName);
 			if (myHdrs == null) {
@@ -355,7 +361,7 @@ public abstract class SIPMessage extends MessageObject implements
 			} else {
 				ListIterator<SIPHeader> it = myHdrs.listIterator();
 				while (it.hasNext()) {
-					SIPHeader sipHdr = (SIPHeader) it.next();
+					SIPHeader sipHdr = it.next();
 					sipHdr.merge(hdr);
 				}
 			}
@@ -374,12 +380,12 @@ public abstract class SIPMessage extends MessageObject implements
 	 */
 	public String encode() {
 		StringBuffer encoding = new StringBuffer();
-		Iterator<SIPHeader> it = this.headers.iterator();
-
-		while (it.hasNext()) {
-			SIPHeader siphdr = (SIPHeader) it.next();
-			if (!(siphdr instanceof ContentLength))
-				encoding.append(siphdr.encode());
+		synchronized (this.headers) {
+			for (int i = 0; i < headers.size(); i++) {
+				SIPHeader siphdr = headers.valueAt(i);
+				if (!(siphdr instanceof ContentLength))
+					encoding.append(siphdr.encode());
+			}
 		}
 		// Append the unrecognized headers. Headers that are not
 		// recognized are passed through unchanged.
@@ -434,13 +440,10 @@ public abstract class SIPMessage extends MessageObject implements
 
 		StringBuffer encoding = new StringBuffer();
 		synchronized (this.headers) {
-			Iterator<SIPHeader> it = this.headers.iterator();
-
-			while (it.hasNext()) {
-				SIPHeader siphdr = (SIPHeader) it.next();
+			for (int i = 0; i < headers.size(); i++) {
+				SIPHeader siphdr = headers.valueAt(i);
 				if (!(siphdr instanceof ContentLength))
 					siphdr.encode(encoding);
-
 			}
 		}
 		contentLengthHeader.encode(encoding);
@@ -474,6 +477,56 @@ public abstract class SIPMessage extends MessageObject implements
 		return retval;
 	}
 
+	/**
+	 * Encode the message as a byte array for transmission, reusing the bytes
+	 * produced by the previous call if the message has not been changed
+	 * through its setters since and is sent on the same transport. This is
+	 * what the message channels use, so a retransmission or a resent
+	 * response goes out as the identical bytes without being encoded again.
+	 * <p>
+	 * A change made directly to a header object taken from the message is
+	 * not seen by this cache; call invalidateEncoding() after such a change
+	 * if the message has already been sent.
+	 *
+	 * @return the encoded message; callers must not modify it.
+	 */
+	public byte[] encodeAsBytesCached(String transport) {
+		WireEncoding cached = this.wireEncoding;
+		if (cached != null && cached.transport.equals(transport))
+			return cached.bytes;
+		byte[] bytes = encodeAsBytes(transport);
+		this.wireEncoding = new WireEncoding(transport, bytes);
+		return bytes;
+	}
+
+	/**
+	 * @return the bytes last returned by encodeAsBytesCached() if they are
+	 *         still current, else null. Callers must not modify them.
+	 */
+	public byte[] getCachedEncoding() {
+		WireEncoding cached = this.wireEncoding;
+		return cached != null ? cached.bytes : null;
+	}
+
+	/**
+	 * Drop the cached encoding so that the next send encodes the message
+	 * again. Every setter of the message calls this.
+	 */
+	public void invalidateEncoding() {
+		this.wireEncoding = null;
+	}
+
+	private static final class WireEncoding {
+		final String transport;
+
+		final byte[] bytes;
+
+		WireEncoding(String transport, byte[] bytes) {
+			this.transport = transport;
+			this.bytes = bytes;
+		}
+	}
+
 	/**
 	 * clone this message (create a new deep physical copy). All headers in the
 	 * message are cloned. You can modify the cloned copy without affecting the
@@ -487,27 +540,36 @@ public abstract class SIPMessage extends MessageObject implements
 	 */
 	public Object clone() {
 		SIPMessage retval = (SIPMessage) super.clone();
-		retval.nameTable = new Hashtable<String,SIPHeader>();
+		retval.wireEncoding = null;
 		retval.fromHeader = null;
 		retval.toHeader = null;
 		retval.cSeqHeader = null;
 		retval.callIdHeader = null;
 		retval.contentLengthHeader = null;
 		retval.maxForwardsHeader = null;
-		if (this.headers != null) {
-				retval.headers = new ConcurrentLinkedQueue<SIPHeader>();
-			for (Iterator<SIPHeader> iter = headers.iterator(); iter.hasNext();) {
-				SIPHeader hdr = (SIPHeader) iter.next();
-				retval.attachHeader((SIPHeader) hdr.clone());
+		retval.viaHeaders = null;
+		retval.lazyHeaderCount = new AtomicInteger();
+		// The headers are already one per name, so the copies go straight
+		// into the table instead of through attachHeader.
+		synchronized (this.headers) {
+			retval.headers = new HeaderTable(headers.size() + 2);
+			for (int i = 0; i < headers.size(); i++) {
+				SIPHeader hdr = headers.valueAt(i);
+				SIPHeader copy = (SIPHeader) hdr.clone();
+				retval.headers.append(headers.idAt(i), headers.nameAt(i), copy);
+				if (hdr instanceof LazyHeader)
+					retval.lazyHeaderCount.incrementAndGet();
+				else
+					retval.setShortcut(copy);
 			}
-
 		}
 		if (this.messageContentBytes != null)
-			retval.messageContentBytes = (byte[]) this.messageContentBytes
-					.clone();
+			retval.messageContentBytes = this.messageContentBytes.clone();
 		if (this.messageContentObject != null)
 			retval.messageContentObject = makeClone(messageContentObject);
-		retval.unrecognizedHeaders = this.unrecognizedHeaders;
+		synchronized (this.unrecognizedHeaders) {
+			retval.unrecognizedHeaders = new LinkedList<String>(this.unrecognizedHeaders);
+		}
 		return retval;
 	}
 
@@ -563,8 +625,7 @@ public abstract class SIPMessage extends MessageObject implements
 	 */
 	public SIPMessage() {
 		this.unrecognizedHeaders = new LinkedList<String>();
-		this.headers = new ConcurrentLinkedQueue<SIPHeader>();
-		nameTable = new Hashtable<String,SIPHeader>();
+		this.headers = new HeaderTable();
 		try {
 			this.attachHeader(new ContentLength(0), false);
 		} catch (Exception ex) {
@@ -626,7 +687,7 @@ public abstract class SIPMessage extends MessageObject implements
 	public void setHeaders(List<SIPHeader> headers) {
 		ListIterator<SIPHeader> listIterator = headers.listIterator();
 		while (listIterator.hasNext()) {
-			SIPHeader sipHeader = (SIPHeader) listIterator.next();
+			SIPHeader sipHeader = listIterator.next();
 			try {
 				this.attachHeader(sipHeader, false);
 			} catch (SIPDuplicateHeaderException ex) {
@@ -676,6 +737,7 @@ public abstract class SIPMessage extends MessageObject implements
 		if (header == null) {
 			throw new NullPointerException("null header");
 		}
+		invalidateEncoding();
 
 		SIPHeader h;
 
@@ -688,53 +750,38 @@ public abstract class SIPMessage extends MessageObject implements
 			h = header;
 		}
 
-		String headerNameLowerCase = SIPHeaderNamesCache.toLowerCase(h
-				.getName());
-		if (replaceFlag) {
-			nameTable.remove(headerNameLowerCase);
-		} else if (nameTable.containsKey(headerNameLowerCase)
-				&& !(h instanceof SIPHeaderList)) {
-			if (h instanceof ContentLength) {
-				try {
-					ContentLength cl = (ContentLength) h;
-					contentLengthHeader.setContentLength(cl.getContentLength());
-				} catch (InvalidArgumentException e) {
+		int headerId = h.getHeaderId();
+		String headerName = h.getName();
+		SIPHeader existing = (lazyHeaderCount.get() > 0 && !(h instanceof LazyHeader))
+				? lookup(headerId, headerName)
+				: headers.get(headerId, headerName);
+		if (existing != null && !replaceFlag) {
+			if (!(h instanceof SIPHeaderList)) {
+				if (h instanceof ContentLength) {
+					try {
+						ContentLength cl = (ContentLength) h;
+						contentLengthHeader.setContentLength(cl.getContentLength());
+					} catch (InvalidArgumentException e) {
+					}
 				}
+				// Just ignore duplicate header.
+				return;
 			}
-			// Just ignore duplicate header.
-			return;
-		}
-
-		SIPHeader originalHeader = (SIPHeader) getHeader(header.getName());
-
-		// Delete the original header from our list structure.
-		if (originalHeader != null) {
-			Iterator<SIPHeader> li = headers.iterator();
-			while (li.hasNext()) {
-				SIPHeader next = (SIPHeader) li.next();
-				if (next.equals(originalHeader)) {
-					li.remove();
-				}
+			if (existing instanceof SIPHeaderList) {
+				concatenate((SIPHeaderList<?>) existing, (SIPHeaderList<?>) h, top);
+				return;
 			}
 		}
 
-		if (!nameTable.containsKey(headerNameLowerCase)) {
-			nameTable.put(headerNameLowerCase, h);
-			headers.add(h);
-		} else {
-			if (h instanceof SIPHeaderList) {
-				SIPHeaderList<?> hdrlist = (SIPHeaderList<?>) nameTable
-						.get(headerNameLowerCase);
-				if (hdrlist != null)
-					hdrlist.concatenate((SIPHeaderList) h, top);
-				else
-					nameTable.put(headerNameLowerCase, h);
-			} else {
-				nameTable.put(headerNameLowerCase, h);
-			}
-		}
+		// A replaced header keeps its place in the message.
+		headers.put(headerId, headerName, h);
+		setShortcut(h);
+	}
 
-		// Direct accessor fields for frequently accessed headers.
+	/**
+	 * Direct accessor fields for frequently accessed headers.
+	 */
+	private void setShortcut(SIPHeader h) {
 		if (h instanceof From) {
 			this.fromHeader = (From) h;
 		} else if (h instanceof ContentLength) {
@@ -747,10 +794,33 @@ public abstract class SIPMessage extends MessageObject implements
 			this.callIdHeader = (CallID) h;
 		} else if (h instanceof MaxForwards) {
 			this.maxForwardsHeader = (MaxForwards) h;
+		} else if (h instanceof ViaList) {
+			this.viaHeaders = (ViaList) h;
 		}
 
 	}
 
+	/**
+	 * Drop the direct accessor field that points at a removed header.
+	 */
+	private void clearShortcut(SIPHeader removed) {
+		if (removed == fromHeader) {
+			this.fromHeader = null;
+		} else if (removed == toHeader) {
+			this.toHeader = null;
+		} else if (removed == cSeqHeader) {
+			this.cSeqHeader = null;
+		} else if (removed == callIdHeader) {
+			this.callIdHeader = null;
+		} else if (removed == maxForwardsHeader) {
+			this.maxForwardsHeader = null;
+		} else if (removed == contentLengthHeader) {
+			this.contentLengthHeader = null;
+		} else if (removed == viaHeaders) {
+			this.viaHeaders = null;
+		}
+	}
+
 	/**
 	 * Remove a header given its name. If multiple headers of a given name are
 	 * present then the top flag determines which end to remove headers from.
@@ -762,12 +832,12 @@ public abstract class SIPMessage extends MessageObject implements
 	 */
 	public void removeHeader(String headerName, boolean top) {
 
-		String headerNameLowerCase = SIPHeaderNamesCache
-				.toLowerCase(headerName);
-		SIPHeader toRemove = (SIPHeader) nameTable.get(headerNameLowerCase);
+		int headerId = SIPHeaderNamesCache.getId(headerName);
+		SIPHeader toRemove = lookup(headerId, headerName);
 		// nothing to do then we are done.
 		if (toRemove == null)
 			return;
+		invalidateEncoding();
 		if (toRemove instanceof SIPHeaderList) {
 			SIPHeaderList<?> hdrList = (SIPHeaderList<?>) toRemove;
 			if (top)
@@ -776,39 +846,14 @@ public abstract class SIPMessage extends MessageObject implements
 				hdrList.removeLast();
 			// Clean up empty list
 			if (hdrList.isEmpty()) {
-				Iterator<SIPHeader> li = this.headers.iterator();
-				while (li.hasNext()) {
-					SIPHeader sipHeader = (SIPHeader) li.next();
-					if (sipHeader.getName().equalsIgnoreCase(
-							headerNameLowerCase))
-						li.remove();
-				}
-
-				// JvB: also remove it from the nameTable! Else NPE in
+				// JvB: also remove it from the header table! Else NPE in
 				// DefaultRouter
-				nameTable.remove(headerNameLowerCase);
+				headers.remove(headerId, headerName);
+				clearShortcut(toRemove);
 			}
 		} else {
-			this.nameTable.remove(headerNameLowerCase);
-			if (toRemove instanceof From) {
-				this.fromHeader = null;
-			} else if (toRemove instanceof To) {
-				this.toHeader = null;
-			} else if (toRemove instanceof CSeq) {
-				this.cSeqHeader = null;
-			} else if (toRemove instanceof CallID) {
-				this.callIdHeader = null;
-			} else if (toRemove instanceof MaxForwards) {
-				this.maxForwardsHeader = null;
-			} else if (toRemove instanceof ContentLength) {
-				this.contentLengthHeader = null;
-			}
-			Iterator<SIPHeader> li = this.headers.iterator();
-			while (li.hasNext()) {
-				SIPHeader sipHeader = (SIPHeader) li.next();
-				if (sipHeader.getName().equalsIgnoreCase(headerName))
-					li.remove();
-			}
+			headers.remove(headerId, headerName);
+			clearShortcut(toRemove);
 		}
 
 	}
@@ -823,35 +868,17 @@ public abstract class SIPMessage extends MessageObject implements
 
 		if (headerName == null)
 			throw new NullPointerException("null arg");
-		String headerNameLowerCase = SIPHeaderNamesCache
-				.toLowerCase(headerName);
-		SIPHeader removed = (SIPHeader) nameTable.remove(headerNameLowerCase);
+		SIPHeader removed = headers.remove(
+				SIPHeaderNamesCache.getId(headerName), headerName);
 		// nothing to do then we are done.
 		if (removed == null)
 			return;
-
-		// Remove the fast accessor fields.
-		if (removed instanceof From) {
-			this.fromHeader = null;
-		} else if (removed instanceof To) {
-			this.toHeader = null;
-		} else if (removed instanceof CSeq) {
-			this.cSeqHeader = null;
-		} else if (removed instanceof CallID) {
-			this.callIdHeader = null;
-		} else if (removed instanceof MaxForwards) {
-			this.maxForwardsHeader = null;
-		} else if (removed instanceof ContentLength) {
-			this.contentLengthHeader = null;
-		}
-
-		Iterator<SIPHeader> li = this.headers.iterator();
-		while (li.hasNext()) {
-			SIPHeader sipHeader = (SIPHeader) li.next();
-			if (sipHeader.getName().equalsIgnoreCase(headerNameLowerCase))
-				li.remove();
-
-		}
+		invalidateEncoding();
+		if (removed instanceof LazyHeader)
+			lazyHeaderCount.decrementAndGet();
+		else
+			// Remove the fast accessor fields.
+			clearShortcut(removed);
 	}
 
 	/**
@@ -947,6 +974,7 @@ public abstract class SIPMessage extends MessageObject implements
 	 * @return an Iterator for the headers of this message.
 	 */
 	public Iterator<SIPHeader> getHeaders() {
+		parseLazyHeaders();
 		return headers.iterator();
 	}
 
@@ -956,15 +984,15 @@ public abstract class SIPMessage extends MessageObject implements
 	 * @return header -- the first header of the given name.
 	 */
 	public Header getHeader(String headerName) {
-		return getHeaderLowerCase(SIPHeaderNamesCache.toLowerCase(headerName));
+		if (headerName == null)
+			throw new NullPointerException("bad name");
+		return getHeader(SIPHeaderNamesCache.getId(headerName), headerName);
 	}
 
-	private Header getHeaderLowerCase(String lowerCaseHeaderName) {
-		if (lowerCaseHeaderName == null)
-			throw new NullPointerException("bad name");
-		SIPHeader sipHeader = (SIPHeader) nameTable.get(lowerCaseHeaderName);
+	private Header getHeader(int headerId, String headerName) {
+		SIPHeader sipHeader = lookup(headerId, headerName);
 		if (sipHeader instanceof SIPHeaderList)
-			return (Header) ((SIPHeaderList) sipHeader).getFirst();
+			return ((SIPHeaderList<?>) sipHeader).getFirst();
 		else
 			return (Header) sipHeader;
 	}
@@ -975,11 +1003,11 @@ public abstract class SIPMessage extends MessageObject implements
 	 * @return contentType header
 	 */
 	public ContentType getContentTypeHeader() {
-		return (ContentType) getHeaderLowerCase(CONTENT_TYPE_LOWERCASE);
+		return (ContentType) getHeader(CONTENT_TYPE_ID, ContentTypeHeader.NAME);
 	}
 
-	private static final String CONTENT_TYPE_LOWERCASE = SIPHeaderNamesCache
-			.toLowerCase(ContentTypeHeader.NAME);
+	private static final int CONTENT_TYPE_ID = SIPHeaderNamesCache
+			.getId(ContentTypeHeader.NAME);
 
 	/**
 	 * Get the from header.
@@ -996,11 +1024,11 @@ public abstract class SIPMessage extends MessageObject implements
 	 * @return List containing ErrorInfo headers.
 	 */
 	public ErrorInfoList getErrorInfoHeaders() {
-		return (ErrorInfoList) getSIPHeaderListLowerCase(ERROR_LOWERCASE);
+		return (ErrorInfoList) lookup(ERROR_ID, ErrorInfo.NAME);
 	}
 
-	private static final String ERROR_LOWERCASE = SIPHeaderNamesCache
-			.toLowerCase(ErrorInfo.NAME);
+	private static final int ERROR_ID = SIPHeaderNamesCache
+			.getId(ErrorInfo.NAME);
 
 	/**
 	 * Get the Contact list of headers (null if one does not exist).
@@ -1008,11 +1036,11 @@ public abstract class SIPMessage extends MessageObject implements
 	 * @return List containing Contact headers.
 	 */
 	public ContactList getContactHeaders() {
-		return (ContactList) this.getSIPHeaderListLowerCase(CONTACT_LOWERCASE);
+		return (ContactList) this.lookup(CONTACT_ID, ContactHeader.NAME);
 	}
 
-	private static final String CONTACT_LOWERCASE = SIPHeaderNamesCache
-			.toLowerCase(ContactHeader.NAME);
+	private static final int CONTACT_ID = SIPHeaderNamesCache
+			.getId(ContactHeader.NAME);
 
 	/**
 	 * Get the contact header ( the first contact header) which is all we need
@@ -1035,11 +1063,14 @@ public abstract class SIPMessage extends MessageObject implements
 	 * @return List containing Via headers.
 	 */
 	public ViaList getViaHeaders() {
-		return (ViaList) getSIPHeaderListLowerCase(VIA_LOWERCASE);
+		ViaList vias = viaHeaders;
+		if (vias != null)
+			return vias;
+		return (ViaList) lookup(VIA_ID, ViaHeader.NAME);
 	}
 
-	private static final String VIA_LOWERCASE = SIPHeaderNamesCache
-			.toLowerCase(ViaHeader.NAME);
+	private static final int VIA_ID = SIPHeaderNamesCache
+			.getId(ViaHeader.NAME);
 
 	/**
 	 * Set A list of via headers.
@@ -1047,9 +1078,9 @@ public abstract class SIPMessage extends MessageObject implements
 	 * @param viaList
 	 *            a list of via headers to add.
 	 */
-	public void setVia(List viaList) {
+	public void setVia(List<?> viaList) {
 		ViaList vList = new ViaList();
-		ListIterator it = viaList.listIterator();
+		ListIterator<?> it = viaList.listIterator();
 		while (it.hasNext()) {
 			Via via = (Via) it.next();
 			vList.add(via);
@@ -1074,10 +1105,11 @@ public abstract class SIPMessage extends MessageObject implements
 	 * @return the top most via header if one exists or null if none exists.
 	 */
 	public Via getTopmostVia() {
-		if (this.getViaHeaders() == null)
+		ViaList vias = this.getViaHeaders();
+		if (vias == null)
 			return null;
 		else
-			return (Via) (getViaHeaders().getFirst());
+			return (Via) vias.getFirst();
 	}
 
 	/**
@@ -1095,11 +1127,11 @@ public abstract class SIPMessage extends MessageObject implements
 	 * @return Authorization header.
 	 */
 	public Authorization getAuthorization() {
-		return (Authorization) getHeaderLowerCase(AUTHORIZATION_LOWERCASE);
+		return (Authorization) getHeader(AUTHORIZATION_ID, AuthorizationHeader.NAME);
 	}
 
-	private static final String AUTHORIZATION_LOWERCASE = SIPHeaderNamesCache
-			.toLowerCase(AuthorizationHeader.NAME);
+	private static final int AUTHORIZATION_ID = SIPHeaderNamesCache
+			.getId(AuthorizationHeader.NAME);
 
 	/**
 	 * Get the MaxForwards header (null if one does not exist).
@@ -1127,11 +1159,11 @@ public abstract class SIPMessage extends MessageObject implements
 	 * @return List containing Route headers
 	 */
 	public RouteList getRouteHeaders() {
-		return (RouteList) getSIPHeaderListLowerCase(ROUTE_LOWERCASE);
+		return (RouteList) lookup(ROUTE_ID, RouteHeader.NAME);
 	}
 
-	private static final String ROUTE_LOWERCASE = SIPHeaderNamesCache
-			.toLowerCase(RouteHeader.NAME);
+	private static final int ROUTE_ID = SIPHeaderNamesCache
+			.getId(RouteHeader.NAME);
 
 	/**
 	 * Get the CallID header (null if one does not exist)
@@ -1162,6 +1194,7 @@ public abstract class SIPMessage extends MessageObject implements
 		if (callIdHeader == null) {
 			this.setHeader(new CallID());
 		}
+		invalidateEncoding();
 		callIdHeader.setCallId(callId);
 	}
 
@@ -1172,11 +1205,11 @@ public abstract class SIPMessage extends MessageObject implements
 	 */
 	public RecordRouteList getRecordRouteHeaders() {
 		return (RecordRouteList) this
-				.getSIPHeaderListLowerCase(RECORDROUTE_LOWERCASE);
+				.lookup(RECORDROUTE_ID, RecordRouteHeader.NAME);
 	}
 
-	private static final String RECORDROUTE_LOWERCASE = SIPHeaderNamesCache
-			.toLowerCase(RecordRouteHeader.NAME);
+	private static final int RECORDROUTE_ID = SIPHeaderNamesCache
+			.getId(RecordRouteHeader.NAME);
 
 	/**
 	 * Get the To header (null if one does not exist).
@@ -1435,6 +1468,7 @@ public abstract class SIPMessage extends MessageObject implements
 	 *            is the content, as String, array of bytes, or other object.
 	 */
 	private void computeContentLength(Object content) {
+		invalidateEncoding();
 		int length = 0;
 		if (content != null) {
 			if (content instanceof String) {
@@ -1469,6 +1503,7 @@ public abstract class SIPMessage extends MessageObject implements
 	 * Remove the message content if it exists.
 	 */
 	public void removeContent() {
+		invalidateEncoding();
 		messageContent = null;
 		messageContentBytes = null;
 		messageContentObject = null;
@@ -1489,8 +1524,8 @@ public abstract class SIPMessage extends MessageObject implements
 	public ListIterator<SIPHeader> getHeaders(String headerName) {
 		if (headerName == null)
 			throw new NullPointerException("null headerName");
-		SIPHeader sipHeader = (SIPHeader) nameTable.get(SIPHeaderNamesCache
-				.toLowerCase(headerName));
+		SIPHeader sipHeader = lookup(SIPHeaderNamesCache.getId(headerName),
+				headerName);
 		// empty iterator
 		if (sipHeader == null)
 			return new LinkedList<SIPHeader>().listIterator();
@@ -1507,19 +1542,13 @@ public abstract class SIPMessage extends MessageObject implements
 	 * and printing headers.
 	 *
 	 * @param name
-	 * @return the header as a formatted string
+	 * @return the header as a formatted string, or null if the message has
+	 *         no such header
 	 */
 	public String getHeaderAsFormattedString(String name) {
-		String lowerCaseName = name.toLowerCase();
-		if (this.nameTable.containsKey(lowerCaseName)) {
-			return this.nameTable.get(lowerCaseName).toString();
-		} else {
-			return this.getHeader(name).toString();
-		}
-	}
-
-	private SIPHeader getSIPHeaderListLowerCase(String lowerCaseHeaderName) {
-		return nameTable.get(lowerCaseHeaderName);
+		SIPHeader sipHeader = lookup(SIPHeaderNamesCache.getId(name), name);
+		Header header = sipHeader != null ? sipHeader : this.getHeader(name);
+		return header != null ? header.toString() : null;
 	}
 
 	/**
@@ -1532,8 +1561,8 @@ public abstract class SIPMessage extends MessageObject implements
 	 */
 	@SuppressWarnings("unchecked")
 	private List<SIPHeader> getHeaderList(String headerName) {
-		SIPHeader sipHeader = (SIPHeader) nameTable.get(SIPHeaderNamesCache
-				.toLowerCase(headerName));
+		SIPHeader sipHeader = lookup(SIPHeaderNamesCache.getId(headerName),
+				headerName);
 		if (sipHeader == null)
 			return null;
 		else if (sipHeader instanceof SIPHeaderList)
@@ -1550,11 +1579,12 @@ public abstract class SIPMessage extends MessageObject implements
 	 *
 	 * @param headerName
 	 *            is the header name for which we are testing.
-	 * @return true if the header is present in the message
+	 * @return true if the header is present in the message. A received
+	 *         header that does not parse is not present; see
+	 *         attachLazyHeader().
 	 */
 	public boolean hasHeader(String headerName) {
-		return nameTable.containsKey(SIPHeaderNamesCache
-				.toLowerCase(headerName));
+		return lookup(SIPHeaderNamesCache.getId(headerName), headerName) != null;
 	}
 
 	/**
@@ -1592,6 +1622,7 @@ public abstract class SIPMessage extends MessageObject implements
 	 *            tag to set in the from header.
 	 */
 	public void setFromTag(String tag) {
+		invalidateEncoding();
 		try {
 			fromHeader.setTag(tag);
 		} catch (ParseException e) {
@@ -1605,6 +1636,7 @@ public abstract class SIPMessage extends MessageObject implements
 	 *            tag to set.
 	 */
 	public void setToTag(String tag) {
+		invalidateEncoding();
 		try {
 			toHeader.setTag(tag);
 		} catch (ParseException e) {
@@ -1657,9 +1689,148 @@ public abstract class SIPMessage extends MessageObject implements
 	 *            unparsed header to add to the list.
 	 */
 	public void addUnparsed(String unparsed) {
+		invalidateEncoding();
 		this.unrecognizedHeaders.add(unparsed);
 	}
 
+	/**
+	 * Attach a received header without parsing it. The header keeps its
+	 * place among the other headers and is encoded exactly as received; it
+	 * is parsed the first time it is looked up by name or the headers are
+	 * iterated. A header that then fails to parse is removed from the
+	 * message and moved to the unrecognized headers, as the message channels
+	 * do for bad headers other than the core ones, so from then on the
+	 * message behaves as if it never had it. Called by the parser.
+	 *
+	 * @param name --
+	 *            the header name as it appeared in the message.
+	 * @param header --
+	 *            the complete header line, without line terminator.
+	 */
+	public void attachLazyHeader(String name, String header) {
+		attachLazyHeader(SIPHeaderNamesCache.getId(name), name, header);
+	}
+
+	/**
+	 * As attachLazyHeader(String, String), for a parser that has already
+	 * looked up the id of the header name.
+	 */
+	public void attachLazyHeader(int headerId, String name, String header) {
+		SIPHeader existing = headers.get(headerId, name);
+		if (existing instanceof LazyHeader) {
+			((LazyHeader) existing).add(header);
+		} else if (existing != null) {
+			// Already parsed under another spelling; parse this one too.
+			parseLazyHeader(new LazyHeader(headerId, name, header), false);
+		} else {
+			LazyHeader lazy = new LazyHeader(headerId, name, header);
+			headers.append(headerId, name, lazy);
+			lazyHeaderCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Parse every header still held unparsed.
+	 */
+	public void parseLazyHeaders() {
+		if (lazyHeaderCount.get() == 0)
+			return;
+		SIPHeader[] snapshot = headers.toArray();
+		for (int i = 0; i < snapshot.length; i++) {
+			if (snapshot[i] instanceof LazyHeader)
+				parseLazyHeader((LazyHeader) snapshot[i], true);
+		}
+	}
+
+	/**
+	 * @return true if some received headers have not been parsed yet.
+	 */
+	public boolean hasLazyHeaders() {
+		return lazyHeaderCount.get() > 0;
+	}
+
+	/**
+	 * Name table lookup that parses the header first if it is still held
+	 * unparsed.
+	 */
+	private SIPHeader lookup(int headerId, String headerName) {
+		SIPHeader sipHeader = headers.get(headerId, headerName);
+		if (sipHeader instanceof LazyHeader)
+			sipHeader = parseLazyHeader((LazyHeader) sipHeader, true);
+		return sipHeader;
+	}
+
+	/**
+	 * Append the headers of one list to another of the same name, and so of
+	 * the same element type.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <H extends SIPHeader> void concatenate(SIPHeaderList<H> list,
+			SIPHeaderList<?> other, boolean top) {
+		list.concatenate((SIPHeaderList<H>) other, top);
+	}
+
+	/**
+	 * Parse a LazyHeader and put the result in its place.
+	 *
+	 * @param attached --
+	 *            true if the lazy header is in this message's tables.
+	 * @return the parsed header, or null if none of its lines parsed.
+	 */
+	SIPHeader parseLazyHeader(LazyHeader lazy, boolean attached) {
+		synchronized (lazy) {
+			if (attached) {
+				SIPHeader current = headers.get(lazy.getHeaderId(), lazy.getName());
+				if (current != lazy)
+					return current;
+			}
+
+			SIPHeader parsed = null;
+			for (int i = 0; i < lazy.lines.size(); i++) {
+				String line = lazy.lines.get(i);
+				SIPHeader sh;
+				try {
+					HeaderParser parser = ParserFactory.createParser(
+							lazy.getName(), line + "\n");
+					sh = parser.parse();
+				} catch (ParseException ex) {
+					synchronized (unrecognizedHeaders) {
+						unrecognizedHeaders.add(line);
+					}
+					continue;
+				}
+				if (ListMap.hasList(sh)) {
+					SIPHeaderList<SIPHeader> list = ListMap.getList(sh);
+					list.add(sh);
+					sh = list;
+				}
+				if (parsed == null)
+					parsed = sh;
+				else if (parsed instanceof SIPHeaderList
+						&& sh instanceof SIPHeaderList)
+					concatenate((SIPHeaderList<?>) parsed, (SIPHeaderList<?>) sh,
+							false);
+				// else a duplicate singleton, ignored like attachHeader does.
+			}
+
+			if (!attached) {
+				if (parsed != null) {
+					try {
+						attachHeader(parsed, false, false);
+					} catch (SIPDuplicateHeaderException ex) {
+					}
+				}
+				return parsed;
+			}
+
+			lazyHeaderCount.decrementAndGet();
+			headers.replace(lazy, parsed);
+			if (parsed != null)
+				setShortcut(parsed);
+			return parsed;
+		}
+	}
+
 	/**
 	 * Add a SIP header.
 	 *
@@ -1674,6 +1845,7 @@ public abstract class SIPMessage extends MessageObject implements
 			SIPHeader sh = parser.parse();
 			this.attachHeader(sh, false);
 		} catch (ParseException ex) {
+			invalidateEncoding();
 			this.unrecognizedHeaders.add(hdrString);
 		}
 	}
@@ -1694,13 +1866,10 @@ public abstract class SIPMessage extends MessageObject implements
 	 *         the same order as are present in the message.
 	 */
 	public ListIterator<String> getHeaderNames() {
-		Iterator<SIPHeader> li = this.headers.iterator();
+		SIPHeader[] snapshot = this.headers.toArray();
 		LinkedList<String> retval = new LinkedList<String>();
-		while (li.hasNext()) {
-			SIPHeader sipHeader = (SIPHeader) li.next();
-			String name = sipHeader.getName();
-			retval.add(name);
-		}
+		for (int i = 0; i < snapshot.length; i++)
+			retval.add(snapshot[i].getName());
 		return retval.listIterator();
 	}
 
@@ -1715,16 +1884,17 @@ public abstract class SIPMessage extends MessageObject implements
 			return false;
 		}
 		SIPMessage otherMessage = (SIPMessage) other;
-		Collection<SIPHeader> values = this.nameTable.values();
-		Iterator<SIPHeader> it = values.iterator();
-		if (nameTable.size() != otherMessage.nameTable.size()) {
+		this.parseLazyHeaders();
+		otherMessage.parseLazyHeaders();
+		if (headers.size() != otherMessage.headers.size()) {
 			return false;
 		}
 
-		while (it.hasNext()) {
-			SIPHeader mine = (SIPHeader) it.next();
-			SIPHeader his = (SIPHeader) (otherMessage.nameTable
-					.get(SIPHeaderNamesCache.toLowerCase(mine.getName())));
+		SIPHeader[] values = this.headers.toArray();
+		for (int i = 0; i < values.length; i++) {
+			SIPHeader mine = values[i];
+			SIPHeader his = otherMessage.headers.get(mine.getHeaderId(),
+					mine.getName());
 			if (his == null) {
 				return false;
 			} else if (!his.equals(mine)) {
@@ -1740,11 +1910,11 @@ public abstract class SIPMessage extends MessageObject implements
 	 * @return the contentDisposition header
 	 */
 	public ContentDispositionHeader getContentDisposition() {
-		return (ContentDispositionHeader) getHeaderLowerCase(CONTENT_DISPOSITION_LOWERCASE);
+		return (ContentDispositionHeader) getHeader(CONTENT_DISPOSITION_ID, ContentDispositionHeader.NAME);
 	}
 
-	private static final String CONTENT_DISPOSITION_LOWERCASE = SIPHeaderNamesCache
-			.toLowerCase(ContentDispositionHeader.NAME);
+	private static final int CONTENT_DISPOSITION_ID = SIPHeaderNamesCache
+			.getId(ContentDispositionHeader.NAME);
 
 	/**
 	 * get the content encoding header.
@@ -1752,11 +1922,11 @@ public abstract class SIPMessage extends MessageObject implements
 	 * @return the contentEncoding header.
 	 */
 	public ContentEncodingHeader getContentEncoding() {
-		return (ContentEncodingHeader) getHeaderLowerCase(CONTENT_ENCODING_LOWERCASE);
+		return (ContentEncodingHeader) getHeader(CONTENT_ENCODING_ID, ContentEncodingHeader.NAME);
 	}
 
-	private static final String CONTENT_ENCODING_LOWERCASE = SIPHeaderNamesCache
-			.toLowerCase(ContentEncodingHeader.NAME);
+	private static final int CONTENT_ENCODING_ID = SIPHeaderNamesCache
+			.getId(ContentEncodingHeader.NAME);
 
 	/**
 	 * Get the contentLanguage header.
@@ -1764,11 +1934,11 @@ public abstract class SIPMessage extends MessageObject implements
 	 * @return the content language header.
 	 */
 	public ContentLanguageHeader getContentLanguage() {
-		return (ContentLanguageHeader) getHeaderLowerCase(CONTENT_LANGUAGE_LOWERCASE);
+		return (ContentLanguageHeader) getHeader(CONTENT_LANGUAGE_ID, ContentLanguageHeader.NAME);
 	}
 
-	private static final String CONTENT_LANGUAGE_LOWERCASE = SIPHeaderNamesCache
-			.toLowerCase(ContentLanguageHeader.NAME);
+	private static final int CONTENT_LANGUAGE_ID = SIPHeaderNamesCache
+			.getId(ContentLanguageHeader.NAME);
 
 	/**
 	 * Get the exipres header.
@@ -1776,11 +1946,11 @@ public abstract class SIPMessage extends MessageObject implements
 	 * @return the expires header or null if one does not exist.
 	 */
 	public ExpiresHeader getExpires() {
-		return (ExpiresHeader) getHeaderLowerCase(EXPIRES_LOWERCASE);
+		return (ExpiresHeader) getHeader(EXPIRES_ID, ExpiresHeader.NAME);
 	}
 
-	private static final String EXPIRES_LOWERCASE = SIPHeaderNamesCache
-			.toLowerCase(ExpiresHeader.NAME);
+	private static final int EXPIRES_ID = SIPHeaderNamesCache
+			.getId(ExpiresHeader.NAME);
 
 	/**
 	 * Set the expiresHeader
@@ -1822,6 +1992,7 @@ public abstract class SIPMessage extends MessageObject implements
 	 *            content length header.
 	 */
 	public void setContentLength(ContentLengthHeader contentLength) {
+		invalidateEncoding();
 		try {
 			this.contentLengthHeader.setContentLength(contentLength
 					.getContentLength());
@@ -103,6 +103,12 @@ public final class SIPRequest extends SIPMessage implements Request {
      */
     private static final Hashtable<String, String> nameTable = new Hashtable<String, String>();
 
+    private static final int RECORD_ROUTE_ID = SIPHeaderNamesCache
+            .getId(SIPHeaderNames.RECORD_ROUTE);
+
+    private static final int TIMESTAMP_ID = SIPHeaderNamesCache
+            .getId(SIPHeaderNames.TIMESTAMP);
+
     private static void putName(String name) {
         nameTable.put(name, name);
     }
@@ -171,6 +177,7 @@ public final class SIPRequest extends SIPMessage implements Request {
      */
 
     public void setRequestLine(RequestLine requestLine) {
+        invalidateEncoding();
         this.requestLine = requestLine;
     }
 
@@ -367,6 +374,7 @@ public final class SIPRequest extends SIPMessage implements Request {
      * @param uri the new Request URI of this request message
      */
     public void setRequestURI(URI uri) {
+        invalidateEncoding();
         if (this.requestLine == null) {
             this.requestLine = new RequestLine();
         }
@@ -380,6 +388,7 @@ public final class SIPRequest extends SIPMessage implements Request {
      * @throws IllegalArgumentException if the method is null
      */
     public void setMethod(String method) {
+        invalidateEncoding();
         if (method == null)
             throw new IllegalArgumentException("null method");
         if (this.requestLine == null) {
@@ -682,9 +691,18 @@ public final class SIPRequest extends SIPMessage implements Request {
             newResponse.setReasonPhrase(reasonPhrase);
         else
             newResponse.setReasonPhrase(SIPResponse.getReasonPhrase(statusCode));
-        headerIterator = getHeaders();
+        // Walk the headers without parsing the ones a response does not copy.
+        headerIterator = headers.iterator();
         while (headerIterator.hasNext()) {
             nextHeader = (SIPHeader) headerIterator.next();
+            if (nextHeader instanceof LazyHeader) {
+                int id = nextHeader.getHeaderId();
+                if (id != RECORD_ROUTE_ID && id != TIMESTAMP_ID)
+                    continue;
+                nextHeader = parseLazyHeader((LazyHeader) nextHeader, true);
+                if (nextHeader == null)
+                    continue;
+            }
             if (nextHeader instanceof From
                     || nextHeader instanceof To
                     || nextHeader instanceof ViaList
@@ -1087,6 +1105,7 @@ public final class SIPRequest extends SIPMessage implements Request {
      * @param sipVersion the sip version to set.
      */
     public void setSIPVersion(String sipVersion) throws ParseException {
+        invalidateEncoding();
         if (sipVersion == null || !sipVersion.equalsIgnoreCase("SIP/2.0"))
             throw new ParseException("sipVersion", 0);
         this.requestLine.setSIPVersion(sipVersion);
@@ -1197,6 +1216,7 @@ public final class SIPRequest extends SIPMessage implements Request {
      * 
      */
     public void setNullRequest() {
+        invalidateEncoding();
         this.nullRequest = true;
     }
 
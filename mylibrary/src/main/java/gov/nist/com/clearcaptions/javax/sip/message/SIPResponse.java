@@ -302,6 +302,7 @@ public final class SIPResponse
 	 *@throws IlegalArgumentException if invalid status code.
 	 */
 	public void setStatusCode(int statusCode) throws ParseException {
+		invalidateEncoding();
 	  
 	  // RFC3261 defines statuscode as 3DIGIT, 606 is the highest officially
 	  // defined code but extensions may add others (in theory up to 999,
@@ -333,6 +334,7 @@ public final class SIPResponse
 	 *@throws IllegalArgumentException if null string
 	 */
 	public void setReasonPhrase(String reasonPhrase) {
+		invalidateEncoding();
 		if (reasonPhrase == null)
 			throw new IllegalArgumentException("Bad reason phrase");
 		if (this.statusLine == null)
@@ -370,6 +372,7 @@ public final class SIPResponse
 	 *@param sl Status line to set.
 	 */
 	public void setStatusLine(StatusLine sl) {
+		invalidateEncoding();
 		statusLine = sl;
 	}
 
@@ -656,6 +659,7 @@ public final class SIPResponse
 	}
 
 	public void setSIPVersion(String sipVersion) {
+		invalidateEncoding();
 		this.statusLine.setSipVersion(sipVersion);
 	}
 
@@ -33,7 +33,7 @@ import gov.nist.com.clearcaptions.javax.sip.header.ims.*;
 
 import com.clearcaptions.javax.sip.header.*;
 
-import java.util.Hashtable;
+import java.util.HashMap;
 
 /**
  * Lexer class for the parser.
@@ -89,233 +89,248 @@ public class Lexer extends LexerCore {
 		return headerValue;
 	}
 
-	public void selectLexer(String lexerName) {
-		synchronized (lexerTables) {
-			// Synchronization Bug fix by Robert Rosen.
-			currentLexer = (Hashtable) lexerTables.get(lexerName);
-			this.currentLexerName = lexerName;
-			if (currentLexer == null) {
-				addLexer(lexerName);
-				if (lexerName.equals("method_keywordLexer")) {
-					addKeyword(TokenNames.REGISTER, TokenTypes.REGISTER);
-					addKeyword(TokenNames.ACK, TokenTypes.ACK);
-					addKeyword(TokenNames.OPTIONS, TokenTypes.OPTIONS);
-					addKeyword(TokenNames.BYE, TokenTypes.BYE);
-					addKeyword(TokenNames.INVITE, TokenTypes.INVITE);
-					addKeyword(TokenNames.SIP.toUpperCase(), TokenTypes.SIP);
-					addKeyword(TokenNames.SIPS.toUpperCase(), TokenTypes.SIPS);
-					addKeyword(TokenNames.SUBSCRIBE, TokenTypes.SUBSCRIBE);
-					addKeyword(TokenNames.NOTIFY, TokenTypes.NOTIFY);
-					addKeyword(TokenNames.MESSAGE, TokenTypes.MESSAGE);
+	/**
+	 * Keyword tables by lexer name. They are built when the class is
+	 * loaded and never modified, so selecting a lexer takes no lock.
+	 */
+	private static final HashMap<String, KeywordTable> lexerTables =
+		new HashMap<String, KeywordTable>();
+
+	static {
+		String[] lexerNames = { "method_keywordLexer", "command_keywordLexer",
+				"status_lineLexer", "request_lineLexer", "sip_urlLexer" };
+		for (int i = 0; i < lexerNames.length; i++) {
+			HashMap<String, Integer> keywords = new HashMap<String, Integer>();
+			addKeywords(lexerNames[i], keywords);
+			lexerTables.put(lexerNames[i], new KeywordTable(keywords));
+		}
+	}
+
+	private static void addKeywords(String lexerName, HashMap<String, Integer> keywords) {
+		if (lexerName.equals("method_keywordLexer")) {
+			addKeyword(keywords, TokenNames.REGISTER, TokenTypes.REGISTER);
+			addKeyword(keywords, TokenNames.ACK, TokenTypes.ACK);
+			addKeyword(keywords, TokenNames.OPTIONS, TokenTypes.OPTIONS);
+			addKeyword(keywords, TokenNames.BYE, TokenTypes.BYE);
+			addKeyword(keywords, TokenNames.INVITE, TokenTypes.INVITE);
+			addKeyword(keywords, TokenNames.SIP.toUpperCase(), TokenTypes.SIP);
+			addKeyword(keywords, TokenNames.SIPS.toUpperCase(), TokenTypes.SIPS);
+			addKeyword(keywords, TokenNames.SUBSCRIBE, TokenTypes.SUBSCRIBE);
+			addKeyword(keywords, TokenNames.NOTIFY, TokenTypes.NOTIFY);
+			addKeyword(keywords, TokenNames.MESSAGE, TokenTypes.MESSAGE);
 
-					// JvB: added to support RFC3903
-					addKeyword(TokenNames.PUBLISH, TokenTypes.PUBLISH);
+			// JvB: added to support RFC3903
+			addKeyword(keywords, TokenNames.PUBLISH, TokenTypes.PUBLISH);
 
-				} else if (lexerName.equals("command_keywordLexer")) {
-					addKeyword(ErrorInfoHeader.NAME.toUpperCase(),
-							TokenTypes.ERROR_INFO);
-					addKeyword(AllowEventsHeader.NAME.toUpperCase(),
-							TokenTypes.ALLOW_EVENTS);
-					addKeyword(AuthenticationInfoHeader.NAME.toUpperCase(),
-							TokenTypes.AUTHENTICATION_INFO);
-					addKeyword(EventHeader.NAME.toUpperCase(), TokenTypes.EVENT);
-					addKeyword(MinExpiresHeader.NAME.toUpperCase(),
-							TokenTypes.MIN_EXPIRES);
-					addKeyword(RSeqHeader.NAME.toUpperCase(), TokenTypes.RSEQ);
-					addKeyword(RAckHeader.NAME.toUpperCase(), TokenTypes.RACK);
-					addKeyword(ReasonHeader.NAME.toUpperCase(),
-							TokenTypes.REASON);
-					addKeyword(ReplyToHeader.NAME.toUpperCase(),
-							TokenTypes.REPLY_TO);
-					addKeyword(SubscriptionStateHeader.NAME.toUpperCase(),
-							TokenTypes.SUBSCRIPTION_STATE);
-					addKeyword(TimeStampHeader.NAME.toUpperCase(),
-							TokenTypes.TIMESTAMP);
-					addKeyword(InReplyToHeader.NAME.toUpperCase(),
-							TokenTypes.IN_REPLY_TO);
-					addKeyword(MimeVersionHeader.NAME.toUpperCase(),
-							TokenTypes.MIME_VERSION);
-					addKeyword(AlertInfoHeader.NAME.toUpperCase(),
-							TokenTypes.ALERT_INFO);
-					addKeyword(FromHeader.NAME.toUpperCase(), TokenTypes.FROM);
-					addKeyword(ToHeader.NAME.toUpperCase(), TokenTypes.TO);
-					addKeyword(ReferToHeader.NAME.toUpperCase(),
-							TokenTypes.REFER_TO);
-					addKeyword(ViaHeader.NAME.toUpperCase(), TokenTypes.VIA);
-					addKeyword(UserAgentHeader.NAME.toUpperCase(),
-							TokenTypes.USER_AGENT);
-					addKeyword(ServerHeader.NAME.toUpperCase(),
-							TokenTypes.SERVER);
-					addKeyword(AcceptEncodingHeader.NAME.toUpperCase(),
-							TokenTypes.ACCEPT_ENCODING);
-					addKeyword(AcceptHeader.NAME.toUpperCase(),
-							TokenTypes.ACCEPT);
-					addKeyword(AllowHeader.NAME.toUpperCase(), TokenTypes.ALLOW);
-					addKeyword(RouteHeader.NAME.toUpperCase(), TokenTypes.ROUTE);
-					addKeyword(AuthorizationHeader.NAME.toUpperCase(),
-							TokenTypes.AUTHORIZATION);
-					addKeyword(ProxyAuthorizationHeader.NAME.toUpperCase(),
-							TokenTypes.PROXY_AUTHORIZATION);
-					addKeyword(RetryAfterHeader.NAME.toUpperCase(),
-							TokenTypes.RETRY_AFTER);
-					addKeyword(ProxyRequireHeader.NAME.toUpperCase(),
-							TokenTypes.PROXY_REQUIRE);
-					addKeyword(ContentLanguageHeader.NAME.toUpperCase(),
-							TokenTypes.CONTENT_LANGUAGE);
-					addKeyword(UnsupportedHeader.NAME.toUpperCase(),
-							TokenTypes.UNSUPPORTED);
-					addKeyword(SupportedHeader.NAME.toUpperCase(),
-							TokenTypes.SUPPORTED);
-					addKeyword(WarningHeader.NAME.toUpperCase(),
-							TokenTypes.WARNING);
-					addKeyword(MaxForwardsHeader.NAME.toUpperCase(),
-							TokenTypes.MAX_FORWARDS);
-					addKeyword(DateHeader.NAME.toUpperCase(), TokenTypes.DATE);
-					addKeyword(PriorityHeader.NAME.toUpperCase(),
-							TokenTypes.PRIORITY);
-					addKeyword(ProxyAuthenticateHeader.NAME.toUpperCase(),
-							TokenTypes.PROXY_AUTHENTICATE);
-					addKeyword(ContentEncodingHeader.NAME.toUpperCase(),
-							TokenTypes.CONTENT_ENCODING);
-					addKeyword(ContentLengthHeader.NAME.toUpperCase(),
-							TokenTypes.CONTENT_LENGTH);
-					addKeyword(SubjectHeader.NAME.toUpperCase(),
-							TokenTypes.SUBJECT);
-					addKeyword(ContentTypeHeader.NAME.toUpperCase(),
-							TokenTypes.CONTENT_TYPE);
-					addKeyword(ContactHeader.NAME.toUpperCase(),
-							TokenTypes.CONTACT);
-					addKeyword(CallIdHeader.NAME.toUpperCase(),
-							TokenTypes.CALL_ID);
-					addKeyword(RequireHeader.NAME.toUpperCase(),
-							TokenTypes.REQUIRE);
-					addKeyword(ExpiresHeader.NAME.toUpperCase(),
-							TokenTypes.EXPIRES);
-					addKeyword(RecordRouteHeader.NAME.toUpperCase(),
-							TokenTypes.RECORD_ROUTE);
-					addKeyword(OrganizationHeader.NAME.toUpperCase(),
-							TokenTypes.ORGANIZATION);
-					addKeyword(CSeqHeader.NAME.toUpperCase(), TokenTypes.CSEQ);
-					addKeyword(AcceptLanguageHeader.NAME.toUpperCase(),
-							TokenTypes.ACCEPT_LANGUAGE);
-					addKeyword(WWWAuthenticateHeader.NAME.toUpperCase(),
-							TokenTypes.WWW_AUTHENTICATE);
-					addKeyword(CallInfoHeader.NAME.toUpperCase(),
-							TokenTypes.CALL_INFO);
-					addKeyword(ContentDispositionHeader.NAME.toUpperCase(),
-							TokenTypes.CONTENT_DISPOSITION);
-					// And now the dreaded short forms....
-					addKeyword(TokenNames.K.toUpperCase(), TokenTypes.SUPPORTED);
-					addKeyword(TokenNames.C.toUpperCase(),
-							TokenTypes.CONTENT_TYPE);
-					addKeyword(TokenNames.E.toUpperCase(),
-							TokenTypes.CONTENT_ENCODING);
-					addKeyword(TokenNames.F.toUpperCase(), TokenTypes.FROM);
-					addKeyword(TokenNames.I.toUpperCase(), TokenTypes.CALL_ID);
-					addKeyword(TokenNames.M.toUpperCase(), TokenTypes.CONTACT);
-					addKeyword(TokenNames.L.toUpperCase(),
-							TokenTypes.CONTENT_LENGTH);
-					addKeyword(TokenNames.S.toUpperCase(), TokenTypes.SUBJECT);
-					addKeyword(TokenNames.T.toUpperCase(), TokenTypes.TO);
-					addKeyword(TokenNames.U.toUpperCase(),
-							TokenTypes.ALLOW_EVENTS); // JvB: added
-					addKeyword(TokenNames.V.toUpperCase(), TokenTypes.VIA);
-					addKeyword(TokenNames.R.toUpperCase(), TokenTypes.REFER_TO);
-					addKeyword(TokenNames.O.toUpperCase(), TokenTypes.EVENT); // Bug
-																				// fix
-																				// by
-																				// Mario
-																				// Mantak
+		} else if (lexerName.equals("command_keywordLexer")) {
+			addKeyword(keywords, ErrorInfoHeader.NAME.toUpperCase(),
+					TokenTypes.ERROR_INFO);
+			addKeyword(keywords, AllowEventsHeader.NAME.toUpperCase(),
+					TokenTypes.ALLOW_EVENTS);
+			addKeyword(keywords, AuthenticationInfoHeader.NAME.toUpperCase(),
+					TokenTypes.AUTHENTICATION_INFO);
+			addKeyword(keywords, EventHeader.NAME.toUpperCase(), TokenTypes.EVENT);
+			addKeyword(keywords, MinExpiresHeader.NAME.toUpperCase(),
+					TokenTypes.MIN_EXPIRES);
+			addKeyword(keywords, RSeqHeader.NAME.toUpperCase(), TokenTypes.RSEQ);
+			addKeyword(keywords, RAckHeader.NAME.toUpperCase(), TokenTypes.RACK);
+			addKeyword(keywords, ReasonHeader.NAME.toUpperCase(),
+					TokenTypes.REASON);
+			addKeyword(keywords, ReplyToHeader.NAME.toUpperCase(),
+					TokenTypes.REPLY_TO);
+			addKeyword(keywords, SubscriptionStateHeader.NAME.toUpperCase(),
+					TokenTypes.SUBSCRIPTION_STATE);
+			addKeyword(keywords, TimeStampHeader.NAME.toUpperCase(),
+					TokenTypes.TIMESTAMP);
+			addKeyword(keywords, InReplyToHeader.NAME.toUpperCase(),
+					TokenTypes.IN_REPLY_TO);
+			addKeyword(keywords, MimeVersionHeader.NAME.toUpperCase(),
+					TokenTypes.MIME_VERSION);
+			addKeyword(keywords, AlertInfoHeader.NAME.toUpperCase(),
+					TokenTypes.ALERT_INFO);
+			addKeyword(keywords, FromHeader.NAME.toUpperCase(), TokenTypes.FROM);
+			addKeyword(keywords, ToHeader.NAME.toUpperCase(), TokenTypes.TO);
+			addKeyword(keywords, ReferToHeader.NAME.toUpperCase(),
+					TokenTypes.REFER_TO);
+			addKeyword(keywords, ViaHeader.NAME.toUpperCase(), TokenTypes.VIA);
+			addKeyword(keywords, UserAgentHeader.NAME.toUpperCase(),
+					TokenTypes.USER_AGENT);
+			addKeyword(keywords, ServerHeader.NAME.toUpperCase(),
+					TokenTypes.SERVER);
+			addKeyword(keywords, AcceptEncodingHeader.NAME.toUpperCase(),
+					TokenTypes.ACCEPT_ENCODING);
+			addKeyword(keywords, AcceptHeader.NAME.toUpperCase(),
+					TokenTypes.ACCEPT);
+			addKeyword(keywords, AllowHeader.NAME.toUpperCase(), TokenTypes.ALLOW);
+			addKeyword(keywords, RouteHeader.NAME.toUpperCase(), TokenTypes.ROUTE);
+			addKeyword(keywords, AuthorizationHeader.NAME.toUpperCase(),
+					TokenTypes.AUTHORIZATION);
+			addKeyword(keywords, ProxyAuthorizationHeader.NAME.toUpperCase(),
+					TokenTypes.PROXY_AUTHORIZATION);
+			addKeyword(keywords, RetryAfterHeader.NAME.toUpperCase(),
+					TokenTypes.RETRY_AFTER);
+			addKeyword(keywords, ProxyRequireHeader.NAME.toUpperCase(),
+					TokenTypes.PROXY_REQUIRE);
+			addKeyword(keywords, ContentLanguageHeader.NAME.toUpperCase(),
+					TokenTypes.CONTENT_LANGUAGE);
+			addKeyword(keywords, UnsupportedHeader.NAME.toUpperCase(),
+					TokenTypes.UNSUPPORTED);
+			addKeyword(keywords, SupportedHeader.NAME.toUpperCase(),
+					TokenTypes.SUPPORTED);
+			addKeyword(keywords, WarningHeader.NAME.toUpperCase(),
+					TokenTypes.WARNING);
+			addKeyword(keywords, MaxForwardsHeader.NAME.toUpperCase(),
+					TokenTypes.MAX_FORWARDS);
+			addKeyword(keywords, DateHeader.NAME.toUpperCase(), TokenTypes.DATE);
+			addKeyword(keywords, PriorityHeader.NAME.toUpperCase(),
+					TokenTypes.PRIORITY);
+			addKeyword(keywords, ProxyAuthenticateHeader.NAME.toUpperCase(),
+					TokenTypes.PROXY_AUTHENTICATE);
+			addKeyword(keywords, ContentEncodingHeader.NAME.toUpperCase(),
+					TokenTypes.CONTENT_ENCODING);
+			addKeyword(keywords, ContentLengthHeader.NAME.toUpperCase(),
+					TokenTypes.CONTENT_LENGTH);
+			addKeyword(keywords, SubjectHeader.NAME.toUpperCase(),
+					TokenTypes.SUBJECT);
+			addKeyword(keywords, ContentTypeHeader.NAME.toUpperCase(),
+					TokenTypes.CONTENT_TYPE);
+			addKeyword(keywords, ContactHeader.NAME.toUpperCase(),
+					TokenTypes.CONTACT);
+			addKeyword(keywords, CallIdHeader.NAME.toUpperCase(),
+					TokenTypes.CALL_ID);
+			addKeyword(keywords, RequireHeader.NAME.toUpperCase(),
+					TokenTypes.REQUIRE);
+			addKeyword(keywords, ExpiresHeader.NAME.toUpperCase(),
+					TokenTypes.EXPIRES);
+			addKeyword(keywords, RecordRouteHeader.NAME.toUpperCase(),
+					TokenTypes.RECORD_ROUTE);
+			addKeyword(keywords, OrganizationHeader.NAME.toUpperCase(),
+					TokenTypes.ORGANIZATION);
+			addKeyword(keywords, CSeqHeader.NAME.toUpperCase(), TokenTypes.CSEQ);
+			addKeyword(keywords, AcceptLanguageHeader.NAME.toUpperCase(),
+					TokenTypes.ACCEPT_LANGUAGE);
+			addKeyword(keywords, WWWAuthenticateHeader.NAME.toUpperCase(),
+					TokenTypes.WWW_AUTHENTICATE);
+			addKeyword(keywords, CallInfoHeader.NAME.toUpperCase(),
+					TokenTypes.CALL_INFO);
+			addKeyword(keywords, ContentDispositionHeader.NAME.toUpperCase(),
+					TokenTypes.CONTENT_DISPOSITION);
+			// And now the dreaded short forms....
+			addKeyword(keywords, TokenNames.K.toUpperCase(), TokenTypes.SUPPORTED);
+			addKeyword(keywords, TokenNames.C.toUpperCase(),
+					TokenTypes.CONTENT_TYPE);
+			addKeyword(keywords, TokenNames.E.toUpperCase(),
+					TokenTypes.CONTENT_ENCODING);
+			addKeyword(keywords, TokenNames.F.toUpperCase(), TokenTypes.FROM);
+			addKeyword(keywords, TokenNames.I.toUpperCase(), TokenTypes.CALL_ID);
+			addKeyword(keywords, TokenNames.M.toUpperCase(), TokenTypes.CONTACT);
+			addKeyword(keywords, TokenNames.L.toUpperCase(),
+					TokenTypes.CONTENT_LENGTH);
+			addKeyword(keywords, TokenNames.S.toUpperCase(), TokenTypes.SUBJECT);
+			addKeyword(keywords, TokenNames.T.toUpperCase(), TokenTypes.TO);
+			addKeyword(keywords, TokenNames.U.toUpperCase(),
+					TokenTypes.ALLOW_EVENTS); // JvB: added
+			addKeyword(keywords, TokenNames.V.toUpperCase(), TokenTypes.VIA);
+			addKeyword(keywords, TokenNames.R.toUpperCase(), TokenTypes.REFER_TO);
+			addKeyword(keywords, TokenNames.O.toUpperCase(), TokenTypes.EVENT); // Bug
+																		// fix
+																		// by
+																		// Mario
+																		// Mantak
 
-					// JvB: added to support RFC3903
-					addKeyword(SIPETagHeader.NAME.toUpperCase(),
-							TokenTypes.SIP_ETAG);
-					addKeyword(SIPIfMatchHeader.NAME.toUpperCase(),
-							TokenTypes.SIP_IF_MATCH);
+			// JvB: added to support RFC3903
+			addKeyword(keywords, SIPETagHeader.NAME.toUpperCase(),
+					TokenTypes.SIP_ETAG);
+			addKeyword(keywords, SIPIfMatchHeader.NAME.toUpperCase(),
+					TokenTypes.SIP_IF_MATCH);
 
-					// pmusgrave: Add RFC4028 and ReferredBy
-					addKeyword(SessionExpiresHeader.NAME.toUpperCase(),
-							TokenTypes.SESSIONEXPIRES_TO);
-					addKeyword(MinSEHeader.NAME.toUpperCase(),
-							TokenTypes.MINSE_TO);
-					addKeyword(ReferredByHeader.NAME.toUpperCase(),
-							TokenTypes.REFERREDBY_TO);
+			// pmusgrave: Add RFC4028 and ReferredBy
+			addKeyword(keywords, SessionExpiresHeader.NAME.toUpperCase(),
+					TokenTypes.SESSIONEXPIRES_TO);
+			addKeyword(keywords, MinSEHeader.NAME.toUpperCase(),
+					TokenTypes.MINSE_TO);
+			addKeyword(keywords, ReferredByHeader.NAME.toUpperCase(),
+					TokenTypes.REFERREDBY_TO);
 
-					// pmusgrave RFC3891
-					addKeyword(ReplacesHeader.NAME.toUpperCase(),
-							TokenTypes.REPLACES_TO);
-					//jean deruelle RFC3911
-					addKeyword(JoinHeader.NAME.toUpperCase(),
-							TokenTypes.JOIN_TO);
+			// pmusgrave RFC3891
+			addKeyword(keywords, ReplacesHeader.NAME.toUpperCase(),
+					TokenTypes.REPLACES_TO);
+			//jean deruelle RFC3911
+			addKeyword(keywords, JoinHeader.NAME.toUpperCase(),
+					TokenTypes.JOIN_TO);
 
-					// IMS Headers
-					addKeyword(PathHeader.NAME.toUpperCase(), TokenTypes.PATH);
-					addKeyword(ServiceRouteHeader.NAME.toUpperCase(),
-							TokenTypes.SERVICE_ROUTE);
-					addKeyword(PAssertedIdentityHeader.NAME.toUpperCase(),
-							TokenTypes.P_ASSERTED_IDENTITY);
-					addKeyword(PPreferredIdentityHeader.NAME.toUpperCase(),
-							TokenTypes.P_PREFERRED_IDENTITY);
-					addKeyword(PrivacyHeader.NAME.toUpperCase(),
-							TokenTypes.PRIVACY);
+			// IMS Headers
+			addKeyword(keywords, PathHeader.NAME.toUpperCase(), TokenTypes.PATH);
+			addKeyword(keywords, ServiceRouteHeader.NAME.toUpperCase(),
+					TokenTypes.SERVICE_ROUTE);
+			addKeyword(keywords, PAssertedIdentityHeader.NAME.toUpperCase(),
+					TokenTypes.P_ASSERTED_IDENTITY);
+			addKeyword(keywords, PPreferredIdentityHeader.NAME.toUpperCase(),
+					TokenTypes.P_PREFERRED_IDENTITY);
+			addKeyword(keywords, PrivacyHeader.NAME.toUpperCase(),
+					TokenTypes.PRIVACY);
 
-					// issued by Miguel Freitas
-					addKeyword(PCalledPartyIDHeader.NAME.toUpperCase(),
-							TokenTypes.P_CALLED_PARTY_ID);
-					addKeyword(PAssociatedURIHeader.NAME.toUpperCase(),
-							TokenTypes.P_ASSOCIATED_URI);
-					addKeyword(PVisitedNetworkIDHeader.NAME.toUpperCase(),
-							TokenTypes.P_VISITED_NETWORK_ID);
-					addKeyword(PChargingFunctionAddressesHeader.NAME
-							.toUpperCase(),
-							TokenTypes.P_CHARGING_FUNCTION_ADDRESSES);
-					addKeyword(PChargingVectorHeader.NAME.toUpperCase(),
-							TokenTypes.P_VECTOR_CHARGING);
-					addKeyword(PAccessNetworkInfoHeader.NAME.toUpperCase(),
-							TokenTypes.P_ACCESS_NETWORK_INFO);
-					addKeyword(PMediaAuthorizationHeader.NAME.toUpperCase(),
-							TokenTypes.P_MEDIA_AUTHORIZATION);
+			// issued by Miguel Freitas
+			addKeyword(keywords, PCalledPartyIDHeader.NAME.toUpperCase(),
+					TokenTypes.P_CALLED_PARTY_ID);
+			addKeyword(keywords, PAssociatedURIHeader.NAME.toUpperCase(),
+					TokenTypes.P_ASSOCIATED_URI);
+			addKeyword(keywords, PVisitedNetworkIDHeader.NAME.toUpperCase(),
+					TokenTypes.P_VISITED_NETWORK_ID);
+			addKeyword(keywords, PChargingFunctionAddressesHeader.NAME
+					.toUpperCase(),
+					TokenTypes.P_CHARGING_FUNCTION_ADDRESSES);
+			addKeyword(keywords, PChargingVectorHeader.NAME.toUpperCase(),
+					TokenTypes.P_VECTOR_CHARGING);
+			addKeyword(keywords, PAccessNetworkInfoHeader.NAME.toUpperCase(),
+					TokenTypes.P_ACCESS_NETWORK_INFO);
+			addKeyword(keywords, PMediaAuthorizationHeader.NAME.toUpperCase(),
+					TokenTypes.P_MEDIA_AUTHORIZATION);
 
-					addKeyword(SecurityServerHeader.NAME.toUpperCase(), 
-							TokenTypes.SECURITY_SERVER);
-					addKeyword(SecurityVerifyHeader.NAME.toUpperCase(), 
-							TokenTypes.SECURITY_VERIFY);
-					addKeyword(SecurityClientHeader.NAME.toUpperCase(), 
-							TokenTypes.SECURITY_CLIENT);
-					
-					// added by aayush@rancore
-					addKeyword(PUserDatabaseHeader.NAME.toUpperCase(), 
-							TokenTypes.P_USER_DATABASE);
-		
-					// added by aayush@rancore
-					addKeyword(PProfileKeyHeader.NAME.toUpperCase(), 
-							TokenTypes.P_PROFILE_KEY);
-					
-					// added by aayush@rancore
-					addKeyword(PServedUserHeader.NAME.toUpperCase(),
-							TokenTypes.P_SERVED_USER);
-					
-					// added by aayush@rancore
-					addKeyword(PPreferredServiceHeader.NAME.toUpperCase(),
-							TokenTypes.P_PREFERRED_SERVICE);
-					
-					// added by aayush@rancore
-					addKeyword(PAssertedServiceHeader.NAME.toUpperCase(),
-							TokenTypes.P_ASSERTED_SERVICE);
-					
-					// end //
-					
+			addKeyword(keywords, SecurityServerHeader.NAME.toUpperCase(), 
+					TokenTypes.SECURITY_SERVER);
+			addKeyword(keywords, SecurityVerifyHeader.NAME.toUpperCase(), 
+					TokenTypes.SECURITY_VERIFY);
+			addKeyword(keywords, SecurityClientHeader.NAME.toUpperCase(), 
+					TokenTypes.SECURITY_CLIENT);
+			
+			// added by aayush@rancore
+			addKeyword(keywords, PUserDatabaseHeader.NAME.toUpperCase(), 
+					TokenTypes.P_USER_DATABASE);
+	
+			// added by aayush@rancore
+			addKeyword(keywords, PProfileKeyHeader.NAME.toUpperCase(), 
+					TokenTypes.P_PROFILE_KEY);
+			
+			// added by aayush@rancore
+			addKeyword(keywords, PServedUserHeader.NAME.toUpperCase(),
+					TokenTypes.P_SERVED_USER);
+			
+			// added by aayush@rancore
+			addKeyword(keywords, PPreferredServiceHeader.NAME.toUpperCase(),
+					TokenTypes.P_PREFERRED_SERVICE);
+			
+			// added by aayush@rancore
+			addKeyword(keywords, PAssertedServiceHeader.NAME.toUpperCase(),
+					TokenTypes.P_ASSERTED_SERVICE);
+			
+			// end //
+			
 
-				} else if (lexerName.equals("status_lineLexer")) {
-					addKeyword(TokenNames.SIP.toUpperCase(), TokenTypes.SIP);
-				} else if (lexerName.equals("request_lineLexer")) {
-					addKeyword(TokenNames.SIP.toUpperCase(), TokenTypes.SIP);
-				} else if (lexerName.equals("sip_urlLexer")) {
-					addKeyword(TokenNames.TEL.toUpperCase(), TokenTypes.TEL);
-					addKeyword(TokenNames.SIP.toUpperCase(), TokenTypes.SIP);
-					addKeyword(TokenNames.SIPS.toUpperCase(), TokenTypes.SIPS);
-				}
-			}
+		} else if (lexerName.equals("status_lineLexer")) {
+			addKeyword(keywords, TokenNames.SIP.toUpperCase(), TokenTypes.SIP);
+		} else if (lexerName.equals("request_lineLexer")) {
+			addKeyword(keywords, TokenNames.SIP.toUpperCase(), TokenTypes.SIP);
+		} else if (lexerName.equals("sip_urlLexer")) {
+			addKeyword(keywords, TokenNames.TEL.toUpperCase(), TokenTypes.TEL);
+			addKeyword(keywords, TokenNames.SIP.toUpperCase(), TokenTypes.SIP);
+			addKeyword(keywords, TokenNames.SIPS.toUpperCase(), TokenTypes.SIPS);
 		}
 	}
+
+	public void selectLexer(String lexerName) {
+		KeywordTable keywords = lexerTables.get(lexerName);
+		currentLexer = keywords != null ? keywords : KeywordTable.EMPTY;
+		this.currentLexerName = lexerName;
+	}
 }
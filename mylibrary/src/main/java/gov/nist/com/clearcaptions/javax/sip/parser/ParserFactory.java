@@ -24,17 +24,9 @@
 * 
 */
 package gov.nist.com.clearcaptions.javax.sip.parser;
-import java.util.Hashtable;
-import java.lang.reflect.*;
-
-import com.clearcaptions.javax.sip.header.*;
-
 import java.text.ParseException;
 
-import gov.nist.com.clearcaptions.core.*;
 import gov.nist.com.clearcaptions.javax.sip.header.SIPHeaderNamesCache;
-import gov.nist.com.clearcaptions.javax.sip.header.extensions.*;
-import gov.nist.com.clearcaptions.javax.sip.header.ims.*;
 import gov.nist.com.clearcaptions.javax.sip.parser.extensions.*;
 import gov.nist.com.clearcaptions.javax.sip.parser.ims.*;
 
@@ -51,233 +43,6 @@ import gov.nist.com.clearcaptions.javax.sip.parser.ims.*;
  */
 public class ParserFactory {
 
-	private static Hashtable parserTable;
-	private static Class[] constructorArgs;
-    private static Hashtable parserConstructorCache;
-
-    static {
-		parserTable = new Hashtable();
-        parserConstructorCache = new Hashtable();
-        constructorArgs = new Class[1];
-		constructorArgs[0] = String.class;
-		parserTable.put(ReplyToHeader.NAME.toLowerCase(), ReplyToParser.class);
-
-		parserTable.put(
-			InReplyToHeader.NAME.toLowerCase(),
-			InReplyToParser.class);
-
-		parserTable.put(
-			AcceptEncodingHeader.NAME.toLowerCase(),
-			AcceptEncodingParser.class);
-
-		parserTable.put(
-			AcceptLanguageHeader.NAME.toLowerCase(),
-			AcceptLanguageParser.class);
-
-		parserTable.put("t", ToParser.class);
-		parserTable.put(ToHeader.NAME.toLowerCase(), ToParser.class);
-
-		parserTable.put(FromHeader.NAME.toLowerCase(), FromParser.class);
-		parserTable.put("f", FromParser.class);
-
-		parserTable.put(CSeqHeader.NAME.toLowerCase(), CSeqParser.class);
-
-		parserTable.put(ViaHeader.NAME.toLowerCase(), ViaParser.class);
-		parserTable.put("v", ViaParser.class);
-
-		parserTable.put(ContactHeader.NAME.toLowerCase(), ContactParser.class);
-		parserTable.put("m", ContactParser.class);
-
-		parserTable.put(
-			ContentTypeHeader.NAME.toLowerCase(),
-			ContentTypeParser.class);
-		parserTable.put("c", ContentTypeParser.class);
-
-		parserTable.put(
-			ContentLengthHeader.NAME.toLowerCase(),
-			ContentLengthParser.class);
-		parserTable.put("l", ContentLengthParser.class);
-
-		parserTable.put(
-			AuthorizationHeader.NAME.toLowerCase(),
-			AuthorizationParser.class);
-
-		parserTable.put(
-			WWWAuthenticateHeader.NAME.toLowerCase(),
-			WWWAuthenticateParser.class);
-
-		parserTable.put(CallIdHeader.NAME.toLowerCase(), CallIDParser.class);
-		parserTable.put("i", CallIDParser.class);
-
-		parserTable.put(RouteHeader.NAME.toLowerCase(), RouteParser.class);
-
-		parserTable.put(
-			RecordRouteHeader.NAME.toLowerCase(),
-			RecordRouteParser.class);
-
-		parserTable.put(DateHeader.NAME.toLowerCase(), DateParser.class);
-
-		parserTable.put(
-			ProxyAuthorizationHeader.NAME.toLowerCase(),
-			ProxyAuthorizationParser.class);
-
-		parserTable.put(
-			ProxyAuthenticateHeader.NAME.toLowerCase(),
-			ProxyAuthenticateParser.class);
-
-		parserTable.put(
-			RetryAfterHeader.NAME.toLowerCase(),
-			RetryAfterParser.class);
-
-		parserTable.put(RequireHeader.NAME.toLowerCase(), RequireParser.class);
-
-		parserTable.put(
-			ProxyRequireHeader.NAME.toLowerCase(),
-			ProxyRequireParser.class);
-
-		parserTable.put(
-			TimeStampHeader.NAME.toLowerCase(),
-			TimeStampParser.class);
-
-		parserTable.put(
-			UnsupportedHeader.NAME.toLowerCase(),
-			UnsupportedParser.class);
-
-		parserTable.put(
-			UserAgentHeader.NAME.toLowerCase(),
-			UserAgentParser.class);
-
-		parserTable.put(
-			SupportedHeader.NAME.toLowerCase(),
-			SupportedParser.class);
-		// bug fix by Steve Crosley
-		parserTable.put("k", SupportedParser.class);
-
-		parserTable.put(ServerHeader.NAME.toLowerCase(), ServerParser.class);
-
-		parserTable.put(SubjectHeader.NAME.toLowerCase(), SubjectParser.class);
-		parserTable.put( "s", SubjectParser.class);	// JvB: added
-
-		parserTable.put(
-			SubscriptionStateHeader.NAME.toLowerCase(),
-			SubscriptionStateParser.class);
-
-		parserTable.put(
-			MaxForwardsHeader.NAME.toLowerCase(),
-			MaxForwardsParser.class);
-
-		parserTable.put(
-			MimeVersionHeader.NAME.toLowerCase(),
-			MimeVersionParser.class);
-
-		parserTable.put(
-			MinExpiresHeader.NAME.toLowerCase(),
-			MinExpiresParser.class);
-
-		parserTable.put(
-			OrganizationHeader.NAME.toLowerCase(),
-			OrganizationParser.class);
-
-		parserTable.put(
-			PriorityHeader.NAME.toLowerCase(),
-			PriorityParser.class);
-
-		parserTable.put(RAckHeader.NAME.toLowerCase(), RAckParser.class);
-
-		parserTable.put(RSeqHeader.NAME.toLowerCase(), RSeqParser.class);
-
-		parserTable.put(ReasonHeader.NAME.toLowerCase(), ReasonParser.class);
-
-		parserTable.put(WarningHeader.NAME.toLowerCase(), WarningParser.class);
-
-		parserTable.put(ExpiresHeader.NAME.toLowerCase(), ExpiresParser.class);
-
-		parserTable.put(EventHeader.NAME.toLowerCase(), EventParser.class);
-		parserTable.put("o", EventParser.class);
-
-		parserTable.put(
-			ErrorInfoHeader.NAME.toLowerCase(),
-			ErrorInfoParser.class);
-
-		parserTable.put(
-			ContentLanguageHeader.NAME.toLowerCase(),
-			ContentLanguageParser.class);
-
-		parserTable.put(
-			ContentEncodingHeader.NAME.toLowerCase(),
-			ContentEncodingParser.class);
-		parserTable.put("e", ContentEncodingParser.class);
-
-		parserTable.put(
-			ContentDispositionHeader.NAME.toLowerCase(),
-			ContentDispositionParser.class);
-
-		parserTable.put(
-			CallInfoHeader.NAME.toLowerCase(),
-			CallInfoParser.class);
-
-		parserTable.put(
-			AuthenticationInfoHeader.NAME.toLowerCase(),
-			AuthenticationInfoParser.class);
-
-		parserTable.put(AllowHeader.NAME.toLowerCase(), AllowParser.class);
-
-		parserTable.put(
-			AllowEventsHeader.NAME.toLowerCase(),
-			AllowEventsParser.class);
-		parserTable.put("u", AllowEventsParser.class);
-
-		parserTable.put(
-			AlertInfoHeader.NAME.toLowerCase(),
-			AlertInfoParser.class);
-
-		parserTable.put(AcceptHeader.NAME.toLowerCase(), AcceptParser.class);
-
-		parserTable.put(ReferToHeader.NAME.toLowerCase(), ReferToParser.class);
-		// Was missing (bug noticed by Steve Crossley)
-		parserTable.put("r", ReferToParser.class);
-		
-		// JvB: added to support RFC3903 PUBLISH
-		parserTable.put(SIPETagHeader.NAME.toLowerCase(), SIPETagParser.class);
-		parserTable.put(SIPIfMatchHeader.NAME.toLowerCase(), SIPIfMatchParser.class);
-		
-		//IMS headers
-		parserTable.put(PAccessNetworkInfoHeader.NAME.toLowerCase(), PAccessNetworkInfoParser.class);
-		parserTable.put(PAssertedIdentityHeader.NAME.toLowerCase(), PAssertedIdentityParser.class);
-		parserTable.put(PPreferredIdentityHeader.NAME.toLowerCase(), PPreferredIdentityParser.class);
-		parserTable.put(PChargingVectorHeader.NAME.toLowerCase(), PChargingVectorParser.class);
-		parserTable.put(PChargingFunctionAddressesHeader.NAME.toLowerCase(), PChargingFunctionAddressesParser.class);
-		parserTable.put(PMediaAuthorizationHeader.NAME.toLowerCase(), PMediaAuthorizationParser.class);
-		parserTable.put(PathHeader.NAME.toLowerCase(), PathParser.class);
-		parserTable.put(PrivacyHeader.NAME.toLowerCase(), PrivacyParser.class);
-		parserTable.put(ServiceRouteHeader.NAME.toLowerCase(), ServiceRouteParser.class);
-		parserTable.put(PVisitedNetworkIDHeader.NAME.toLowerCase(), PVisitedNetworkIDParser.class);
-
-		parserTable.put(PAssociatedURIHeader.NAME.toLowerCase(), PAssociatedURIParser.class);
-		parserTable.put(PCalledPartyIDHeader.NAME.toLowerCase(), PCalledPartyIDParser.class);
-
-		parserTable.put(SecurityServerHeader.NAME.toLowerCase(), SecurityServerParser.class);
-		parserTable.put(SecurityClientHeader.NAME.toLowerCase(), SecurityClientParser.class);
-		parserTable.put(SecurityVerifyHeader.NAME.toLowerCase(), SecurityVerifyParser.class);
-
-
-		// Per RFC 3892 (pmusgrave)
-		parserTable.put(ReferredBy.NAME.toLowerCase(), ReferredByParser.class);
-		parserTable.put("b", ReferToParser.class);
-
-		// Per RFC4028 Session Timers (pmusgrave)
-		parserTable.put(SessionExpires.NAME.toLowerCase(), SessionExpiresParser.class);
-		parserTable.put("x", SessionExpiresParser.class);
-		parserTable.put(MinSE.NAME.toLowerCase(), MinSEParser.class);
-		// (RFC4028 does not give a short form header for MinSE)
-		
-		// Per RFC3891 (pmusgrave)
-		parserTable.put(Replaces.NAME.toLowerCase(), ReplacesParser.class);
-		
-		// Per RFC3911 (jean deruelle)
-		parserTable.put(Join.NAME.toLowerCase(), JoinParser.class);
-	}
-
 	/**
 	 * create a parser for a header. This is the parser factory.
 	 */
@@ -288,28 +53,206 @@ public class ParserFactory {
 		if (headerName == null || headerValue == null)
 			throw new ParseException("The header name or value is null", 0);
 
-		Class parserClass = (Class) parserTable.get(SIPHeaderNamesCache.toLowerCase(headerName));
-		if (parserClass != null) {
-			try {
-				Constructor cons = (Constructor) parserConstructorCache.get(parserClass);
-                if (cons == null) {
-                    cons = parserClass.getConstructor(constructorArgs);
-                    parserConstructorCache.put(parserClass, cons);
-                }
-				Object[] args = new Object[1];
-				args[0] = line;
-				HeaderParser retval = (HeaderParser) cons.newInstance(args);
-				return retval;
+		return createParser(headerName, line);
+	}
 
-			} catch (Exception ex) {
-				InternalErrorHandler.handleException(ex);
-				return null; // to placate the compiler.
-			}
+	/**
+	 * create a parser for a header whose name the caller has already
+	 * located, sparing the scan of the line for its name.
+	 *
+	 * @param headerName the trimmed header name
+	 * @param line the whole header line, name included
+	 */
+	public static HeaderParser createParser(String headerName, String line)
+		throws ParseException {
+		return createParser(SIPHeaderNamesCache.getId(headerName), headerName,
+				line);
+	}
+
+	/**
+	 * create a parser for a header whose name the caller has already
+	 * located and looked up.
+	 *
+	 * @param headerId the id SIPHeaderNamesCache gives the name
+	 * @param headerName the trimmed header name
+	 * @param line the whole header line, name included
+	 */
+	public static HeaderParser createParser(int headerId, String headerName,
+			String line) throws ParseException {
+		String name = SIPHeaderNamesCache.getLowerCaseName(headerId);
+		if (name == null)
+			name = headerName.toLowerCase();
+		HeaderParser parser = newParser(name, line);
+		if (parser != null)
+			return parser;
+
+		// Just generate a generic SIPHeader. We define
+		// parsers only for the headers below.
+		return new HeaderParser(line);
+	}
 
-		} else {
-			// Just generate a generic SIPHeader. We define
-			// parsers only for the above.
-			return new HeaderParser(line);
+	/**
+	 * The registered parsers, by lower case header name. Compact forms
+	 * arrive here as the full name they share an id with.
+	 * The string switch compiles to a lookup on the name's hash code
+	 * followed by one equals(), and each parser is constructed directly,
+	 * so there is no shared table to lock and no reflection.
+	 *
+	 * @return the parser, or null if none is registered for the name
+	 */
+	private static HeaderParser newParser(String name, String line) {
+		switch (name) {
+		case "reply-to":
+			return new ReplyToParser(line);
+		case "in-reply-to":
+			return new InReplyToParser(line);
+		case "accept-encoding":
+			return new AcceptEncodingParser(line);
+		case "accept-language":
+			return new AcceptLanguageParser(line);
+		case "to":
+			return new ToParser(line);
+		case "from":
+			return new FromParser(line);
+		case "cseq":
+			return new CSeqParser(line);
+		case "via":
+			return new ViaParser(line);
+		case "contact":
+			return new ContactParser(line);
+		case "content-type":
+			return new ContentTypeParser(line);
+		case "content-length":
+			return new ContentLengthParser(line);
+		case "authorization":
+			return new AuthorizationParser(line);
+		case "www-authenticate":
+			return new WWWAuthenticateParser(line);
+		case "call-id":
+			return new CallIDParser(line);
+		case "route":
+			return new RouteParser(line);
+		case "record-route":
+			return new RecordRouteParser(line);
+		case "date":
+			return new DateParser(line);
+		case "proxy-authorization":
+			return new ProxyAuthorizationParser(line);
+		case "proxy-authenticate":
+			return new ProxyAuthenticateParser(line);
+		case "retry-after":
+			return new RetryAfterParser(line);
+		case "require":
+			return new RequireParser(line);
+		case "proxy-require":
+			return new ProxyRequireParser(line);
+		case "timestamp":
+			return new TimeStampParser(line);
+		case "unsupported":
+			return new UnsupportedParser(line);
+		case "user-agent":
+			return new UserAgentParser(line);
+		case "supported":
+			return new SupportedParser(line);
+		case "server":
+			return new ServerParser(line);
+		case "subject":
+			return new SubjectParser(line);
+		case "subscription-state":
+			return new SubscriptionStateParser(line);
+		case "max-forwards":
+			return new MaxForwardsParser(line);
+		case "mime-version":
+			return new MimeVersionParser(line);
+		case "min-expires":
+			return new MinExpiresParser(line);
+		case "organization":
+			return new OrganizationParser(line);
+		case "priority":
+			return new PriorityParser(line);
+		case "rack":
+			return new RAckParser(line);
+		case "rseq":
+			return new RSeqParser(line);
+		case "reason":
+			return new ReasonParser(line);
+		case "warning":
+			return new WarningParser(line);
+		case "expires":
+			return new ExpiresParser(line);
+		case "event":
+			return new EventParser(line);
+		case "error-info":
+			return new ErrorInfoParser(line);
+		case "content-language":
+			return new ContentLanguageParser(line);
+		case "content-encoding":
+			return new ContentEncodingParser(line);
+		case "content-disposition":
+			return new ContentDispositionParser(line);
+		case "call-info":
+			return new CallInfoParser(line);
+		case "authentication-info":
+			return new AuthenticationInfoParser(line);
+		case "allow":
+			return new AllowParser(line);
+		case "allow-events":
+			return new AllowEventsParser(line);
+		case "alert-info":
+			return new AlertInfoParser(line);
+		case "accept":
+			return new AcceptParser(line);
+		case "refer-to":
+		// "b" is the compact form of Referred-By, but has always been
+		// parsed as Refer-To here.
+		case "b":
+			return new ReferToParser(line);
+		case "sip-etag":
+			return new SIPETagParser(line);
+		case "sip-if-match":
+			return new SIPIfMatchParser(line);
+		case "p-access-network-info":
+			return new PAccessNetworkInfoParser(line);
+		case "p-asserted-identity":
+			return new PAssertedIdentityParser(line);
+		case "p-preferred-identity":
+			return new PPreferredIdentityParser(line);
+		case "p-charging-vector":
+			return new PChargingVectorParser(line);
+		case "p-charging-function-addresses":
+			return new PChargingFunctionAddressesParser(line);
+		case "p-media-authorization":
+			return new PMediaAuthorizationParser(line);
+		case "path":
+			return new PathParser(line);
+		case "privacy":
+			return new PrivacyParser(line);
+		case "service-route":
+			return new ServiceRouteParser(line);
+		case "p-visited-network-id":
+			return new PVisitedNetworkIDParser(line);
+		case "p-associated-uri":
+			return new PAssociatedURIParser(line);
+		case "p-called-party-id":
+			return new PCalledPartyIDParser(line);
+		case "security-server":
+			return new SecurityServerParser(line);
+		case "security-client":
+			return new SecurityClientParser(line);
+		case "security-verify":
+			return new SecurityVerifyParser(line);
+		case "referred-by":
+			return new ReferredByParser(line);
+		case "session-expires":
+			return new SessionExpiresParser(line);
+		case "min-se":
+			return new MinSEParser(line);
+		case "replaces":
+			return new ReplacesParser(line);
+		case "join":
+			return new JoinParser(line);
+		default:
+			return null;
 		}
 	}
 }
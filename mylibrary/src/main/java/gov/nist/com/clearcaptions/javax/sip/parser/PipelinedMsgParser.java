@@ -42,6 +42,7 @@ import gov.nist.com.clearcaptions.javax.sip.message.*;
 
 import java.text.ParseException;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * This implements a pipelined message parser suitable for use with a stream -
@@ -53,6 +54,12 @@ import java.io.*;
  * content-length header is read directly from the input stream. This can be
  * accessed from the SIPMessage using the getContent and getContentBytes methods
  * provided by the SIPMessage class.
+ * <p>
+ * A parser constructed without a Pipeline works in push mode instead: the
+ * connection's reader hands each chunk it reads to addBytes(), which frames
+ * and delivers every complete message in the chunk inline and keeps any
+ * trailing partial message for the next call. No thread is started and the
+ * input is not locked byte by byte.
  * 
  * @version 1.2 $Revision: 1.21 $ $Date: 2008/05/24 04:10:01 $
  * 
@@ -77,6 +84,16 @@ public final class PipelinedMsgParser implements Runnable {
 	private int sizeCounter;
 	//private int messageSize;
 
+	// Push mode state, see addBytes().
+	private StringMsgParser pushParser;
+	private byte[] pushBuffer;
+	private int pushStart;
+	private int pushEnd;
+	private int pushScan;
+	private SIPMessage pendingMessage;
+	private int pendingLength;
+	private long messageCount;
+
 	/**
 	 * default constructor.
 	 */
@@ -140,11 +157,205 @@ public final class PipelinedMsgParser implements Runnable {
 		this(null, in, false, 0);
 	}
 
+	/**
+	 * Constructor for a push mode parser, fed through addBytes() by the
+	 * thread reading the connection.
+	 * 
+	 * @param mhandler
+	 *            a SIPMessageListener implementation that provides the message
+	 *            handlers to handle correctly and incorrectly parsed messages.
+	 * @param maxMsgSize
+	 *            largest message accepted, 0 for no limit.
+	 */
+	public PipelinedMsgParser(SIPMessageListener mhandler, int maxMsgSize) {
+		this();
+		this.sipMessageListener = mhandler;
+		this.maxMessageSize = maxMsgSize;
+		this.pushParser = new StringMsgParser(mhandler);
+		this.pushParser.readBody = false;
+		this.pushBuffer = new byte[4096];
+	}
+
 	/**
 	 * Start reading and processing input.
 	 */
 	public void processInput() {
-		mythread.start();
+		if (mythread != null)
+			mythread.start();
+	}
+
+	/**
+	 * Push mode: consumes the remaining bytes of chunk. See
+	 * addBytes(byte[], int, int).
+	 */
+	public void addBytes(ByteBuffer chunk) throws IOException {
+		int len = chunk.remaining();
+		if (chunk.hasArray()) {
+			addBytes(chunk.array(), chunk.arrayOffset() + chunk.position(), len);
+			chunk.position(chunk.limit());
+		} else {
+			byte[] bytes = new byte[len];
+			chunk.get(bytes);
+			addBytes(bytes, 0, len);
+		}
+	}
+
+	/**
+	 * Push mode: appends len bytes read from the connection and delivers,
+	 * in order, every message they complete. The header block is found by
+	 * scanning only the bytes not looked at before, and the body is taken
+	 * by Content-Length, so a burst of pipelined messages is framed in one
+	 * pass over the chunk. Blank lines between messages are skipped and a
+	 * message that fails to parse is dropped, as in run().
+	 * 
+	 * @exception IOException
+	 *                if the headers of a message exceed the maximum message
+	 *                size or the listener fails to process a message; the
+	 *                connection should be closed.
+	 */
+	public void addBytes(byte[] bytes, int offset, int len) throws IOException {
+		append(bytes, offset, len);
+
+		while (true) {
+			if (pendingMessage == null) {
+				// ignore blank lines.
+				while (pushStart < pushEnd
+						&& (pushBuffer[pushStart] == '\r' || pushBuffer[pushStart] == '\n'))
+					pushStart++;
+				if (pushScan < pushStart)
+					pushScan = pushStart;
+
+				int headerEnd = findHeaderEnd();
+				int headerLength = (headerEnd < 0 ? pushEnd : headerEnd) - pushStart;
+				if (maxMessageSize > 0 && headerLength >= maxMessageSize)
+					throw new IOException("Max size exceeded!");
+				if (headerEnd < 0)
+					break;
+
+				byte[] headers = new byte[headerLength];
+				System.arraycopy(pushBuffer, pushStart, headers, 0, headerLength);
+				pushStart = headerEnd;
+				pushScan = headerEnd;
+
+				SIPMessage sipMessage;
+				try {
+					sipMessage = pushParser.parseSIPMessage(headers);
+					if (sipMessage == null) {
+						messageCount++;
+						continue;
+					}
+				} catch (ParseException ex) {
+					// Just ignore the parse exception.
+					messageCount++;
+					continue;
+				}
+
+				ContentLength cl = (ContentLength) sipMessage.getContentLength();
+				int contentLength = cl != null ? cl.getContentLength() : 0;
+				if (contentLength == 0) {
+					sipMessage.removeContent();
+					messageCount++;
+					deliver(sipMessage);
+				} else if (maxMessageSize == 0
+						|| contentLength < maxMessageSize - headerLength) {
+					pendingMessage = sipMessage;
+					pendingLength = contentLength;
+				} else {
+					// Content length too large - process the message and
+					// return error from there.
+					messageCount++;
+					deliver(sipMessage);
+				}
+			} else {
+				if (pushEnd - pushStart < pendingLength)
+					break;
+				byte[] messageBody = new byte[pendingLength];
+				System.arraycopy(pushBuffer, pushStart, messageBody, 0, pendingLength);
+				pushStart += pendingLength;
+				pushScan = pushStart;
+				SIPMessage sipMessage = pendingMessage;
+				pendingMessage = null;
+				sipMessage.setMessageContent(messageBody);
+				messageCount++;
+				deliver(sipMessage);
+			}
+		}
+
+		if (pushStart == pushEnd) {
+			pushStart = 0;
+			pushEnd = 0;
+			pushScan = 0;
+		}
+	}
+
+	/**
+	 * @return true if a message has been started but not completed by the
+	 *         bytes pushed so far.
+	 */
+	public boolean hasPartialMessage() {
+		return pendingMessage != null || pushStart < pushEnd;
+	}
+
+	/**
+	 * @return the number of messages framed so far, those dropped because
+	 *         their headers failed to parse included. A reader keeping a
+	 *         deadline for the partial message knows a new one has begun
+	 *         when this changes.
+	 */
+	public long getMessageCount() {
+		return messageCount;
+	}
+
+	private void append(byte[] bytes, int offset, int len) {
+		if (pushEnd + len > pushBuffer.length) {
+			int used = pushEnd - pushStart;
+			byte[] target = pushBuffer;
+			if (used + len > pushBuffer.length)
+				target = new byte[Math.max(pushBuffer.length * 2, used + len)];
+			System.arraycopy(pushBuffer, pushStart, target, 0, used);
+			pushBuffer = target;
+			pushScan -= pushStart;
+			pushStart = 0;
+			pushEnd = used;
+		}
+		System.arraycopy(bytes, offset, pushBuffer, pushEnd, len);
+		pushEnd += len;
+	}
+
+	/**
+	 * Looks for the blank line ending the header block, starting at the
+	 * first line not yet examined.
+	 * 
+	 * @return offset just past the blank line, or -1 if it has not arrived;
+	 *         pushScan is then left at the start of the incomplete line.
+	 */
+	private int findHeaderEnd() {
+		int lineStart = pushScan;
+		boolean blank = true;
+		for (int i = lineStart; i < pushEnd; i++) {
+			byte b = pushBuffer[i];
+			if (b == '\n') {
+				if (blank && lineStart > pushStart)
+					return i + 1;
+				lineStart = i + 1;
+				blank = true;
+			} else if ((b & 0xff) > 0x20) {
+				blank = false;
+			}
+		}
+		pushScan = lineStart;
+		return -1;
+	}
+
+	private void deliver(SIPMessage sipMessage) throws IOException {
+		if (sipMessageListener == null)
+			return;
+		try {
+			sipMessageListener.processMessage(sipMessage);
+		} catch (Exception ex) {
+			// fatal error in processing - close the connection.
+			throw new IOException("Error processing message: " + ex);
+		}
 	}
 
 	/**
@@ -353,6 +564,11 @@ public final class PipelinedMsgParser implements Runnable {
 	}
 	
 	public void close() {
+		if (this.rawInputStream == null) {
+			this.pendingMessage = null;
+			this.pushStart = this.pushEnd = this.pushScan = 0;
+			return;
+		}
 		try {
 			this.rawInputStream.close();
 		} catch (IOException ex) {
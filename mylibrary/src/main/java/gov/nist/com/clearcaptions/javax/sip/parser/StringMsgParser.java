@@ -78,6 +78,32 @@ public class StringMsgParser {
 	
 	private static boolean computeContentLengthFromMessage = false;
 
+	private static boolean scanBytes = true;
+
+	private static boolean lazyHeaders = true;
+
+	/**
+	 * Headers the scanner always parses, because the stack reads them for
+	 * every message it routes.  Other headers are attached unparsed when
+	 * lazyHeaders is set, compact forms excepted.
+	 */
+	private static final int[] EAGER_HEADERS = {
+		SIPHeaderNamesCache.getId(SIPHeaderNames.VIA),
+		SIPHeaderNamesCache.getId(SIPHeaderNames.CALL_ID),
+		SIPHeaderNamesCache.getId(SIPHeaderNames.CSEQ),
+		SIPHeaderNamesCache.getId(SIPHeaderNames.FROM),
+		SIPHeaderNamesCache.getId(SIPHeaderNames.TO),
+		SIPHeaderNamesCache.getId(SIPHeaderNames.CONTENT_LENGTH),
+		SIPHeaderNamesCache.getId(SIPHeaderNames.CONTENT_TYPE),
+		SIPHeaderNamesCache.getId(SIPHeaderNames.MAX_FORWARDS),
+	};
+
+	/**
+	 * Header text being assembled by the byte scanner, reused across
+	 * headers and messages.
+	 */
+	private char[] headerChars = new char[256];
+
 	/**
 	 * @since v0.9
 	 */
@@ -129,6 +155,224 @@ public class StringMsgParser {
 		if (msgBuffer == null || msgBuffer.length == 0)
 			return null;
 
+		if (scanBytes)
+			return scanSIPMessage(msgBuffer);
+		return parseSIPMessageLines(msgBuffer);
+	}
+
+	/**
+	 * Single pass parse of a raw message.  Header lines, folded
+	 * continuation lines included, are assembled straight from the bytes
+	 * into one reused char buffer, so each header costs one String instead
+	 * of one per line plus the trimmed and concatenated copies.  The header
+	 * name is taken from the offsets found by the scan, so it is not looked
+	 * for again before the header's parser is created.  Produces the same
+	 * message as parseSIPMessageLines().
+	 */
+	private SIPMessage scanSIPMessage(byte[] msgBuffer) throws ParseException {
+		int length = msgBuffer.length;
+		int i = 0;
+
+		// Squeeze out any leading control character.
+		while (i < length && msgBuffer[i] < 0x20)
+			i++;
+		if (i == length)
+			return null;
+
+		SIPMessage message = null;
+		boolean isFirstLine = true;
+		int headerLength = -1;
+		int colon = -1;
+		while (true)
+		{
+			int lineStart = i;
+
+			// Find the end of the line.
+			while (i < length && msgBuffer[i] != '\r' && msgBuffer[i] != '\n')
+				i++;
+			if (i == length) {
+				// End of the message.
+				break;
+			}
+
+			// Drop trailing white space and control characters.
+			int lineEnd = i;
+			while (lineEnd > lineStart && (msgBuffer[lineEnd - 1] & 0xff) <= 0x20)
+				lineEnd--;
+
+			if (msgBuffer[i] == '\r' && length > i+1 && msgBuffer[i+1] == '\n')
+				i++;
+			i++;
+
+			if (lineEnd == lineStart) {
+				// Last header line, process the previous buffered header.
+				if (headerLength >= 0 && message != null)
+					processHeader(headerLength, colon, message);
+				break;
+			}
+
+			if (isFirstLine) {
+				message = processFirstLine(decode(msgBuffer, lineStart, lineEnd - lineStart));
+				isFirstLine = false;
+			}
+			else if (msgBuffer[lineStart] == '\t' || msgBuffer[lineStart] == ' ') {
+				if (headerLength < 0)
+					throw new ParseException("Bad header continuation.", 0);
+
+				// This is a continuation, append it to the previous line.
+				headerLength = append(msgBuffer, lineStart + 1, lineEnd, headerLength);
+				if (colon < 0)
+					colon = indexOfColon(0, headerLength);
+			}
+			else {
+				if (headerLength >= 0 && message != null)
+					processHeader(headerLength, colon, message);
+				headerLength = append(msgBuffer, lineStart, lineEnd, 0);
+				colon = indexOfColon(0, headerLength);
+			}
+		}
+
+		if (message == null) throw new ParseException("Bad message", 0);
+		message.setSize(i);
+
+		if (readBody && message.getContentLength() != null &&
+				message.getContentLength().getContentLength() != 0) {
+
+			int bodyLength = msgBuffer.length - i;
+
+			byte[] body = new byte[bodyLength];
+			System.arraycopy(msgBuffer, i, body, 0, bodyLength);
+			message.setMessageContent(body,computeContentLengthFromMessage ,message.getContentLength().getContentLength() );
+		}
+
+		return message;
+	}
+
+	/**
+	 * Appends bytes [start, end) to headerChars at offset, widening ASCII
+	 * directly and decoding anything else as UTF-8.
+	 *
+	 * @return the new length of the header text
+	 */
+	private int append(byte[] bytes, int start, int end, int offset) throws ParseException {
+		int ascii = start;
+		while (ascii < end && bytes[ascii] >= 0)
+			ascii++;
+
+		if (ascii == end) {
+			ensureHeaderChars(offset + (end - start) + 1);
+			char[] chars = headerChars;
+			for (int j = start; j < end; j++)
+				chars[offset++] = (char) bytes[j];
+			return offset;
+		}
+
+		String decoded = decode(bytes, start, end - start);
+		ensureHeaderChars(offset + decoded.length() + 1);
+		decoded.getChars(0, decoded.length(), headerChars, offset);
+		return offset + decoded.length();
+	}
+
+	private void ensureHeaderChars(int capacity) {
+		if (capacity > headerChars.length) {
+			char[] chars = new char[Math.max(capacity, headerChars.length * 2)];
+			System.arraycopy(headerChars, 0, chars, 0, headerChars.length);
+			headerChars = chars;
+		}
+	}
+
+	private int indexOfColon(int from, int end) {
+		for (int j = from; j < end; j++) {
+			if (headerChars[j] == ':')
+				return j;
+		}
+		return -1;
+	}
+
+	private static boolean isEager(int headerId, int nameLength) {
+		// Compact forms are few and short; parse them.
+		if (nameLength <= 1)
+			return true;
+		for (int i = 0; i < EAGER_HEADERS.length; i++) {
+			if (EAGER_HEADERS[i] == headerId)
+				return true;
+		}
+		return false;
+	}
+
+	private static String decode(byte[] bytes, int start, int length) throws ParseException {
+		try {
+			return new String(bytes, start, length, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new ParseException("Bad message encoding!", 0);
+		}
+	}
+
+	/**
+	 * Hands the header assembled in headerChars to its parser.
+	 */
+	private void processHeader(int headerLength, int colon, SIPMessage message) throws ParseException {
+		if (headerLength == 0)
+			return;
+
+		// Same rules as Lexer.getHeaderName(): name before the first ':', trimmed.
+		int nameStart = 0;
+		int nameEnd = colon;
+		if (colon >= 1) {
+			while (nameStart < nameEnd && headerChars[nameStart] <= ' ')
+				nameStart++;
+			while (nameEnd > nameStart && headerChars[nameEnd - 1] <= ' ')
+				nameEnd--;
+		}
+
+		int headerId = colon >= 1 ? SIPHeaderNamesCache.getId(headerChars,
+				nameStart, nameEnd) : SIPHeaderNamesCache.OTHER;
+		if (lazyHeaders && colon >= 1 && !isEager(headerId, nameEnd - nameStart)) {
+			String header = new String(headerChars, 0, headerLength);
+			message.attachLazyHeader(headerId, header.substring(nameStart,
+					nameEnd), header);
+			return;
+		}
+
+		headerChars[headerLength] = '\n';
+		String header = new String(headerChars, 0, headerLength + 1);
+
+		HeaderParser headerParser = null;
+		try {
+			if (colon < 1)
+				throw new ParseException("The header name or value is null", 0);
+			headerParser = ParserFactory.createParser(headerId,
+					header.substring(nameStart, nameEnd), header);
+		} catch (ParseException ex) {
+			if (this.parseExceptionListener != null)
+				this.parseExceptionListener.handleException(ex, message, null,
+						header.substring(0, headerLength), rawStringMessage);
+			return;
+		}
+
+		try {
+			SIPHeader sipHeader = headerParser.parse();
+			message.attachHeader(sipHeader, false);
+		} catch (ParseException ex) {
+			if (this.parseExceptionListener != null) {
+				String headerName = header.substring(nameStart, nameEnd);
+				Class<?> headerClass = NameMap.getClassFromName(headerName);
+				if (headerClass == null) {
+					headerClass = ExtensionHeaderImpl.class;
+
+				}
+				this.parseExceptionListener.handleException(ex, message,
+						headerClass, header.substring(0, headerLength), rawStringMessage);
+
+			}
+		}
+	}
+
+	/**
+	 * Line by line parse of a raw message, kept for
+	 * setScanBytes(false).
+	 */
+	private SIPMessage parseSIPMessageLines(byte[] msgBuffer) throws ParseException {
 		int i = 0;
 		
 		// Squeeze out any leading control character.
@@ -400,7 +644,7 @@ public class StringMsgParser {
 		} catch (ParseException ex) {
 			if (this.parseExceptionListener != null) {
 				String headerName = Lexer.getHeaderName(header);
-				Class headerClass = NameMap.getClassFromName(headerName);
+				Class<?> headerClass = NameMap.getClassFromName(headerName);
 				if (headerClass == null) {
 					headerClass = ExtensionHeaderImpl.class;
 
@@ -610,6 +854,25 @@ public class StringMsgParser {
 		StringMsgParser.computeContentLengthFromMessage = computeContentLengthFromMessage;
 	}
 
+	/**
+	 * Selects the single pass byte scanner (the default) or the original
+	 * line by line parser for parseSIPMessage(byte[]).
+	 */
+	public static void setScanBytes(boolean scanBytes) {
+		StringMsgParser.scanBytes = scanBytes;
+	}
+
+	/**
+	 * With the byte scanner, attach headers other than Via, Call-ID, CSeq,
+	 * From, To, Content-Length, Content-Type and Max-Forwards unparsed, to
+	 * be parsed when first accessed (the default).
+	 *
+	 * @see SIPMessage#attachLazyHeader(String, String)
+	 */
+	public static void setLazyHeaders(boolean lazyHeaders) {
+		StringMsgParser.lazyHeaders = lazyHeaders;
+	}
+
 	
 
 	/**
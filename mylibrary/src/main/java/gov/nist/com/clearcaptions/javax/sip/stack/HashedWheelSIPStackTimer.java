@@ -0,0 +1,290 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.com.clearcaptions.javax.sip.stack;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stack timer for stacks with many live transactions. Tasks are kept in
+ * hashed timing wheels: an array of slots, each a list of the tasks due in
+ * one tick, so scheduling a task and cancelling it are constant time and a
+ * cancelled task is unlinked at once instead of waiting out its deadline.
+ * Tasks run at the first tick on or after their deadline, with a default
+ * tick of 10 milliseconds.
+ * <p>
+ * There are several wheels, one per processor by default, each with its own
+ * lock and thread. A task stays on the wheel it was first given to; tasks
+ * are spread across the wheels in turn.
+ */
+public class HashedWheelSIPStackTimer implements SIPStackTimer {
+
+	public static final long DEFAULT_TICK_MILLIS = 10;
+
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+
+	private final Wheel[] wheels;
+
+	private final AtomicInteger nextWheel = new AtomicInteger();
+
+	public HashedWheelSIPStackTimer() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_TICK_MILLIS,
+				DEFAULT_WHEEL_SIZE);
+	}
+
+	/**
+	 * @param wheelCount
+	 *            number of wheels, each with its own thread.
+	 * @param tickMillis
+	 *            resolution of the timer.
+	 * @param wheelSize
+	 *            slots per wheel, rounded up to a power of two; a task due
+	 *            more than wheelSize ticks ahead is passed over that many
+	 *            ticks at a time.
+	 */
+	public HashedWheelSIPStackTimer(int wheelCount, long tickMillis,
+			int wheelSize) {
+		wheels = new Wheel[Math.max(wheelCount, 1)];
+		for (int i = 0; i < wheels.length; i++)
+			wheels[i] = new Wheel("SIPStackTimer-" + i, Math.max(tickMillis, 1),
+					wheelSize);
+	}
+
+	public void schedule(SIPStackTimerTask task, long delay) {
+		nextWheel().add(task, delay, 0);
+	}
+
+	public void schedule(SIPStackTimerTask task, long delay, long period) {
+		if (period <= 0)
+			throw new IllegalArgumentException("Non-positive period.");
+		nextWheel().add(task, delay, period);
+	}
+
+	public void stop() {
+		for (int i = 0; i < wheels.length; i++)
+			wheels[i].stop();
+	}
+
+	/**
+	 * @return the number of tasks scheduled and not yet run or cancelled.
+	 */
+	public int size() {
+		int size = 0;
+		for (int i = 0; i < wheels.length; i++)
+			size += wheels[i].size();
+		return size;
+	}
+
+	private Wheel nextWheel() {
+		return wheels[(nextWheel.getAndIncrement() & Integer.MAX_VALUE)
+				% wheels.length];
+	}
+
+	/**
+	 * Milliseconds, rounded down, so deadlines are set one millisecond past
+	 * now() + delay to never run a task early.
+	 */
+	private static long now() {
+		return System.nanoTime() / 1000000;
+	}
+
+	/**
+	 * One wheel and its thread. The tasks of a slot are linked through their
+	 * own prev and next fields.
+	 */
+	static final class Wheel implements Runnable {
+
+		private final String name;
+
+		private final long tickMillis;
+
+		private final SIPStackTimerTask[] slots;
+
+		private final int mask;
+
+		private final long startTime;
+
+		private long tick;
+
+		private int size;
+
+		private boolean stopped;
+
+		private Thread thread;
+
+		Wheel(String name, long tickMillis, int wheelSize) {
+			this.name = name;
+			this.tickMillis = tickMillis;
+			int length = Integer.highestOneBit(Math.max(wheelSize, 2) * 2 - 1);
+			this.slots = new SIPStackTimerTask[length];
+			this.mask = length - 1;
+			this.startTime = now();
+		}
+
+		synchronized int size() {
+			return size;
+		}
+
+		synchronized void add(SIPStackTimerTask task, long delay, long period) {
+			if (stopped)
+				throw new IllegalStateException("Timer already cancelled.");
+			if (task.wheel != null || task.isCancelled())
+				throw new IllegalStateException(
+						"Task already scheduled or cancelled");
+			task.wheel = this;
+			task.period = period;
+			long now = now();
+			if (size == 0) {
+				// Nothing is linked, so the ticks that passed while the
+				// wheel was idle can be skipped.
+				tick = Math.max(tick, (now - startTime) / tickMillis);
+			}
+			insert(task, now + Math.max(delay, 0) + 1);
+			size++;
+			if (thread == null) {
+				thread = new Thread(this, name);
+				thread.start();
+			} else if (size == 1) {
+				notify();
+			}
+		}
+
+		/**
+		 * Unlink a cancelled task.
+		 *
+		 * @return true if the task was waiting to run.
+		 */
+		synchronized boolean remove(SIPStackTimerTask task) {
+			if (!task.linked)
+				return false;
+			unlink(task);
+			size--;
+			return true;
+		}
+
+		synchronized void stop() {
+			stopped = true;
+			for (int i = 0; i < slots.length; i++) {
+				while (slots[i] != null)
+					unlink(slots[i]);
+			}
+			size = 0;
+			notify();
+		}
+
+		// Caller holds the lock.
+		private void insert(SIPStackTimerTask task, long deadline) {
+			long ticks = (deadline - startTime + tickMillis - 1) / tickMillis;
+			if (ticks <= tick)
+				ticks = tick + 1;
+			int slot = (int) (ticks & mask);
+			task.deadline = deadline;
+			task.slot = slot;
+			task.prev = null;
+			task.next = slots[slot];
+			if (task.next != null)
+				task.next.prev = task;
+			slots[slot] = task;
+			task.linked = true;
+		}
+
+		// Caller holds the lock.
+		private void unlink(SIPStackTimerTask task) {
+			if (task.prev != null)
+				task.prev.next = task.next;
+			else
+				slots[task.slot] = task.next;
+			if (task.next != null)
+				task.next.prev = task.prev;
+			task.prev = null;
+			task.next = null;
+			task.linked = false;
+		}
+
+		public void run() {
+			while (true) {
+				// Tasks due at this tick, linked through next, in slot order.
+				SIPStackTimerTask expired = null;
+				SIPStackTimerTask last = null;
+				synchronized (this) {
+					try {
+						while (size == 0 && !stopped)
+							wait();
+						long sleep;
+						while (!stopped
+								&& (sleep = startTime + (tick + 1) * tickMillis
+										- now()) > 0)
+							wait(sleep);
+					} catch (InterruptedException ex) {
+						stopped = true;
+					}
+					if (stopped) {
+						thread = null;
+						return;
+					}
+
+					tick++;
+					long now = now();
+					SIPStackTimerTask task = slots[(int) (tick & mask)];
+					while (task != null) {
+						SIPStackTimerTask next = task.next;
+						long deadline = task.deadline;
+						unlink(task);
+						if (deadline > now) {
+							// Due in a later turn of the wheel.
+							insert(task, deadline);
+						} else {
+							size--;
+							if (last == null)
+								expired = task;
+							else
+								last.next = task;
+							last = task;
+						}
+						task = next;
+					}
+				}
+
+				while (expired != null) {
+					SIPStackTimerTask task = expired;
+					expired = task.next;
+					task.next = null;
+					if (task.isCancelled())
+						continue;
+					task.run();
+					if (task.period > 0)
+						reschedule(task);
+				}
+			}
+		}
+
+		private synchronized void reschedule(SIPStackTimerTask task) {
+			if (stopped || task.isCancelled())
+				return;
+			insert(task, now() + task.period + 1);
+			size++;
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.com.clearcaptions.javax.sip.stack;
+
+import gov.nist.com.clearcaptions.javax.sip.SIPConstants;
+import gov.nist.com.clearcaptions.javax.sip.header.Via;
+import gov.nist.com.clearcaptions.javax.sip.message.SIPMessage;
+import gov.nist.com.clearcaptions.javax.sip.message.SIPRequest;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The transactions of a transaction table whose branch has no magic cookie
+ * (RFC 2543 style), grouped by Call-ID, CSeq number and top Via sent-by. A
+ * message matching one of these transactions has the same three values, so
+ * only the few transactions of its group need the full
+ * isMessagePartOfTransaction or doesCancelMatchTransaction check, instead of
+ * the whole table.
+ * <p>
+ * The From tag is not part of the key: the RFC 2543 match skips it when
+ * either side has none.
+ * <p>
+ * Lookups do not lock; the groups are copied on change.
+ */
+final class LegacyTransactionIndex<T extends SIPTransaction> {
+
+	private static final SIPTransaction[] NONE = new SIPTransaction[0];
+
+	private final ConcurrentHashMap<String, SIPTransaction[]> groups = new ConcurrentHashMap<String, SIPTransaction[]>();
+
+	/**
+	 * @return true if the transaction table key does not start with the magic
+	 *         cookie, so messages find the transaction by scanning rather than
+	 *         by the key.
+	 */
+	static boolean isLegacyKey(String transactionId) {
+		return !transactionId
+				.startsWith(SIPConstants.BRANCH_MAGIC_COOKIE_LOWER_CASE);
+	}
+
+	/**
+	 * @return the group key of the message, or null if it lacks one of the
+	 *         headers.
+	 */
+	static String keyOf(SIPMessage message) {
+		if (message == null || message.getCallId() == null
+				|| message.getCSeq() == null)
+			return null;
+		Via via = message.getTopmostVia();
+		if (via == null || via.getSentBy() == null)
+			return null;
+		return new StringBuffer(message.getCallId().getCallId().toLowerCase())
+				.append(':').append(message.getCSeq().getSeqNumber())
+				.append(':').append(via.getSentBy().encode().toLowerCase())
+				.toString();
+	}
+
+	/**
+	 * Index a transaction by its original request, if it is an RFC 2543 style
+	 * one.
+	 */
+	void add(T transaction) {
+		SIPRequest request = transaction.getOriginalRequest();
+		if (request == null || !isLegacyKey(request.getTransactionId()))
+			return;
+		String key = keyOf(request);
+		if (key == null)
+			return;
+		synchronized (groups) {
+			SIPTransaction[] group = groups.get(key);
+			if (group == null) {
+				groups.put(key, new SIPTransaction[] { transaction });
+				return;
+			}
+			for (int i = 0; i < group.length; i++) {
+				if (group[i] == transaction)
+					return;
+			}
+			SIPTransaction[] newGroup = new SIPTransaction[group.length + 1];
+			System.arraycopy(group, 0, newGroup, 0, group.length);
+			newGroup[group.length] = transaction;
+			groups.put(key, newGroup);
+		}
+	}
+
+	void remove(SIPTransaction transaction) {
+		String key = keyOf(transaction.getOriginalRequest());
+		if (key == null)
+			return;
+		synchronized (groups) {
+			SIPTransaction[] group = groups.get(key);
+			if (group == null)
+				return;
+			for (int i = 0; i < group.length; i++) {
+				if (group[i] != transaction)
+					continue;
+				if (group.length == 1) {
+					groups.remove(key);
+				} else {
+					SIPTransaction[] newGroup = new SIPTransaction[group.length - 1];
+					System.arraycopy(group, 0, newGroup, 0, i);
+					System.arraycopy(group, i + 1, newGroup, i, newGroup.length
+							- i);
+					groups.put(key, newGroup);
+				}
+				return;
+			}
+		}
+	}
+
+	void clear() {
+		synchronized (groups) {
+			groups.clear();
+		}
+	}
+
+	/**
+	 * @return the first transaction of the message's group for which
+	 *         isMessagePartOfTransaction is true, or null.
+	 */
+	@SuppressWarnings("unchecked")
+	T findTransaction(SIPMessage message) {
+		SIPTransaction[] group = group(message);
+		for (int i = 0; i < group.length; i++) {
+			if (group[i].isMessagePartOfTransaction(message))
+				return (T) group[i];
+		}
+		return null;
+	}
+
+	/**
+	 * @return the first transaction of the request's group for which
+	 *         doesCancelMatchTransaction is true, or null.
+	 */
+	@SuppressWarnings("unchecked")
+	T findCancelTransaction(SIPRequest cancelRequest) {
+		SIPTransaction[] group = group(cancelRequest);
+		for (int i = 0; i < group.length; i++) {
+			if (group[i].doesCancelMatchTransaction(cancelRequest))
+				return (T) group[i];
+		}
+		return null;
+	}
+
+	private SIPTransaction[] group(SIPMessage message) {
+		String key = keyOf(message);
+		SIPTransaction[] group = key == null ? null : groups.get(key);
+		return group == null ? NONE : group;
+	}
+}
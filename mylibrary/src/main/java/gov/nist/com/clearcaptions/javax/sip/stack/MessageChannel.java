@@ -205,7 +205,7 @@ public abstract class MessageChannel {
 
                 }
             }
-            byte[] msg = sipMessage.encodeAsBytes(this.getTransport());
+            byte[] msg = sipMessage.encodeAsBytesCached(this.getTransport());
 
             this.sendMessage(msg, hopAddr, hop.getPort(), sipMessage instanceof SIPRequest);
 
@@ -230,7 +230,7 @@ public abstract class MessageChannel {
     public void sendMessage(SIPMessage sipMessage, InetAddress receiverAddress, int receiverPort)
             throws IOException {
         long time = System.currentTimeMillis();
-        byte[] bytes = sipMessage.encodeAsBytes(this.getTransport());
+        byte[] bytes = sipMessage.encodeAsBytesCached(this.getTransport());
         sendMessage(bytes, receiverAddress, receiverPort, sipMessage instanceof SIPRequest);
         logMessage(sipMessage, receiverAddress, receiverPort, time);
     }
@@ -47,7 +47,6 @@ import gov.nist.com.clearcaptions.javax.sip.message.SIPResponse;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.ListIterator;
-import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 
 import com.clearcaptions.javax.sip.Dialog;
@@ -218,6 +217,9 @@ public class SIPClientTransaction extends SIPTransaction implements ServerRespon
             clientTransaction = SIPClientTransaction.this;
             sipStack = clientTransaction.sipStack;
 
+            if (!clientTransaction.transactionTimerRunning(this))
+                return;
+
             // If the transaction has terminated,
             if (clientTransaction.isTerminated()) {
 
@@ -228,14 +230,6 @@ public class SIPClientTransaction extends SIPTransaction implements ServerRespon
 
                 sipStack.removeTransaction(clientTransaction);
 
-                try {
-                    this.cancel();
-
-                } catch (IllegalStateException ex) {
-                    if (!sipStack.isAlive())
-                        return;
-                }
-
                 // Client transaction terminated. Kill connection if
                 // this is a TCP after the linger timer has expired.
                 // The linger timer is needed to allow any pending requests to
@@ -253,7 +247,7 @@ public class SIPClientTransaction extends SIPTransaction implements ServerRespon
                     if (newUseCount <= 0) {
                         // Let the connection linger for a while and then close
                         // it.
-                        TimerTask myTimer = new LingerTimer();
+                        SIPStackTimerTask myTimer = new LingerTimer();
                         sipStack.getTimer().schedule(myTimer,
                                 SIPTransactionStack.CONNECTION_LINGER_TIME * 1000);
                     }
@@ -280,8 +274,8 @@ public class SIPClientTransaction extends SIPTransaction implements ServerRespon
             } else {
                 // If this transaction has not
                 // terminated,
-                // Fire the transaction timer.
-                clientTransaction.fireTimer();
+                // Fire the transaction timers that are due.
+                clientTransaction.fireExpiredTimers();
 
             }
 
@@ -412,6 +406,8 @@ public class SIPClientTransaction extends SIPTransaction implements ServerRespon
      * @param messageToSend Request to process and send.
      */
     public void sendMessage(SIPMessage messageToSend) throws IOException {
+        // The headers below are adjusted in place; encode afresh.
+        messageToSend.invalidateEncoding();
 
         try {
             // Message typecast as a request
@@ -1294,9 +1290,12 @@ public class SIPClientTransaction extends SIPTransaction implements ServerRespon
     protected synchronized void startTransactionTimer() {
         if (this.transactionTimerStarted)
             return;
-        TimerTask myTimer = new TransactionTimer();
         this.transactionTimerStarted = true;
-        sipStack.getTimer().schedule(myTimer, BASE_TIMER_INTERVAL, BASE_TIMER_INTERVAL);
+        scheduleTransactionTimer();
+    }
+
+    protected SIPStackTimerTask createTransactionTimer() {
+        return new TransactionTimer();
     }
 
     /*
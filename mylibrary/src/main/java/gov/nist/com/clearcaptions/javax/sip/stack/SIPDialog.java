@@ -653,6 +653,7 @@ public class SIPDialog implements Dialog, DialogExt {
                 ackRequest.getFrom().setTag(this.getLocalTag());
             if (this.getRemoteTag() != null)
                 ackRequest.getTo().setTag(this.getRemoteTag());
+            ackRequest.invalidateEncoding();
         } catch (ParseException ex) {
             throw new SipException(ex.getMessage());
         }
@@ -1763,6 +1764,7 @@ public class SIPDialog implements Dialog, DialogExt {
             // Increment before setting!!
             localSequenceNumber++;
             dialogRequest.getCSeq().setSeqNumber(getLocalSeqNumber());
+            dialogRequest.invalidateEncoding();
         } catch (InvalidArgumentException ex) {
             sipStack.getLogWriter().logFatalError(ex.getMessage());
         }
@@ -41,7 +41,6 @@ import gov.nist.com.clearcaptions.javax.sip.message.SIPResponse;
 
 import java.io.IOException;
 import java.text.ParseException;
-import java.util.TimerTask;
 
 import com.clearcaptions.javax.sip.Dialog;
 import com.clearcaptions.javax.sip.DialogState;
@@ -357,25 +356,21 @@ public class SIPServerTransaction extends SIPTransaction implements ServerReques
         }
 
         protected void runTask() {
+            if (!transactionTimerRunning(this))
+                return;
             // If the transaction has terminated,
             if (isTerminated()) {
                 // Keep the transaction hanging around in the transaction table
                 // to catch the incoming ACK -- this is needed for tcp only.
                 // Note that the transaction record is actually removed in
                 // the connection linger timer.
-                try {
-                    this.cancel();
-                } catch (IllegalStateException ex) {
-                    if (!sipStack.isAlive())
-                        return;
-                }
 
                 // Oneshot timer that garbage collects the SeverTransaction
                 // after a scheduled amount of time. The linger timer allows
                 // the client side of the tx to use the same connection to
                 // send an ACK and prevents a race condition for creation
                 // of new server tx
-                TimerTask myTimer = new LingerTimer();
+                SIPStackTimerTask myTimer = new LingerTimer();
 
                 sipStack.getTimer().schedule(myTimer,
                         SIPTransactionStack.CONNECTION_LINGER_TIME * 1000);
@@ -384,7 +379,7 @@ public class SIPServerTransaction extends SIPTransaction implements ServerReques
                 // Add to the fire list -- needs to be moved
                 // outside the synchronized block to prevent
                 // deadlock.
-                fireTimer();
+                fireExpiredTimers();
 
             }
         }
@@ -864,6 +859,8 @@ public class SIPServerTransaction extends SIPTransaction implements ServerReques
      * @param messageToSend Response to process and send.
      */
     public void sendMessage(SIPMessage messageToSend) throws IOException {
+        // The headers below are adjusted in place; encode afresh.
+        messageToSend.invalidateEncoding();
         try {
             // Message typecast as a response
             SIPResponse transactionResponse;
@@ -1441,11 +1438,14 @@ public class SIPServerTransaction extends SIPTransaction implements ServerReques
             // The timer is set to null when the Stack is
             // shutting down.
             this.transactionTimerStarted = true;
-            TimerTask myTimer = new TransactionTimer();
-            sipStack.getTimer().schedule(myTimer, BASE_TIMER_INTERVAL, BASE_TIMER_INTERVAL);
+            scheduleTransactionTimer();
         }
     }
 
+    protected SIPStackTimerTask createTransactionTimer() {
+        return new TransactionTimer();
+    }
+
     public boolean equals(Object other) {
         if (!other.getClass().equals(this.getClass())) {
             return false;
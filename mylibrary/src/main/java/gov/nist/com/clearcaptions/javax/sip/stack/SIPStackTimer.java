@@ -0,0 +1,65 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.com.clearcaptions.javax.sip.stack;
+
+/**
+ * The timer that runs all of a stack's timer tasks: transaction and dialog
+ * timers, lingering, and the like. A task is cancelled by calling its own
+ * cancel() method. The implementation is chosen with the
+ * gov.nist.com.clearcaptions.javax.sip.TIMER_CLASS_NAME stack property and
+ * must have a public no-argument constructor; the default is
+ * DefaultSIPStackTimer.
+ *
+ * @see DefaultSIPStackTimer
+ * @see HashedWheelSIPStackTimer
+ */
+public interface SIPStackTimer {
+
+	/**
+	 * Run a task once, delay milliseconds from now.
+	 *
+	 * @throws IllegalStateException
+	 *             if the task was already scheduled or cancelled, or the
+	 *             timer has been stopped.
+	 */
+	public void schedule(SIPStackTimerTask task, long delay);
+
+	/**
+	 * Run a task delay milliseconds from now and then period milliseconds
+	 * after each run, until it is cancelled.
+	 *
+	 * @throws IllegalStateException
+	 *             if the task was already scheduled or cancelled, or the
+	 *             timer has been stopped.
+	 */
+	public void schedule(SIPStackTimerTask task, long delay, long period);
+
+	/**
+	 * Drop all scheduled tasks and stop the timer's threads. The timer
+	 * cannot be used afterwards.
+	 */
+	public void stop();
+}
@@ -19,6 +19,18 @@ import java.util.TimerTask;
  * 
  */
 public abstract class SIPStackTimerTask extends TimerTask {
+	// Kept by HashedWheelSIPStackTimer, under the lock of the wheel once the
+	// task is scheduled on one.
+	volatile HashedWheelSIPStackTimer.Wheel wheel;
+	long deadline;
+	long period;
+	int slot;
+	boolean linked;
+	SIPStackTimerTask prev;
+	SIPStackTimerTask next;
+
+	private volatile boolean cancelled;
+
 	// / Implements code to be run when the SIPStackTimerTask is executed.
 	protected abstract void runTask();
 
@@ -32,4 +44,18 @@ public abstract class SIPStackTimerTask extends TimerTask {
 			e.printStackTrace();
 		}
 	}
+
+	/**
+	 * Cancel the task on whichever kind of timer it was scheduled.
+	 */
+	public boolean cancel() {
+		cancelled = true;
+		HashedWheelSIPStackTimer.Wheel w = wheel;
+		boolean removed = w != null && w.remove(this);
+		return super.cancel() || removed;
+	}
+
+	boolean isCancelled() {
+		return cancelled;
+	}
 }
@@ -222,11 +222,23 @@ public abstract class SIPTransaction extends MessageChannel implements
 	// Number of ticks the retransmission timer was set to last
 	private transient int retransmissionTimerLastTickCount;
 
-	// Number of ticks before the message is retransmitted
-	private transient int retransmissionTimerTicksLeft;
+	// Time (see now()) at which the message is retransmitted, or -1
+	private transient long retransmissionDeadline;
 
-	// Number of ticks before the transaction times out
-	protected int timeoutTimerTicksLeft;
+	// Time at which the transaction times out, or -1
+	private long timeoutDeadline;
+
+	// The transaction timer task waiting to run, and the time it runs at.
+	// The task runs once, at the earlier deadline; see
+	// scheduleTransactionTimer().
+	private SIPStackTimerTask pendingTimer;
+
+	private long pendingTimerDeadline;
+
+	// Set once the timer task has cleaned up the terminated transaction.
+	private boolean transactionTimerDone;
+
+	private final Object timerLock = new Object();
 
 	// List of event listeners for this transaction
 	private transient Set<SIPTransactionEventListener> eventListeners;
@@ -564,6 +576,9 @@ public abstract class SIPTransaction extends MessageChannel implements
 					+ " isClient = " + (this instanceof SIPClientTransaction));
 			sipStack.logWriter.logStackTrace();
 		}
+		// A terminated transaction is cleaned up by its timer task.
+		if (currentState == TransactionState.TERMINATED)
+			scheduleTransactionTimer();
 	}
 
 	/**
@@ -594,20 +609,22 @@ public abstract class SIPTransaction extends MessageChannel implements
 	protected final void enableRetransmissionTimer(int tickCount) {
 		// For INVITE Client transactions, double interval each time
 		if (isInviteTransaction() && (this instanceof SIPClientTransaction)) {
-			retransmissionTimerTicksLeft = tickCount;
+			retransmissionTimerLastTickCount = tickCount;
 		} else {
 			// non-INVITE transactions and 3xx-6xx responses are capped at T2
-			retransmissionTimerTicksLeft = Math.min(tickCount,
+			retransmissionTimerLastTickCount = Math.min(tickCount,
 					MAXIMUM_RETRANSMISSION_TICK_COUNT);
 		}
-		retransmissionTimerLastTickCount = retransmissionTimerTicksLeft;
+		retransmissionDeadline = now() + (long) retransmissionTimerLastTickCount
+				* BASE_TIMER_INTERVAL;
+		scheduleTransactionTimer();
 	}
 
 	/**
 	 * Turns off retransmission events for this transaction.
 	 */
 	protected final void disableRetransmissionTimer() {
-		retransmissionTimerTicksLeft = -1;
+		retransmissionDeadline = -1;
 	}
 
 	/**
@@ -620,47 +637,125 @@ public abstract class SIPTransaction extends MessageChannel implements
 	protected final void enableTimeoutTimer(int tickCount) {
 		if (sipStack.isLoggingEnabled())
 			sipStack.logWriter.logDebug("enableTimeoutTimer " + this
-					+ " tickCount " + tickCount + " currentTickCount = "
-					+ timeoutTimerTicksLeft);
+					+ " tickCount " + tickCount + " timeoutDeadline = "
+					+ timeoutDeadline);
 
-		timeoutTimerTicksLeft = tickCount;
+		timeoutDeadline = now() + (long) tickCount * BASE_TIMER_INTERVAL;
+		scheduleTransactionTimer();
 	}
 
 	/**
 	 * Disabled the timeout timer.
 	 */
 	protected final void disableTimeoutTimer() {
-		timeoutTimerTicksLeft = -1;
+		timeoutDeadline = -1;
 	}
 
 	/**
-	 * Fired after each timer tick. Checks the retransmission and timeout timers
-	 * of this transaction, and fired these events if necessary.
+	 * Count one tick off the retransmission and timeout timers of this
+	 * transaction, and fire the ones that run out. The dialog timer calls
+	 * this on each of its own ticks while it retransmits a 2xx.
 	 */
 	final void fireTimer() {
-		// If the timeout timer is enabled,
+		if (timeoutDeadline != -1)
+			timeoutDeadline -= BASE_TIMER_INTERVAL;
+		if (retransmissionDeadline != -1)
+			retransmissionDeadline -= BASE_TIMER_INTERVAL;
+		fireExpiredTimers();
+	}
 
-		if (timeoutTimerTicksLeft != -1) {
-			// Count down the timer, and if it has run out,
-			if (--timeoutTimerTicksLeft == 0) {
-				// Fire the timeout timer
-				fireTimeoutTimer();
-			}
+	/**
+	 * Fire the retransmission and timeout timers that have run out, and
+	 * schedule the transaction timer task for the next deadline.
+	 */
+	final void fireExpiredTimers() {
+		long now = now();
+		// If the timeout timer has run out,
+		if (timeoutDeadline != -1 && timeoutDeadline <= now) {
+			timeoutDeadline = -1;
+			// Fire the timeout timer
+			fireTimeoutTimer();
 		}
 
-		// If the retransmission timer is enabled,
-		if (retransmissionTimerTicksLeft != -1) {
-			// Count down the timer, and if it has run out,
-			if (--retransmissionTimerTicksLeft == 0) {
-				// Enable this timer to fire again after
-				// twice the original time
-				enableRetransmissionTimer(retransmissionTimerLastTickCount * 2);
-				// Fire the timeout timer
-				fireRetransmissionTimer();
+		// If the retransmission timer has run out,
+		if (retransmissionDeadline != -1 && retransmissionDeadline <= now) {
+			// Enable this timer to fire again after
+			// twice the original time
+			enableRetransmissionTimer(retransmissionTimerLastTickCount * 2);
+			// Fire the retransmission timer
+			fireRetransmissionTimer();
+		}
+		scheduleTransactionTimer();
+	}
+
+	/**
+	 * Make sure a transaction timer task is scheduled for the next time
+	 * there is something to do: the earlier of the retransmission and
+	 * timeout deadlines, or a tick from now once the transaction has
+	 * terminated and is to be cleaned up. Nothing is scheduled for an idle
+	 * transaction, or before startTransactionTimer().
+	 */
+	final void scheduleTransactionTimer() {
+		if (!transactionTimerStarted)
+			return;
+		SIPStackTimer timer = sipStack.getTimer();
+		// The timer is set to null when the Stack is shutting down.
+		if (timer == null)
+			return;
+		long now = now();
+		long deadline;
+		if (isTerminated()) {
+			deadline = now + BASE_TIMER_INTERVAL;
+		} else {
+			deadline = retransmissionDeadline;
+			if (timeoutDeadline != -1
+					&& (deadline == -1 || timeoutDeadline < deadline))
+				deadline = timeoutDeadline;
+			if (deadline == -1)
+				return;
+		}
+		synchronized (timerLock) {
+			if (transactionTimerDone)
+				return;
+			if (pendingTimer != null) {
+				if (pendingTimerDeadline <= deadline)
+					return;
+				pendingTimer.cancel();
+			}
+			pendingTimer = createTransactionTimer();
+			pendingTimerDeadline = deadline;
+			try {
+				timer.schedule(pendingTimer, Math.max(deadline - now, 0));
+			} catch (IllegalStateException ex) {
+				// The stack is stopping.
+				pendingTimer = null;
 			}
 		}
 	}
 
+	/**
+	 * Called first by a transaction timer task when it runs.
+	 *
+	 * @return false if the task has been superseded and should do nothing.
+	 */
+	final boolean transactionTimerRunning(SIPStackTimerTask task) {
+		synchronized (timerLock) {
+			if (pendingTimer != task)
+				return false;
+			pendingTimer = null;
+			if (isTerminated())
+				transactionTimerDone = true;
+			return true;
+		}
+	}
+
+	/**
+	 * Time in milliseconds for the transaction timers.
+	 */
+	private static long now() {
+		return System.nanoTime() / 1000000;
+	}
+
 	/**
 	 * Tests if this transaction has terminated.
 	 * 
@@ -1245,6 +1340,12 @@ public abstract class SIPTransaction extends MessageChannel implements
 
 	protected abstract void startTransactionTimer();
 
+	/**
+	 * Create a task that runs the transaction timer once; see
+	 * scheduleTransactionTimer().
+	 */
+	protected abstract SIPStackTimerTask createTransactionTimer();
+
 	/**
 	 * Tests a message to see if it is part of this transaction.
 	 * 
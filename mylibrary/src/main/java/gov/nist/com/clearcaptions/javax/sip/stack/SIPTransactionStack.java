@@ -120,7 +120,10 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
     // Global timer. Use this for all timer tasks.
 
-    private Timer timer;
+    private SIPStackTimer timer;
+
+    // Kind of timer to create on re-initialization.
+    private Class< ? extends SIPStackTimer> timerClass = DefaultSIPStackTimer.class;
 
     // List of pending server transactions
     private ConcurrentHashMap<String, SIPServerTransaction> pendingTransactions;
@@ -128,6 +131,9 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
     // hashtable for fast lookup
     private ConcurrentHashMap<String, SIPClientTransaction> clientTransactionTable;
 
+    // The RFC 2543 style entries of clientTransactionTable.
+    private final LegacyTransactionIndex<SIPClientTransaction> legacyClientTransactions = new LegacyTransactionIndex<SIPClientTransaction>();
+
     // Set to false if you want hiwat and lowat to be consulted.
     private boolean unlimitedServerTransactionTableSize = false;
 
@@ -158,6 +164,12 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
     // Hashtable for server transactions.
     private ConcurrentHashMap<String, SIPServerTransaction> serverTransactionTable;
 
+    // The RFC 2543 style entries of serverTransactionTable.
+    private final LegacyTransactionIndex<SIPServerTransaction> legacyServerTransactions = new LegacyTransactionIndex<SIPServerTransaction>();
+
+    // Sampled and per Call-ID trace of transaction lookups.
+    private final TransactionLookupTrace lookupTrace = new TransactionLookupTrace(this);
+
     // A table of ongoing transactions indexed by mergeId ( for detecting merged
     // requests.
     private ConcurrentHashMap<String, SIPServerTransaction> mergeTable;
@@ -426,7 +438,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
         // Start the timer event thread.
 
-        this.timer = new Timer();
+        this.timer = new DefaultSIPStackTimer();
         this.pendingTransactions = new ConcurrentHashMap<String, SIPServerTransaction>();
 
         if (getThreadAuditor().isEnabled()) {
@@ -451,13 +463,21 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
         pendingTransactions = new ConcurrentHashMap<String, SIPServerTransaction>();
         clientTransactionTable = new ConcurrentHashMap<String, SIPClientTransaction>();
         serverTransactionTable = new ConcurrentHashMap<String, SIPServerTransaction>();
+        legacyClientTransactions.clear();
+        legacyServerTransactions.clear();
         retransmissionAlertTransactions = new ConcurrentHashMap<String, SIPServerTransaction>();
         mergeTable = new ConcurrentHashMap<String, SIPServerTransaction>();
         // Dialog dable.
         this.dialogTable = new ConcurrentHashMap<String, SIPDialog>();
         this.earlyDialogTable = new ConcurrentHashMap<String, SIPDialog>();
 
-        this.timer = new Timer();
+        try {
+            this.timer = timerClass.getDeclaredConstructor().newInstance();
+        } catch (Exception ex) {
+            logWriter.logError("could not create a " + timerClass.getName()
+                    + ", using the default timer", ex);
+            this.timer = new DefaultSIPStackTimer();
+        }
 
         this.activeClientTransactionCount = new AtomicInteger(0);
 
@@ -499,7 +519,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
      *         ID.
      */
     public SIPServerTransaction getRetransmissionAlertTransaction(String dialogId) {
-        return (SIPServerTransaction) this.retransmissionAlertTransactions.get(dialogId);
+        return this.retransmissionAlertTransactions.get(dialogId);
     }
 
     /**
@@ -666,7 +686,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
     public SIPDialog getDialog(String dialogId) {
 
-        SIPDialog sipDialog = (SIPDialog) dialogTable.get(dialogId);
+        SIPDialog sipDialog = dialogTable.get(dialogId);
         if (logWriter.isLoggingEnabled()) {
             logWriter.logDebug("getDialog(" + dialogId + ") : returning " + sipDialog);
         }
@@ -706,7 +726,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
             ListeningPointImpl listeningPoint) {
         SIPClientTransaction retval = null;
         try {
-            Iterator it = clientTransactionTable.values().iterator();
+            Iterator<SIPClientTransaction> it = clientTransactionTable.values().iterator();
             logWriter.logDebug("ct table size = " + clientTransactionTable.size());
             String thisToTag = notifyMessage.getTo().getTag();
             if (thisToTag == null) {
@@ -721,7 +741,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
                 return retval;
             }
             while (it.hasNext()) {
-                SIPClientTransaction ct = (SIPClientTransaction) it.next();
+                SIPClientTransaction ct = it.next();
                 if (!ct.getMethod().equals(Request.SUBSCRIBE))
                     continue;
                
@@ -772,53 +792,49 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
      */
     public SIPTransaction findTransaction(SIPMessage sipMessage, boolean isServer) {
         SIPTransaction retval = null;
+        String key = null;
 
         if (isServer) {
             Via via = sipMessage.getTopmostVia();
             if (via.getBranch() != null) {
-                String key = sipMessage.getTransactionId();
+                key = sipMessage.getTransactionId();
 
                 retval = (SIPTransaction) serverTransactionTable.get(key);
                 if (logWriter.isLoggingEnabled())
                     getLogWriter().logDebug(
-                            "serverTx: looking for key " + key + " existing="
-                                    + serverTransactionTable);
-                if (key.startsWith(SIPConstants.BRANCH_MAGIC_COOKIE_LOWER_CASE))
-                    return retval;
+                            "serverTx: looking for key " + key + " found=" + retval
+                                    + " tableSize=" + serverTransactionTable.size());
 
             }
-            // Need to scan the table for old style transactions (RFC 2543
-            // style)
-            Iterator<SIPServerTransaction> it = serverTransactionTable.values().iterator();
-            while (it.hasNext()) {
-                SIPServerTransaction sipServerTransaction = (SIPServerTransaction) it.next();
-                if (sipServerTransaction.isMessagePartOfTransaction(sipMessage))
-                    return sipServerTransaction;
+            if (key == null || !key.startsWith(SIPConstants.BRANCH_MAGIC_COOKIE_LOWER_CASE)) {
+                // Need to look for old style transactions (RFC 2543
+                // style)
+                retval = legacyServerTransactions.findTransaction(sipMessage);
             }
+            if (lookupTrace.isEnabled())
+                lookupTrace.lookup("server", sipMessage, key, retval, serverTransactionTable
+                        .size());
 
         } else {
             Via via = sipMessage.getTopmostVia();
             if (via.getBranch() != null) {
-                String key = sipMessage.getTransactionId();
+                key = sipMessage.getTransactionId();
                 if (logWriter.isLoggingEnabled())
                     getLogWriter().logDebug("clientTx: looking for key " + key);
                 retval = (SIPTransaction) clientTransactionTable.get(key);
-                if (key.startsWith(SIPConstants.BRANCH_MAGIC_COOKIE_LOWER_CASE))
-                    return retval;
 
             }
-            // Need to scan the table for old style transactions (RFC 2543
-            // style). This is terribly slow but we need to do this
-            // for backasswords compatibility.
-            Iterator<SIPClientTransaction> it = clientTransactionTable.values().iterator();
-            while (it.hasNext()) {
-                SIPClientTransaction clientTransaction = (SIPClientTransaction) it.next();
-                if (clientTransaction.isMessagePartOfTransaction(sipMessage))
-                    return clientTransaction;
+            if (key == null || !key.startsWith(SIPConstants.BRANCH_MAGIC_COOKIE_LOWER_CASE)) {
+                // Need to look for old style transactions (RFC 2543
+                // style) for backasswords compatibility.
+                retval = legacyClientTransactions.findTransaction(sipMessage);
             }
+            if (lookupTrace.isEnabled())
+                lookupTrace.lookup("client", sipMessage, key, retval, clientTransactionTable
+                        .size());
 
         }
-        return null;
+        return retval;
 
     }
 
@@ -833,26 +849,36 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
                     + "\nfindCancelRequest isServer=" + isServer);
         }
 
+        // The transaction to cancel is keyed by the branch of the CANCEL,
+        // unless it is an old style (RFC 2543) one.
+        String branch = cancelRequest.getTopmostVia().getBranch();
         if (isServer) {
-            Iterator<SIPServerTransaction> li = this.serverTransactionTable.values().iterator();
-            while (li.hasNext()) {
-                SIPTransaction transaction = (SIPTransaction) li.next();
-
-                SIPServerTransaction sipServerTransaction = (SIPServerTransaction) transaction;
-                if (sipServerTransaction.doesCancelMatchTransaction(cancelRequest))
-                    return sipServerTransaction;
-            }
+            SIPServerTransaction sipServerTransaction = branch == null ? null
+                    : serverTransactionTable.get(branch.toLowerCase());
+            if (sipServerTransaction != null
+                    && !sipServerTransaction.doesCancelMatchTransaction(cancelRequest))
+                sipServerTransaction = null;
+            if (sipServerTransaction == null)
+                sipServerTransaction = legacyServerTransactions.findCancelTransaction(cancelRequest);
+            if (lookupTrace.isEnabled())
+                lookupTrace.lookup("server-cancel", cancelRequest, branch, sipServerTransaction,
+                        serverTransactionTable.size());
+            if (sipServerTransaction != null)
+                return sipServerTransaction;
 
         } else {
-            Iterator<SIPClientTransaction> li = this.clientTransactionTable.values().iterator();
-            while (li.hasNext()) {
-                SIPTransaction transaction = (SIPTransaction) li.next();
-
-                SIPClientTransaction sipClientTransaction = (SIPClientTransaction) transaction;
-                if (sipClientTransaction.doesCancelMatchTransaction(cancelRequest))
-                    return sipClientTransaction;
-
-            }
+            SIPClientTransaction sipClientTransaction = branch == null ? null
+                    : clientTransactionTable.get(branch.toLowerCase());
+            if (sipClientTransaction != null
+                    && !sipClientTransaction.doesCancelMatchTransaction(cancelRequest))
+                sipClientTransaction = null;
+            if (sipClientTransaction == null)
+                sipClientTransaction = legacyClientTransactions.findCancelTransaction(cancelRequest);
+            if (lookupTrace.isEnabled())
+                lookupTrace.lookup("client-cancel", cancelRequest, branch, sipClientTransaction,
+                        clientTransactionTable.size());
+            if (sipClientTransaction != null)
+                return sipClientTransaction;
 
         }
         if (logWriter.isLoggingEnabled())
@@ -883,7 +909,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
             this.logWriter.logDebug("looking for pending tx for :"
                     + requestReceived.getTransactionId());
         }
-        return (SIPServerTransaction) pendingTransactions.get(requestReceived.getTransactionId());
+        return pendingTransactions.get(requestReceived.getTransactionId());
 
     }
 
@@ -901,7 +927,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
             return null;
         String mergeId = sipRequest.getMergeId();
         if (mergeId != null) {
-            return (SIPServerTransaction) this.mergeTable.get(mergeId);
+            return this.mergeTable.get(mergeId);
         } else {
             return null;
         }
@@ -975,10 +1001,6 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
      */
     public ServerRequestInterface newSIPServerRequest(SIPRequest requestReceived,
             MessageChannel requestMessageChannel) {
-        // Iterator through all server transactions
-        Iterator<SIPServerTransaction> transactionIterator;
-        // Next transaction in the set
-        SIPServerTransaction nextTransaction;
         // Transaction to handle this request
         SIPServerTransaction currentTransaction;
 
@@ -986,28 +1008,20 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
         requestReceived.setMessageChannel(requestMessageChannel);
 
-        currentTransaction = (SIPServerTransaction) serverTransactionTable.get(key);
+        currentTransaction = serverTransactionTable.get(key);
 
         // Got to do this for bacasswards compatibility.
         if (currentTransaction == null
                 || !currentTransaction.isMessagePartOfTransaction(requestReceived)) {
 
-            // Loop through all server transactions
-            transactionIterator = serverTransactionTable.values().iterator();
+            // Look through the old style server transactions
             currentTransaction = null;
             if (!key.toLowerCase().startsWith(SIPConstants.BRANCH_MAGIC_COOKIE_LOWER_CASE)) {
-                while (transactionIterator.hasNext() && currentTransaction == null) {
-
-                    nextTransaction = (SIPServerTransaction) transactionIterator.next();
-
-                    // If this transaction should handle this request,
-                    if (nextTransaction.isMessagePartOfTransaction(requestReceived)) {
-                        // Mark this transaction as the one
-                        // to handle this message
-                        currentTransaction = nextTransaction;
-                    }
-                }
+                currentTransaction = legacyServerTransactions.findTransaction(requestReceived);
             }
+            if (lookupTrace.isEnabled())
+                lookupTrace.lookup("server", requestReceived, key, currentTransaction,
+                        serverTransactionTable.size());
 
             // If no transaction exists to handle this message
             if (currentTransaction == null) {
@@ -1032,6 +1046,9 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
             }
 
+        } else if (lookupTrace.isEnabled()) {
+            lookupTrace.lookup("server", requestReceived, key, currentTransaction,
+                    serverTransactionTable.size());
         }
 
         // Set ths transaction's encapsulated request
@@ -1080,10 +1097,6 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
     protected ServerResponseInterface newSIPServerResponse(SIPResponse responseReceived,
             MessageChannel responseMessageChannel) {
 
-        // Iterator through all client transactions
-        Iterator<SIPClientTransaction> transactionIterator;
-        // Next transaction in the set
-        SIPClientTransaction nextTransaction;
         // Transaction to handle this request
         SIPClientTransaction currentTransaction;
 
@@ -1092,29 +1105,16 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
         // Note that for RFC 3261 compliant operation, this lookup will
         // return a tx if one exists and hence no need to search through
         // the table.
-        currentTransaction = (SIPClientTransaction) clientTransactionTable.get(key);
+        currentTransaction = clientTransactionTable.get(key);
 
         if (currentTransaction == null
                 || (!currentTransaction.isMessagePartOfTransaction(responseReceived) && !key
                         .startsWith(SIPConstants.BRANCH_MAGIC_COOKIE_LOWER_CASE))) {
-            // Loop through all client transactions
-
-            transactionIterator = clientTransactionTable.values().iterator();
-            currentTransaction = null;
-            while (transactionIterator.hasNext() && currentTransaction == null) {
-
-                nextTransaction = (SIPClientTransaction) transactionIterator.next();
-
-                // If this transaction should handle this request,
-                if (nextTransaction.isMessagePartOfTransaction(responseReceived)) {
-
-                    // Mark this transaction as the one to
-                    // handle this message
-                    currentTransaction = nextTransaction;
-
-                }
-
-            }
+            // Look through the old style client transactions
+            currentTransaction = legacyClientTransactions.findTransaction(responseReceived);
+            if (lookupTrace.isEnabled())
+                lookupTrace.lookup("client", responseReceived, key, currentTransaction,
+                        clientTransactionTable.size());
 
             // If no transaction exists to handle this message,
             if (currentTransaction == null) {
@@ -1131,6 +1131,9 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
                         responseMessageChannel);
 
             }
+        } else if (lookupTrace.isEnabled()) {
+            lookupTrace.lookup("client", responseReceived, key, currentTransaction,
+                    clientTransactionTable.size());
         }
 
         // Aquire the sem -- previous request may still be processing.
@@ -1278,13 +1281,14 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
                 logWriter.logStackTrace();
             String key = sipTransaction.getTransactionId();
             Object removed = serverTransactionTable.remove(key);
+            legacyServerTransactions.remove(sipTransaction);
             String method = sipTransaction.getMethod();
             this.removePendingTransaction((SIPServerTransaction) sipTransaction);
             if (this.isDialogCreated(method)) {
                 this.removeFromMergeTable((SIPServerTransaction) sipTransaction);
             }
             // Send a notification to the listener.
-            SipProviderImpl sipProvider = (SipProviderImpl) sipTransaction.getSipProvider();
+            SipProviderImpl sipProvider = sipTransaction.getSipProvider();
             if (removed != null && sipTransaction.testAndSetTransactionTerminatedEvent()) {
                 TransactionTerminatedEvent event = new TransactionTerminatedEvent(sipProvider,
                         (ServerTransaction) sipTransaction);
@@ -1296,6 +1300,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
             String key = sipTransaction.getTransactionId();
             Object removed = clientTransactionTable.remove(key);
+            legacyClientTransactions.remove(sipTransaction);
 
             if (logWriter.isLoggingEnabled()) {
                 logWriter.logDebug("REMOVED client tx " + removed + " KEY = " + key);
@@ -1303,7 +1308,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
             // Send a notification to the listener.
             if (removed != null && sipTransaction.testAndSetTransactionTerminatedEvent()) {
-                SipProviderImpl sipProvider = (SipProviderImpl) sipTransaction.getSipProvider();
+                SipProviderImpl sipProvider = sipTransaction.getSipProvider();
                 TransactionTerminatedEvent event = new TransactionTerminatedEvent(sipProvider,
                         (ClientTransaction) sipTransaction);
 
@@ -1353,7 +1358,11 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
                 this.activeClientTransactionCount.incrementAndGet();
             }
             String key = sipRequest.getTransactionId();
-            clientTransactionTable.put(key, (SIPClientTransaction) sipTransaction);
+            SIPClientTransaction replaced = clientTransactionTable.put(key,
+                    (SIPClientTransaction) sipTransaction);
+            if (replaced != null)
+                legacyClientTransactions.remove(replaced);
+            legacyClientTransactions.add((SIPClientTransaction) sipTransaction);
             if (logWriter.isLoggingEnabled()) {
                 logWriter.logDebug(" putTransactionHash : " + " key = " + key);
             }
@@ -1363,7 +1372,11 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
             if (logWriter.isLoggingEnabled()) {
                 logWriter.logDebug(" putTransactionHash : " + " key = " + key);
             }
-            serverTransactionTable.put(key, (SIPServerTransaction) sipTransaction);
+            SIPServerTransaction replaced = serverTransactionTable.put(key,
+                    (SIPServerTransaction) sipTransaction);
+            if (replaced != null)
+                legacyServerTransactions.remove(replaced);
+            legacyServerTransactions.add((SIPServerTransaction) sipTransaction);
 
         }
 
@@ -1399,10 +1412,12 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
                 logWriter.logDebug("removing client Tx : " + key);
             }
             clientTransactionTable.remove(key);
+            legacyClientTransactions.remove(sipTransaction);
 
         } else if (sipTransaction instanceof SIPServerTransaction) {
             String key = sipTransaction.getTransactionId();
             serverTransactionTable.remove(key);
+            legacyServerTransactions.remove(sipTransaction);
             if (logWriter.isLoggingEnabled()) {
                 logWriter.logDebug("removing server Tx : " + key);
             }
@@ -1439,7 +1454,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
     public void stopStack() {
         // Prevent NPE on two concurrent stops
         if (this.timer != null)
-            this.timer.cancel();
+            this.timer.stop();
 
         // JvB: set it to null, SIPDialog tries to schedule things after stop
         timer = null;
@@ -1471,6 +1486,8 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
         }
         this.clientTransactionTable.clear();
         this.serverTransactionTable.clear();
+        this.legacyClientTransactions.clear();
+        this.legacyServerTransactions.clear();
 
         this.dialogTable.clear();
         this.serverLog.closeLogFile();
@@ -1522,6 +1539,14 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
         return this.logWriter;
     }
 
+    /**
+     * Get the trace of transaction table lookups, to sample lookups or follow
+     * a Call-ID at run time.
+     */
+    public TransactionLookupTrace getLookupTrace() {
+        return this.lookupTrace;
+    }
+
     /**
      * Server log is the place where we log messages for the signaling trace viewer.
      * 
@@ -1724,7 +1749,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
      */
     protected MessageProcessor[] getMessageProcessors() {
         synchronized (messageProcessors) {
-            return (MessageProcessor[]) messageProcessors.toArray(new MessageProcessor[0]);
+            return messageProcessors.toArray(new MessageProcessor[0]);
         }
     }
 
@@ -1788,7 +1813,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
             Hop nextHop) throws UnknownHostException {
         Host targetHost;
         HostPort targetHostPort;
-        Iterator processorIterator;
+        Iterator<MessageProcessor> processorIterator;
         MessageProcessor nextProcessor;
         MessageChannel newChannel;
 
@@ -1803,7 +1828,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
         newChannel = null;
         processorIterator = messageProcessors.iterator();
         while (processorIterator.hasNext() && newChannel == null) {
-            nextProcessor = (MessageProcessor) processorIterator.next();
+            nextProcessor = processorIterator.next();
             // If a processor that supports the correct
             // transport is found,
             if (nextHop.getTransport().equalsIgnoreCase(nextProcessor.getTransport())
@@ -2173,16 +2198,25 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
     }
 
     /**
+     * Replace the timer, stopping the one in use. Tasks already scheduled
+     * are dropped, so call this before the stack is started.
+     * 
      * @param timer the timer to set
      */
-    public void setTimer(Timer timer) {
+    public void setTimer(SIPStackTimer timer) {
+        SIPStackTimer previous = this.timer;
         this.timer = timer;
+        this.timerClass = timer.getClass();
+        if (previous != null && previous != timer)
+            previous.stop();
+        if (previous != timer && getThreadAuditor().isEnabled())
+            timer.schedule(new PingTimer(null), 0);
     }
 
     /**
      * @return the timer
      */
-    public Timer getTimer() {
+    public SIPStackTimer getTimer() {
         return timer;
     }
     
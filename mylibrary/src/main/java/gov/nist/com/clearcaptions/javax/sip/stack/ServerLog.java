@@ -34,6 +34,7 @@ import java.io.IOException;
 import java.io.FileWriter;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
 
 import gov.nist.com.clearcaptions.core.*;
 import gov.nist.com.clearcaptions.javax.sip.LogRecord;
@@ -349,6 +350,34 @@ public class ServerLog {
 			logMessage(log.toString());
 	}
 
+	/**
+	 * The text to log for a message. A message that has just been sent is
+	 * logged from the bytes it was sent as rather than encoded again. Any
+	 * other message is encoded afresh, since a header object may have been
+	 * changed in place since the message was last sent.
+	 */
+	private String encodeForLog(SIPMessage message, boolean sender) {
+		byte[] sent = sender ? message.getCachedEncoding() : null;
+		if (sent == null)
+			return logContent ? message.encode() : message.encodeMessage();
+		int length = sent.length;
+		if (!logContent) {
+			// Stop at the blank line that ends the headers.
+			for (int i = 3; i < sent.length; i++) {
+				if (sent[i] == '\n' && sent[i - 1] == '\r' && sent[i - 2] == '\n'
+						&& sent[i - 3] == '\r') {
+					length = i + 1;
+					break;
+				}
+			}
+		}
+		try {
+			return new String(sent, 0, length, "UTF-8");
+		} catch (UnsupportedEncodingException ex) {
+			return logContent ? message.encode() : message.encodeMessage();
+		}
+	}
+
 	/**
 	 * Log a message into the log directory.
 	 *
@@ -367,7 +396,7 @@ public class ServerLog {
 		if (cid != null)
 			callId = cid.getCallId();
 		String firstLine = message.getFirstLine().trim();
-		String inputText = (logContent ? message.encode() : message.encodeMessage());
+		String inputText = encodeForLog(message, sender);
 		String tid = message.getTransactionId();
 		TimeStampHeader tsHdr = (TimeStampHeader) message.getHeader(TimeStampHeader.NAME);
 		long tsval = tsHdr == null ? 0 : tsHdr.getTime();
@@ -392,7 +421,7 @@ public class ServerLog {
 		if (cid != null)
 			callId = cid.getCallId();
 		String firstLine = message.getFirstLine().trim();
-		String encoded = (logContent ? message.encode() : message.encodeMessage());
+		String encoded = encodeForLog(message, sender);
 		String tid = message.getTransactionId();
 		TimeStampHeader tshdr = (TimeStampHeader) message.getHeader(TimeStampHeader.NAME);
 		long tsval = tshdr == null ? 0 : tshdr.getTime();
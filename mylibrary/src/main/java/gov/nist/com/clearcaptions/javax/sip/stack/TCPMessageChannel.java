@@ -36,7 +36,6 @@ import gov.nist.com.clearcaptions.javax.sip.parser.*;
 import java.net.*;
 import java.io.*;
 import java.text.ParseException;
-import java.util.TimerTask;
 
 import com.clearcaptions.javax.sip.address.Hop;
 
@@ -283,7 +282,7 @@ public class TCPMessageChannel extends MessageChannel implements SIPMessageListe
      * @throws IOException If there is an error sending the message
      */
     public void sendMessage(SIPMessage sipMessage) throws IOException {
-        byte[] msg = sipMessage.encodeAsBytes(this.getTransport());
+        byte[] msg = sipMessage.encodeAsBytesCached(this.getTransport());
 
         long time = System.currentTimeMillis();
 
@@ -330,7 +329,7 @@ public class TCPMessageChannel extends MessageChannel implements SIPMessageListe
                 /*
                  * Delay the close of the socket for some time in case it is being used.
                  */
-                sipStack.getTimer().schedule(new TimerTask() {
+                sipStack.getTimer().schedule(new SIPStackTimerTask() {
                     @Override
                     public boolean cancel() {
                         try {
@@ -343,7 +342,7 @@ public class TCPMessageChannel extends MessageChannel implements SIPMessageListe
                     }
 
                     @Override
-                    public void run() {
+                    protected void runTask() {
                         try {
                             mySock.close();
                         } catch (IOException ex) {
@@ -605,27 +604,39 @@ public class TCPMessageChannel extends MessageChannel implements SIPMessageListe
      * end has closed.
      */
     public void run() {
-        Pipeline hispipe = null;
-        // Create a pipeline to connect to our message parser.
-        hispipe = new Pipeline(myClientInputStream, sipStack.readTimeout,
-                ((SIPTransactionStack) sipStack).getTimer());
-        // Create a pipelined message parser to read and parse
-        // messages that we write out to him.
-        myParser = new PipelinedMsgParser(this, hispipe, this.sipStack.getMaxMessageSize());
-        // Start running the parser thread.
-        myParser.processInput();
+        // Create a push mode message parser. Each chunk read from the
+        // socket is framed and dispatched from this thread, so there is no
+        // pipe or parser thread per connection.
+        myParser = new PipelinedMsgParser(this, this.sipStack.getMaxMessageSize());
         // bug fix by Emmanuel Proulx
         int bufferSize = 4096;
+        byte[] msg = new byte[bufferSize];
+        int soTimeout = 0;
+        // Guard against bad guys: a message that has been started must be
+        // complete within the read timeout of its first bytes, however
+        // they trickle in.
+        long deadline = 0;
+        long messageCount = 0;
         this.tcpMessageProcessor.useCount++;
         this.isRunning = true;
         try {
             while (true) {
                 try {
-                    byte[] msg = new byte[bufferSize];
+                    int timeout = 0;
+                    if (deadline != 0) {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0)
+                            throw new SocketTimeoutException("Message not complete within "
+                                    + sipStack.readTimeout + " ms");
+                        timeout = (int) remaining;
+                    }
+                    if (timeout != soTimeout) {
+                        mySock.setSoTimeout(timeout);
+                        soTimeout = timeout;
+                    }
                     int nbytes = myClientInputStream.read(msg, 0, bufferSize);
                     // no more bytes to read...
                     if (nbytes == -1) {
-                        hispipe.write("\r\n\r\n".getBytes("UTF-8"));
                         try {
                             if (sipStack.maxConnections != -1) {
                                 synchronized (tcpMessageProcessor) {
@@ -633,22 +644,19 @@ public class TCPMessageChannel extends MessageChannel implements SIPMessageListe
                                     tcpMessageProcessor.notify();
                                 }
                             }
-                            hispipe.close();
                             mySock.close();
                         } catch (IOException ioex) {
                         }
                         return;
                     }
-                    hispipe.write(msg, 0, nbytes);
+                    myParser.addBytes(msg, 0, nbytes);
+                    if (sipStack.readTimeout == -1 || !myParser.hasPartialMessage())
+                        deadline = 0;
+                    else if (deadline == 0 || myParser.getMessageCount() != messageCount)
+                        deadline = System.currentTimeMillis() + sipStack.readTimeout;
+                    messageCount = myParser.getMessageCount();
 
                 } catch (IOException ex) {
-                    // Terminate the message.
-                    try {
-                        hispipe.write("\r\n\r\n".getBytes("UTF-8"));
-                    } catch (Exception e) {
-                        // InternalErrorHandler.handleException(e);
-                    }
-
                     try {
                         if (sipStack.isLoggingEnabled())
                             sipStack.logWriter.logDebug("IOException  closing sock " + ex);
@@ -661,7 +669,6 @@ public class TCPMessageChannel extends MessageChannel implements SIPMessageListe
                                 }
                             }
                             mySock.close();
-                            hispipe.close();
                         } catch (IOException ioex) {
                         }
                     } catch (Exception ex1) {
@@ -268,7 +268,7 @@ public final class TLSMessageChannel extends MessageChannel implements SIPMessag
      * @throws IOException If there is an error sending the message
      */
     public void sendMessage(SIPMessage sipMessage) throws IOException {
-        byte[] msg = sipMessage.encodeAsBytes(this.getTransport());
+        byte[] msg = sipMessage.encodeAsBytesCached(this.getTransport());
 
         long time = System.currentTimeMillis();
 
@@ -556,27 +556,39 @@ public final class TLSMessageChannel extends MessageChannel implements SIPMessag
      * end has closed.
      */
     public void run() {
-        Pipeline hispipe = null;
-        // Create a pipeline to connect to our message parser.
-        hispipe = new Pipeline(myClientInputStream, sipStack.readTimeout,
-                ((SIPTransactionStack) sipStack).getTimer());
-        // Create a pipelined message parser to read and parse
-        // messages that we write out to him.
-        myParser = new PipelinedMsgParser(this, hispipe, this.sipStack.getMaxMessageSize());
-        // Start running the parser thread.
-        myParser.processInput();
+        // Create a push mode message parser. Each chunk read from the
+        // socket is framed and dispatched from this thread, so there is no
+        // pipe or parser thread per connection.
+        myParser = new PipelinedMsgParser(this, this.sipStack.getMaxMessageSize());
         // bug fix by Emmanuel Proulx
         int bufferSize = 4096;
+        byte[] msg = new byte[bufferSize];
+        int soTimeout = 0;
+        // Guard against bad guys: a message that has been started must be
+        // complete within the read timeout of its first bytes, however
+        // they trickle in.
+        long deadline = 0;
+        long messageCount = 0;
         this.tlsMessageProcessor.useCount++;
         this.isRunning = true;
         try {
             while (true) {
                 try {
-                    byte[] msg = new byte[bufferSize];
+                    int timeout = 0;
+                    if (deadline != 0) {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0)
+                            throw new SocketTimeoutException("Message not complete within "
+                                    + sipStack.readTimeout + " ms");
+                        timeout = (int) remaining;
+                    }
+                    if (timeout != soTimeout) {
+                        mySock.setSoTimeout(timeout);
+                        soTimeout = timeout;
+                    }
                     int nbytes = myClientInputStream.read(msg, 0, bufferSize);
                     // no more bytes to read...
                     if (nbytes == -1) {
-                        hispipe.write("\r\n\r\n".getBytes("UTF-8"));
                         try {
                             if (sipStack.maxConnections != -1) {
                                 synchronized (tlsMessageProcessor) {
@@ -584,22 +596,19 @@ public final class TLSMessageChannel extends MessageChannel implements SIPMessag
                                     tlsMessageProcessor.notify();
                                 }
                             }
-                            hispipe.close();
                             mySock.close();
                         } catch (IOException ioex) {
                         }
                         return;
                     }
-                    hispipe.write(msg, 0, nbytes);
+                    myParser.addBytes(msg, 0, nbytes);
+                    if (sipStack.readTimeout == -1 || !myParser.hasPartialMessage())
+                        deadline = 0;
+                    else if (deadline == 0 || myParser.getMessageCount() != messageCount)
+                        deadline = System.currentTimeMillis() + sipStack.readTimeout;
+                    messageCount = myParser.getMessageCount();
 
                 } catch (IOException ex) {
-                    // Terminate the message.
-                    try {
-                        hispipe.write("\r\n\r\n".getBytes("UTF-8"));
-                    } catch (Exception e) {
-                        // InternalErrorHandler.handleException(e);
-                    }
-
                     try {
                         if (sipStack.isLoggingEnabled())
                             sipStack.logWriter.logDebug("IOException  closing sock " + ex);
@@ -611,7 +620,6 @@ public final class TLSMessageChannel extends MessageChannel implements SIPMessag
                                 }
                             }
                             mySock.close();
-                            hispipe.close();
                         } catch (IOException ioex) {
                         }
                     } catch (Exception ex1) {
@@ -0,0 +1,203 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.com.clearcaptions.javax.sip.stack;
+
+import gov.nist.com.clearcaptions.core.LogWriter;
+import gov.nist.com.clearcaptions.javax.sip.message.SIPMessage;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A trace of the stack's transaction table lookups, for following calls at
+ * full load. Each record is one line logged at INFO level, of the form
+ * <pre>
+ * lookup table=server callId=... key=... hit=true size=1234
+ * </pre>
+ * A lookup is recorded if its message has one of the traced Call-IDs, or
+ * if it is one of every sampleInterval lookups. At most
+ * maxRecordsPerSecond records are written in a second; the rest are counted
+ * as dropped. When nothing is traced a lookup costs two volatile reads.
+ * <p>
+ * Configured with the LOOKUP_TRACE_* stack properties, and at run time
+ * through SIPTransactionStack.getLookupTrace().
+ */
+public class TransactionLookupTrace {
+
+	public static final int DEFAULT_MAX_RECORDS_PER_SECOND = 100;
+
+	private final SIPTransactionStack sipStack;
+
+	// Sample one lookup in this many; 0 to sample none.
+	private volatile int sampleInterval;
+
+	// Copied on change.
+	private volatile Set<String> callIds = Collections.emptySet();
+
+	private volatile int maxRecordsPerSecond = DEFAULT_MAX_RECORDS_PER_SECOND;
+
+	private final AtomicLong lookups = new AtomicLong();
+
+	private volatile long currentSecond;
+
+	private final AtomicInteger recordsThisSecond = new AtomicInteger();
+
+	private final AtomicLong droppedRecords = new AtomicLong();
+
+	TransactionLookupTrace(SIPTransactionStack sipStack) {
+		this.sipStack = sipStack;
+	}
+
+	/**
+	 * @return true if some lookups may be recorded.
+	 */
+	public boolean isEnabled() {
+		return sampleInterval > 0 || !callIds.isEmpty();
+	}
+
+	/**
+	 * Record one lookup in every sampleInterval; 0 turns sampling off.
+	 */
+	public void setSampleInterval(int sampleInterval) {
+		if (sampleInterval < 0)
+			throw new IllegalArgumentException("Negative sample interval");
+		this.sampleInterval = sampleInterval;
+	}
+
+	public int getSampleInterval() {
+		return sampleInterval;
+	}
+
+	/**
+	 * Record every lookup of messages with the given Call-ID.
+	 */
+	public synchronized void traceCallId(String callId) {
+		Set<String> newCallIds = new HashSet<String>(callIds);
+		newCallIds.add(callId);
+		callIds = newCallIds;
+	}
+
+	public synchronized void untraceCallId(String callId) {
+		Set<String> newCallIds = new HashSet<String>(callIds);
+		newCallIds.remove(callId);
+		callIds = newCallIds.isEmpty() ? Collections.<String> emptySet()
+				: newCallIds;
+	}
+
+	public Set<String> getTracedCallIds() {
+		return Collections.unmodifiableSet(callIds);
+	}
+
+	public void setMaxRecordsPerSecond(int maxRecordsPerSecond) {
+		if (maxRecordsPerSecond < 0)
+			throw new IllegalArgumentException("Negative record limit");
+		this.maxRecordsPerSecond = maxRecordsPerSecond;
+	}
+
+	public int getMaxRecordsPerSecond() {
+		return maxRecordsPerSecond;
+	}
+
+	/**
+	 * @return the number of records not written because of the per second
+	 *         limit.
+	 */
+	public long getDroppedRecords() {
+		return droppedRecords.get();
+	}
+
+	/**
+	 * Record a lookup if it is traced.
+	 *
+	 * @param table
+	 *            the table looked in, such as "server" or "client".
+	 * @param message
+	 *            the message whose transaction was looked for.
+	 * @param key
+	 *            the key looked up.
+	 * @param result
+	 *            the transaction found, or null.
+	 * @param tableSize
+	 *            the number of entries in the table.
+	 */
+	void lookup(String table, SIPMessage message, String key,
+			SIPTransaction result, int tableSize) {
+		int interval = sampleInterval;
+		Set<String> traced = callIds;
+		if (interval <= 0 && traced.isEmpty())
+			return;
+		String callId = message.getCallId() == null ? null : message
+				.getCallId().getCallId();
+		if (!(callId != null && traced.contains(callId))
+				&& !(interval > 0 && lookups.incrementAndGet() % interval == 0))
+			return;
+		if (!takeRecord())
+			return;
+		record(new StringBuffer("lookup table=").append(table)
+				.append(" callId=").append(callId).append(" key=").append(key)
+				.append(" hit=").append(result != null).append(" size=")
+				.append(tableSize).toString());
+	}
+
+	/**
+	 * Write one record to the stack's log.
+	 */
+	void record(String line) {
+		LogWriter logWriter = sipStack.getLogWriter();
+		if (logWriter != null)
+			logWriter.logInfo(line);
+	}
+
+	/**
+	 * @return the clock the per second limit is kept by, in nanoseconds.
+	 */
+	long nanoTime() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * @return false if this second's records are used up.
+	 */
+	private boolean takeRecord() {
+		long second = nanoTime() / 1000000000L;
+		if (second != currentSecond) {
+			synchronized (recordsThisSecond) {
+				if (second != currentSecond) {
+					recordsThisSecond.set(0);
+					currentSecond = second;
+				}
+			}
+		}
+		if (recordsThisSecond.incrementAndGet() > maxRecordsPerSecond) {
+			droppedRecords.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+}
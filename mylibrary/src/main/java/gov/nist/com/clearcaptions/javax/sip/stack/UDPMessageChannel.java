@@ -41,6 +41,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.String;
 import java.text.ParseException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import com.clearcaptions.javax.sip.address.Hop;
 
@@ -113,6 +115,13 @@ public class UDPMessageChannel extends MessageChannel implements
 
 	private DatagramPacket incomingPacket;
 
+	/**
+	 * Packets the message processor has given this pool thread. Only the
+	 * receive thread adds to it and only this thread takes from it.
+	 */
+	final LinkedBlockingQueue<DatagramPacket> packetQueue =
+		new LinkedBlockingQueue<DatagramPacket>();
+
 	private long receptionTime;
 
 	/**
@@ -210,38 +219,35 @@ public class UDPMessageChannel extends MessageChannel implements
 			DatagramPacket packet;
 
 			if (sipStack.threadPoolSize != -1) {
-				synchronized (((UDPMessageProcessor) messageProcessor).messageQueue) {
-					while (((UDPMessageProcessor) messageProcessor).messageQueue
-							.isEmpty()) {
-						// Check to see if we need to exit.
-						if (!((UDPMessageProcessor) messageProcessor).isRunning)
-							return;
-						try {
-							// We're part of a thread pool. Ask the auditor to
-							// monitor this thread.
-							if (threadHandle == null) {
-								threadHandle = sipStack.getThreadAuditor()
-										.addCurrentThread();
-							}
-
-							// Send a heartbeat to the thread auditor
-							threadHandle.ping();
-
-							// Wait for packets
-							// Note: getPingInterval returns 0 (infinite) if the
-							// thread auditor is disabled.
-							((UDPMessageProcessor) messageProcessor).messageQueue
-									.wait(threadHandle
-											.getPingIntervalInMillisecs());
-						} catch (InterruptedException ex) {
-							if (!((UDPMessageProcessor) messageProcessor).isRunning)
-								return;
-						}
+				UDPMessageProcessor processor = (UDPMessageProcessor) messageProcessor;
+				packet = null;
+				while (packet == null) {
+					// We're part of a thread pool. Ask the auditor to
+					// monitor this thread.
+					if (threadHandle == null) {
+						threadHandle = sipStack.getThreadAuditor()
+								.addCurrentThread();
 					}
-					packet = (DatagramPacket) ((UDPMessageProcessor) messageProcessor).messageQueue
-							.removeFirst();
 
+					// Send a heartbeat to the thread auditor
+					threadHandle.ping();
+
+					// Wait for packets
+					// Note: getPingInterval returns 0 (infinite) if the
+					// thread auditor is disabled.
+					try {
+						long wait = threadHandle.getPingIntervalInMillisecs();
+						packet = wait > 0 ? packetQueue.poll(wait,
+								TimeUnit.MILLISECONDS) : packetQueue.take();
+					} catch (InterruptedException ex) {
+					}
+					if (packet == UDPMessageProcessor.WAKEUP)
+						packet = null;
+					// Check to see if we need to exit.
+					if (packet == null && !processor.isRunning)
+						return;
 				}
+				processor.messageQueueSize.decrementAndGet();
 				this.incomingPacket = packet;
 			} else {
 				packet = this.incomingPacket;
@@ -274,8 +280,14 @@ public class UDPMessageChannel extends MessageChannel implements
 		int packetLength = packet.getLength();
 		// Read bytes and put it in a eueue.
 		byte[] bytes = packet.getData();
-		byte[] msgBytes = new byte[packetLength];
-		System.arraycopy(bytes, 0, msgBytes, 0, packetLength);
+		byte[] msgBytes;
+		if (packet.getOffset() == 0 && bytes.length == packetLength) {
+			// The message processor queues packets of their actual length.
+			msgBytes = bytes;
+		} else {
+			msgBytes = new byte[packetLength];
+			System.arraycopy(bytes, packet.getOffset(), msgBytes, 0, packetLength);
+		}
 
 		// Do debug logging.
 		if (sipStack.isLoggingEnabled()) {
@@ -597,7 +609,7 @@ public class UDPMessageChannel extends MessageChannel implements
 				}
 			}
 
-			byte[] msg = sipMessage.encodeAsBytes( this.getTransport() );
+			byte[] msg = sipMessage.encodeAsBytesCached(this.getTransport());
 
 			sendMessage(msg, peerAddress, peerPort, peerProtocol,
 					sipMessage instanceof SIPRequest);
@@ -30,6 +30,7 @@ package gov.nist.com.clearcaptions.javax.sip.stack;
 
 import java.io.IOException;
 import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.net.*;
 
 import gov.nist.com.clearcaptions.core.*;
@@ -38,6 +39,12 @@ import gov.nist.com.clearcaptions.core.*;
  * Sit in a loop and handle incoming udp datagram messages. For each Datagram
  * packet, a new UDPMessageChannel is created (upto the max thread pool size).
  * Each UDP message is processed in its own thread).
+ * <p>
+ * With a thread pool, every pool thread has a queue of its own and a packet
+ * goes to the thread picked by a hash of its Call-ID, so the packets of one
+ * call are parsed and processed in the order they arrived while different
+ * calls proceed in parallel. Packets are received into one buffer and
+ * queued as copies of their actual length.
  * 
  * @version 1.2 $Revision: 1.31 $ $Date: 2008/11/24 23:59:04 $
  * 
@@ -67,14 +74,24 @@ public class UDPMessageProcessor extends MessageProcessor {
 	private int port;
 
 	/**
-	 * Incoming messages are queued here.
+	 * Number of incoming messages queued to the pool threads.
 	 */
-	protected LinkedList messageQueue;
+	protected final AtomicInteger messageQueueSize = new AtomicInteger();
 
 	/**
 	 * A list of message channels that we have started.
 	 */
-	protected LinkedList messageChannels;
+	protected LinkedList<UDPMessageChannel> messageChannels;
+
+	/**
+	 * The pool threads' channels, indexed by Call-ID hash.
+	 */
+	private UDPMessageChannel[] workers;
+
+	/**
+	 * Queued to a pool thread to make it check isRunning.
+	 */
+	static final DatagramPacket WAKEUP = new DatagramPacket(new byte[0], 0);
 
 	/**
 	 * Max # of udp message channels
@@ -98,7 +115,7 @@ public class UDPMessageProcessor extends MessageProcessor {
 	 * A flag that is set to false to exit the message processor (suggestion by
 	 * Jeff Keyser).
 	 */
-	protected boolean isRunning;
+	protected volatile boolean isRunning;
 
 	/**
 	 * Constructor.
@@ -112,8 +129,6 @@ public class UDPMessageProcessor extends MessageProcessor {
 
 		this.sipStack = sipStack;
 
-		this.messageQueue = new LinkedList();
-
 		this.port = port;
 		try {
 			this.sock = sipStack.getNetworkLayer().createDatagramSocket(port,
@@ -174,21 +189,29 @@ public class UDPMessageProcessor extends MessageProcessor {
 	 */
 	public void run() {
 		// Check for running flag.
-		this.messageChannels = new LinkedList();
+		this.messageChannels = new LinkedList<UDPMessageChannel>();
 		// start all our messageChannels (unless the thread pool size is
 		// infinity.
 		if (sipStack.threadPoolSize != -1) {
-			for (int i = 0; i < sipStack.threadPoolSize; i++) {
+			UDPMessageChannel[] channels = new UDPMessageChannel[Math.max(
+					sipStack.threadPoolSize, 1)];
+			for (int i = 0; i < channels.length; i++) {
 				UDPMessageChannel channel = new UDPMessageChannel(sipStack,
 						this);
 				this.messageChannels.add(channel);
-
+				channels[i] = channel;
 			}
+			this.workers = channels;
 		}
 
 		// Ask the auditor to monitor this thread
 		ThreadAuditor.ThreadHandle threadHandle = sipStack.getThreadAuditor().addCurrentThread();
 
+		// Every datagram is received into this buffer and copied out at its
+		// actual length, so a queued packet does not hold a whole buffer.
+		byte[] buffer = null;
+		DatagramPacket received = null;
+
 		// Somebody asked us to exit. if isRunnning is set to false.
 		while (this.isRunning) {
 			
@@ -196,10 +219,12 @@ public class UDPMessageProcessor extends MessageProcessor {
 				// Let the thread auditor know we're up and running
 				threadHandle.ping();
 
-				int bufsize = sock.getReceiveBufferSize();
-				byte message[] = new byte[bufsize];
-				DatagramPacket packet = new DatagramPacket(message, bufsize);
-				sock.receive(packet);
+				if (buffer == null) {
+					buffer = new byte[sock.getReceiveBufferSize()];
+					received = new DatagramPacket(buffer, buffer.length);
+				}
+				received.setData(buffer);
+				sock.receive(received);
 
 			 // This is a simplistic congestion control algorithm.
 			 // It accepts packets if queuesize is < LOWAT. It drops
@@ -209,16 +234,17 @@ public class UDPMessageProcessor extends MessageProcessor {
 			 // of queue sizes between HIGHWAT and LOWAT.
 			 // TODO -- penalize spammers by looking at the source
 			 // port and IP address.
-			 if ( this.messageQueue.size() >= HIGHWAT) {
+			 int queueSize = this.messageQueueSize.get();
+			 if ( queueSize >= HIGHWAT) {
 					if (sipStack.logWriter.isLoggingEnabled()) {
 						sipStack.logWriter.logDebug("Dropping message -- queue length exceeded");
 						
 					}
 					//System.out.println("HIGHWAT Drop!");
 					continue;
-				} else if ( this.messageQueue.size() > LOWAT && this .messageQueue.size() < HIGHWAT ) {
+				} else if ( queueSize > LOWAT && queueSize < HIGHWAT ) {
 					// Drop the message with a probabilty that is linear in the range 0 to 1 
-					float threshold = ((float)(messageQueue.size() - LOWAT))/ ((float)(HIGHWAT - LOWAT));
+					float threshold = ((float)(queueSize - LOWAT))/ ((float)(HIGHWAT - LOWAT));
 					boolean decision = Math.random() > 1.0 - threshold;
 					if ( decision ) {
 						if (sipStack.logWriter.isLoggingEnabled()) {
@@ -230,20 +256,19 @@ public class UDPMessageProcessor extends MessageProcessor {
 					}
 					
 				} 
+				int length = received.getLength();
+				byte[] message = new byte[length];
+				System.arraycopy(buffer, received.getOffset(), message, 0, length);
+				DatagramPacket packet = new DatagramPacket(message, length,
+						received.getAddress(), received.getPort());
+
 				// Count of # of packets in process.
 				// this.useCount++;
 				if (sipStack.threadPoolSize != -1) {
-					// Note: the only condition watched for by threads
-					// synchronizing on the messageQueue member is that it is
-					// not empty. As soon as you introduce some other
-					// condition you will have to call notifyAll instead of
-					// notify below.
-
-					synchronized (this.messageQueue) {
-					    // was addLast
-						this.messageQueue.add(packet);
-						this.messageQueue.notify();
-					}
+					UDPMessageChannel worker = workers[(callIdHash(message,
+							length) & Integer.MAX_VALUE) % workers.length];
+					this.messageQueueSize.incrementAndGet();
+					worker.packetQueue.add(packet);
 				} else {
 					new UDPMessageChannel(sipStack, this, packet);
 				}
@@ -254,11 +279,7 @@ public class UDPMessageProcessor extends MessageProcessor {
 					getSIPStack().logWriter
 							.logDebug("UDPMessageProcessor: Stopping");
 				isRunning = false;
-				// The notifyAll should be in a synchronized block.
-				// ( bug report by Niklas Uhrberg ).
-				synchronized (this.messageQueue) {
-					this.messageQueue.notifyAll();
-				}
+				wakeWorkers();
 			} catch (IOException ex) {
 				isRunning = false;
 				ex.printStackTrace();
@@ -280,13 +301,74 @@ public class UDPMessageProcessor extends MessageProcessor {
 	 * messages.
 	 */
 	public void stop() {
-		synchronized (this.messageQueue) {
-			this.isRunning = false;
-			this.messageQueue.notifyAll();
-			sock.close();
-			
+		this.isRunning = false;
+		wakeWorkers();
+		sock.close();
+	}
+
+	/**
+	 * Have the pool threads see that isRunning is false once they have
+	 * processed what is queued to them.
+	 */
+	private void wakeWorkers() {
+		UDPMessageChannel[] channels = this.workers;
+		if (channels == null)
+			return;
+		for (int i = 0; i < channels.length; i++)
+			channels[i].packetQueue.add(WAKEUP);
+	}
+
+	/**
+	 * Hash of the Call-ID value of a raw message, found without parsing it:
+	 * the first line whose name is Call-ID or i, in any case, up to the end
+	 * of the headers. Messages without one hash to 0.
+	 */
+	static int callIdHash(byte[] message, int length) {
+		int i = 0;
+		while (i < length) {
+			// i is at the start of a line.
+			int nameStart = i;
+			while (i < length && message[i] != ':' && message[i] != '\n')
+				i++;
+			if (i == length)
+				break;
+			if (message[i] == '\n') {
+				// Empty line: end of the headers.
+				if (i == nameStart || (i == nameStart + 1 && message[nameStart] == '\r'))
+					break;
+				i++;
+				continue;
+			}
+			int nameEnd = i;
+			while (nameEnd > nameStart
+					&& (message[nameEnd - 1] == ' ' || message[nameEnd - 1] == '\t'))
+				nameEnd--;
+			if (isCallId(message, nameStart, nameEnd)) {
+				int hash = 0;
+				for (i++; i < length && message[i] != '\r' && message[i] != '\n'; i++) {
+					if (message[i] != ' ' && message[i] != '\t')
+						hash = 31 * hash + message[i];
+				}
+				return hash;
+			}
+			while (i < length && message[i] != '\n')
+				i++;
+			i++;
+		}
+		return 0;
+	}
 
+	private static boolean isCallId(byte[] message, int start, int end) {
+		if (end - start == 1)
+			return (message[start] | 0x20) == 'i';
+		if (end - start != 7)
+			return false;
+		String callId = "call-id";
+		for (int j = 0; j < 7; j++) {
+			if ((message[start + j] | 0x20) != callId.charAt(j))
+				return false;
 		}
+		return true;
 	}
 
 	/**
@@ -346,9 +428,7 @@ public class UDPMessageProcessor extends MessageProcessor {
 	 * Return true if there are any messages in use.
 	 */
 	public boolean inUse() {
-		synchronized (messageQueue) {
-			return messageQueue.size() != 0;
-		}
+		return messageQueueSize.get() != 0;
 	}
 
 }
@@ -0,0 +1,302 @@
+package com.clearcaptions.transport.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.clearcaptions.transport.CaptionSessionState;
+import com.clearcaptions.transport.protocol.ProtocolInterface;
+import com.clearcaptions.transport.protocol.ProtocolWizard;
+
+/**
+ * Caption sessions against a local mock WebSocket server: shared clients,
+ * threads reused across 100 sequential sessions, 100 parallel sessions
+ * connecting, and a missed pong reported as WAN loss.
+ */
+public class CaptionClientTest
+{
+	static final int SESSIONS = 100;
+
+	MockWebServer server;
+	String uri;
+	final List<CaptionClient> open = new ArrayList<CaptionClient>();
+	private final List<Socket> sockets = Collections.synchronizedList(new ArrayList<Socket>());
+
+	@Before
+	public void setUp() throws Exception
+	{
+		server = new MockWebServer();
+		server.setDispatcher(new Dispatcher() {
+			public MockResponse dispatch(RecordedRequest request) {
+				return new MockResponse().withWebSocketUpgrade(new WebSocketListener() {
+					public void onClosing(WebSocket webSocket, int code, String reason) {
+						webSocket.close(code, null);
+					}
+				});
+			}
+		});
+		server.start();
+		uri = server.url("/captions").toString();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		for (CaptionClient client : open)
+			client.close();
+		server.shutdown();
+		synchronized (sockets) {
+			for (Socket socket : sockets)
+				socket.close();
+		}
+	}
+
+	/**
+	 * Session whose netConnect() only records that the socket opened, and
+	 * that records the errors and states it is given.
+	 */
+	static class Session extends ProtocolWizard
+	{
+		final CountDownLatch opened;
+		final long started = System.nanoTime();
+		volatile long connectNanos;
+		final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch lost = new CountDownLatch(1);
+		final List<String> errors;
+
+		Session(CountDownLatch opened)
+		{
+			this(opened, Collections.synchronizedList(new ArrayList<String>()));
+		}
+
+		private Session(CountDownLatch opened, final List<String> errors)
+		{
+			super(new ProtocolInterface() {
+				public void processState(CaptionSessionState state, String msg) {}
+				public void processError(String errorCode, String errorMsg) {
+					errors.add(errorCode);
+				}
+			});
+			this.opened = opened;
+			this.errors = errors;
+		}
+
+		public void netConnect()
+		{
+			connectNanos = System.nanoTime() - started;
+			opened.countDown();
+		}
+
+		public void pingTimedOut()
+		{
+			events.add("pingTimedOut");
+			super.pingTimedOut();
+		}
+
+		public void handleState(CaptionSessionState state, String msg)
+		{
+			events.add(state.toString());
+			if (state == CaptionSessionState.STATE_CONNECTION_LOST)
+				lost.countDown();
+		}
+	}
+
+	@Test
+	public void pingClientsShareThePoolAndDispatcher()
+	{
+		OkHttpClient shared = CaptionClient.sharedClient();
+		OkHttpClient pinging = CaptionClient.client(5000);
+
+		assertEquals(5000, pinging.pingIntervalMillis());
+		assertSame(pinging, CaptionClient.client(5000));
+		assertSame(shared.dispatcher(), pinging.dispatcher());
+		assertSame(shared.connectionPool(), pinging.connectionPool());
+		assertSame(shared, CaptionClient.client(0));
+	}
+
+	@Test
+	public void replacingTheSharedClientReplacesItsPingClients()
+	{
+		OkHttpClient original = CaptionClient.sharedClient();
+		OkHttpClient pinging = CaptionClient.client(7000);
+		OkHttpClient replacement = new OkHttpClient();
+		try {
+			CaptionClient.sharedClient(replacement);
+			OkHttpClient derived = CaptionClient.client(7000);
+			assertNotSame(pinging, derived);
+			assertSame(replacement.dispatcher(), derived.dispatcher());
+			assertSame(replacement.connectionPool(), derived.connectionPool());
+		}
+		finally {
+			CaptionClient.sharedClient(original);
+		}
+	}
+
+	@Test
+	public void sequentialSessionsReuseThreads() throws Exception
+	{
+		// the first session starts the shared client's threads
+		connectAndClose();
+		int threadsBefore = Thread.activeCount();
+
+		for (int i = 0; i < SESSIONS; i++)
+			connectAndClose();
+		int grown = Thread.activeCount() - threadsBefore;
+
+		// one client per session used to leave one idle dispatcher per session
+		assertTrue("threads grew by " + grown, grown < SESSIONS / 4);
+	}
+
+	@Test
+	public void parallelSessionsAllConnect() throws Exception
+	{
+		connectParallel();
+	}
+
+	/**
+	 * Opens SESSIONS sessions at once and waits for all of them.
+	 *
+	 * @return the sessions
+	 */
+	List<Session> connectParallel() throws Exception
+	{
+		CountDownLatch opened = new CountDownLatch(SESSIONS);
+		List<Session> sessions = new ArrayList<Session>();
+		for (int i = 0; i < SESSIONS; i++) {
+			Session session = new Session(opened);
+			sessions.add(session);
+			open.add(new CaptionClient(uri, session));
+		}
+		assertTrue("sessions left unopened: " + opened.getCount(), opened.await(30, TimeUnit.SECONDS));
+		assertEquals(SESSIONS, server.getRequestCount());
+		return sessions;
+	}
+
+	@Test
+	public void missedPongIsReportedAsWANLoss() throws Exception
+	{
+		ServerSocket silent = silentServer();
+		try {
+			CountDownLatch opened = new CountDownLatch(1);
+			Session session = new Session(opened);
+			CaptionClient client = new CaptionClient("ws://127.0.0.1:" + silent.getLocalPort() + "/captions",
+					session, 200);
+			open.add(client);
+			assertEquals(200, client.pingIntervalMillis());
+			assertTrue("session did not open", opened.await(10, TimeUnit.SECONDS));
+
+			assertTrue("connection not lost", session.lost.await(10, TimeUnit.SECONDS));
+			assertEquals("pingTimedOut", session.events.get(0));
+			assertEquals(CaptionSessionState.STATE_CONNECTION_LOST.toString(), session.events.get(1));
+			assertEquals(ProtocolWizard.KEEP_ALIVE_TIMEOUT_CODE, session.errors.get(0));
+		}
+		finally {
+			silent.close();
+		}
+	}
+
+	@Test
+	public void closedConnectionIsNotAPingTimeout() throws Exception
+	{
+		ServerSocket silent = silentServer();
+		CountDownLatch opened = new CountDownLatch(1);
+		Session session = new Session(opened);
+		open.add(new CaptionClient("ws://127.0.0.1:" + silent.getLocalPort() + "/captions", session, 60000));
+		assertTrue("session did not open", opened.await(10, TimeUnit.SECONDS));
+
+		silent.close();
+		synchronized (sockets) {
+			for (Socket socket : sockets)
+				socket.close();
+		}
+		assertTrue("connection not lost", session.lost.await(10, TimeUnit.SECONDS));
+		assertEquals(Collections.singletonList(CaptionSessionState.STATE_CONNECTION_LOST.toString()),
+				new ArrayList<String>(session.events));
+		assertFalse(session.errors.contains(ProtocolWizard.KEEP_ALIVE_TIMEOUT_CODE));
+	}
+
+	/**
+	 * Server that accepts WebSocket upgrades and then never reads, so pings
+	 * go unanswered.
+	 */
+	private ServerSocket silentServer() throws Exception
+	{
+		final ServerSocket listener = new ServerSocket(0);
+		Thread acceptor = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (true) {
+						Socket socket = listener.accept();
+						sockets.add(socket);
+						upgrade(socket);
+					}
+				}
+				catch (Exception closed) {
+				}
+			}
+		}, "SilentWebSocketServer");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		return listener;
+	}
+
+	private static void upgrade(Socket socket) throws Exception
+	{
+		BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+		String key = null;
+		String line;
+		while ((line = in.readLine()) != null && line.length() > 0) {
+			if (line.toLowerCase().startsWith("sec-websocket-key:"))
+				key = line.substring(line.indexOf(':') + 1).trim();
+		}
+		MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+		byte[] digest = sha1.digest((key + "258EAFA5-E914-47DA-95CA-C5AB0DC85B11").getBytes("ISO-8859-1"));
+		String response = "HTTP/1.1 101 Switching Protocols\r\n"
+				+ "Upgrade: websocket\r\n"
+				+ "Connection: Upgrade\r\n"
+				+ "Sec-WebSocket-Accept: " + okio.ByteString.of(digest).base64() + "\r\n\r\n";
+		OutputStream out = socket.getOutputStream();
+		out.write(response.getBytes("ISO-8859-1"));
+		out.flush();
+	}
+
+	long connectAndClose() throws Exception
+	{
+		CountDownLatch opened = new CountDownLatch(1);
+		Session session = new Session(opened);
+		CaptionClient client = new CaptionClient(uri, session);
+		try {
+			assertTrue("session did not open", opened.await(10, TimeUnit.SECONDS));
+		}
+		finally {
+			client.close();
+		}
+		return session.connectNanos;
+	}
+}
@@ -0,0 +1,159 @@
+package com.clearcaptions.transport.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Framing of the NUL terminated packet stream across reads.
+ */
+public class PacketDecoderTest
+{
+	private final PacketDecoder decoder = new PacketDecoder(16, 64);
+
+	private static byte[] bytes(String s) throws Exception
+	{
+		return s.getBytes("UTF-8");
+	}
+
+	private void write(String s) throws Exception
+	{
+		byte[] b = bytes(s);
+		decoder.write(b, 0, b.length);
+	}
+
+	private List<String> drain()
+	{
+		List<String> packets = new ArrayList<String>();
+		String packet;
+		while ((packet = decoder.poll()) != null)
+			packets.add(packet);
+		return packets;
+	}
+
+	/**
+	 * Stream that returns at most chunk bytes per read.
+	 */
+	private static InputStream chunked(byte[] data, final int chunk)
+	{
+		return new ByteArrayInputStream(data) {
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, chunk));
+			}
+		};
+	}
+
+	@Test
+	public void packetSplitAcrossReads() throws Exception
+	{
+		write("myMethod=Keep");
+		assertEquals(0, decoder.available());
+		assertEquals(13, decoder.pending());
+
+		write("Alive||myID=1");
+		assertEquals(0, decoder.available());
+
+		write("\0");
+		assertEquals(Arrays.asList("myMethod=KeepAlive||myID=1"), drain());
+		assertEquals(0, decoder.pending());
+	}
+
+	@Test
+	public void severalPacketsInOneRead() throws Exception
+	{
+		write("a=1\0b=2\0c=3\0");
+		assertEquals(3, decoder.available());
+		assertEquals(Arrays.asList("a=1", "b=2", "c=3"), drain());
+		assertEquals(0, decoder.pending());
+	}
+
+	@Test
+	public void trailingPartialFrameWaitsForItsTerminator() throws Exception
+	{
+		write("a=1\0b=2\0c=");
+		assertEquals(Arrays.asList("a=1", "b=2"), drain());
+		assertEquals(2, decoder.pending());
+
+		write("3\0");
+		assertEquals(Arrays.asList("c=3"), drain());
+		assertEquals(0, decoder.pending());
+	}
+
+	@Test
+	public void multiByteCharacterSplitAcrossReads() throws Exception
+	{
+		byte[] b = bytes("text=café\0");
+		// split inside the two byte encoding of the last character
+		decoder.write(b, 0, 9);
+		decoder.write(b, 9, b.length - 9);
+		assertEquals(Arrays.asList("text=café"), drain());
+	}
+
+	@Test
+	public void fillReadsEveryChunkSize() throws Exception
+	{
+		String stream = "myMethod=KeepAlive||myID=1\0 pollData=0||receivedText=hi \0\0state=ONLINE\0tail";
+		for (int chunk = 1; chunk <= stream.length(); chunk++) {
+			decoder.clear();
+			InputStream is = chunked(bytes(stream), chunk);
+			while (decoder.fill(is) >= 0)
+				;
+			assertEquals("chunk " + chunk,
+					Arrays.asList("myMethod=KeepAlive||myID=1", "pollData=0||receivedText=hi", "state=ONLINE"), drain());
+			assertEquals("chunk " + chunk, 4, decoder.pending());
+		}
+	}
+
+	@Test
+	public void blankFramesAreDropped() throws Exception
+	{
+		write("\0 \0\r\n\0a=1\0");
+		assertEquals(Arrays.asList("a=1"), drain());
+	}
+
+	@Test
+	public void frameLargerThanTheBufferGrowsIt() throws Exception
+	{
+		StringBuilder text = new StringBuilder("receivedText=");
+		for (int i = 0; i < 1000; i++)
+			text.append((char) ('a' + i % 26));
+		write(text.toString());
+		write("\0");
+		assertEquals(Arrays.asList(text.toString()), drain());
+	}
+
+	@Test
+	public void oversizedFrameIsRejected() throws Exception
+	{
+		byte[] chunk = new byte[64 * 1024];
+		Arrays.fill(chunk, (byte) 'x');
+		try {
+			for (int i = 0; i <= PacketDecoder.MAX_FRAME_SIZE / chunk.length; i++)
+				decoder.write(chunk, 0, chunk.length);
+			fail("frame of more than " + PacketDecoder.MAX_FRAME_SIZE + " bytes accepted");
+		}
+		catch (IOException expected) {
+		}
+	}
+
+	@Test
+	public void takeReturnsTheArrivalTime() throws Exception
+	{
+		long before = System.nanoTime();
+		write("a=1\0");
+		InboundPacket packet = decoder.take();
+		assertEquals("a=1", packet.data);
+		assertTrue(packet.arrivalNanos >= before && packet.arrivalNanos <= System.nanoTime());
+		assertNull(decoder.poll());
+	}
+}
@@ -0,0 +1,64 @@
+package com.clearcaptions.transport.protocol;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.clearcaptions.transport.CaptionSessionState;
+
+/**
+ * Batched captions keep their order against every other callback.
+ */
+public class CaptionBatcherTest
+{
+	private final List<String> delivered = new ArrayList<String>();
+	private ProtocolWizard wizard;
+
+	@Before
+	public void setUp()
+	{
+		wizard = new ProtocolWizard(new ProtocolInterface() {
+			public void processState(CaptionSessionState state, String msg) {
+				delivered.add(state == CaptionSessionState.STATE_DATA ? "DATA " + msg : state.name());
+			}
+
+			public void processError(String errorCode, String errorMsg) {
+				delivered.add("ERROR " + errorCode);
+			}
+		});
+		// long enough that only a flush can deliver inside the test
+		wizard.captionBatchWindow(60000);
+	}
+
+	@Test
+	public void pendingCaptionsPrecedeErrorInPacketWithText() throws Exception
+	{
+		wizard.processData("pollData=0||state=ONLINE||receivedText=a");
+		wizard.processData("pollData=0||state=ONLINE||receivedText=b");
+		assertEquals(Arrays.asList("STATE_ONLINE"), delivered);
+
+		wizard.processData("errCode=E1||errMsg=oops||pollData=0||state=ONLINE||receivedText=c");
+		assertEquals(Arrays.asList("STATE_ONLINE", "DATA ab", "ERROR E1", "DATA c", "STATE_ERROR"), delivered);
+	}
+
+	@Test
+	public void pendingCaptionsPrecedeStateChange() throws Exception
+	{
+		wizard.processData("pollData=0||state=ONLINE||receivedText=a");
+		wizard.processData("myMethod=statusUpdate||type=inProgress");
+		assertEquals(Arrays.asList("STATE_ONLINE", "DATA a", "STATE_INPROGRESS"), delivered);
+	}
+
+	@Test
+	public void pendingCaptionsPrecedeDisconnect() throws Exception
+	{
+		wizard.processData("pollData=0||state=ONLINE||receivedText=a");
+		wizard.processData("pollData=0||state=DISCONNECTED||receivedText=b");
+		assertEquals(Arrays.asList("STATE_ONLINE", "DATA a", "STATE_OFFLINE"), delivered);
+	}
+}
@@ -0,0 +1,191 @@
+package com.clearcaptions.transport.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.clearcaptions.transport.CaptionSessionState;
+
+/**
+ * Hosts 1,000 sessions in one manager, and 200 open calls against a local
+ * WebSocket server.
+ */
+public class CaptionSessionManagerTest
+{
+	private static final int SESSIONS = 1000;
+	private static final int CALLS = 200;
+
+	private CaptionSessionManager manager;
+
+	@Before
+	public void setUp()
+	{
+		manager = new CaptionSessionManager();
+	}
+
+	@After
+	public void tearDown()
+	{
+		manager.executor().shutdownNow();
+	}
+
+	@Test
+	public void indexesEverySessionByItsCurrentID()
+	{
+		List<ProtocolWizard> hosted = new ArrayList<ProtocolWizard>();
+		for (int i = 0; i < SESSIONS; i++) {
+			ProtocolWizard session = manager.host(new ProtocolWizard());
+			session.session("S" + i);
+			hosted.add(session);
+		}
+		assertEquals(SESSIONS, manager.size());
+
+		// the server hands out a new ID on re-registration
+		for (int i = 0; i < SESSIONS; i++)
+			hosted.get(i).session("R" + i);
+
+		for (int i = 0; i < SESSIONS; i++) {
+			assertNull(manager.lookup("S" + i));
+			assertSame(hosted.get(i), manager.lookup("R" + i));
+			assertSame(manager.executor(), hosted.get(i).executor());
+		}
+
+		for (int i = 0; i < SESSIONS; i += 2)
+			manager.release(hosted.get(i));
+		assertEquals(SESSIONS / 2, manager.size());
+		assertNull(manager.lookup("R0"));
+		assertSame(hosted.get(1), manager.lookup("R1"));
+	}
+
+	/**
+	 * Session that opens its WebSocket on the local server.
+	 */
+	static class Session extends ProtocolWizard
+	{
+		private final String uri;
+
+		Session(String uri)
+		{
+			super(new ProtocolInterface() {
+				public void processState(CaptionSessionState state, String msg) {}
+				public void processError(String errorCode, String errorMsg) {}
+			});
+			this.uri = uri;
+		}
+
+		String webSocketURI()
+		{
+			return uri;
+		}
+	}
+
+	/**
+	 * Threads started outside the local server, by name.
+	 */
+	private static Set<Thread> clientThreads()
+	{
+		Set<Thread> threads = new HashSet<Thread>();
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.isAlive() && !thread.getName().startsWith("MockWebServer"))
+				threads.add(thread);
+		}
+		return threads;
+	}
+
+	/**
+	 * Registers CALLS hosted sessions with a local WebSocket server and
+	 * keeps them all open.  Each open call holds the one thread OkHttp
+	 * reads its WebSocket on; the pool and the rest of the client stay
+	 * the same size however many calls there are.
+	 */
+	@Test
+	public void openCallsHoldOneThreadEach() throws Exception
+	{
+		final CountDownLatch registered = new CountDownLatch(CALLS + 1);
+		final CountDownLatch closed = new CountDownLatch(CALLS + 1);
+		final List<WebSocket> serverSockets = Collections.synchronizedList(new ArrayList<WebSocket>());
+		MockWebServer server = new MockWebServer();
+		server.setDispatcher(new Dispatcher() {
+			public MockResponse dispatch(RecordedRequest request) {
+				return new MockResponse().withWebSocketUpgrade(new WebSocketListener() {
+					public void onOpen(WebSocket webSocket, Response response) {
+						serverSockets.add(webSocket);
+					}
+
+					public void onMessage(WebSocket webSocket, String text) {
+						registered.countDown();
+					}
+
+					public void onClosed(WebSocket webSocket, int code, String reason) {
+						closed.countDown();
+					}
+				});
+			}
+		});
+		server.start();
+		try {
+			String uri = server.url("/captions").toString();
+
+			// the first call starts the shared client's threads
+			Session first = manager.host(new Session(uri));
+			first.startCall();
+			assertTrue(awaitCount(registered, CALLS));
+			Set<Thread> before = clientThreads();
+
+			for (int i = 0; i < CALLS; i++)
+				manager.host(new Session(uri)).startCall();
+			assertTrue("calls left unregistered: " + registered.getCount(),
+					registered.await(30, TimeUnit.SECONDS));
+
+			Set<Thread> started = clientThreads();
+			started.removeAll(before);
+			int pooled = 0;
+			for (Thread thread : started) {
+				if (thread.getName().startsWith("CaptionSession-"))
+					pooled++;
+			}
+			assertTrue(started.size() + " threads for " + CALLS + " calls",
+					started.size() <= CALLS + 16);
+			assertTrue(pooled + " pool threads", pooled <= 16);
+		}
+		finally {
+			manager.shutdown();
+			// the server hangs up, as it does at the end of a call
+			synchronized (serverSockets) {
+				for (WebSocket webSocket : serverSockets)
+					webSocket.close(1000, null);
+			}
+			closed.await(10, TimeUnit.SECONDS);
+			server.shutdown();
+		}
+	}
+
+	private static boolean awaitCount(CountDownLatch latch, long count) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 10000;
+		while (latch.getCount() > count && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		return latch.getCount() <= count;
+	}
+}
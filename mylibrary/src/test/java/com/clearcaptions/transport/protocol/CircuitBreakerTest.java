@@ -0,0 +1,120 @@
+package com.clearcaptions.transport.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Closed, open and half-open, on a clock the test moves.
+ */
+public class CircuitBreakerTest
+{
+	private static final int THRESHOLD = 3;
+	private static final long OPEN_MILLIS = 10000;
+
+	private static class ManualBreaker extends CircuitBreaker
+	{
+		long now = 1000000;
+
+		ManualBreaker()
+		{
+			super(THRESHOLD, OPEN_MILLIS);
+		}
+
+		long now()
+		{
+			return now;
+		}
+	}
+
+	private final ManualBreaker breaker = new ManualBreaker();
+
+	private void fail(int times)
+	{
+		for (int i = 0; i < times; i++)
+			breaker.recordFailure();
+	}
+
+	@Test
+	public void opensAfterThresholdFailures()
+	{
+		fail(THRESHOLD - 1);
+		assertFalse(breaker.isOpen());
+		assertTrue(breaker.allowRequest());
+		assertEquals(0, breaker.retryAfterMillis());
+
+		fail(1);
+		assertTrue(breaker.isOpen());
+		assertFalse(breaker.allowRequest());
+		assertEquals(OPEN_MILLIS, breaker.retryAfterMillis());
+
+		breaker.now += OPEN_MILLIS - 1;
+		assertFalse(breaker.allowRequest());
+		assertEquals(1, breaker.retryAfterMillis());
+	}
+
+	@Test
+	public void halfOpenLetsOneProbeThroughPerInterval()
+	{
+		fail(THRESHOLD);
+		breaker.now += OPEN_MILLIS;
+		assertEquals(0, breaker.retryAfterMillis());
+
+		assertTrue(breaker.allowRequest());
+		// the probe is out; everyone else waits for it
+		assertFalse(breaker.allowRequest());
+		assertTrue(breaker.isOpen());
+		assertEquals(OPEN_MILLIS, breaker.retryAfterMillis());
+
+		// a probe that never reports back is replaced after openMillis
+		breaker.now += OPEN_MILLIS;
+		assertTrue(breaker.allowRequest());
+		assertFalse(breaker.allowRequest());
+	}
+
+	@Test
+	public void successfulProbeCloses()
+	{
+		fail(THRESHOLD);
+		breaker.now += OPEN_MILLIS;
+		assertTrue(breaker.allowRequest());
+
+		breaker.recordSuccess();
+		assertFalse(breaker.isOpen());
+		assertTrue(breaker.allowRequest());
+		assertTrue(breaker.allowRequest());
+		assertEquals(0, breaker.retryAfterMillis());
+	}
+
+	@Test
+	public void failedProbeOpensAgain()
+	{
+		fail(THRESHOLD);
+		breaker.now += OPEN_MILLIS;
+		assertTrue(breaker.allowRequest());
+
+		breaker.now += 500;
+		fail(1);
+		assertTrue(breaker.isOpen());
+		assertFalse(breaker.allowRequest());
+		// the open interval restarts from the failed probe
+		assertEquals(OPEN_MILLIS, breaker.retryAfterMillis());
+		breaker.now += OPEN_MILLIS;
+		assertTrue(breaker.allowRequest());
+	}
+
+	@Test
+	public void successfulConnectResetsTheFailureCount()
+	{
+		fail(THRESHOLD - 1);
+		breaker.recordSuccess();
+
+		fail(THRESHOLD - 1);
+		assertFalse(breaker.isOpen());
+		assertTrue(breaker.allowRequest());
+		fail(1);
+		assertTrue(breaker.isOpen());
+	}
+}
@@ -0,0 +1,159 @@
+package com.clearcaptions.transport.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class HashedWheelTimerTest
+{
+	private final List<HashedWheelTimer> timers = Collections.synchronizedList(new ArrayList<HashedWheelTimer>());
+
+	private HashedWheelTimer timer(long tickMillis, int wheelSize)
+	{
+		HashedWheelTimer timer = new HashedWheelTimer(tickMillis, wheelSize);
+		timers.add(timer);
+		return timer;
+	}
+
+	@After
+	public void tearDown()
+	{
+		synchronized (timers) {
+			for (HashedWheelTimer timer : timers)
+				timer.stop();
+		}
+	}
+
+	private static final Runnable NOTHING = new Runnable() {
+		public void run() {
+		}
+	};
+	@Test
+	public void firesOncePerArm() throws Exception
+	{
+		HashedWheelTimer timer = timer(5, 16);
+		final Semaphore fired = new Semaphore(0);
+		HashedWheelTimer.Timeout timeout = timer.newTimeout(new Runnable() {
+			public void run() {
+				fired.release();
+			}
+		});
+
+		timeout.arm(20);
+		assertTrue(fired.tryAcquire(2, TimeUnit.SECONDS));
+		assertFalse(timeout.isArmed());
+		assertFalse(fired.tryAcquire(100, TimeUnit.MILLISECONDS));
+		assertEquals(0, timer.size());
+	}
+
+	@Test
+	public void cancelledTimeoutDoesNotFire() throws Exception
+	{
+		HashedWheelTimer timer = timer(5, 16);
+		final Semaphore fired = new Semaphore(0);
+		HashedWheelTimer.Timeout timeout = timer.newTimeout(new Runnable() {
+			public void run() {
+				fired.release();
+			}
+		});
+
+		timeout.arm(20);
+		timeout.cancel();
+		assertFalse(fired.tryAcquire(200, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * Pushes timeouts that are about to expire far out, over and over,
+	 * while their wheels expire them.  The long deadline must never be
+	 * lost: each timeout must end up armed and linked.
+	 */
+	@Test
+	public void armRacingWithExpiryIsNotLost() throws Exception
+	{
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+		Thread[] racers = new Thread[8];
+
+		for (int i = 0; i < racers.length; i++) {
+			racers[i] = new Thread(new Runnable() {
+				public void run() {
+					HashedWheelTimer timer = timer(1, 8);
+					HashedWheelTimer.Timeout timeout = timer.newTimeout(NOTHING);
+					try {
+						for (int round = 0; round < 200; round++) {
+							timeout.arm(1);
+							long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(2);
+							while (System.nanoTime() < until)
+								timeout.arm(60000);
+							assertTrue("round " + round, timeout.isArmed());
+							assertEquals("round " + round, 1, timer.size());
+
+							timeout.cancel();
+							long deadline = System.currentTimeMillis() + 2000;
+							while (timer.size() != 0 && System.currentTimeMillis() < deadline)
+								Thread.sleep(1);
+						}
+					}
+					catch (Throwable t) {
+						failures.add(t);
+					}
+				}
+			});
+			racers[i].start();
+		}
+		for (Thread racer : racers)
+			racer.join();
+
+		if (!failures.isEmpty())
+			throw new AssertionError(failures.get(0));
+	}
+
+	@Test
+	public void stopReturnsTheArmedTimeouts() throws Exception
+	{
+		HashedWheelTimer timer = timer(5, 16);
+		final Semaphore fired = new Semaphore(0);
+		Runnable task = new Runnable() {
+			public void run() {
+				fired.release();
+			}
+		};
+		HashedWheelTimer.Timeout first = timer.newTimeout(task);
+		HashedWheelTimer.Timeout second = timer.newTimeout(task);
+		HashedWheelTimer.Timeout cancelled = timer.newTimeout(task);
+		first.arm(60000);
+		second.arm(60000);
+		cancelled.arm(60000);
+		cancelled.cancel();
+
+		Set<HashedWheelTimer.Timeout> pending = timer.stop();
+		assertEquals(2, pending.size());
+		assertTrue(pending.contains(first));
+		assertTrue(pending.contains(second));
+		assertEquals(0, timer.size());
+		assertFalse(fired.tryAcquire(100, TimeUnit.MILLISECONDS));
+
+		try {
+			timer.newTimeout(task).arm(20);
+			fail("armed on a stopped timer");
+		}
+		catch (IllegalStateException expected) {
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void sharedTimerCannotBeStopped()
+	{
+		HashedWheelTimer.shared().stop();
+	}
+}
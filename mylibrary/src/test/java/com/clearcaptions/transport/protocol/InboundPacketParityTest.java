@@ -0,0 +1,277 @@
+package com.clearcaptions.transport.protocol;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.clearcaptions.transport.CaptionSessionState;
+
+/**
+ * Recorded i711 packets run through the PacketFields dispatch and through
+ * the indexOf() parsing it replaced, comparing the callbacks and wizard
+ * calls each packet leads to.
+ */
+public class InboundPacketParityTest
+{
+	/**
+	 * Sessions of packets as a server sends them; each runs against a new
+	 * wizard and a new legacy handler.
+	 */
+	static final String[][] SESSIONS = {
+		// registration
+		{ "regReturn=1||myID=4F1C2D3E||log=1||retryInterval=7||polling=1||" },
+		{ "regReturn=1||myID=4F1C2D3E||polling=0||" },
+		{ "REGRETURN=1||MYID=4F1C2D3E||LOG=0||" },
+		{ "regReturn=0||errMessage=Unknown device||" },
+		{ "regReturn=0||myID=4F1C2D3E||errMessage=Try again later||" },
+		{ "regReturn=2||myID=4F1C2D3E||" },
+		{ "regReturn=x||myID=4F1C2D3E||errMessage=Not registered||" },
+		// relay start
+		{ "relayStart=1||myID=5A6B7C8D||state=Online" },
+		{ "relayStart=1||myID=5A6B7C8D||" },
+		{ "relayStart=1||state=Queued||myID=5A6B7C8D" },
+		{ "relayStart=0||errMessage=No captioners available||code=5" },
+		{ "relayStart=0||" },
+		{ "relayStart=||errMessage=" },
+		// polling, captions and state
+		{
+			"pollData=0||state=Queued",
+			"pollData=0||state=Queued",
+			"pollData=0||state=Online||receivedText=hello:--:--:world",
+			"pollData=0||state=Online||receivedText=a=b||c=d",
+			"pollData=0||state=Online||receivedText=",
+			"pollData=0||state=Online||receivedText=:--:--::--:--:",
+			"pollData=0||state=Disconnected",
+		},
+		{ "exchangeData=0||state=Online||receivedText=how are you?" },
+		{ "pollData=||state=Online" },
+		{ "pollData=0" },
+		{ "POLLDATA=0||STATE=ONLINE||RECEIVEDTEXT=Shouting" },
+		// errors: errMsg and errMessage, alone and together
+		{ "pollData=1||errCode=17||errMsg=Session expired" },
+		{ "pollData=1||errCode=17||errMessage=Session expired" },
+		{ "pollData=1||errCode=17||errMessage=first||errMsg=second" },
+		{ "pollData=1||errCode=17||errMsg=" },
+		{ "pollData=1||errCode=17" },
+		{ "errCode=42||errMsg=Bad request||detail=a=b" },
+		{ "myMethod=PollData||errCode=Protocol Error||errMsg=bad packet" },
+		{ "exchangeData=0||errMsg=dropped" },
+		// resume is refused
+		{ "resume=1||myID=4F1C2D3E" },
+		// operator events
+		{ "myMethod=switchOp||sessionID=77AA||opID=4242" },
+		{ "myMethod=switchOp||opID=" },
+		{ "myMethod=statusUpdate||type=firstCaption" },
+		{ "myMethod=statusUpdate||type=inProgress||message=Connecting you now" },
+		{ "myMethod=statusUpdate||type=other||message=" },
+		{ "MYMETHOD=STATUSUPDATE||TYPE=FIRSTCAPTION" },
+		{ "myMethod=StateChange||state=Online||OP=2007", "myMethod=StateChange||state=Online||OP=2008" },
+		{ "myMethod=StateChange||state=Queued||OP=2007" },
+		{ "myMethod=StateChange||opNumber=8005551212||opNumber2=8005551313||OP=9" },
+		{ "myMethod=StateChange||sipRemote=sip:op@10.0.0.2||state=Online" },
+		{ "myMethod=StateChange||sipLocal=sip:me@10.0.0.1||state=Online||OP=11" },
+		{ "myMethod=StateChange||state=||OP=" },
+		// text, with delimiters in it
+		{ "myMethod=sendText||text= ** advertising ** ||type=macro" },
+		{ "myMethod=sendText||type=revoiced||text=I said: x=1, y=2" },
+		{ "myMethod=sendText||text=one||two" },
+		{ "myMethod=sendText||text=" },
+		{ "myMethod=sendText||type=macro" },
+		{ "myMethod=sendText||type=Plain||text=:--:--: stays" },
+		// commands
+		{ "myMethod=sendCommand||type=called||volume=5" },
+		{ "myMethod=sendCommand||type=assisted" },
+		{ "myMethod=sendCommand||volume=" },
+		// SIP sessions
+		{ "myMethod=startSIPSession||sipLocal=sip:a@1.2.3.4||sipRemote=sip:b@5.6.7.8" },
+		{ "myMethod=restartSIPSession||sipRemote=sip:b@5.6.7.8" },
+		{ "myMethod=startSIPSession" },
+		{ "myMethod=stopSIPSession" },
+		// ending
+		{ "myMethod=StopRelay||stopRelay=1" },
+		{ "myMethod=TestCall||sipDial=sip:test@10.0.0.3" },
+		{ "myMethod=TestCall" },
+		{ "myMethod=EndTestCall" },
+		// nothing to do
+		{ "myMethod=KeepAlive||myID=4F1C2D3E" },
+		{ "keepalive" },
+		{ "myMethod=Unknown||foo=bar" },
+		{ "||||" },
+	};
+
+	/**
+	 * A wizard that records its callbacks and the calls a packet leads to,
+	 * without acting on them.
+	 */
+	static class RecordingWizard extends ProtocolWizard
+	{
+		private final List<String> events;
+		private boolean recording;
+
+		RecordingWizard(final List<String> events)
+		{
+			this.events = events;
+			callback(new ProtocolInterface() {
+				public void processState(CaptionSessionState state, String msg) {
+					events.add("processState " + state + " " + msg);
+				}
+
+				public void processError(String errorCode, String errorMsg) {
+					events.add("processError " + errorCode + " " + errorMsg);
+				}
+			});
+			recording = true;
+		}
+
+		public void handleState(CaptionSessionState state, String msg)
+		{
+			events.add("handleState " + state + " " + msg);
+		}
+
+		public void endCall()
+		{
+			events.add("endCall");
+		}
+
+		public void inCall(boolean b)
+		{
+			if (recording)
+				events.add("inCall " + b);
+			super.inCall(b);
+		}
+
+		public void session(String val)
+		{
+			if (recording)
+				events.add("session " + val);
+			super.session(val);
+		}
+
+		public void logEvents(int n)
+		{
+			if (recording)
+				events.add("logEvents " + n);
+			super.logEvents(n);
+		}
+
+		public void retryInterval(long millis)
+		{
+			if (recording)
+				events.add("retryInterval " + millis);
+			super.retryInterval(millis);
+		}
+	}
+
+	/**
+	 * Feeds the packets to a new wizard.
+	 *
+	 * @return the events, with opID after each packet
+	 */
+	private static List<String> current(String... packets)
+	{
+		List<String> events = new ArrayList<String>();
+		RecordingWizard wizard = new RecordingWizard(events);
+		for (String packet : packets) {
+			try {
+				wizard.processData(packet);
+			}
+			catch (Exception e) {
+				events.add("exception " + e.getClass().getSimpleName());
+			}
+			events.add("opID " + wizard.opID());
+		}
+		return events;
+	}
+
+	/**
+	 * Feeds the packets to a new legacy handler.
+	 *
+	 * @return the events, with opID after each packet
+	 */
+	private static List<String> legacy(String... packets)
+	{
+		List<String> events = new ArrayList<String>();
+		LegacyInboundPacketHandler handler = new LegacyInboundPacketHandler(events);
+		for (String packet : packets) {
+			try {
+				handler.Handlei711InboundPacket(packet);
+			}
+			catch (Exception e) {
+				events.add("exception " + e.getClass().getSimpleName());
+			}
+			events.add("opID " + handler.opID());
+		}
+		return events;
+	}
+
+	@Test
+	public void recordedSessionsMatchTheLegacyParser()
+	{
+		for (String[] session : SESSIONS)
+			assertEquals(Arrays.toString(session), legacy(session), current(session));
+	}
+
+	@Test
+	public void textKeyIsNotFoundInsideReceivedText()
+	{
+		String packet = "myMethod=sendText||type=macro||receivedText=hi";
+		assertEquals(Arrays.asList("processState STATE_DATA_MACRO hi", "opID null"), legacy(packet));
+		assertEquals(Arrays.asList("opID null"), current(packet));
+	}
+
+	@Test
+	public void keepAliveInsideACaptionIsNotAKeepAlive()
+	{
+		String packet = "pollData=0||state=Online||receivedText=is this a keepalive?";
+		assertEquals(Arrays.asList("opID null"), legacy(packet));
+		assertEquals(Arrays.asList("inCall true", "processState STATE_ONLINE ",
+				"processState STATE_DATA is this a keepalive?", "opID null"), current(packet));
+	}
+
+	@Test
+	public void captionTextIsNotTakenForTheState()
+	{
+		String packet = "pollData=0||state=Online||receivedText=Disconnected from the line";
+		assertEquals(Arrays.asList("inCall true", "processState STATE_ONLINE ",
+				"processState STATE_DATA Disconnected from the line",
+				"endCall", "processState STATE_OFFLINE ", "opID null"), legacy(packet));
+		assertEquals(Arrays.asList("inCall true", "processState STATE_ONLINE ",
+				"processState STATE_DATA Disconnected from the line", "opID null"), current(packet));
+	}
+
+	@Test
+	public void emptyValuesStayEmpty()
+	{
+		String packet = "pollData=1||errCode=||errMsg=oops";
+		assertEquals(Arrays.asList("processError ||errMsg=oops oops", "processState STATE_ERROR oops", "opID null"),
+				legacy(packet));
+		assertEquals(Arrays.asList("processError  oops", "processState STATE_ERROR oops", "opID null"),
+				current(packet));
+
+		packet = "regReturn=0||errMessage=||";
+		assertEquals(Arrays.asList("handleState STATE_CALL_ENDED ||", "opID null"), legacy(packet));
+		assertEquals(Arrays.asList("handleState STATE_CALL_ENDED ", "opID null"), current(packet));
+	}
+
+	@Test
+	public void regReturnNeedsNoTrailingSeparator()
+	{
+		String packet = "myID=4F1C2D3E||regReturn=0";
+		assertEquals(Arrays.asList("exception StringIndexOutOfBoundsException", "opID null"), legacy(packet));
+		assertEquals(Arrays.asList("handleState STATE_CALL_ENDED ", "opID null"), current(packet));
+	}
+
+	@Test
+	public void badNumbersKeepTheCurrentSetting()
+	{
+		String packet = "regReturn=1||myID=4F1C2D3E||log=yes||retryInterval=soon||";
+		assertEquals(Arrays.asList("session 4F1C2D3E", "exception NumberFormatException", "opID null"),
+				legacy(packet));
+		assertEquals(Arrays.asList("session 4F1C2D3E", "logEvents 0", "processState STATE_ONHOOK ",
+				"processState STATE_CALLING Placing Call", "opID null"), current(packet));
+	}
+}
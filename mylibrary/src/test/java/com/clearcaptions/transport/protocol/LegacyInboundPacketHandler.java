@@ -0,0 +1,635 @@
+package com.clearcaptions.transport.protocol;
+
+import static com.clearcaptions.transport.CaptionSessionState.STATE_SIPREMOTE;
+
+import java.util.List;
+
+import com.clearcaptions.transport.CCLog;
+import com.clearcaptions.transport.CaptionSessionState;
+
+/**
+ * ProtocolWizard's inbound packet handling as it was before PacketFields,
+ * one toUpperCase().indexOf() per key, kept to check the new parser
+ * against.  Callbacks and the wizard calls a packet leads to are recorded
+ * as events instead of being made; sockets and timers are left out.
+ */
+class LegacyInboundPacketHandler
+{
+	static final char nl = ProtocolWizard.nl;
+
+	private final List<String> events;
+
+	private int firstContact = 0;
+	private boolean waitFirstTime = true;
+	private boolean dontPoll = false;
+	private String opID;
+
+	LegacyInboundPacketHandler(List<String> events)
+	{
+		this.events = events;
+	}
+
+	String opID()
+	{
+		return opID;
+	}
+
+	boolean dontPoll()
+	{
+		return dontPoll;
+	}
+
+	private void processState(CaptionSessionState state, String msg)
+	{
+		events.add("processState " + state + " " + msg);
+	}
+
+	private void processError(String errorCode, String errorMsg)
+	{
+		events.add("processError " + errorCode + " " + errorMsg);
+	}
+
+	private void handleState(CaptionSessionState state, String msg)
+	{
+		events.add("handleState " + state + " " + msg);
+	}
+
+	private void endCall()
+	{
+		events.add("endCall");
+	}
+
+	private void inCall(boolean b)
+	{
+		events.add("inCall " + b);
+	}
+
+	private void session(String val)
+	{
+		events.add("session " + val);
+	}
+
+	private void logEvents(int n)
+	{
+		events.add("logEvents " + n);
+	}
+
+	private void retryInterval(long millis)
+	{
+		events.add("retryInterval " + millis);
+	}
+
+	private void initiateCall()
+	{
+		processState(CaptionSessionState.STATE_CALLING, "Placing Call");
+	}
+
+	private void Handlei711State(String packet, int r)
+	{
+		String d;
+
+		if (packet == null)
+			return;
+			
+		r += 6;
+		d = packet.substring(r);
+		if (d.toUpperCase().startsWith("ONLINE"))
+		{
+			inCall(true);
+			if (firstContact == 0)
+			{
+				firstContact = 1;
+				processState(CaptionSessionState.STATE_ONLINE, "");
+			}
+
+			r = packet.toUpperCase().indexOf("RECEIVEDTEXT=");
+			if (r > 0)
+			{
+				String rest = "";
+				r += 13;
+				d = packet.substring(r);
+			
+				r = 0;
+				if (d != null)
+					r = d.indexOf(":--:--:");
+				while (r >= 0)
+				{
+					if (d.length() >= r+7)
+						rest = d.substring(r+7);
+					d = d.substring(0, r);
+					d += nl + rest;
+					r = d.indexOf(":--:--:");
+				}
+				CCLog.trace("ProtocolWizard.Handlei711State: Inbound ["+ d + "]");
+				processState(CaptionSessionState.STATE_DATA, d);
+			}
+		}
+		if (d.toUpperCase().startsWith("QUEUED"))
+		{
+				if (waitFirstTime)
+				{
+					processState(CaptionSessionState.STATE_QUEUED, "Waiting for an available captioner...");
+				}
+				waitFirstTime = false;
+		}
+		if (d.toUpperCase().startsWith("DISCONNECTED"))
+		{
+			endCall();
+			processState(CaptionSessionState.STATE_OFFLINE, "");
+			return;
+		}
+	}
+	
+	void Handlei711InboundPacket(String packet)
+	{
+		int r = 0;
+
+		CCLog.trace("ProtocolWizard.Handlei711InboundPacket(): Packet [" + packet + "]");
+
+		if (packet.toUpperCase().indexOf("KEEPALIVE") >= 0) {
+			return;
+		}
+
+		// Blue-979 pass back error code with error message
+		r = packet.toUpperCase().indexOf("ERRCODE=");
+		if (r >= 0)
+		{
+			r += 8;
+			String d = packet.substring(r);
+			int y = d.indexOf("||");
+			if (y > 0)
+				d = d.substring(0, y);
+			String errorCode = d;
+
+			r = packet.toUpperCase().indexOf("ERRMSG=");
+			if (r >= 0) {
+				r += 7;
+				String errorMsg = packet.substring(r);
+				processError(errorCode, errorMsg);
+			} else {
+				r = packet.toUpperCase().indexOf("ERRMESSAGE=");
+				if (r >= 0) {
+					r += 11;
+					String errorMsg = packet.substring(r);
+					processError(errorCode, errorMsg);
+				}
+			}
+		}
+
+		if ((r = packet.toUpperCase().indexOf("POLLDATA=")) >=0)
+			r += 9;
+		
+		if (r < 0 )
+		{
+			if ((r = packet.toUpperCase().indexOf("||ERRCODE=PROTOCOL ERROR")) >=0)
+				r += 18;
+		}
+		if (r < 0 )
+		{
+			if ((r = packet.toUpperCase().indexOf("EXCHANGEDATA=")) >= 0)
+				r += 13;
+		}
+
+		if (r > 0)
+		{
+			r = packet.toUpperCase().indexOf("STATE=");
+			if (r > 0)
+			{
+				Handlei711State(packet, r);
+			}
+			r = packet.toUpperCase().indexOf("ERRMSG=");
+			if (r >= 0)
+			{
+				r += 7;
+				String errorMsg = packet.substring(r);
+				processState(CaptionSessionState.STATE_ERROR, errorMsg);
+			}
+		}
+		
+		r = packet.toUpperCase().indexOf("RESUME=");
+		if (r >= 0)
+		{
+			handleState(CaptionSessionState.STATE_CALL_ENDED, "resume is disabled");
+		}
+
+		r = packet.toUpperCase().indexOf("REGRETURN=");
+		if (r >= 0)
+		{
+			r += 10;
+			int code = 0;
+			String d = packet.substring(r);
+			int    e = d.indexOf("||");
+
+			d = d.substring(0, e);
+
+			try {
+				code = Integer.parseInt(d);
+			} 
+			catch (Exception f) {
+				code = 0;
+			}
+			r = packet.toUpperCase().indexOf("POLLING=0");
+			if (r > 0 )
+				dontPoll = true;
+
+			r = packet.toUpperCase().indexOf("MYID=");
+			if ( r > 0 && code == 1)
+			{
+				r += 5;
+				d = packet.substring(r);
+				int y = d.indexOf("||");
+				if (y > 0)
+					d = d.substring(0, y);
+				session(d);
+
+				r = packet.toUpperCase().indexOf("LOG=");
+				if (r > 0) {
+					r += 4;
+					d = packet.substring(r);
+					y = d.indexOf("||");
+					if (y > 0)
+						d = d.substring(0, y);
+					logEvents(Integer.parseInt(d));
+				}
+				
+				r = packet.toUpperCase().indexOf("RETRYINTERVAL=");
+				if (r > 0) {
+					r += 14;
+					d = packet.substring(r);
+					y = d.indexOf("||");
+					if (y > 0)
+						d = d.substring(0, y);
+					retryInterval(Integer.parseInt(d)*1000); // sent in s, store in ms
+				}
+
+				processState(CaptionSessionState.STATE_ONHOOK, "");
+
+				initiateCall();
+			}
+			else
+			{
+				String msg = "";
+				r = packet.toUpperCase().indexOf("ERRMESSAGE=");
+				if (r > 0) {
+					r += 11;
+					d = packet.substring(r);
+					int y = d.indexOf("||");
+					if (y > 0)
+						d = d.substring(0, y);
+					msg = d;
+				}
+				handleState(CaptionSessionState.STATE_CALL_ENDED, msg);
+				return;
+			}
+		}
+		
+		r = packet.toUpperCase().indexOf("RELAYSTART=");
+		if (r >= 0)
+		{
+			r += 11;
+			String d = packet.substring(r);
+			int idx = d.indexOf("||");
+			if (idx > 0)
+				d = d.substring(0, idx);
+			int code = 0;
+			try {
+				code = Integer.parseInt(d);
+			}
+			catch (Exception e) {
+				code = 0;
+			}
+
+			r = packet.toUpperCase().indexOf("STATE=");
+			if (r > 0)
+			{
+				Handlei711State(packet, r);
+			}
+
+			r = packet.toUpperCase().indexOf("MYID=");
+			if (r > 0)
+			{
+				r += 5;
+				d = packet.substring(r);
+				int y = d.indexOf("||");
+				if (y > 0)
+					d = d.substring(0, y);
+				session(d);
+			} 
+			if (code > 0)
+			{
+				processState(CaptionSessionState.STATE_CONNECTED, "Call answered");
+			} 
+			else
+			{
+				String msg = "";
+				String up = packet.toUpperCase();
+				r = up.indexOf("ERRMESSAGE=");
+				if (r >= 0)
+				{
+					r += 11;
+					msg = packet.substring(r);
+				}
+				handleState(CaptionSessionState.STATE_CALL_ENDED, msg);
+				return;
+			}
+		}
+		
+		if (packet.toUpperCase().startsWith("MYMETHOD=SWITCHOP"))
+		{
+			r = packet.toUpperCase().indexOf("SESSIONID=");
+			if (r >= 0) {
+				r += 10;
+				String d = packet.substring(r);
+				int y = d.indexOf("||");
+				if (y > 0)
+					d = d.substring(0, y);
+				session(d);
+			}
+			r = packet.toUpperCase().indexOf("OPID=");
+			if (r >= 0) {
+				r += 5;
+				String d = packet.substring(r);
+				int y = d.indexOf("||");
+				if (y > 0)
+					d = d.substring(0, y);
+				opID = d;
+				processState(CaptionSessionState.STATE_ONLINE, opID);
+			}
+		}
+		
+		if (packet.toUpperCase().startsWith("MYMETHOD=STATUSUPDATE"))
+		{
+			CaptionSessionState event = CaptionSessionState.STATE_IGNORE;
+			String message = "";
+			String cType = "TYPE=";
+			String cMessage = "MESSAGE=";
+			r = packet.toUpperCase().indexOf(cType);
+			if (r >= 0)
+			{
+				r += cType.length();
+				String d = packet.substring(r);
+				int y = d.indexOf("||");
+				if (y > 0)
+					d = d.substring(0, y);
+				if (d.toUpperCase().equals("FIRSTCAPTION")) {
+					event = CaptionSessionState.STATE_DATA_FIRST;
+				}
+				else if (d.toUpperCase().equals("INPROGRESS")) {
+					event = CaptionSessionState.STATE_INPROGRESS;
+				}
+			}
+		
+			r = packet.toUpperCase().indexOf(cMessage);
+			if (r >= 0)
+			{
+				r += cMessage.length();
+				String d = packet.substring(r);
+				int y = d.indexOf("||");
+				if (y > 0)
+					d = d.substring(0, y);
+				message = d;
+			}
+			
+			processState(event, message);
+		}
+		
+		if (packet.toUpperCase().startsWith("MYMETHOD=STATECHANGE"))
+		{
+			boolean delayOnline = false;
+			r = packet.toUpperCase().indexOf("OP=");
+			if (r >= 0)
+			{
+				r += 3;
+				String d = packet.substring(r);
+				int y = d.indexOf("||");
+				if (y > 0)
+					d = d.substring(0, y);
+				opID = d;
+			}
+			
+			r = packet.toUpperCase().indexOf("OPNUMBER=");
+			if (r >= 0)
+			{
+				r += 9;
+				String d = packet.substring(r);
+				int y = d.indexOf("||");
+				if (y > 0)
+					d = d.substring(0, y);
+				processState(CaptionSessionState.STATE_COMMAND, "AGENT=" + d);
+			}
+			
+			r = packet.toUpperCase().indexOf("OPNUMBER2=");
+			if (r >= 0)
+			{
+				r += 10;
+				String d = packet.substring(r);
+				int y = d.indexOf("||");
+				if (y > 0)
+					d = d.substring(0, y);
+				processState(CaptionSessionState.STATE_COMMAND, "AGENT2=" + d);
+			}
+			
+			r = packet.toUpperCase().indexOf("SIPREMOTE=");
+			if (r >= 0)
+			{
+				r += 10;
+				String sipuri = packet.substring(r);
+				int y = sipuri.indexOf("||");
+				if (y > 0)
+					sipuri = sipuri.substring(0, y);
+				processState(STATE_SIPREMOTE, sipuri);
+				delayOnline = true;
+			}
+			
+			r = packet.toUpperCase().indexOf("SIPLOCAL=");
+			if (r >= 0)
+			{
+				r += 9;
+				String sipuri = packet.substring(r);
+				int y = sipuri.indexOf("||");
+				if (y > 0)
+					sipuri = sipuri.substring(0, y);
+				processState(CaptionSessionState.STATE_SIPLOCAL, sipuri);
+				delayOnline = true;
+			}
+
+			r = packet.toUpperCase().indexOf("STATE=");
+			if (r >= 0)
+			{
+				r += 6;
+				String d = packet.substring(r);
+				int y = d.indexOf("||");
+				if (y > 0)
+					d = d.substring(0, y);
+				
+				if (d.toUpperCase().equals("ONLINE"))
+				{
+					inCall(true);
+					if (!delayOnline) {
+						if (firstContact == 0)
+						{
+							firstContact = 1;
+							processState(CaptionSessionState.STATE_ONLINE, opID);
+						}
+					}
+				}
+				else if (d.toUpperCase().equals("QUEUED"))
+				{
+					processState(CaptionSessionState.STATE_WAITING, opID);
+				}
+			}
+		}
+		
+		if (packet.toUpperCase().startsWith("MYMETHOD=SENDTEXT"))
+		{
+			String cType = "TYPE=";
+			String cText = "TEXT=";
+			String dataType = "";
+			r = packet.toUpperCase().indexOf(cType);
+			if (r >= 0)
+			{
+				r += cType.length();
+				String d = packet.substring(r);
+				int y = d.indexOf("||");
+				if (y > 0)
+					d = d.substring(0, y);
+				dataType = d;
+			}
+					
+			r = packet.toUpperCase().indexOf(cText);
+			if (r >= 0)
+			{
+				r += cText.length();
+				String d = packet.substring(r);
+				int y = d.indexOf("||");
+				if (y > 0)
+					d = d.substring(0, y);
+				String msg = d;
+				CaptionSessionState event = CaptionSessionState.STATE_DATA;
+				if (dataType.toUpperCase().equals("MACRO")) {
+					event = CaptionSessionState.STATE_DATA_MACRO;
+				}
+				else if (dataType.toUpperCase().equals("REVOICED")) {
+					event = CaptionSessionState.STATE_DATA_CAPTION;						
+				}
+				processState(event, msg);
+			}
+		}
+		
+		if (packet.toUpperCase().startsWith("MYMETHOD=SENDCOMMAND"))
+		{
+			String theCommand = "";
+			String theParty = "";
+
+			r = packet.toUpperCase().indexOf("TYPE=");
+			if (r >= 0)
+			{
+				r += 5;
+				String d = packet.substring(r);
+				int y = d.indexOf("||");
+				if (y > 0)
+					d = d.substring(0, y);
+				theParty = d;
+			}
+
+			r = packet.toUpperCase().indexOf("VOLUME=");
+			if (r >= 0)
+			{
+				String d = packet.substring(r);
+				int y = d.indexOf("||");
+				if (y > 0)
+					d = d.substring(0, y);
+				theCommand = d;
+			}
+
+			processState(CaptionSessionState.STATE_COMMAND, theParty + "||" + theCommand);
+		}
+
+		if (packet.toUpperCase().indexOf("MYMETHOD=STARTSIPSESSION") >= 0)
+		{
+			String sipLocal = "";
+			String sipRemote = "";
+			
+			r = packet.toUpperCase().indexOf("SIPLOCAL=");
+			if (r >= 0)
+			{
+				String d = packet.substring(r);
+				int y = d.indexOf("||");
+				if (y > 0)
+					d = d.substring(0, y);
+				sipLocal = d;
+			}
+
+			r = packet.toUpperCase().indexOf("SIPREMOTE=");
+			if (r >= 0)
+			{
+				String d = packet.substring(r);
+				int y = d.indexOf("||");
+				if (y > 0)
+					d = d.substring(0, y);
+				sipRemote = d;
+			}
+
+			processState(CaptionSessionState.STATE_SESSION_SIP_ESTABLISHED, sipLocal + "||" + sipRemote);
+		}
+		
+		if (packet.toUpperCase().indexOf("MYMETHOD=RESTARTSIPSESSION") >= 0)
+		{
+			String sipLocal = "";
+			String sipRemote = "";
+			
+			r = packet.toUpperCase().indexOf("SIPLOCAL=");
+			if (r >= 0)
+			{
+				String d = packet.substring(r);
+				int y = d.indexOf("||");
+				if (y > 0)
+					d = d.substring(0, y);
+				sipLocal = d;
+			}
+
+			r = packet.toUpperCase().indexOf("SIPREMOTE=");
+			if (r >= 0)
+			{
+				String d = packet.substring(r);
+				int y = d.indexOf("||");
+				if (y > 0)
+					d = d.substring(0, y);
+				sipRemote = d;
+			}
+
+			processState(CaptionSessionState.STATE_SESSION_SIP_RESTART, sipLocal + "||" + sipRemote);
+		}
+		
+		if (packet.toUpperCase().indexOf("MYMETHOD=STOPSIPSESSION") >= 0)
+		{
+			processState(CaptionSessionState.STATE_SESSION_SIP_STOP, "");
+		}
+		
+		if (packet.toUpperCase().indexOf("STOPRELAY=") >= 0)
+		{
+			inCall(false);
+			handleState(CaptionSessionState.STATE_CALL_ENDED, "");
+		}
+		
+		if (packet.toUpperCase().indexOf("MYMETHOD=TESTCALL") >= 0)
+		{
+			r = packet.toUpperCase().indexOf("SIPDIAL=");
+			if (r >= 0)
+			{
+				r += 8;
+				String sipuri = packet.substring(r);
+				int y = sipuri.indexOf("||");
+				if (y > 0)
+					sipuri = sipuri.substring(0, y);
+				processState(STATE_SIPREMOTE, sipuri);
+			}
+		}		
+
+		if (packet.toUpperCase().indexOf("MYMETHOD=ENDTESTCALL") >= 0)
+		{
+			inCall(false);
+			handleState(CaptionSessionState.STATE_CALL_ENDED, "");
+		}		
+	}
+}
@@ -0,0 +1,229 @@
+package com.clearcaptions.transport.protocol;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.lang.reflect.Method;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.clearcaptions.transport.PhoneEvent;
+
+/**
+ * Every packet ProtocolWizard builds, byte for byte against the String
+ * concatenation it used before PacketEncoder.
+ */
+public class PacketEncoderTest
+{
+	private ProtocolWizard wizard;
+
+	@Before
+	public void setUp()
+	{
+		wizard = new ProtocolWizard();
+		wizard.session("4F1C2D3E5A6B7C8D");
+		wizard.deviceID("device-1");
+		wizard.deviceType("android");
+		wizard.ip("10.0.0.7");
+		wizard.deviceCaps("captions,volume");
+		wizard.userAgent("CaptionPhone");
+		wizard.callType("2");
+		wizard.ID("EPAAKNVVBPHJ4P7YHDAB97VK24787V3");
+		wizard.pushToken("push-token");
+		wizard.enterpriseID("acme");
+		wizard.callNumber("8005551212");
+		wizard.callbackNumber("8005551313");
+		wizard.instructions("speak slowly");
+	}
+
+	/**
+	 * Calls one of the wizard's private packet builders.
+	 */
+	private byte[] build(String name, Class<?>[] types, Object... args) throws Exception
+	{
+		Method builder = ProtocolWizard.class.getDeclaredMethod(name, types);
+		builder.setAccessible(true);
+		return (byte[]) builder.invoke(wizard, args);
+	}
+
+	private byte[] build(String name) throws Exception
+	{
+		return build(name, new Class<?>[0]);
+	}
+
+	/**
+	 * The packet as the previous builders made it: the characters of the
+	 * concatenated String narrowed to bytes, then a NUL.
+	 */
+	private static byte[] concatenated(String data)
+	{
+		byte[] packet = new byte[data.length() + 1];
+		int index = 0;
+		for (int i = 0; i < data.length(); i++)
+			packet[index++] = (byte) data.charAt(i);
+		packet[index++] = 0;
+		return packet;
+	}
+
+	/**
+	 * Checks every builder against the concatenation it replaced, with the
+	 * wizard's current settings.
+	 */
+	private void assertAllPacketsMatch() throws Exception
+	{
+		ProtocolWizard w = wizard;
+
+		assertArrayEquals(concatenated("myMethod=logEvent||myID=" + w.session()
+				+ "||userAgent=" + w.userAgent() + "||callType=" + w.callType()
+				+ "||myUID=||deviceID=" + w.deviceID() + "||myIP=" + w.ip()
+				+ "||deviceCaps=" + w.deviceCaps() + "||trace=" + "call started"),
+				build("BuildLogEventPacket", new Class<?>[] { String.class }, "call started"));
+
+		assertArrayEquals(concatenated("myMethod=statusUpdate||myID=" + w.session()
+				+ "||status=" + PhoneEvent.PHONE_ON_HOLD.toString() + "||message=" + "back soon"),
+				build("BuildStatusUpdatePacket", new Class<?>[] { PhoneEvent.class, String.class },
+						PhoneEvent.PHONE_ON_HOLD, "back soon"));
+
+		Class<?>[] flags = { boolean.class, boolean.class };
+		assertArrayEquals(concatenated("myMethod=PollData||myID=" + w.session()),
+				build("Buildi711PollPacket", flags, false, false));
+		assertArrayEquals(concatenated("myMethod=PollData||myID=" + w.session() + "||firstPoll=1"),
+				build("Buildi711PollPacket", flags, true, false));
+		assertArrayEquals(concatenated("myMethod=PollData||myID=" + w.session() + "||firstPoll=1||firstOpContact=1"),
+				build("Buildi711PollPacket", flags, true, true));
+		assertArrayEquals(concatenated("myMethod=PollData||myID=" + w.session() + "||firstOpContact=1"),
+				build("Buildi711PollPacket", flags, false, true));
+
+		assertArrayEquals(concatenated("myMethod=CallActive"
+				+ "||deviceType=" + w.deviceType() + "||deviceID=" + w.deviceID() + "||myIP=" + w.ip()
+				+ "||deviceCaps=" + w.deviceCaps() + "||callType=" + w.callType()
+				+ "||number=" + w.callNumber()),
+				build("BuildCallActivePacket"));
+
+		assertArrayEquals(concatenated("myMethod=CallEnd"
+				+ "||deviceType=" + w.deviceType() + "||deviceID=" + w.deviceID() + "||myIP=" + w.ip()),
+				build("BuildCallEndPacket"));
+
+		assertArrayEquals(concatenated("myMethod=SIPActive"
+				+ "||deviceType=" + w.deviceType() + "||deviceID=" + w.deviceID() + "||myIP=" + w.ip()
+				+ "||number=" + w.callNumber()),
+				build("BuildSIPActivePacket"));
+
+		assertArrayEquals(concatenated("myMethod=SIPRestart"
+				+ "||deviceType=" + w.deviceType() + "||deviceID=" + w.deviceID() + "||myIP=" + w.ip()),
+				build("BuildSIPRestartPacket"));
+
+		assertArrayEquals(concatenated("myMethod=SIPFailed"
+				+ "||deviceType=" + w.deviceType() + "||deviceID=" + w.deviceID() + "||myIP=" + w.ip()),
+				build("BuildSIPFailedPacket"));
+
+		Class<?>[] text = { String.class };
+		assertArrayEquals(concatenated("myMethod=ExchangeData||myID=" + w.session() + "||myText=" + "hello, can you hear me?"),
+				build("Buildi711MessagePacket", text, "hello, can you hear me?"));
+		assertArrayEquals(concatenated("myMethod=ExchangeData||myID=" + w.session() + "||myText=" + null),
+				build("Buildi711MessagePacket", text, (Object) null));
+
+		String register = "myMethod=Register||userAgent=" + w.userAgent() + "||callType=" + w.callType()
+				+ "||myUID=" + w.ID() + "||deviceID=" + w.deviceID() + "||deviceToken=" + w.pushToken()
+				+ "||useEncryption=0||enterprise=" + w.enterpriseID() + "||";
+		if (w.callGroup().length() > 0)
+			register += "callGroup=" + w.callGroup() + "||";
+		assertArrayEquals(concatenated(register), build("Buildi711RegistrationRequest"));
+
+		assertArrayEquals(concatenated("myMethod=AcceptInboundCall||sessionID=" + w.session()
+				+ "||deviceID=" + w.deviceID() + "||userAgent=" + w.userAgent() + "||myUID=" + w.ID()
+				+ "||callType=125"),
+				build("BuildInboundCallPacket"));
+
+		String relay = "myMethod=StartRelay||myID=" + w.session() + "||preferredLanguage=English"
+				+ "||number=" + w.callNumber() + "||callbacknumber=" + w.callbackNumber()
+				+ "||instructions=" + w.instructions() + "||userAgent=" + w.userAgent()
+				+ "||callType=" + w.callType() + "||myUID=" + w.ID() + "||deviceID=" + w.deviceID()
+				+ "||myIP=" + w.ip() + "||deviceCaps=" + w.deviceCaps();
+		assertArrayEquals(concatenated(relay), build("Buildi711CallPacket"));
+		if (w.callGroup().length() > 0)
+			relay += "||callGroup=" + w.callGroup();
+		assertArrayEquals(concatenated(relay), build("BuildEasyCallPacket"));
+
+		assertArrayEquals(concatenated("myMethod=TestCall||myID=" + w.session()
+				+ "||userAgent=" + w.userAgent() + "||callType=" + w.callType()
+				+ "||myUID=||deviceID=" + w.deviceID() + "||myIP=" + w.ip()
+				+ "||deviceCaps=" + w.deviceCaps()),
+				build("BuildTestCallPacket"));
+
+		assertArrayEquals(concatenated("myMethod=EndTestCall"), build("BuildEndTestCallPacket"));
+
+		assertArrayEquals(concatenated("myMethod=KeepAlive||myID=" + w.session()), build("Buildi711KeepAlive"));
+
+		assertArrayEquals(concatenated("myMethod=DeclineInboundCall||sessionID=" + w.session()
+				+ "||deviceID=" + w.deviceID() + "||userAgent=" + w.userAgent()
+				+ "||myUID=" + w.ID() + "||callType=125"),
+				build("Buildi711DeclineCallPacket"));
+
+		assertArrayEquals(concatenated("myMethod=StopRelay||myID=" + w.session()), build("Buildi711HangupPacket"));
+
+		String answer = "myMethod=answerCall||fromBook=" + w.callType() + "||myID=" + w.session() + "||deviceID=";
+		if (w.overrideToken() != null && w.overrideToken().length() > 0)
+			answer += w.overrideToken();
+		else
+			answer += w.pushToken();
+		assertArrayEquals(concatenated(answer), build("Buildi711AnswerPacket"));
+
+		assertArrayEquals(concatenated("myMethod=ignoreCall||fromBook=" + w.callType() + "||myID=" + w.session()
+				+ "||deviceID=" + w.pushToken()),
+				build("Buildi711IgnorePacket"));
+
+		assertArrayEquals(concatenated("myMethod=UpdateCall||myID=" + w.session()
+				+ "||number=" + w.callNumber() + "||callbacknumber=" + w.callbackNumber()
+				+ "||instructions=" + w.instructions() + "||userAgent=" + w.userAgent()
+				+ "||callType=" + w.callType() + "||myUID=" + w.ID() + "||deviceID=" + w.deviceID()
+				+ "||myIP=" + w.ip() + "||deviceCaps=" + w.deviceCaps()),
+				build("BuildCallUpdatePacket"));
+
+		assertArrayEquals(concatenated("myMethod=StartCaptions||myID=" + w.session()
+				+ "||userAgent=" + w.userAgent() + "||callType=" + w.callType()
+				+ "||myUID=" + w.ID() + "||deviceID=" + w.deviceID() + "||myIP=" + w.ip()
+				+ "||deviceCaps=" + w.deviceCaps()),
+				build("BuildStartCaptionsPacket"));
+	}
+
+	@Test
+	public void packetsMatchConcatenation() throws Exception
+	{
+		assertAllPacketsMatch();
+	}
+
+	@Test
+	public void optionalFieldsMatchConcatenation() throws Exception
+	{
+		wizard.callGroup("group-7");
+		wizard.overrideToken("override-token");
+		assertAllPacketsMatch();
+	}
+
+	@Test
+	public void unsetFieldsAreWrittenAsNull() throws Exception
+	{
+		wizard = new ProtocolWizard();
+		assertAllPacketsMatch();
+	}
+
+	@Test
+	public void charactersAreNarrowedToTheirLowByte() throws Exception
+	{
+		wizard.instructions("café €5");
+		wizard.deviceID("dévice");
+		wizard.session("sőssion");
+		assertAllPacketsMatch();
+	}
+
+	@Test
+	public void packetsAreNotShared() throws Exception
+	{
+		byte[] first = build("Buildi711KeepAlive");
+		byte[] copy = first.clone();
+		build("BuildCallUpdatePacket");
+		build("Buildi711KeepAlive");
+		assertArrayEquals(copy, first);
+	}
+}
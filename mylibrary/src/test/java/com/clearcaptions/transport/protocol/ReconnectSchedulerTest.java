@@ -0,0 +1,145 @@
+package com.clearcaptions.transport.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Full jitter backoff, for given random numbers, and retries handed to the
+ * session's executor unless cancelled.
+ */
+public class ReconnectSchedulerTest
+{
+	private static final long BASE = 1000;
+	private static final long CAP = 30 * 1000;
+
+	// just below 1, the largest delay an attempt can get
+	private static final double MAX_RANDOM = 1 - 1e-9;
+
+	@Test
+	public void backoffDoublesUntilTheCap()
+	{
+		long[] expected = { 0, 999, 2999, 6999, 14999, 29999, 29999, 29999 };
+		for (int attempt = 0; attempt < expected.length; attempt++) {
+			assertEquals("attempt " + attempt, expected[attempt],
+					ReconnectScheduler.fullJitter(attempt, BASE, CAP, MAX_RANDOM));
+		}
+		assertEquals(29999, ReconnectScheduler.fullJitter(64, BASE, CAP, MAX_RANDOM));
+	}
+
+	@Test
+	public void delayScalesWithTheRandomNumber()
+	{
+		assertEquals(0, ReconnectScheduler.fullJitter(4, BASE, CAP, 0));
+		assertEquals(7500, ReconnectScheduler.fullJitter(4, BASE, CAP, 0.5));
+		assertEquals(15000, ReconnectScheduler.fullJitter(10, BASE, CAP, 0.5));
+	}
+
+	@Test
+	public void jitterStaysWithinItsBounds()
+	{
+		for (int attempt = 1; attempt <= 8; attempt++) {
+			long bound = Math.min(((1L << attempt) - 1) * BASE, CAP);
+			long min = Long.MAX_VALUE;
+			long max = 0;
+			for (int i = 0; i < 2000; i++) {
+				long delay = ReconnectScheduler.fullJitter(attempt, BASE, CAP);
+				assertTrue("attempt " + attempt + ": " + delay, delay >= 0 && delay < bound);
+				min = Math.min(min, delay);
+				max = Math.max(max, delay);
+			}
+			// spread over the whole range, not bunched at one end
+			assertTrue("attempt " + attempt + " min " + min, min < bound / 10);
+			assertTrue("attempt " + attempt + " max " + max, max > bound * 9 / 10);
+		}
+	}
+
+	@Test
+	public void breakerIsSharedPerHost()
+	{
+		assertSame(ReconnectScheduler.breaker("a.example.com"), ReconnectScheduler.breaker("a.example.com"));
+		assertFalse(ReconnectScheduler.breaker("a.example.com") == ReconnectScheduler.breaker("b.example.com"));
+		assertSame(ReconnectScheduler.breaker(null), ReconnectScheduler.breaker(null));
+	}
+
+	/**
+	 * Executor that holds on to what it is given until run() is called.
+	 */
+	private static class QueueingExecutor implements Executor
+	{
+		final List<Runnable> queued = new ArrayList<Runnable>();
+		final Semaphore executed = new Semaphore(0);
+
+		public synchronized void execute(Runnable command)
+		{
+			queued.add(command);
+			executed.release();
+		}
+
+		synchronized void run()
+		{
+			for (Runnable r : queued)
+				r.run();
+			queued.clear();
+		}
+	}
+
+	@Test
+	public void retryRunsOnTheGivenExecutor() throws Exception
+	{
+		QueueingExecutor executor = new QueueingExecutor();
+		final AtomicInteger runs = new AtomicInteger();
+		ReconnectScheduler.schedule(new Runnable() {
+			public void run() {
+				runs.incrementAndGet();
+			}
+		}, 10, executor);
+
+		assertTrue(executor.executed.tryAcquire(2, TimeUnit.SECONDS));
+		assertEquals(0, runs.get());
+		executor.run();
+		assertEquals(1, runs.get());
+	}
+
+	@Test
+	public void cancelledBeforeTheDelayNeverRuns() throws Exception
+	{
+		QueueingExecutor executor = new QueueingExecutor();
+		ReconnectScheduler.Task task = ReconnectScheduler.schedule(new Runnable() {
+			public void run() {
+				throw new AssertionError("cancelled retry ran");
+			}
+		}, 100, executor);
+		task.cancel();
+
+		assertTrue(task.isCancelled());
+		assertFalse(executor.executed.tryAcquire(300, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void cancelledWhileQueuedNeverRuns() throws Exception
+	{
+		QueueingExecutor executor = new QueueingExecutor();
+		final AtomicInteger runs = new AtomicInteger();
+		ReconnectScheduler.Task task = ReconnectScheduler.schedule(new Runnable() {
+			public void run() {
+				runs.incrementAndGet();
+			}
+		}, 0, executor);
+
+		assertTrue(executor.executed.tryAcquire(2, TimeUnit.SECONDS));
+		task.cancel();
+		executor.run();
+		assertEquals(0, runs.get());
+	}
+}
@@ -0,0 +1,141 @@
+package gov.nist.com.clearcaptions.core;
+
+import static org.junit.Assert.assertEquals;
+
+import gov.nist.com.clearcaptions.javax.sip.message.SIPMessage;
+import gov.nist.com.clearcaptions.javax.sip.parser.StringMsgParser;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Character class tables and keyword tables of the lexer, and the same
+ * parse on several threads at once.
+ */
+public class LexerCoreTest {
+
+	private static final String INVITE = "INVITE sip:bob@biloxi.example.com SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK776asdhds;rport\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "To: Bob <sip:bob@biloxi.example.com>\r\n"
+			+ "From: Alice <sip:alice@atlanta.example.com>;tag=1928301774\r\n"
+			+ "Call-ID: a84b4c76e66710@pc33.atlanta.example.com\r\n"
+			+ "CSeq: 314159 INVITE\r\n"
+			+ "Contact: <sip:alice@pc33.atlanta.example.com;transport=udp>\r\n"
+			+ "Allow: INVITE, ACK, CANCEL, OPTIONS, BYE\r\n"
+			+ "Supported: replaces, timer\r\n"
+			+ "Expires: 3600\r\n"
+			+ "Content-Length: 0\r\n\r\n";
+
+	// the classification chains the tables replaced
+
+	private static boolean alphaDigit(char c) {
+		return Character.isLowerCase(c) || Character.isUpperCase(c) || Character.isDigit(c);
+	}
+
+	private static boolean tokenChar(char c) {
+		return alphaDigit(c) || "-.!%*_+`'~".indexOf(c) >= 0;
+	}
+
+	private static boolean safeChar(char c) {
+		return alphaDigit(c) || "_+-!`'./}{][^|~%#@$:;?\"*".indexOf(c) >= 0;
+	}
+
+	@Test
+	public void classTablesMatchCharacterChecks() {
+		for (int i = 0; i <= Character.MAX_VALUE; i++) {
+			char c = (char) i;
+			String at = "char " + i;
+			assertEquals(at, Character.isLowerCase(c) || Character.isUpperCase(c), StringTokenizer.isAlpha(c));
+			assertEquals(at, Character.isDigit(c), StringTokenizer.isDigit(c));
+			assertEquals(at, alphaDigit(c), StringTokenizer.isAlphaDigit(c));
+			assertEquals(at, tokenChar(c), LexerCore.isTokenChar(c));
+			assertEquals(at, safeChar(c), LexerCore.isSafeChar(c));
+		}
+		for (int i = 0; i < 128; i++) {
+			char c = (char) i;
+			boolean hex = (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+			assertEquals("char " + i, hex, StringTokenizer.isHexDigit(c));
+		}
+	}
+
+	@Test
+	public void keywordTableMatchesRegionsIgnoringCase() {
+		Map<String, Integer> keywords = new HashMap<String, Integer>();
+		keywords.put("INVITE", Integer.valueOf(1));
+		keywords.put("Via", Integer.valueOf(2));
+		keywords.put("call-id", Integer.valueOf(3));
+		KeywordTable table = new KeywordTable(keywords);
+
+		assertEquals(1, table.get("invite"));
+		assertEquals(2, table.get("VIA"));
+		assertEquals(3, table.get("Call-ID"));
+		assertEquals(KeywordTable.NONE, table.get("INVITES"));
+		assertEquals(KeywordTable.NONE, table.get(""));
+
+		String buffer = "xxCALL-idyy";
+		assertEquals(3, table.get(buffer, 2, 9));
+		assertEquals(3, table.get(buffer.toCharArray(), 2, 9));
+		assertEquals(KeywordTable.NONE, table.get(buffer, 2, 8));
+
+		assertEquals(KeywordTable.NONE, KeywordTable.EMPTY.get("INVITE"));
+	}
+
+	@Test
+	public void threadsParseAlike() throws Exception {
+		// each thread checks its result against a single threaded parse
+		parseOn(4, 200);
+	}
+
+	/**
+	 * Parses the INVITE count times on each of the given number of threads
+	 * at once.
+	 *
+	 * @return the encoding all threads arrived at
+	 */
+	static String parseOn(int threads, final int count) throws Exception {
+		final String expected = parse(1);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			workers[t] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						assertEquals(expected, parse(count));
+					}
+					catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			});
+		}
+		for (Thread worker : workers)
+			worker.start();
+		for (Thread worker : workers)
+			worker.join();
+		if (failure.get() != null)
+			throw new AssertionError(failure.get());
+		return expected;
+	}
+
+	/**
+	 * Parses the INVITE count times.
+	 *
+	 * @return the encoding of the last parse
+	 */
+	static String parse(int count) throws Exception {
+		byte[] bytes = INVITE.getBytes("UTF-8");
+		SIPMessage message = null;
+		for (int i = 0; i < count; i++) {
+			message = new StringMsgParser().parseSIPMessage(bytes);
+			// parse the lazily held headers too
+			message.getHeaders("Expires").hasNext();
+			message.getHeaders("Allow").hasNext();
+			message.getHeaders("Supported").hasNext();
+		}
+		return message.encode();
+	}
+}
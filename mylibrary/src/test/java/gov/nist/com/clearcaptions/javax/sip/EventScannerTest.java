@@ -0,0 +1,188 @@
+package gov.nist.com.clearcaptions.javax.sip;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.clearcaptions.javax.sip.DialogTerminatedEvent;
+import com.clearcaptions.javax.sip.IOExceptionEvent;
+import com.clearcaptions.javax.sip.ListeningPoint;
+import com.clearcaptions.javax.sip.RequestEvent;
+import com.clearcaptions.javax.sip.ResponseEvent;
+import com.clearcaptions.javax.sip.SipListener;
+import com.clearcaptions.javax.sip.SipProvider;
+import com.clearcaptions.javax.sip.TimeoutEvent;
+import com.clearcaptions.javax.sip.TransactionTerminatedEvent;
+import com.clearcaptions.javax.sip.header.CSeqHeader;
+import com.clearcaptions.javax.sip.header.CallIdHeader;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Events of a call are delivered in order, all on the scanner thread its
+ * Call-ID routes to.
+ */
+public class EventScannerTest {
+
+	private static final int CALLS = 20;
+
+	private static final int REQUESTS = 10;
+
+	SipStackImpl stack;
+
+	private DatagramSocket peer;
+
+	private final ConcurrentHashMap<String, Long> lastCSeq = new ConcurrentHashMap<String, Long>();
+
+	private final AtomicInteger received = new AtomicInteger();
+
+	private final AtomicInteger outOfOrder = new AtomicInteger();
+
+	// the scanner thread each call was delivered on, or "several"
+	private final ConcurrentHashMap<String, String> deliveredOn = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Call whose requests the listener takes slowMillis over, if any.
+	 */
+	volatile String slowCallId;
+
+	volatile long slowMillis;
+
+	@After
+	public void tearDown() {
+		if (peer != null)
+			peer.close();
+		if (stack != null)
+			stack.stop();
+	}
+
+	/**
+	 * Starts a stack with the given EVENT_SCANNER_THREADS, or none.
+	 *
+	 * @return the port it listens on
+	 */
+	int start(String threads) throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("com.clearcaptions.javax.sip.STACK_NAME", "EventScannerTest");
+		// pool threads hand on each call's requests in order
+		properties.setProperty("gov.nist.com.clearcaptions.javax.sip.THREAD_POOL_SIZE", "4");
+		if (threads != null)
+			properties.setProperty("gov.nist.com.clearcaptions.javax.sip.EVENT_SCANNER_THREADS", threads);
+		stack = new SipStackImpl(properties);
+		DatagramSocket probe = new DatagramSocket(0);
+		int port = probe.getLocalPort();
+		probe.close();
+		ListeningPoint lp = stack.createListeningPoint("127.0.0.1", port, "udp");
+		SipProvider provider = stack.createSipProvider(lp);
+		provider.addSipListener(new SipListener() {
+			public void processRequest(RequestEvent event) {
+				String callId = ((CallIdHeader) event.getRequest().getHeader(CallIdHeader.NAME)).getCallId();
+				long cseq = ((CSeqHeader) event.getRequest().getHeader(CSeqHeader.NAME)).getSeqNumber();
+				Long previous = lastCSeq.put(callId, Long.valueOf(cseq));
+				if (previous != null && previous.longValue() >= cseq)
+					outOfOrder.incrementAndGet();
+				String thread = Thread.currentThread().getName();
+				String first = deliveredOn.putIfAbsent(callId, thread);
+				if (first != null && !first.equals(thread))
+					deliveredOn.put(callId, "several");
+				received.incrementAndGet();
+				if (callId.equals(slowCallId)) {
+					try {
+						Thread.sleep(slowMillis);
+					} catch (InterruptedException e) {
+					}
+				}
+			}
+
+			public void processResponse(ResponseEvent event) {
+			}
+
+			public void processTimeout(TimeoutEvent event) {
+			}
+
+			public void processIOException(IOExceptionEvent event) {
+			}
+
+			public void processTransactionTerminated(TransactionTerminatedEvent event) {
+			}
+
+			public void processDialogTerminated(DialogTerminatedEvent event) {
+			}
+		});
+		stack.start();
+		peer = new DatagramSocket(0);
+		return port;
+	}
+
+	/**
+	 * Sends REQUESTS MESSAGEs on each of CALLS calls, interleaved, and
+	 * waits for all of them to reach the listener in order.
+	 */
+	void send(int port) throws Exception {
+		for (int cseq = 1; cseq <= REQUESTS; cseq++) {
+			for (int call = 0; call < CALLS; call++) {
+				String text = "MESSAGE sip:b@127.0.0.1:" + port + " SIP/2.0\r\n"
+						+ "Via: SIP/2.0/UDP 127.0.0.1:" + peer.getLocalPort() + ";branch=z9hG4bK" + call + "x" + cseq + "\r\n"
+						+ "Max-Forwards: 70\r\n"
+						+ "From: <sip:a@x>;tag=" + call + "\r\n"
+						+ "To: <sip:b@y>\r\n"
+						+ "Call-ID: call" + call + "@x\r\n"
+						+ "CSeq: " + cseq + " MESSAGE\r\n"
+						+ "Content-Length: 0\r\n\r\n";
+				byte[] bytes = text.getBytes("UTF-8");
+				peer.send(new DatagramPacket(bytes, bytes.length, InetAddress.getByName("127.0.0.1"), port));
+				// the socket buffer is only MAX_DATAGRAM_SIZE
+				Thread.sleep(1);
+			}
+		}
+		long deadline = System.currentTimeMillis() + 20000;
+		while (received.get() < CALLS * REQUESTS && System.currentTimeMillis() < deadline)
+			Thread.sleep(20);
+		assertEquals(CALLS * REQUESTS, received.get());
+		assertEquals(CALLS, lastCSeq.size());
+		assertEquals(0, outOfOrder.get());
+	}
+
+	@Test
+	public void defaultsToOneThread() throws Exception {
+		send(start(null));
+		assertEquals(1, stack.getEventScannerThreads());
+		assertEquals(CALLS * REQUESTS, stack.getEventsDelivered(0));
+		assertEquals(0, stack.getEventQueueDepth(0));
+		for (int call = 0; call < CALLS; call++) {
+			assertEquals(0, stack.getEventScannerThread("call" + call + "@x"));
+			assertEquals("EventScannerThread", deliveredOn.get("call" + call + "@x"));
+		}
+	}
+
+	@Test
+	public void eachCallStaysOnTheThreadItRoutesTo() throws Exception {
+		int threads = 4;
+		send(start(String.valueOf(threads)));
+		assertEquals(threads, stack.getEventScannerThreads());
+
+		long[] expected = new long[threads];
+		for (int call = 0; call < CALLS; call++) {
+			String callId = "call" + call + "@x";
+			int thread = stack.getEventScannerThread(callId);
+			assertTrue(callId + " on " + thread, thread >= 0 && thread < threads);
+			assertEquals(callId, "EventScannerThread-" + thread, deliveredOn.get(callId));
+			expected[thread] += REQUESTS;
+		}
+		int used = 0;
+		for (int i = 0; i < threads; i++) {
+			assertEquals(expected[i], stack.getEventsDelivered(i));
+			assertEquals(0, stack.getEventQueueDepth(i));
+			if (expected[i] > 0)
+				used++;
+		}
+		assertTrue(used + " threads used", used > 1);
+	}
+}
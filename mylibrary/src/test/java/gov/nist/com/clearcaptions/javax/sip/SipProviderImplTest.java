@@ -0,0 +1,91 @@
+package gov.nist.com.clearcaptions.javax.sip;
+
+import static org.junit.Assert.assertTrue;
+
+import gov.nist.com.clearcaptions.javax.sip.message.SIPRequest;
+import gov.nist.com.clearcaptions.javax.sip.parser.StringMsgParser;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.util.Properties;
+
+import com.clearcaptions.javax.sip.ListeningPoint;
+import com.clearcaptions.javax.sip.SipProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Stateless sends through SipProviderImpl.
+ */
+public class SipProviderImplTest {
+
+	private SipStackImpl stack;
+
+	private SipProvider provider;
+
+	private DatagramSocket peer;
+
+	@Before
+	public void setUp() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("com.clearcaptions.javax.sip.STACK_NAME", "SipProviderImplTest");
+		stack = new SipStackImpl(properties);
+		DatagramSocket probe = new DatagramSocket(0);
+		int port = probe.getLocalPort();
+		probe.close();
+		ListeningPoint lp = stack.createListeningPoint("127.0.0.1", port, "udp");
+		provider = stack.createSipProvider(lp);
+		stack.start();
+		peer = new DatagramSocket(0);
+		peer.setSoTimeout(5000);
+	}
+
+	@After
+	public void tearDown() {
+		peer.close();
+		stack.stop();
+	}
+
+	private SIPRequest request(String branch) throws Exception {
+		String text = "MESSAGE sip:b@127.0.0.1:" + peer.getLocalPort() + " SIP/2.0\r\n"
+				+ "Via: SIP/2.0/UDP 127.0.0.1:5060" + (branch == null ? "" : ";branch=" + branch) + "\r\n"
+				+ "Max-Forwards: 70\r\n"
+				+ "From: <sip:a@x>;tag=1\r\n"
+				+ "To: <sip:b@y>\r\n"
+				+ "Call-ID: stateless@x\r\n"
+				+ "CSeq: 1 MESSAGE\r\n"
+				+ "Content-Length: 0\r\n\r\n";
+		return (SIPRequest) new StringMsgParser().parseSIPMessage(text);
+	}
+
+	private String receive() throws Exception {
+		byte[] buffer = new byte[4096];
+		DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+		peer.receive(packet);
+		return new String(packet.getData(), 0, packet.getLength(), "UTF-8");
+	}
+
+	@Test
+	public void sendsTheBranchItAdds() throws Exception {
+		SIPRequest request = request(null);
+		request.encodeAsBytesCached("UDP");
+
+		provider.sendRequest(request);
+		String sent = receive();
+		assertTrue(sent, sent.contains(";branch=" + request.getTopmostVia().getBranch() + "\r\n"));
+	}
+
+	@Test
+	public void resendSeesInPlaceHeaderChanges() throws Exception {
+		SIPRequest request = request("z9hG4bKfirst");
+		provider.sendRequest(request);
+		assertTrue(receive().contains("branch=z9hG4bKfirst"));
+
+		request.getTopmostVia().setBranch("z9hG4bKsecond");
+		provider.sendRequest(request);
+		String sent = receive();
+		assertTrue(sent, sent.contains("branch=z9hG4bKsecond"));
+	}
+}
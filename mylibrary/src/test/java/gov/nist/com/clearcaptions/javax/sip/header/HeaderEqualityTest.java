@@ -0,0 +1,173 @@
+package gov.nist.com.clearcaptions.javax.sip.header;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import gov.nist.com.clearcaptions.javax.sip.parser.StringMsgParser;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import org.junit.Test;
+
+/**
+ * Checks the field by field equals methods of the header classes against
+ * the introspection based comparison they replaced, and checks that
+ * hashCode agrees with equals.
+ */
+public class HeaderEqualityTest {
+
+	/**
+	 * Pairs of headers of the same type: the first parses equal to
+	 * itself, the second differs from it in one field.
+	 */
+	private static final String[][] HEADERS = {
+		{ "Accept: application/sdp;level=1", "Accept: application/sdp;level=2" },
+		{ "Accept-Encoding: gzip;q=0.5", "Accept-Encoding: gzip;q=0.6" },
+		{ "Accept-Language: en;q=0.5", "Accept-Language: fr;q=0.5" },
+		{ "Alert-Info: <http://www.example.com/sounds/moo.wav>", "Alert-Info: <http://www.example.com/sounds/baa.wav>" },
+		{ "Allow: INVITE", "Allow: ACK" },
+		{ "Allow-Events: presence", "Allow-Events: dialog" },
+		{ "Authorization: Digest username=\"a\", realm=\"r\", nonce=\"n\", uri=\"sip:b@y\", response=\"0\"",
+			"Authorization: Digest username=\"b\", realm=\"r\", nonce=\"n\", uri=\"sip:b@y\", response=\"0\"" },
+		{ "Call-Info: <http://www.example.com/alice/photo.jpg>;purpose=icon",
+			"Call-Info: <http://www.example.com/alice/photo.jpg>;purpose=info" },
+		{ "Content-Disposition: session;handling=optional", "Content-Disposition: render;handling=optional" },
+		{ "Content-Encoding: gzip", "Content-Encoding: deflate" },
+		{ "Content-Language: en", "Content-Language: fr" },
+		{ "Error-Info: <sip:not-in-service@example.com>", "Error-Info: <sip:busy@example.com>" },
+		{ "Event: presence;id=1", "Event: presence;id=2" },
+		{ "Expires: 60", "Expires: 61" },
+		{ "X-Custom: value", "X-Custom: other" },
+		{ "In-Reply-To: 70710@saturn.bell-tel.com", "In-Reply-To: 70711@saturn.bell-tel.com" },
+		{ "MIME-Version: 1.0", "MIME-Version: 1.1" },
+		{ "Min-Expires: 60", "Min-Expires: 61" },
+		{ "Organization: Boxes by Bob", "Organization: Bags by Bob" },
+		{ "Priority: urgent", "Priority: normal" },
+		{ "Proxy-Authenticate: Digest realm=\"r\", nonce=\"n\"", "Proxy-Authenticate: Digest realm=\"s\", nonce=\"n\"" },
+		{ "Proxy-Require: foo", "Proxy-Require: bar" },
+		{ "RAck: 776656 1 INVITE", "RAck: 776657 1 INVITE" },
+		{ "RSeq: 988789", "RSeq: 988790" },
+		{ "Reason: SIP;cause=200;text=\"Call completed elsewhere\"", "Reason: SIP;cause=486;text=\"Busy\"" },
+		{ "Require: 100rel", "Require: timer" },
+		{ "Retry-After: 18000;duration=3600", "Retry-After: 18000;duration=60" },
+		{ "Date: Sat, 13 Nov 2010 23:29:00 GMT", "Date: Sat, 13 Nov 2010 23:29:01 GMT" },
+		{ "SIP-ETag: dx200xyz", "SIP-ETag: dx200xyw" },
+		{ "SIP-If-Match: dx200xyz", "SIP-If-Match: dx200xyw" },
+		{ "Server: HomeServer v2", "Server: HomeServer v3" },
+		{ "Subject: Need more boxes", "Subject: Need fewer boxes" },
+		{ "Subscription-State: active;expires=60", "Subscription-State: active;expires=61" },
+		{ "Supported: 100rel", "Supported: timer" },
+		{ "Timestamp: 54", "Timestamp: 55" },
+		{ "Unsupported: foo", "Unsupported: bar" },
+		{ "User-Agent: Softphone Beta1.5", "User-Agent: Softphone Beta1.6" },
+		{ "WWW-Authenticate: Digest realm=\"r\", nonce=\"n\"", "WWW-Authenticate: Digest realm=\"r\", nonce=\"m\"" },
+		{ "Warning: 307 isi.edu \"Session parameter 'foo' not understood\"",
+			"Warning: 301 isi.edu \"Incompatible network address type 'E.164'\"" },
+	};
+
+	private static SIPObject parse(String text) throws Exception {
+		SIPHeader header = new StringMsgParser().parseSIPHeader(text);
+		if (header instanceof SIPHeaderList)
+			return (SIPObject) ((SIPHeaderList<?>) header).getFirst();
+		return header;
+	}
+
+	/**
+	 * The comparison SIPObject.equals made before the header classes had
+	 * their own: same class, non-private fields of every class up to
+	 * SIPObject, primitives by value and objects through equals.
+	 */
+	private static boolean reflectiveEquals(Object mine, Object his) throws Exception {
+		if (!mine.getClass().equals(his.getClass()))
+			return false;
+		for (Class<?> c = mine.getClass(); ; c = c.getSuperclass()) {
+			for (Field f : c.getDeclaredFields()) {
+				int modifiers = f.getModifiers();
+				if (Modifier.isPrivate(modifiers) || Modifier.isStatic(modifiers))
+					continue;
+				if (f.getName().equals("stringRepresentation") || f.getName().equals("indentation"))
+					continue;
+				f.setAccessible(true);
+				Object a = f.get(mine);
+				Object b = f.get(his);
+				if (a == b)
+					continue;
+				if (a == null || b == null || !a.equals(b))
+					return false;
+			}
+			if (c == SIPObject.class)
+				return true;
+		}
+	}
+
+	private static void assertAgrees(String what, SIPObject a, SIPObject b) throws Exception {
+		boolean expected = reflectiveEquals(a, b);
+		assertEquals(what, expected, a.equals(b));
+		assertEquals(what, expected, b.equals(a));
+		if (expected)
+			assertEquals(what, a.hashCode(), b.hashCode());
+	}
+
+	@Test
+	public void equalsMatchesTheReflectiveComparison() throws Exception {
+		for (String[] pair : HEADERS) {
+			SIPObject first = parse(pair[0]);
+			SIPObject same = parse(pair[0]);
+			SIPObject other = parse(pair[1]);
+
+			assertAgrees(pair[0], first, same);
+			assertTrue(pair[0], first.equals(same));
+			assertAgrees(pair[0] + " / " + pair[1], first, other);
+			assertFalse(pair[0] + " / " + pair[1], first.equals(other));
+			assertAgrees(pair[0] + " clone", first, (SIPObject) first.clone());
+		}
+	}
+
+	@Test
+	public void differentClassesAreNotEqual() throws Exception {
+		SIPObject require = parse("Require: 100rel");
+		SIPObject supported = parse("Supported: 100rel");
+		assertAgrees("Require / Supported", require, supported);
+		assertFalse(require.equals(supported));
+	}
+
+	@Test
+	public void mediaRangeHashAgreesWithEquals() throws Exception {
+		MediaRange a = new MediaRange();
+		a.setType("application");
+		a.setSubtype("sdp");
+		MediaRange b = (MediaRange) a.clone();
+		assertAgrees("MediaRange", a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+		b.setSubtype("xml");
+		assertAgrees("MediaRange", a, b);
+	}
+
+	@Test
+	public void protocolHashAgreesWithEquals() throws Exception {
+		Protocol a = new Protocol();
+		a.setProtocolName("SIP");
+		a.setProtocolVersion("2.0");
+		a.setTransport("UDP");
+		Protocol b = (Protocol) a.clone();
+		assertAgrees("Protocol", a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+		b.setTransport("TCP");
+		assertAgrees("Protocol", a, b);
+	}
+
+	@Test
+	public void statusLineHashAgreesWithEquals() throws Exception {
+		StatusLine a = new StatusLine();
+		a.setSipVersion("SIP/2.0");
+		a.setStatusCode(200);
+		a.setReasonPhrase("OK");
+		StatusLine b = (StatusLine) a.clone();
+		assertAgrees("StatusLine", a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+		b.setStatusCode(486);
+		assertAgrees("StatusLine", a, b);
+	}
+}
@@ -0,0 +1,98 @@
+package gov.nist.com.clearcaptions.javax.sip.message;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import gov.nist.com.clearcaptions.javax.sip.header.Via;
+import gov.nist.com.clearcaptions.javax.sip.parser.StringMsgParser;
+
+import org.junit.Test;
+
+/**
+ * Checks SIPMessage.encodeAsBytesCached() against a fresh encoding,
+ * including under a retransmission storm.
+ */
+public class EncodingCacheTest {
+
+	private static final int TRANSACTIONS = 2000;
+
+	// the initial send plus the ten Timer A retransmissions of an INVITE
+	private static final int SENDS = 11;
+
+	private static SIPRequest request(int n) throws Exception {
+		String text = "INVITE sip:b@127.0.0.1:5070 SIP/2.0\r\n"
+				+ "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK" + n + "\r\n"
+				+ "Max-Forwards: 70\r\n"
+				+ "From: <sip:a@x>;tag=" + n + "\r\n"
+				+ "To: <sip:b@y>\r\n"
+				+ "Call-ID: call" + n + "@x\r\n"
+				+ "CSeq: 1 INVITE\r\n"
+				+ "Contact: <sip:a@127.0.0.1:5060>\r\n"
+				+ "Content-Length: 0\r\n\r\n";
+		return (SIPRequest) new StringMsgParser().parseSIPMessage(text);
+	}
+
+	@Test
+	public void retransmissionsReuseTheFirstEncoding() throws Exception {
+		SIPRequest[] requests = new SIPRequest[TRANSACTIONS];
+		byte[][] first = new byte[TRANSACTIONS][];
+		for (int i = 0; i < TRANSACTIONS; i++) {
+			requests[i] = request(i);
+			first[i] = requests[i].encodeAsBytesCached("UDP");
+			assertArrayEquals(requests[i].encodeAsBytes("UDP"), first[i]);
+		}
+		for (int send = 1; send < SENDS; send++) {
+			for (int i = 0; i < TRANSACTIONS; i++)
+				assertSame(first[i], requests[i].encodeAsBytesCached("UDP"));
+		}
+	}
+
+	@Test
+	public void settersDropTheCachedEncoding() throws Exception {
+		SIPRequest request = request(1);
+		byte[] before = request.encodeAsBytesCached("UDP");
+		request.setHeader(new gov.nist.com.clearcaptions.javax.sip.header.MaxForwards(69));
+		assertNull(request.getCachedEncoding());
+
+		byte[] after = request.encodeAsBytesCached("UDP");
+		assertNotSame(before, after);
+		assertTrue(new String(after, "UTF-8").contains("Max-Forwards: 69"));
+	}
+
+	@Test
+	public void anotherTransportEncodesAgain() throws Exception {
+		SIPRequest request = request(1);
+		byte[] udp = request.encodeAsBytesCached("UDP");
+		byte[] tcp = request.encodeAsBytesCached("TCP");
+		assertNotSame(udp, tcp);
+		assertArrayEquals(request.encodeAsBytes("TCP"), tcp);
+	}
+
+	@Test
+	public void inPlaceHeaderChangeNeedsInvalidate() throws Exception {
+		SIPRequest request = request(1);
+		request.encodeAsBytesCached("UDP");
+
+		Via via = request.getTopmostVia();
+		via.setBranch("z9hG4bKchanged");
+		request.invalidateEncoding();
+
+		String sent = new String(request.encodeAsBytesCached("UDP"), "UTF-8");
+		assertTrue(sent.contains("branch=z9hG4bKchanged"));
+	}
+
+	@Test
+	public void cloneDoesNotShareTheCache() throws Exception {
+		SIPRequest request = request(1);
+		request.encodeAsBytesCached("UDP");
+		SIPRequest copy = (SIPRequest) request.clone();
+		assertNull(copy.getCachedEncoding());
+
+		copy.getTopmostVia().setBranch("z9hG4bKcopy");
+		assertFalse(new String(request.encodeAsBytesCached("UDP"), "UTF-8").contains("z9hG4bKcopy"));
+	}
+}
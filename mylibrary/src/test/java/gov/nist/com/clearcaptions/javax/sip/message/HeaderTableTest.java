@@ -0,0 +1,105 @@
+package gov.nist.com.clearcaptions.javax.sip.message;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import gov.nist.com.clearcaptions.javax.sip.header.Expires;
+import gov.nist.com.clearcaptions.javax.sip.header.SIPHeader;
+import gov.nist.com.clearcaptions.javax.sip.header.SIPHeaderNamesCache;
+import gov.nist.com.clearcaptions.javax.sip.parser.StringMsgParser;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+/**
+ * Header order, replacement and lookup in a message's HeaderTable.
+ */
+public class HeaderTableTest {
+
+	private static final String INVITE = "INVITE sip:bob@biloxi.example.com SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK776asdhds\r\n"
+			+ "Via: SIP/2.0/UDP 10.0.0.2:5060;branch=z9hG4bK4b43c2ff8.1\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "To: Bob <sip:bob@biloxi.example.com>\r\n"
+			+ "From: Alice <sip:alice@atlanta.example.com>;tag=1928301774\r\n"
+			+ "Call-ID: a84b4c76e66710@pc33.atlanta.example.com\r\n"
+			+ "CSeq: 314159 INVITE\r\n"
+			+ "Contact: <sip:alice@pc33.atlanta.example.com>\r\n"
+			+ "Record-Route: <sip:p1.example.com;lr>\r\n"
+			+ "Route: <sip:p2.example.com;lr>\r\n"
+			+ "Allow: INVITE, ACK, CANCEL, OPTIONS, BYE\r\n"
+			+ "Supported: replaces, timer\r\n"
+			+ "User-Agent: CaptionPhone/1.0\r\n"
+			+ "Expires: 3600\r\n"
+			+ "X-Caption-Session: 4F1C2D3E\r\n"
+			+ "Content-Length: 0\r\n\r\n";
+
+	static SIPRequest invite() throws Exception {
+		SIPRequest request = (SIPRequest) new StringMsgParser().parseSIPMessage(INVITE.getBytes("UTF-8"));
+		// parse the lazily held headers, so every entry is a parsed header
+		request.getHeader("Expires");
+		request.getHeader("X-Caption-Session");
+		request.getHeader("Allow");
+		return request;
+	}
+
+	static HeaderTable table(SIPHeader[] headers) {
+		HeaderTable table = new HeaderTable();
+		for (SIPHeader header : headers) {
+			String name = SIPHeaderNamesCache.toLowerCase(header.getName());
+			table.put(SIPHeaderNamesCache.getId(name), name, header);
+		}
+		return table;
+	}
+
+	@Test
+	public void keepsInsertionOrderAndReplacesInPlace() throws Exception {
+		SIPRequest request = invite();
+		SIPHeader[] headers = request.headers.toArray();
+		HeaderTable table = table(headers);
+		assertEquals(headers.length, table.size());
+
+		int expires = SIPHeaderNamesCache.getId("expires");
+		SIPHeader old = table.get(expires, "expires");
+		SIPHeader replacement = new Expires();
+		assertSame(old, table.put(expires, "expires", replacement));
+		assertEquals(headers.length, table.size());
+
+		Iterator<SIPHeader> it = table.iterator();
+		for (SIPHeader header : headers)
+			assertSame(header == old ? replacement : header, it.next());
+
+		assertSame(replacement, table.remove(expires, "expires"));
+		assertNull(table.get(expires, "expires"));
+		assertEquals(headers.length - 1, table.size());
+		assertEquals("X-Caption-Session", table.get(SIPHeaderNamesCache.getId("x-caption-session"),
+				"x-caption-session").getName());
+	}
+
+	@Test
+	public void attachHeaderReplacesWithoutReordering() throws Exception {
+		SIPRequest request = invite();
+		Expires expires = new Expires();
+		expires.setExpires(60);
+		request.attachHeader(expires, true);
+
+		String encoded = request.encode();
+		int at = encoded.indexOf("Expires: 60");
+		assertTrue(encoded, at > encoded.indexOf("User-Agent") && at < encoded.indexOf("X-Caption-Session"));
+		assertEquals(encoded, encoded.indexOf("Expires:"), encoded.lastIndexOf("Expires:"));
+		assertEquals(encoded, request.clone().toString());
+	}
+
+	@Test
+	public void findsHeadersByIdAndName() throws Exception {
+		SIPRequest request = invite();
+		assertEquals(3600, ((Expires) request.getHeader("expires")).getExpires());
+		assertEquals("10.0.0.1", request.getTopmostVia().getHost());
+		assertEquals(314159, request.getCSeq().getSeqNumber());
+		assertEquals("4F1C2D3E", ((SIPHeader) request.getHeader("X-CAPTION-SESSION")).getHeaderValue().trim());
+		assertNull(request.getHeader("Subject"));
+	}
+}
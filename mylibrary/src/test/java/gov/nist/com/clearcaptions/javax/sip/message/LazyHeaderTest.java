@@ -0,0 +1,140 @@
+package gov.nist.com.clearcaptions.javax.sip.message;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import gov.nist.com.clearcaptions.javax.sip.parser.StringMsgParser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Received headers outside the routing set are held unparsed until first
+ * use.  One that then fails to parse must read as absent everywhere.
+ */
+public class LazyHeaderTest {
+
+	private static SIPRequest request(String extra) throws Exception {
+		String text = "MESSAGE sip:b@127.0.0.1:5070 SIP/2.0\r\n"
+				+ "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK1\r\n"
+				+ "Max-Forwards: 70\r\n"
+				+ "From: <sip:a@x>;tag=1\r\n"
+				+ "To: <sip:b@y>\r\n"
+				+ "Call-ID: lazy@x\r\n"
+				+ "CSeq: 1 MESSAGE\r\n"
+				+ extra
+				+ "Content-Length: 0\r\n\r\n";
+		return (SIPRequest) new StringMsgParser().parseSIPMessage(text.getBytes("UTF-8"));
+	}
+
+	@Test
+	public void parsesOnFirstAccess() throws Exception {
+		SIPRequest request = request("Expires: 60\r\n");
+		assertTrue(request.hasLazyHeaders());
+		assertTrue(request.hasHeader("Expires"));
+		assertEquals("Expires: 60\r\n", request.getHeaderAsFormattedString("Expires"));
+		assertFalse(request.hasLazyHeaders());
+	}
+
+	@Test
+	public void headerThatFailsToParseIsAbsent() throws Exception {
+		SIPRequest request = request("Expires: soon\r\n");
+		assertTrue(request.hasLazyHeaders());
+
+		assertFalse(request.hasHeader("Expires"));
+		assertNull(request.getHeader("Expires"));
+		assertNull(request.getHeaderAsFormattedString("Expires"));
+		assertFalse(request.getHeaders("Expires").hasNext());
+		assertFalse(request.hasLazyHeaders());
+
+		ListIterator<String> unrecognized = request.getUnrecognizedHeaders();
+		assertTrue(unrecognized.hasNext());
+		assertTrue(unrecognized.next().contains("soon"));
+	}
+
+	@Test
+	public void getHeaderAsFormattedStringOfMissingHeaderIsNull() throws Exception {
+		SIPRequest request = request("");
+		assertNull(request.getHeaderAsFormattedString("Subject"));
+		assertNotNull(request.getHeaderAsFormattedString("Call-ID"));
+	}
+
+	private static int count(ListIterator<String> headers) {
+		int n = 0;
+		while (headers.hasNext()) {
+			headers.next();
+			n++;
+		}
+		return n;
+	}
+
+	@Test
+	public void cloneKeepsItsOwnUnrecognizedHeaders() throws Exception {
+		SIPRequest request = request("Expires: soon\r\nSubject: hello\r\n");
+		SIPRequest copy = (SIPRequest) request.clone();
+		assertTrue(copy.hasLazyHeaders());
+
+		assertNull(copy.getHeader("Expires"));
+		assertEquals(1, count(copy.getUnrecognizedHeaders()));
+		assertEquals(0, count(request.getUnrecognizedHeaders()));
+		// the original still holds both headers unparsed
+		assertTrue(request.hasLazyHeaders());
+		assertNotNull(copy.getHeader("Subject"));
+		assertFalse(copy.hasLazyHeaders());
+		assertTrue(request.hasLazyHeaders());
+
+		assertNull(request.getHeader("Expires"));
+		assertEquals(1, count(request.getUnrecognizedHeaders()));
+		assertEquals(1, count(copy.getUnrecognizedHeaders()));
+		assertNotNull(request.getHeader("Subject"));
+		assertFalse(request.hasLazyHeaders());
+	}
+
+	private static final String[] LAZY = { "Expires: 60", "Subject: hello", "User-Agent: test/1.0",
+			"Server: test/1.0", "Organization: example", "Date: Sat, 13 Nov 2010 23:29:00 GMT",
+			"Priority: urgent", "Accept-Language: en", "Allow: INVITE", "Supported: timer",
+			"Timestamp: 54", "Min-Expires: 60", "Expires: never", "Subject: \u0001" };
+
+	@Test
+	public void concurrentFirstAccessParsesEveryHeaderOnce() throws Exception {
+		StringBuilder extra = new StringBuilder();
+		for (String line : LAZY)
+			extra.append(line).append("\r\n");
+		for (int round = 0; round < 200; round++) {
+			final SIPRequest request = request(extra.toString());
+			assertTrue(request.hasLazyHeaders());
+			final CountDownLatch start = new CountDownLatch(1);
+			final List<Throwable> failures = new ArrayList<Throwable>();
+			Thread[] threads = new Thread[LAZY.length];
+			for (int i = 0; i < LAZY.length; i++) {
+				final String name = LAZY[i].substring(0, LAZY[i].indexOf(':'));
+				threads[i] = new Thread() {
+					public void run() {
+						try {
+							start.await();
+							request.getHeader(name);
+						} catch (Throwable t) {
+							synchronized (failures) {
+								failures.add(t);
+							}
+						}
+					}
+				};
+				threads[i].start();
+			}
+			start.countDown();
+			for (Thread thread : threads)
+				thread.join();
+			if (!failures.isEmpty())
+				throw new AssertionError(failures.get(0));
+			assertFalse("round " + round, request.hasLazyHeaders());
+		}
+	}
+}
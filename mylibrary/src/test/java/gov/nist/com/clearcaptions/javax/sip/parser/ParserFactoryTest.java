@@ -0,0 +1,128 @@
+package gov.nist.com.clearcaptions.javax.sip.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import gov.nist.com.clearcaptions.javax.sip.header.SIPHeader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Parser selection, compact forms included, against the table the factory
+ * used to look parsers up in, and round trips of the header mix of a
+ * typical INVITE.
+ */
+public class ParserFactoryTest {
+
+	static final String[] MIX = {
+		"Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK776asdhds;rport\n",
+		"Via: SIP/2.0/UDP 10.0.0.2:5060;branch=z9hG4bK4b43c2ff8.1;received=10.0.0.9\n",
+		"Max-Forwards: 70\n",
+		"To: Bob <sip:bob@biloxi.example.com>\n",
+		"From: Alice <sip:alice@atlanta.example.com>;tag=1928301774\n",
+		"Call-ID: a84b4c76e66710@pc33.atlanta.example.com\n",
+		"CSeq: 314159 INVITE\n",
+		"Contact: <sip:alice@pc33.atlanta.example.com>\n",
+		"Record-Route: <sip:p1.example.com;lr>\n",
+		"Route: <sip:p2.example.com;lr>\n",
+		"Allow: INVITE, ACK, CANCEL, OPTIONS, BYE\n",
+		"Supported: replaces, timer\n",
+		"User-Agent: CaptionPhone/1.0\n",
+		"Expires: 3600\n",
+		"Content-Type: application/sdp\n",
+		"Content-Length: 142\n",
+	};
+
+	private static void assertParser(Class<?> expected, String line) throws Exception {
+		assertSame(line, expected, ParserFactory.createParser(line).getClass());
+	}
+
+	@Test
+	public void selectsParserByName() throws Exception {
+		assertParser(ViaParser.class, MIX[0]);
+		assertParser(MaxForwardsParser.class, MIX[2]);
+		assertParser(ToParser.class, MIX[3]);
+		assertParser(FromParser.class, MIX[4]);
+		assertParser(CallIDParser.class, MIX[5]);
+		assertParser(CSeqParser.class, MIX[6]);
+		assertParser(ContactParser.class, MIX[7]);
+		assertParser(RecordRouteParser.class, MIX[8]);
+		assertParser(RouteParser.class, MIX[9]);
+		assertParser(AllowParser.class, MIX[10]);
+		assertParser(SupportedParser.class, MIX[11]);
+		assertParser(UserAgentParser.class, MIX[12]);
+		assertParser(ExpiresParser.class, MIX[13]);
+		assertParser(ContentTypeParser.class, MIX[14]);
+		assertParser(ContentLengthParser.class, MIX[15]);
+		assertParser(ReferToParser.class, "Refer-To: <sip:carol@example.com>\n");
+		assertParser(HeaderParser.class, "X-Custom: anything\n");
+	}
+
+	@Test
+	public void namesAreCaseInsensitive() throws Exception {
+		assertParser(CSeqParser.class, "cseq: 1 INVITE\n");
+		assertParser(CallIDParser.class, "CALL-ID: abc@x\n");
+		assertParser(ContentTypeParser.class, "content-TYPE: text/plain\n");
+	}
+
+	@Test
+	public void compactFormsParseLikeFullNames() throws Exception {
+		String[][] pairs = {
+			{ "To: <sip:bob@b.example.com>\n", "t: <sip:bob@b.example.com>\n" },
+			{ "From: <sip:alice@a.example.com>;tag=1\n", "f: <sip:alice@a.example.com>;tag=1\n" },
+			{ "Call-ID: abc@x\n", "i: abc@x\n" },
+			{ "Via: SIP/2.0/UDP 10.0.0.1;branch=z9hG4bK1\n", "v: SIP/2.0/UDP 10.0.0.1;branch=z9hG4bK1\n" },
+			{ "Contact: <sip:a@10.0.0.1>\n", "m: <sip:a@10.0.0.1>\n" },
+			{ "Content-Type: application/sdp\n", "c: application/sdp\n" },
+			{ "Content-Length: 0\n", "l: 0\n" },
+			{ "Content-Encoding: gzip\n", "e: gzip\n" },
+			{ "Supported: timer\n", "k: timer\n" },
+			{ "Subject: hello\n", "s: hello\n" },
+			{ "Event: presence\n", "o: presence\n" },
+			{ "Allow-Events: presence\n", "u: presence\n" },
+			{ "Refer-To: <sip:c@example.com>\n", "r: <sip:c@example.com>\n" },
+		};
+		for (String[] pair : pairs) {
+			HeaderParser full = ParserFactory.createParser(pair[0]);
+			HeaderParser compact = ParserFactory.createParser(pair[1]);
+			assertSame(pair[1], full.getClass(), compact.getClass());
+			assertEquals(pair[1], full.parse(), compact.parse());
+		}
+	}
+
+	@Test
+	public void mixRoundTrips() throws Exception {
+		for (String line : MIX) {
+			SIPHeader header = ParserFactory.createParser(line).parse();
+			// the message parser hands over lines ending in a bare LF
+			SIPHeader again = ParserFactory.createParser(header.encode().trim() + "\n").parse();
+			assertEquals(line, header, again);
+		}
+	}
+
+	/**
+	 * Every name and compact form of the old table, in several cases, and
+	 * names it did not have, get the same parser class as before, whether
+	 * the factory finds the name itself or is given it.
+	 */
+	@Test
+	public void selectsTheParsersTheOldTableDid() throws Exception {
+		List<String> names = new ArrayList<String>();
+		for (String name : LegacyParserTable.names()) {
+			names.add(name);
+			names.add(name.toUpperCase());
+			names.add(Character.toUpperCase(name.charAt(0)) + name.substring(1));
+		}
+		names.addAll(Arrays.asList("X-Custom", "y", "z", "Referred", "Via-X", "P-Unknown", "CSeq2"));
+		for (String name : names) {
+			String line = name + ": value\n";
+			Class<?> expected = LegacyParserTable.parserClass(name);
+			assertSame(line, expected, ParserFactory.createParser(line).getClass());
+			assertSame(line, expected, ParserFactory.createParser(name, line).getClass());
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package gov.nist.com.clearcaptions.javax.sip.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import gov.nist.com.clearcaptions.javax.sip.message.SIPMessage;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Framing of pushed TCP input: messages split across reads at any point,
+ * several in one read, and Content-Length missing or beyond the limit.
+ */
+public class PipelinedMsgParserTest {
+
+	private static final int MAX_MESSAGE_SIZE = 2000;
+
+	private final List<SIPMessage> messages = new ArrayList<SIPMessage>();
+
+	private final SIPMessageListener listener = new SIPMessageListener() {
+		public void processMessage(SIPMessage msg) {
+			messages.add(msg);
+		}
+
+		public void handleException(ParseException ex, SIPMessage sipMessage, Class headerClass,
+				String headerText, String messageText) throws ParseException {
+			throw ex;
+		}
+	};
+
+	private PipelinedMsgParser parser = new PipelinedMsgParser(listener, MAX_MESSAGE_SIZE);
+
+	private static String message(int cseq, String body, boolean contentLength) {
+		return "MESSAGE sip:b@127.0.0.1 SIP/2.0\r\n"
+				+ "Via: SIP/2.0/TCP 127.0.0.1:5060;branch=z9hG4bK" + cseq + "\r\n"
+				+ "Max-Forwards: 70\r\n"
+				+ "From: <sip:a@x>;tag=1\r\n"
+				+ "To: <sip:b@y>\r\n"
+				+ "Call-ID: pipelined@x\r\n"
+				+ "CSeq: " + cseq + " MESSAGE\r\n"
+				+ (contentLength ? "Content-Length: " + body.length() + "\r\n" : "")
+				+ "\r\n" + body;
+	}
+
+	private static String message(int cseq, String body) {
+		return message(cseq, body, true);
+	}
+
+	private void push(String text) throws Exception {
+		byte[] bytes = text.getBytes("UTF-8");
+		parser.addBytes(bytes, 0, bytes.length);
+	}
+
+	private long cseq(int i) {
+		return messages.get(i).getCSeq().getSeqNumber();
+	}
+
+	@Test
+	public void headersSplitAtEveryPoint() throws Exception {
+		byte[] bytes = message(1, "").getBytes("UTF-8");
+		for (int split = 1; split < bytes.length; split++) {
+			messages.clear();
+			parser = new PipelinedMsgParser(listener, MAX_MESSAGE_SIZE);
+			parser.addBytes(bytes, 0, split);
+			assertEquals("split " + split, 0, messages.size());
+			assertTrue("split " + split, parser.hasPartialMessage());
+			parser.addBytes(bytes, split, bytes.length - split);
+			assertEquals("split " + split, 1, messages.size());
+			assertEquals("pipelined@x", messages.get(0).getCallId().getCallId());
+			assertFalse("split " + split, parser.hasPartialMessage());
+		}
+	}
+
+	@Test
+	public void bodySplitAtEveryPoint() throws Exception {
+		String body = "hello, pipelined world";
+		byte[] bytes = message(1, body).getBytes("UTF-8");
+		int bodyStart = bytes.length - body.length();
+		for (int split = bodyStart; split < bytes.length; split++) {
+			messages.clear();
+			parser = new PipelinedMsgParser(listener, MAX_MESSAGE_SIZE);
+			parser.addBytes(bytes, 0, split);
+			assertEquals("split " + split, 0, messages.size());
+			assertTrue("split " + split, parser.hasPartialMessage());
+			parser.addBytes(bytes, split, bytes.length - split);
+			assertEquals("split " + split, 1, messages.size());
+			assertArrayEquals(body.getBytes("UTF-8"), messages.get(0).getRawContent());
+		}
+	}
+
+	@Test
+	public void byteAtATime() throws Exception {
+		byte[] bytes = (message(1, "one") + message(2, "") + message(3, "three")).getBytes("UTF-8");
+		for (int i = 0; i < bytes.length; i++)
+			parser.addBytes(bytes, i, 1);
+		assertEquals(3, messages.size());
+		assertEquals(3, parser.getMessageCount());
+		assertFalse(parser.hasPartialMessage());
+	}
+
+	@Test
+	public void severalMessagesInOneRead() throws Exception {
+		// keep-alive CRLFs between messages are skipped
+		String fourth = message(4, "fourth");
+		push("\r\n\r\n" + message(1, "first") + "\r\n" + message(2, "") + message(3, "third")
+				+ fourth.substring(0, fourth.length() - 3));
+		assertEquals(3, messages.size());
+		assertEquals(1, cseq(0));
+		assertEquals(2, cseq(1));
+		assertEquals(3, cseq(2));
+		assertEquals("first", new String(messages.get(0).getRawContent(), "UTF-8"));
+		assertNull(messages.get(1).getRawContent());
+		assertEquals("third", new String(messages.get(2).getRawContent(), "UTF-8"));
+		assertTrue(parser.hasPartialMessage());
+
+		push("rth");
+		assertEquals(4, messages.size());
+		assertEquals("fourth", new String(messages.get(3).getRawContent(), "UTF-8"));
+		assertFalse(parser.hasPartialMessage());
+	}
+
+	@Test
+	public void missingContentLengthMeansNoBody() throws Exception {
+		push(message(1, "", false) + message(2, "two"));
+		assertEquals(2, messages.size());
+		assertNull(messages.get(0).getRawContent());
+		assertEquals("two", new String(messages.get(1).getRawContent(), "UTF-8"));
+	}
+
+	@Test
+	public void contentLengthBeyondTheLimitIsDeliveredWithoutItsBody() throws Exception {
+		String text = message(1, "").replace("Content-Length: 0", "Content-Length: " + MAX_MESSAGE_SIZE);
+		push(text);
+		// the stack answers it with an error; the parser does not wait for
+		// a body it would not accept
+		assertEquals(1, messages.size());
+		assertNull(messages.get(0).getRawContent());
+		assertFalse(parser.hasPartialMessage());
+	}
+
+	@Test
+	public void unparsableHeadersAreDropped() throws Exception {
+		push("this is not SIP\r\n\r\n" + message(2, ""));
+		assertEquals(1, messages.size());
+		assertEquals(2, cseq(0));
+		assertEquals(2, parser.getMessageCount());
+	}
+
+	@Test
+	public void headersReachingTheLimitCloseTheConnection() throws Exception {
+		StringBuilder text = new StringBuilder(message(1, "").replace("\r\n\r\n", "\r\n"));
+		while (text.length() < MAX_MESSAGE_SIZE)
+			text.append("Subject: padding padding padding\r\n");
+		try {
+			push(text.toString());
+			fail("headers of " + text.length() + " bytes accepted");
+		} catch (IOException expected) {
+		}
+		assertEquals(0, messages.size());
+	}
+
+	@Test
+	public void headersReachingTheLimitAcrossReadsCloseTheConnection() throws Exception {
+		push(message(1, "").replace("\r\n\r\n", "\r\n"));
+		try {
+			for (int i = 0; i < MAX_MESSAGE_SIZE; i += 20)
+				push("Subject: padding..\r\n");
+			fail("headers past the limit accepted");
+		} catch (IOException expected) {
+		}
+		assertEquals(0, messages.size());
+	}
+
+	@Test
+	public void noLimitWhenMaxMessageSizeIsZero() throws Exception {
+		parser = new PipelinedMsgParser(listener, 0);
+		StringBuilder body = new StringBuilder();
+		while (body.length() < 4 * MAX_MESSAGE_SIZE)
+			body.append("0123456789");
+		push(message(1, body.toString()));
+		assertEquals(1, messages.size());
+		assertEquals(body.length(), messages.get(0).getRawContent().length);
+	}
+}
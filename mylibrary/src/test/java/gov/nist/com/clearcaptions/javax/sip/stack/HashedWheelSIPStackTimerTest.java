@@ -0,0 +1,129 @@
+package gov.nist.com.clearcaptions.javax.sip.stack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Scheduling and cancelling on the timing wheel.
+ */
+public class HashedWheelSIPStackTimerTest {
+
+	private static class Counter extends SIPStackTimerTask {
+		final AtomicInteger runs;
+		final CountDownLatch ran;
+
+		Counter(AtomicInteger runs, CountDownLatch ran) {
+			this.runs = runs;
+			this.ran = ran;
+		}
+
+		protected void runTask() {
+			if (runs != null)
+				runs.incrementAndGet();
+			if (ran != null)
+				ran.countDown();
+		}
+	}
+
+	@Test
+	public void runsOneShotTaskOnceAfterItsDelay() throws Exception {
+		HashedWheelSIPStackTimer timer = new HashedWheelSIPStackTimer(2, 10, 64);
+		try {
+			AtomicInteger runs = new AtomicInteger();
+			CountDownLatch ran = new CountDownLatch(1);
+			long start = System.nanoTime();
+			timer.schedule(new Counter(runs, ran), 50);
+			assertTrue(ran.await(5, TimeUnit.SECONDS));
+			long elapsed = (System.nanoTime() - start) / 1000000;
+			assertTrue("ran after " + elapsed + " ms", elapsed >= 50);
+			Thread.sleep(100);
+			assertEquals(1, runs.get());
+			assertEquals(0, timer.size());
+		} finally {
+			timer.stop();
+		}
+	}
+
+	@Test
+	public void runsTaskDueBeyondOneTurnOfTheWheel() throws Exception {
+		// 8 slots of 10 ms, so a 200 ms task is passed over twice
+		HashedWheelSIPStackTimer timer = new HashedWheelSIPStackTimer(1, 10, 8);
+		try {
+			CountDownLatch ran = new CountDownLatch(1);
+			long start = System.nanoTime();
+			timer.schedule(new Counter(null, ran), 200);
+			assertTrue(ran.await(5, TimeUnit.SECONDS));
+			assertTrue((System.nanoTime() - start) / 1000000 >= 200);
+		} finally {
+			timer.stop();
+		}
+	}
+
+	@Test
+	public void runsPeriodicTaskUntilCancelled() throws Exception {
+		HashedWheelSIPStackTimer timer = new HashedWheelSIPStackTimer(1, 10, 64);
+		try {
+			AtomicInteger runs = new AtomicInteger();
+			CountDownLatch ran = new CountDownLatch(3);
+			Counter task = new Counter(runs, ran);
+			timer.schedule(task, 20, 20);
+			assertTrue(ran.await(5, TimeUnit.SECONDS));
+			task.cancel();
+			int after = runs.get();
+			Thread.sleep(100);
+			assertTrue(runs.get() <= after + 1);
+			assertEquals(0, timer.size());
+		} finally {
+			timer.stop();
+		}
+	}
+
+	@Test
+	public void cancelUnlinksAtOnce() throws Exception {
+		HashedWheelSIPStackTimer timer = new HashedWheelSIPStackTimer(2, 10, 64);
+		try {
+			AtomicInteger runs = new AtomicInteger();
+			Counter[] tasks = new Counter[1000];
+			for (int i = 0; i < tasks.length; i++) {
+				tasks[i] = new Counter(runs, null);
+				timer.schedule(tasks[i], 100);
+			}
+			assertEquals(tasks.length, timer.size());
+			for (int i = 0; i < tasks.length; i++)
+				assertTrue(tasks[i].cancel());
+			assertEquals(0, timer.size());
+			assertFalse(tasks[0].cancel());
+			Thread.sleep(200);
+			assertEquals(0, runs.get());
+		} finally {
+			timer.stop();
+		}
+	}
+
+	@Test
+	public void rejectsRescheduleAndUseAfterStop() {
+		HashedWheelSIPStackTimer timer = new HashedWheelSIPStackTimer(1, 10, 64);
+		Counter task = new Counter(null, null);
+		timer.schedule(task, 1000);
+		try {
+			timer.schedule(task, 1000);
+			fail("scheduled twice");
+		} catch (IllegalStateException expected) {
+		}
+		timer.stop();
+		assertEquals(0, timer.size());
+		try {
+			timer.schedule(new Counter(null, null), 10);
+			fail("scheduled after stop");
+		} catch (IllegalStateException expected) {
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package gov.nist.com.clearcaptions.javax.sip.stack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import gov.nist.com.clearcaptions.javax.sip.SipStackImpl;
+import gov.nist.com.clearcaptions.javax.sip.message.SIPRequest;
+import gov.nist.com.clearcaptions.javax.sip.parser.StringMsgParser;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.clearcaptions.javax.sip.DialogTerminatedEvent;
+import com.clearcaptions.javax.sip.IOExceptionEvent;
+import com.clearcaptions.javax.sip.ListeningPoint;
+import com.clearcaptions.javax.sip.RequestEvent;
+import com.clearcaptions.javax.sip.ResponseEvent;
+import com.clearcaptions.javax.sip.SipListener;
+import com.clearcaptions.javax.sip.SipProvider;
+import com.clearcaptions.javax.sip.TimeoutEvent;
+import com.clearcaptions.javax.sip.TransactionTerminatedEvent;
+import com.clearcaptions.javax.sip.header.CallIdHeader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * RFC 2543 style INVITEs, with a branch lacking the magic cookie or with
+ * none, and their retransmissions and CANCELs found through the legacy
+ * index.
+ */
+public class LegacyTransactionIndexTest {
+
+	static final int INVITES = 1000;
+
+	SipStackImpl stack;
+
+	private int port;
+
+	private DatagramSocket peer;
+
+	private final Map<String, SIPServerTransaction> byCallId = new ConcurrentHashMap<String, SIPServerTransaction>();
+
+	final List<SIPServerTransaction> transactions = new CopyOnWriteArrayList<SIPServerTransaction>();
+
+	@Before
+	public void setUp() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("com.clearcaptions.javax.sip.STACK_NAME", "LegacyTransactionIndexTest");
+		stack = new SipStackImpl(properties);
+		DatagramSocket probe = new DatagramSocket(0);
+		port = probe.getLocalPort();
+		probe.close();
+		ListeningPoint lp = stack.createListeningPoint("127.0.0.1", port, "udp");
+		final SipProvider provider = stack.createSipProvider(lp);
+		provider.addSipListener(new SipListener() {
+			public void processRequest(RequestEvent event) {
+				try {
+					SIPServerTransaction transaction = (SIPServerTransaction) provider
+							.getNewServerTransaction(event.getRequest());
+					String callId = ((CallIdHeader) event.getRequest().getHeader(CallIdHeader.NAME)).getCallId();
+					byCallId.put(callId, transaction);
+					transactions.add(transaction);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+
+			public void processResponse(ResponseEvent event) {
+			}
+
+			public void processTimeout(TimeoutEvent event) {
+			}
+
+			public void processIOException(IOExceptionEvent event) {
+			}
+
+			public void processTransactionTerminated(TransactionTerminatedEvent event) {
+			}
+
+			public void processDialogTerminated(DialogTerminatedEvent event) {
+			}
+		});
+		stack.start();
+		peer = new DatagramSocket(0);
+	}
+
+	@After
+	public void tearDown() {
+		peer.close();
+		stack.stop();
+	}
+
+	/**
+	 * INVITE or CANCEL number i; even ones have a branch without the magic
+	 * cookie, odd ones none.
+	 */
+	private String request(String method, int i) {
+		String branch = i % 2 == 0 ? ";branch=legacy" + i : "";
+		return method + " sip:bob@127.0.0.1:" + port + " SIP/2.0\r\n"
+				+ "Via: SIP/2.0/UDP 127.0.0.1:" + peer.getLocalPort() + branch + "\r\n"
+				+ "Max-Forwards: 70\r\n"
+				+ "From: <sip:alice@example.com>;tag=" + i + "\r\n"
+				+ "To: <sip:bob@example.com>\r\n"
+				+ "Call-ID: legacy" + i + "@127.0.0.1\r\n"
+				+ "CSeq: 1 " + method + "\r\n"
+				+ "Contact: <sip:alice@127.0.0.1:" + peer.getLocalPort() + ">\r\n"
+				+ "Content-Length: 0\r\n\r\n";
+	}
+
+	private static SIPRequest parse(String text) throws Exception {
+		return (SIPRequest) new StringMsgParser().parseSIPMessage(text);
+	}
+
+	/**
+	 * Sends the INVITEs, all of them or only those that have no transaction
+	 * yet.
+	 */
+	private void sendInvites(boolean all) throws Exception {
+		for (int i = 0; i < INVITES; i++) {
+			if (!all && byCallId.containsKey("legacy" + i + "@127.0.0.1"))
+				continue;
+			byte[] bytes = request("INVITE", i).getBytes("UTF-8");
+			peer.send(new DatagramPacket(bytes, bytes.length, InetAddress.getByName("127.0.0.1"), port));
+			// the socket buffer is only MAX_DATAGRAM_SIZE
+			Thread.sleep(1);
+		}
+	}
+
+	@Test
+	public void findsLegacyTransactionsRetransmissionsAndCancels() throws Exception {
+		invites();
+	}
+
+	/**
+	 * Has the stack create a transaction for every INVITE and checks that
+	 * each one, its retransmission and its CANCEL are found.
+	 *
+	 * @return the INVITEs
+	 */
+	SIPRequest[] invites() throws Exception {
+		sendInvites(true);
+		// a datagram dropped on the way is retransmitted, as a client would
+		for (int round = 0; round < 5 && transactions.size() < INVITES; round++) {
+			long deadline = System.currentTimeMillis() + 2000;
+			while (transactions.size() < INVITES && System.currentTimeMillis() < deadline)
+				Thread.sleep(20);
+			sendInvites(false);
+		}
+		assertEquals(INVITES, transactions.size());
+
+		// retransmissions are absorbed by their transactions
+		sendInvites(true);
+		Thread.sleep(500);
+		assertEquals(INVITES, transactions.size());
+
+		SIPRequest[] invites = new SIPRequest[INVITES];
+		for (int i = 0; i < INVITES; i++) {
+			invites[i] = parse(request("INVITE", i));
+			SIPRequest cancel = parse(request("CANCEL", i));
+			SIPServerTransaction expected = byCallId.get("legacy" + i + "@127.0.0.1");
+			assertSame(expected, stack.findTransaction(invites[i], true));
+			assertSame(expected, stack.findCancelTransaction(cancel, true));
+		}
+		SIPRequest other = parse(request("INVITE", 0).replace("CSeq: 1 ", "CSeq: 2 "));
+		assertNull(stack.findTransaction(other, true));
+		return invites;
+	}
+}
@@ -0,0 +1,194 @@
+package gov.nist.com.clearcaptions.javax.sip.stack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import gov.nist.com.clearcaptions.javax.sip.SipStackImpl;
+import gov.nist.com.clearcaptions.javax.sip.message.MessageFactoryImpl;
+import gov.nist.com.clearcaptions.javax.sip.parser.StringMsgParser;
+
+import java.net.DatagramSocket;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.clearcaptions.javax.sip.DialogTerminatedEvent;
+import com.clearcaptions.javax.sip.IOExceptionEvent;
+import com.clearcaptions.javax.sip.ListeningPoint;
+import com.clearcaptions.javax.sip.RequestEvent;
+import com.clearcaptions.javax.sip.ResponseEvent;
+import com.clearcaptions.javax.sip.SipListener;
+import com.clearcaptions.javax.sip.SipProvider;
+import com.clearcaptions.javax.sip.TimeoutEvent;
+import com.clearcaptions.javax.sip.TransactionTerminatedEvent;
+import com.clearcaptions.javax.sip.message.Request;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Timer tasks scheduled for a flood of REGISTER transactions between two
+ * stacks, now that a transaction schedules a task for its next deadline
+ * instead of ticking every BASE_TIMER_INTERVAL.
+ */
+public class SIPTransactionTimerTest {
+
+	static final int REGISTERS = 2000;
+
+	/**
+	 * A timing wheel that counts what is scheduled on it.
+	 */
+	public static class CountingTimer extends HashedWheelSIPStackTimer {
+		final AtomicInteger oneShot = new AtomicInteger();
+		final AtomicInteger periodic = new AtomicInteger();
+
+		public void schedule(SIPStackTimerTask task, long delay) {
+			oneShot.incrementAndGet();
+			super.schedule(task, delay);
+		}
+
+		public void schedule(SIPStackTimerTask task, long delay, long period) {
+			periodic.incrementAndGet();
+			super.schedule(task, delay, period);
+		}
+	}
+
+	SipStackImpl server;
+
+	SipStackImpl client;
+
+	private SipProvider clientProvider;
+
+	private int serverPort;
+
+	private int clientPort;
+
+	private final AtomicInteger responses = new AtomicInteger();
+
+	private final AtomicInteger timeouts = new AtomicInteger();
+
+	private static int freePort() throws Exception {
+		DatagramSocket probe = new DatagramSocket(0);
+		int port = probe.getLocalPort();
+		probe.close();
+		return port;
+	}
+
+	private static SipStackImpl stack(String name) throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("com.clearcaptions.javax.sip.STACK_NAME", name);
+		properties.setProperty("gov.nist.com.clearcaptions.javax.sip.TIMER_CLASS_NAME",
+				CountingTimer.class.getName());
+		return new SipStackImpl(properties);
+	}
+
+	private abstract class Listener implements SipListener {
+		public void processRequest(RequestEvent event) {
+		}
+
+		public void processResponse(ResponseEvent event) {
+		}
+
+		public void processTimeout(TimeoutEvent event) {
+			timeouts.incrementAndGet();
+		}
+
+		public void processIOException(IOExceptionEvent event) {
+		}
+
+		public void processTransactionTerminated(TransactionTerminatedEvent event) {
+		}
+
+		public void processDialogTerminated(DialogTerminatedEvent event) {
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		server = stack("SIPTransactionTimerTest-server");
+		serverPort = freePort();
+		final SipProvider serverProvider = server.createSipProvider(
+				server.createListeningPoint("127.0.0.1", serverPort, "udp"));
+		final MessageFactoryImpl messageFactory = new MessageFactoryImpl();
+		serverProvider.addSipListener(new Listener() {
+			public void processRequest(RequestEvent event) {
+				try {
+					serverProvider.getNewServerTransaction(event.getRequest())
+							.sendResponse(messageFactory.createResponse(200, event.getRequest()));
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		server.start();
+
+		client = stack("SIPTransactionTimerTest-client");
+		clientPort = freePort();
+		ListeningPoint lp = client.createListeningPoint("127.0.0.1", clientPort, "udp");
+		clientProvider = client.createSipProvider(lp);
+		clientProvider.addSipListener(new Listener() {
+			public void processResponse(ResponseEvent event) {
+				if (event.getResponse().getStatusCode() == 200)
+					responses.incrementAndGet();
+			}
+		});
+		client.start();
+	}
+
+	@After
+	public void tearDown() {
+		client.stop();
+		server.stop();
+	}
+
+	private Request register(int i) throws Exception {
+		String text = "REGISTER sip:127.0.0.1:" + serverPort + " SIP/2.0\r\n"
+				+ "Via: SIP/2.0/UDP 127.0.0.1:" + clientPort + ";branch=z9hG4bKreg" + i + "\r\n"
+				+ "Max-Forwards: 70\r\n"
+				+ "From: <sip:user" + i + "@example.com>;tag=" + i + "\r\n"
+				+ "To: <sip:user" + i + "@example.com>\r\n"
+				+ "Call-ID: reg" + i + "@127.0.0.1\r\n"
+				+ "CSeq: 1 REGISTER\r\n"
+				+ "Contact: <sip:user" + i + "@127.0.0.1:" + clientPort + ">\r\n"
+				+ "Expires: 3600\r\n"
+				+ "Content-Length: 0\r\n\r\n";
+		return (Request) new StringMsgParser().parseSIPMessage(text);
+	}
+
+	/**
+	 * Sends REGISTERS REGISTERs and waits for their responses.
+	 *
+	 * @return elapsed milliseconds
+	 */
+	long flood() throws Exception {
+		long start = System.nanoTime();
+		for (int i = 0; i < REGISTERS; i++) {
+			clientProvider.getNewClientTransaction(register(i)).sendRequest();
+			// the socket buffers are only MAX_DATAGRAM_SIZE
+			Thread.sleep(1);
+		}
+		long deadline = System.currentTimeMillis() + 20000;
+		while (responses.get() < REGISTERS && System.currentTimeMillis() < deadline)
+			Thread.sleep(20);
+		assertEquals(REGISTERS, responses.get());
+		assertEquals(0, timeouts.get());
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	@Test
+	public void registrationFloodSchedulesFewTimerTasks() throws Exception {
+		flood();
+
+		CountingTimer clientTimer = (CountingTimer) client.getTimer();
+		CountingTimer serverTimer = (CountingTimer) server.getTimer();
+		// no transaction keeps a periodic task
+		assertEquals(0, clientTimer.periodic.get());
+		assertEquals(0, serverTimer.periodic.get());
+		// a transaction has at most one task pending
+		assertTrue(clientTimer.size() <= REGISTERS);
+		assertTrue(serverTimer.size() <= REGISTERS);
+		// Timer E and F are one task, Timer K another
+		assertTrue(clientTimer.oneShot.get() + " client tasks", clientTimer.oneShot.get() <= 3 * REGISTERS);
+		assertTrue(serverTimer.oneShot.get() + " server tasks", serverTimer.oneShot.get() <= 3 * REGISTERS);
+	}
+}
@@ -0,0 +1,170 @@
+package gov.nist.com.clearcaptions.javax.sip.stack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import gov.nist.com.clearcaptions.javax.sip.SipStackImpl;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.clearcaptions.javax.sip.DialogTerminatedEvent;
+import com.clearcaptions.javax.sip.IOExceptionEvent;
+import com.clearcaptions.javax.sip.ListeningPoint;
+import com.clearcaptions.javax.sip.RequestEvent;
+import com.clearcaptions.javax.sip.ResponseEvent;
+import com.clearcaptions.javax.sip.SipListener;
+import com.clearcaptions.javax.sip.SipProvider;
+import com.clearcaptions.javax.sip.TimeoutEvent;
+import com.clearcaptions.javax.sip.TransactionTerminatedEvent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A message started on a TCP connection must be complete within
+ * READ_TIMEOUT of its first bytes, however slowly the rest trickles in.
+ */
+public class TCPMessageChannelTest {
+
+	private static final int READ_TIMEOUT = 500;
+
+	private SipStackImpl stack;
+
+	private int port;
+
+	private Socket socket;
+
+	private final AtomicInteger received = new AtomicInteger();
+
+	@Before
+	public void setUp() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("com.clearcaptions.javax.sip.STACK_NAME", "TCPMessageChannelTest");
+		properties.setProperty("gov.nist.com.clearcaptions.javax.sip.READ_TIMEOUT", String.valueOf(READ_TIMEOUT));
+		stack = new SipStackImpl(properties);
+		ServerSocket probe = new ServerSocket(0);
+		port = probe.getLocalPort();
+		probe.close();
+		ListeningPoint lp = stack.createListeningPoint("127.0.0.1", port, "tcp");
+		SipProvider provider = stack.createSipProvider(lp);
+		provider.addSipListener(new SipListener() {
+			public void processRequest(RequestEvent event) {
+				received.incrementAndGet();
+			}
+
+			public void processResponse(ResponseEvent event) {
+			}
+
+			public void processTimeout(TimeoutEvent event) {
+			}
+
+			public void processIOException(IOExceptionEvent event) {
+			}
+
+			public void processTransactionTerminated(TransactionTerminatedEvent event) {
+			}
+
+			public void processDialogTerminated(DialogTerminatedEvent event) {
+			}
+		});
+		stack.start();
+		socket = new Socket("127.0.0.1", port);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		socket.close();
+		stack.stop();
+	}
+
+	private byte[] message(int cseq) throws Exception {
+		return ("MESSAGE sip:b@127.0.0.1:" + port + ";transport=tcp SIP/2.0\r\n"
+				+ "Via: SIP/2.0/TCP 127.0.0.1:" + socket.getLocalPort() + ";branch=z9hG4bKtcp" + cseq + "\r\n"
+				+ "Max-Forwards: 70\r\n"
+				+ "From: <sip:a@x>;tag=1\r\n"
+				+ "To: <sip:b@y>\r\n"
+				+ "Call-ID: tcp" + cseq + "@x\r\n"
+				+ "CSeq: " + cseq + " MESSAGE\r\n"
+				+ "Content-Length: 0\r\n\r\n").getBytes("UTF-8");
+	}
+
+	/**
+	 * Writes bytes in pieces, pausing between them.
+	 */
+	private void trickle(byte[] bytes, int pieces, long pauseMillis) throws Exception {
+		OutputStream out = socket.getOutputStream();
+		int piece = (bytes.length + pieces - 1) / pieces;
+		for (int i = 0; i < bytes.length; i += piece) {
+			out.write(bytes, i, Math.min(piece, bytes.length - i));
+			out.flush();
+			Thread.sleep(pauseMillis);
+		}
+	}
+
+	/**
+	 * @return true if the stack closed the connection within millis
+	 */
+	private boolean closedWithin(long millis) throws Exception {
+		socket.setSoTimeout((int) millis);
+		InputStream in = socket.getInputStream();
+		try {
+			return in.read() == -1;
+		} catch (SocketException reset) {
+			return true;
+		} catch (java.net.SocketTimeoutException open) {
+			return false;
+		}
+	}
+
+	@Test
+	public void slowMessageIsCutOffAtItsDeadline() throws Exception {
+		final byte[] bytes = message(1);
+		Thread writer = new Thread() {
+			public void run() {
+				try {
+					// every pause is well inside the read timeout, but the
+					// message takes six times as long
+					trickle(bytes, 30, READ_TIMEOUT / 5);
+				} catch (Exception closed) {
+				}
+			}
+		};
+		long start = System.currentTimeMillis();
+		writer.start();
+		assertTrue("connection left open", closedWithin(4 * READ_TIMEOUT));
+		long elapsed = System.currentTimeMillis() - start;
+		assertTrue("closed after " + elapsed + " ms", elapsed < 3 * READ_TIMEOUT);
+		writer.join();
+		assertEquals(0, received.get());
+	}
+
+	@Test
+	public void eachMessageGetsItsOwnDeadline() throws Exception {
+		// each message takes most of the read timeout, together far more
+		for (int cseq = 1; cseq <= 4; cseq++)
+			trickle(message(cseq), 3, READ_TIMEOUT / 5);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (received.get() < 4 && System.currentTimeMillis() < deadline)
+			Thread.sleep(20);
+		assertEquals(4, received.get());
+		assertTrue("connection closed", !closedWithin(200));
+	}
+
+	@Test
+	public void idleConnectionBetweenMessagesStaysOpen() throws Exception {
+		trickle(message(1), 1, 0);
+		assertTrue("connection closed", !closedWithin(3 * READ_TIMEOUT));
+		trickle(message(2), 1, 0);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (received.get() < 2 && System.currentTimeMillis() < deadline)
+			Thread.sleep(20);
+		assertEquals(2, received.get());
+	}
+}
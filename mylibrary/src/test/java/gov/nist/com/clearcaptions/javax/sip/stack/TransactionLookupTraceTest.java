@@ -0,0 +1,132 @@
+package gov.nist.com.clearcaptions.javax.sip.stack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import gov.nist.com.clearcaptions.javax.sip.message.SIPMessage;
+import gov.nist.com.clearcaptions.javax.sip.parser.StringMsgParser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Which lookups the trace records: one in every sampleInterval, every one
+ * of a traced call, and no more than maxRecordsPerSecond a second.
+ */
+public class TransactionLookupTraceTest {
+
+	/**
+	 * A trace that keeps its records and reads a clock the test sets.
+	 */
+	private static class RecordingTrace extends TransactionLookupTrace {
+		final List<String> records = new ArrayList<String>();
+
+		long now;
+
+		RecordingTrace() {
+			super(null);
+		}
+
+		void record(String line) {
+			records.add(line);
+		}
+
+		long nanoTime() {
+			return now;
+		}
+	}
+
+	private final RecordingTrace trace = new RecordingTrace();
+
+	private static SIPMessage message(String callId) throws Exception {
+		String text = "MESSAGE sip:b@127.0.0.1 SIP/2.0\r\n"
+				+ "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK" + callId + "\r\n"
+				+ "Max-Forwards: 70\r\n"
+				+ "From: <sip:a@x>;tag=1\r\n"
+				+ "To: <sip:b@y>\r\n"
+				+ "Call-ID: " + callId + "\r\n"
+				+ "CSeq: 1 MESSAGE\r\n"
+				+ "Content-Length: 0\r\n\r\n";
+		return new StringMsgParser().parseSIPMessage(text);
+	}
+
+	private void lookups(SIPMessage message, int count) {
+		for (int i = 0; i < count; i++)
+			trace.lookup("server", message, "key" + i, null, i);
+	}
+
+	@Test
+	public void recordsNothingByDefault() throws Exception {
+		assertFalse(trace.isEnabled());
+		lookups(message("a@x"), 100);
+		assertEquals(0, trace.records.size());
+	}
+
+	@Test
+	public void recordsOneLookupInEverySampleInterval() throws Exception {
+		trace.setSampleInterval(10);
+		assertTrue(trace.isEnabled());
+		lookups(message("a@x"), 95);
+		assertEquals(9, trace.records.size());
+		assertEquals("lookup table=server callId=a@x key=key9 hit=false size=9", trace.records.get(0));
+		assertEquals("lookup table=server callId=a@x key=key19 hit=false size=19", trace.records.get(1));
+
+		trace.setSampleInterval(0);
+		assertFalse(trace.isEnabled());
+		lookups(message("a@x"), 95);
+		assertEquals(9, trace.records.size());
+	}
+
+	@Test
+	public void recordsEveryLookupOfTracedCallsOnly() throws Exception {
+		SIPMessage traced = message("traced@x");
+		SIPMessage other = message("other@x");
+		trace.traceCallId("traced@x");
+		assertTrue(trace.isEnabled());
+		for (int i = 0; i < 20; i++) {
+			lookups(traced, 1);
+			lookups(other, 1);
+		}
+		assertEquals(20, trace.records.size());
+		for (String record : trace.records)
+			assertTrue(record, record.contains(" callId=traced@x "));
+
+		trace.untraceCallId("traced@x");
+		assertFalse(trace.isEnabled());
+		lookups(traced, 10);
+		assertEquals(20, trace.records.size());
+	}
+
+	@Test
+	public void limitsRecordsPerSecond() throws Exception {
+		SIPMessage message = message("a@x");
+		trace.traceCallId("a@x");
+		trace.setMaxRecordsPerSecond(5);
+
+		trace.now = 7000000000L;
+		lookups(message, 12);
+		assertEquals(5, trace.records.size());
+		assertEquals(7, trace.getDroppedRecords());
+
+		// still the same second
+		trace.now += 999999999L;
+		lookups(message, 3);
+		assertEquals(5, trace.records.size());
+		assertEquals(10, trace.getDroppedRecords());
+
+		// the next second has its own allowance
+		trace.now += 1;
+		lookups(message, 8);
+		assertEquals(10, trace.records.size());
+		assertEquals(13, trace.getDroppedRecords());
+
+		trace.setMaxRecordsPerSecond(0);
+		trace.now += 1000000000L;
+		lookups(message, 2);
+		assertEquals(10, trace.records.size());
+		assertEquals(15, trace.getDroppedRecords());
+	}
+}
@@ -0,0 +1,212 @@
+package gov.nist.com.clearcaptions.javax.sip.stack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import gov.nist.com.clearcaptions.javax.sip.SipStackImpl;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.clearcaptions.javax.sip.DialogTerminatedEvent;
+import com.clearcaptions.javax.sip.IOExceptionEvent;
+import com.clearcaptions.javax.sip.ListeningPoint;
+import com.clearcaptions.javax.sip.RequestEvent;
+import com.clearcaptions.javax.sip.ResponseEvent;
+import com.clearcaptions.javax.sip.SipListener;
+import com.clearcaptions.javax.sip.SipProvider;
+import com.clearcaptions.javax.sip.TimeoutEvent;
+import com.clearcaptions.javax.sip.TransactionTerminatedEvent;
+import com.clearcaptions.javax.sip.header.CSeqHeader;
+import com.clearcaptions.javax.sip.header.CallIdHeader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Datagrams are queued at their own size to the pool thread their Call-ID
+ * hashes to, so each call is processed in arrival order.
+ */
+public class UDPMessageProcessorTest {
+
+	private static final int CALLS = 20;
+
+	private static final int REQUESTS = 50;
+
+	private static final int POOL = 4;
+
+	private SipStackImpl stack;
+
+	private int port;
+
+	private DatagramSocket peer;
+
+	private final ConcurrentHashMap<String, Long> lastCSeq = new ConcurrentHashMap<String, Long>();
+
+	private final AtomicInteger received = new AtomicInteger();
+
+	private final AtomicInteger outOfOrder = new AtomicInteger();
+
+	private volatile CountDownLatch hold;
+
+	@Before
+	public void setUp() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("com.clearcaptions.javax.sip.STACK_NAME", "UDPMessageProcessorTest");
+		properties.setProperty("gov.nist.com.clearcaptions.javax.sip.THREAD_POOL_SIZE", String.valueOf(POOL));
+		// deliver on the pool threads, so their order is what the listener sees
+		properties.setProperty("gov.nist.com.clearcaptions.javax.sip.REENTRANT_LISTENER", "true");
+		stack = new SipStackImpl(properties);
+		DatagramSocket probe = new DatagramSocket(0);
+		port = probe.getLocalPort();
+		probe.close();
+		ListeningPoint lp = stack.createListeningPoint("127.0.0.1", port, "udp");
+		SipProvider provider = stack.createSipProvider(lp);
+		provider.addSipListener(new SipListener() {
+			public void processRequest(RequestEvent event) {
+				String callId = ((CallIdHeader) event.getRequest().getHeader(CallIdHeader.NAME)).getCallId();
+				long cseq = ((CSeqHeader) event.getRequest().getHeader(CSeqHeader.NAME)).getSeqNumber();
+				Long previous = lastCSeq.put(callId, Long.valueOf(cseq));
+				if (previous != null && previous.longValue() >= cseq)
+					outOfOrder.incrementAndGet();
+				received.incrementAndGet();
+				CountDownLatch latch = hold;
+				if (latch != null) {
+					try {
+						latch.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+					}
+				}
+			}
+
+			public void processResponse(ResponseEvent event) {
+			}
+
+			public void processTimeout(TimeoutEvent event) {
+			}
+
+			public void processIOException(IOExceptionEvent event) {
+			}
+
+			public void processTransactionTerminated(TransactionTerminatedEvent event) {
+			}
+
+			public void processDialogTerminated(DialogTerminatedEvent event) {
+			}
+		});
+		stack.start();
+		peer = new DatagramSocket(0);
+	}
+
+	@After
+	public void tearDown() {
+		CountDownLatch latch = hold;
+		if (latch != null)
+			latch.countDown();
+		peer.close();
+		stack.stop();
+	}
+
+	private static byte[] request(int call, int cseq, int peerPort, int port) throws Exception {
+		String text = "MESSAGE sip:b@127.0.0.1:" + port + " SIP/2.0\r\n"
+				+ "Via: SIP/2.0/UDP 127.0.0.1:" + peerPort + ";branch=z9hG4bK" + call + "x" + cseq + "\r\n"
+				+ "Max-Forwards: 70\r\n"
+				+ "From: <sip:a@x>;tag=" + call + "\r\n"
+				+ "To: <sip:b@y>\r\n"
+				+ "Call-ID: call" + call + "@x\r\n"
+				+ "CSeq: " + cseq + " MESSAGE\r\n"
+				+ "Content-Length: 0\r\n\r\n";
+		return text.getBytes("UTF-8");
+	}
+
+	private void send(byte[] message) throws Exception {
+		peer.send(new DatagramPacket(message, message.length, InetAddress.getByName("127.0.0.1"), port));
+	}
+
+	private UDPMessageProcessor processor() {
+		for (MessageProcessor processor : stack.getMessageProcessors()) {
+			if (processor instanceof UDPMessageProcessor)
+				return (UDPMessageProcessor) processor;
+		}
+		throw new AssertionError("no UDP message processor");
+	}
+
+	private static int hash(String message) throws Exception {
+		byte[] bytes = message.getBytes("UTF-8");
+		return UDPMessageProcessor.callIdHash(bytes, bytes.length);
+	}
+
+	@Test
+	public void callIdHashReadsOnlyTheCallIdHeader() throws Exception {
+		int full = hash("MESSAGE sip:b@y SIP/2.0\r\nVia: x\r\nCall-ID: abc@x\r\nCSeq: 1 MESSAGE\r\n\r\n");
+		assertEquals(full, hash("MESSAGE sip:b@y SIP/2.0\r\ncall-id :  abc@x \r\n\r\n"));
+		assertEquals(full, hash("MESSAGE sip:b@y SIP/2.0\r\nI: abc@x\r\n\r\n"));
+		assertNotEquals(full, hash("MESSAGE sip:b@y SIP/2.0\r\nCall-ID: abd@x\r\n\r\n"));
+		assertNotEquals(full, hash("MESSAGE sip:b@y SIP/2.0\r\nX-Call-ID: abc@x\r\n\r\n"));
+		assertEquals(0, hash("MESSAGE sip:b@y SIP/2.0\r\nVia: x\r\n\r\nCall-ID: abc@x\r\n"));
+		assertEquals(0, hash("MESSAGE sip:b@y SIP/2.0\r\nVia: x"));
+	}
+
+	@Test
+	public void eachCallIsProcessedInOrder() throws Exception {
+		for (int cseq = 1; cseq <= REQUESTS; cseq++) {
+			for (int call = 0; call < CALLS; call++) {
+				send(request(call, cseq, peer.getLocalPort(), port));
+				// the socket buffer is only MAX_DATAGRAM_SIZE
+				if (call % 2 == 1)
+					Thread.sleep(1);
+			}
+		}
+		long deadline = System.currentTimeMillis() + 10000;
+		while (received.get() < CALLS * REQUESTS && System.currentTimeMillis() < deadline)
+			Thread.sleep(20);
+
+		assertEquals(CALLS * REQUESTS, received.get());
+		assertEquals(CALLS, lastCSeq.size());
+		assertEquals(0, outOfOrder.get());
+	}
+
+	@Test
+	public void queuedPacketsHoldOnlyTheirOwnBytes() throws Exception {
+		hold = new CountDownLatch(1);
+		byte[] first = request(0, 1, peer.getLocalPort(), port);
+		send(first);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (received.get() == 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertEquals(1, received.get());
+
+		// the pool thread of call 0 is now held, so its packets queue up
+		int queued = 10;
+		for (int cseq = 2; cseq < 2 + queued; cseq++)
+			send(request(0, cseq, peer.getLocalPort(), port));
+
+		UDPMessageProcessor processor = processor();
+		deadline = System.currentTimeMillis() + 5000;
+		while (processor.messageQueueSize.get() < queued && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertEquals(queued, processor.messageQueueSize.get());
+
+		int packets = 0;
+		int bytes = 0;
+		for (UDPMessageChannel channel : processor.messageChannels) {
+			for (DatagramPacket packet : channel.packetQueue) {
+				assertEquals(packet.getLength(), packet.getData().length);
+				packets++;
+				bytes += packet.getData().length;
+			}
+		}
+		assertEquals(queued, packets);
+		assertTrue(bytes / packets < first.length + 8);
+
+		hold.countDown();
+	}
+}